@@ -0,0 +1,50 @@
+package com.avez.visualizer.benchmarks;
+
+import com.avez.visualizer.CSVAnalyzer;
+import com.avez.visualizer.CSVReader;
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.ColumnInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * CSVAnalyzer.analyzeColumns on already parsed data, so only the analysis is measured.
+ * The "rows" counter is rows per second over all the columns of the mix.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyzerBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"numeric", "categorical", "mixed"})
+    public String mix;
+
+    private final CSVAnalyzer csvAnalyzer = new CSVAnalyzer();
+    private CSVData data;
+
+    @Setup(Level.Trial)
+    public void parse() throws IOException {
+        Path file = BenchmarkData.writeTempFile(rows, mix);
+        data = new CSVReader().readCSV(file.toString());
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<ColumnInfo> analyzeColumns(Counters counters) {
+        List<ColumnInfo> columnInfos = csvAnalyzer.analyzeColumns(data);
+        counters.rows += data.getRowCount();
+        return columnInfos;
+    }
+}
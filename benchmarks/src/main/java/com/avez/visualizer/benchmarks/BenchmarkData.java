@@ -0,0 +1,94 @@
+package com.avez.visualizer.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+
+/**
+ * CSV input for the benchmarks, always the same for the same row count and column mix (fixed seed).
+ *
+ *   numeric      6 number columns: prices with 2 decimals, small integer quantities, 4 decimal profits
+ *   categorical  6 text columns from 3 to 500 distinct values, like Region or City
+ *   mixed        Superstore-like: an ID, an M/d/yy date, categoricals, quoted names with commas and numbers
+ */
+final class BenchmarkData {
+
+    private static final String[] REGIONS = { "Central", "East", "South", "West" };
+    private static final String[] CATEGORIES = { "Furniture", "Office Supplies", "Technology" };
+    private static final String[] SEGMENTS = { "Consumer", "Corporate", "Home Office" };
+    private static final String[] SHIP_MODES = { "First Class", "Same Day", "Second Class", "Standard Class" };
+
+    private BenchmarkData() {
+    }
+
+    static String csv(int rows, String mix) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(rows * 80);
+
+        switch (mix) {
+            case "numeric" -> {
+                text.append("Sales,Quantity,Profit,Price,Units,Margin\n");
+                for (int row = 0; row < rows; row++) {
+                    text.append(decimal(random.nextDouble() * 2000, 2)).append(',')
+                            .append(1 + random.nextInt(14)).append(',')
+                            .append(decimal((random.nextDouble() - 0.3) * 500, 4)).append(',')
+                            .append(decimal(random.nextDouble() * 100, 2)).append(',')
+                            .append(random.nextInt(1000)).append(',')
+                            .append(decimal(random.nextDouble(), 4)).append('\n');
+                }
+            }
+            case "categorical" -> {
+                text.append("Region,Category,Segment,Ship Mode,State,City\n");
+                for (int row = 0; row < rows; row++) {
+                    text.append(pick(REGIONS, random)).append(',')
+                            .append(pick(CATEGORIES, random)).append(',')
+                            .append(pick(SEGMENTS, random)).append(',')
+                            .append(pick(SHIP_MODES, random)).append(',')
+                            .append("State ").append(random.nextInt(49)).append(',')
+                            .append("City ").append(random.nextInt(500)).append('\n');
+                }
+            }
+            case "mixed" -> {
+                text.append("Order ID,Order Date,Region,Category,Product Name,Sales,Quantity,Profit\n");
+                for (int row = 0; row < rows; row++) {
+                    text.append("CA-").append(2014 + random.nextInt(4)).append('-').append(100000 + row).append(',')
+                            .append(1 + random.nextInt(12)).append('/').append(1 + random.nextInt(28)).append('/')
+                            .append(14 + random.nextInt(4)).append(',')
+                            .append(pick(REGIONS, random)).append(',')
+                            .append(pick(CATEGORIES, random)).append(',')
+                            .append("\"Product ").append(random.nextInt(1800)).append(", Series ").append(random.nextInt(20)).append("\",")
+                            .append(decimal(Math.exp(random.nextGaussian() * 1.3 + 4), 4)).append(',')
+                            .append(1 + random.nextInt(14)).append(',')
+                            .append(decimal((random.nextDouble() - 0.3) * 300, 4)).append('\n');
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown column mix: " + mix);
+        }
+        return text.toString();
+    }
+
+    // writes the CSV to a temp file, for the code that only reads from a path
+    static Path writeTempFile(int rows, String mix) throws IOException {
+        Path file = Files.createTempFile("benchmark-" + mix + "-" + rows + "-", ".csv");
+        Files.writeString(file, csv(rows, mix), StandardCharsets.UTF_8);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    // a low cardinality column of the mix, for frequency charts (numeric has none, Quantity has 14 values)
+    static String categoricalColumn(String mix) {
+        return mix.equals("numeric") ? "Quantity" : "Region";
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String decimal(double value, int decimals) {
+        return String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+}
@@ -0,0 +1,75 @@
+package com.avez.visualizer.benchmarks;
+
+import com.avez.visualizer.CSVReader;
+import com.avez.visualizer.ChartGenerator;
+import com.avez.visualizer.ProgressListener;
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.ChartType;
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The two halves of ChartGenerator.generateChart, measured apart:
+ *   - preparing the data and building the chart (createChart): counting values for a bar chart, collecting
+ *     and binning the numbers for a histogram, sorting them for a box plot
+ *   - encoding the finished chart as an 800x600 PNG, which doesn't depend on the row count
+ * "rows" is rows per second for the preparation benchmarks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ChartBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"numeric", "mixed"})
+    public String mix;
+
+    private final ChartGenerator chartGenerator = new ChartGenerator();
+    private CSVData data;
+    private JFreeChart barChart;
+
+    @Setup(Level.Trial)
+    public void parse() throws IOException {
+        Path file = BenchmarkData.writeTempFile(rows, mix);
+        data = new CSVReader().readCSV(file.toString());
+        Files.deleteIfExists(file);
+        barChart = prepareBarChart(new Counters());
+    }
+
+    @Benchmark
+    public JFreeChart prepareBarChart(Counters counters) {
+        counters.rows += data.getRowCount();
+        return chartGenerator.createChart(BenchmarkData.categoricalColumn(mix), data.getRecords(), ChartType.BAR_CHART, ProgressListener.NONE);
+    }
+
+    @Benchmark
+    public JFreeChart prepareHistogram(Counters counters) {
+        counters.rows += data.getRowCount();
+        return chartGenerator.createChart("Sales", data.getRecords(), ChartType.HISTOGRAM, ProgressListener.NONE);
+    }
+
+    @Benchmark
+    public JFreeChart prepareBoxPlot(Counters counters) {
+        counters.rows += data.getRowCount();
+        return chartGenerator.createChart("Sales", data.getRecords(), ChartType.BOX_PLOT, ProgressListener.NONE);
+    }
+
+    // drawing and PNG compression only, into a stream that drops the bytes so the disk isn't measured
+    @Benchmark
+    public void encodePng() throws IOException {
+        ChartUtils.writeChartAsPNG(OutputStream.nullOutputStream(), barChart, 800, 600);
+    }
+}
@@ -0,0 +1,112 @@
+package com.avez.visualizer.benchmarks;
+
+import com.avez.visualizer.ConsoleAppender;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Console throughput of the GUI: printing a burst of lines to a PrintStream over a JTextArea, until every line is
+ * actually in the text area. ConsoleAppender (queue + timer, one append per tick) against the previous stream
+ * (an invokeLater and a caret move per line), which is copied below as the baseline.
+ *
+ * Each operation is one byte, so the score is in bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ConsoleBenchmark {
+
+    private static final int LINES = 20_000;
+    private static final int LINE_BYTES = 64; // with the '\n'
+    private static final int BYTES = LINES * LINE_BYTES;
+
+    private final String line = "x".repeat(LINE_BYTES - 1);
+
+    private JTextArea textArea;
+    private ConsoleAppender appender;
+    private PrintStream batched;
+    private PrintStream perLine;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        SwingUtilities.invokeAndWait(() -> textArea = new JTextArea());
+        appender = new ConsoleAppender(textArea);
+        batched = new PrintStream(appender, true, StandardCharsets.UTF_8);
+        perLine = new PrintStream(new PerLineStream(textArea), true, StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        appender.close();
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BYTES)
+    public void consoleAppender() throws InterruptedException {
+        for (int i = 0; i < LINES; i++) {
+            batched.println(line);
+        }
+        appender.sync(); // everything is in the text area
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BYTES)
+    public void invokeLaterPerLine() throws InterruptedException, InvocationTargetException {
+        for (int i = 0; i < LINES; i++) {
+            perLine.println(line);
+        }
+        SwingUtilities.invokeAndWait(() -> {
+            // the EDT runs events in order, so every line before this one has been appended
+        });
+        SwingUtilities.invokeAndWait(() -> textArea.setText("")); // it never trimmed, don't let the document grow across invocations
+    }
+
+
+    // GUIWrapper's stream before ConsoleAppender: a byte at a time, an invokeLater per line
+    private static class PerLineStream extends OutputStream {
+        private final JTextArea outputArea;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        PerLineStream(JTextArea outputArea) {
+            this.outputArea = outputArea;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n' || b == '\r') {
+                flush();
+                if (b == '\n') {
+                    SwingUtilities.invokeLater(() -> outputArea.append("\n"));
+                }
+            } else {
+                buffer.write(b);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer.size() > 0) {
+                String text = buffer.toString("UTF-8");
+                buffer.reset();
+                SwingUtilities.invokeLater(() -> {
+                    outputArea.append(text);
+                    outputArea.setCaretPosition(outputArea.getDocument().getLength());
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.avez.visualizer.benchmarks;
+
+import com.avez.visualizer.CSVAnalyzer;
+import com.avez.visualizer.CSVReader;
+import com.avez.visualizer.CorrelationAnalyzer;
+import com.avez.visualizer.ProgressListener;
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.ColumnInfo;
+import com.avez.visualizer.model.CorrelationMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * CorrelationAnalyzer.correlate on parsed and analyzed data: all numeric pairs in one pass, with and without the
+ * Spearman sample. The "rows" counter is rows per second over all the pairs of the mix.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CorrelationBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"numeric", "mixed"}) // the categorical mix has no numeric columns
+    public String mix;
+
+    @Param({"false", "true"})
+    public boolean spearman;
+
+    private final CorrelationAnalyzer correlationAnalyzer = new CorrelationAnalyzer();
+    private CSVData data;
+    private List<ColumnInfo> columnInfos;
+
+    @Setup(Level.Trial)
+    public void parse() throws IOException {
+        Path file = BenchmarkData.writeTempFile(rows, mix);
+        data = new CSVReader().readCSV(file.toString());
+        columnInfos = new CSVAnalyzer().analyzeColumns(data);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public CorrelationMatrix correlate(Counters counters) {
+        CorrelationMatrix matrix = correlationAnalyzer.correlate(data, columnInfos, spearman, ProgressListener.NONE);
+        counters.rows += data.getRowCount();
+        return matrix;
+    }
+}
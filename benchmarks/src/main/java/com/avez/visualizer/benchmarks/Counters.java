@@ -0,0 +1,25 @@
+package com.avez.visualizer.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Extra results next to the score: a benchmark adds what one call processed, and JMH reports the fields
+ * per second (in Throughput mode), so "bytes" is the parse speed in B/s and "rows" rows/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Counters {
+    public long bytes;
+    public long rows;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+        rows = 0;
+    }
+}
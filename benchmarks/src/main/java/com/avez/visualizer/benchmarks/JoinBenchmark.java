@@ -0,0 +1,72 @@
+package com.avez.visualizer.benchmarks;
+
+import com.avez.visualizer.HashJoin;
+import com.avez.visualizer.ProgressListener;
+import com.avez.visualizer.model.JoinResult;
+import com.avez.visualizer.model.JoinType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * HashJoin.join of the mixed file with a returns file holding every 4th Order ID, the returns side is the hash
+ * table. "memory" joins with the default budget, "partitioned" with 256 KB so the grace join splits both files
+ * on disk. The "rows" counter is rows per second read from both files.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JoinBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"memory", "partitioned"})
+    public String mode;
+
+    private HashJoin hashJoin;
+    private Path orders;
+    private Path returns;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        String csv = BenchmarkData.csv(rows, "mixed");
+        orders = Files.createTempFile("benchmark-orders-", ".csv");
+        Files.writeString(orders, csv, StandardCharsets.UTF_8);
+
+        StringBuilder text = new StringBuilder("Order ID,Returned\n");
+        String[] lines = csv.split("\n");
+        for (int i = 1; i < lines.length; i += 4) {
+            text.append(lines[i], 0, lines[i].indexOf(',')).append(",Yes\n");
+        }
+        returns = Files.createTempFile("benchmark-returns-", ".csv");
+        Files.writeString(returns, text, StandardCharsets.UTF_8);
+        output = Files.createTempFile("benchmark-joined-", ".csv");
+
+        hashJoin = mode.equals("memory") ? new HashJoin() : new HashJoin(256 * 1024, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(orders);
+        Files.deleteIfExists(returns);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public JoinResult join(Counters counters) throws IOException {
+        JoinResult result = hashJoin.join(orders.toFile(), "Order ID", returns.toFile(), "Order ID", JoinType.LEFT, output,
+                ProgressListener.NONE);
+        counters.rows += result.getBuildRows() + result.getProbeRows();
+        return result;
+    }
+}
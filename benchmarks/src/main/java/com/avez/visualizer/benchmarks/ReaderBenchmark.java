@@ -0,0 +1,54 @@
+package com.avez.visualizer.benchmarks;
+
+import com.avez.visualizer.CSVReader;
+import com.avez.visualizer.model.CSVData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * CSVReader.readCSV on a file of each row count and column mix. The "bytes" counter is the parse throughput in
+ * bytes per second (divide by 1,048,576 for MB/s), "rows" the rows per second.
+ * With "-prof gc", gc.alloc.rate.norm is the heap allocated per file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReaderBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"numeric", "categorical", "mixed"})
+    public String mix;
+
+    private final CSVReader csvReader = new CSVReader();
+    private Path file;
+    private long fileBytes;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        file = BenchmarkData.writeTempFile(rows, mix);
+        fileBytes = Files.size(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public CSVData readCSV(Counters counters) throws IOException {
+        CSVData data = csvReader.readCSV(file.toString());
+        counters.bytes += fileBytes;
+        counters.rows += data.getRowCount();
+        return data;
+    }
+}
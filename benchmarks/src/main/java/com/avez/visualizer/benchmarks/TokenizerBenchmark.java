@@ -0,0 +1,116 @@
+package com.avez.visualizer.benchmarks;
+
+import com.avez.visualizer.ByteCSVTokenizer;
+import com.avez.visualizer.FastDoubleParser;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost per row of turning numeric CSV cells into doubles: commons-csv + trim + Double.parseDouble (what CSVReader
+ * and CSVAnalyzer do) against ByteCSVTokenizer + FastDoubleParser (what ColumnarCSVReader does).
+ *
+ * Run with "-prof gc" and compare gc.alloc.rate.norm: it's in bytes per operation, and each operation is reported
+ * as one row.
+ * The byte path should stay close to 0 B/row, the String path pays for a CSVRecord, its String[] and a String per cell.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenizerBenchmark {
+
+    private static final int ROWS = 100_000;
+
+    @Param({"6"})
+    public int columns;
+
+    private byte[] csv;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        // Superstore-like numbers: prices with 2 decimals, small integer quantities, discounts, negative profits
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int c = 0; c < columns; c++) {
+            text.append(c == 0 ? "" : ",").append("Col").append(c);
+        }
+        text.append('\n');
+        for (int row = 0; row < ROWS; row++) {
+            for (int c = 0; c < columns; c++) {
+                if (c > 0) {
+                    text.append(',');
+                }
+                switch (c % 3) {
+                    case 0 -> text.append(String.format(Locale.ROOT, "%.2f", random.nextDouble() * 2000));
+                    case 1 -> text.append(1 + random.nextInt(14));
+                    default -> text.append(String.format(Locale.ROOT, "%.4f", (random.nextDouble() - 0.5) * 500));
+                }
+            }
+            text.append('\n');
+        }
+        csv = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Whole file per invocation, reported per row with OperationsPerInvocation
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public double commonsCsv() throws IOException {
+        CSVFormat format = CSVFormat.DEFAULT.builder()
+                .setHeader()
+                .setSkipHeaderRecord(true)
+                .setIgnoreHeaderCase(true)
+                .setTrim(true)
+                .get(); // same rules as CSVReader
+        double sum = 0;
+        try (CSVParser csvParser = CSVParser.parse(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8), format)) {
+            for (CSVRecord record : csvParser) {
+                for (int c = 0; c < columns; c++) {
+                    String value = record.get(c);
+                    if (value == null || value.trim().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        sum += Double.parseDouble(value.trim());
+                    } catch (NumberFormatException e) {
+                        // not a number
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+
+    // Same loop over the whole file for the byte path. The only allocations are the tokenizer and its 64 KB buffer,
+    // under 1 byte per row once divided by ROWS
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public double byteTokenizer() throws IOException {
+        ByteCSVTokenizer fileTokenizer = new ByteCSVTokenizer(new ByteArrayInputStream(csv), 64 * 1024);
+        FastDoubleParser fileParser = new FastDoubleParser();
+        double sum = 0;
+        boolean header = true;
+        while (fileTokenizer.next()) {
+            if (!header && fileParser.parse(fileTokenizer.buffer(), fileTokenizer.fieldOffset(), fileTokenizer.fieldLength())) {
+                sum += fileParser.getValue();
+            }
+            if (fileTokenizer.isEndOfRow()) {
+                header = false;
+            }
+        }
+        return sum;
+    }
+}
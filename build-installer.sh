@@ -9,7 +9,7 @@ jpackage \
   --input target \
   --name "CSV Visualizer" \
   --main-jar visualizer-1.0-SNAPSHOT.jar \
-  --main-class com.avez.visualizer.GUIWrapper \
+  --main-class com.avez.visualizer.Launcher \
   --type dmg \
   --app-version 1.0.0 \
   --icon '/Users/avisahai/datas/Projects/Data Visualizer/aa Build Materials/Data Visualizer Icon.icns' \
@@ -0,0 +1,243 @@
+package com.avez.visualizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Splits UTF-8 CSV bytes into fields without creating Strings.
+ * Each call to next() moves to the next field, which is then available as a slice of buffer():
+ * [fieldOffset(), fieldOffset() + fieldLength()). The slice is only valid until the next call.
+ *
+ * Follows the same rules as CSVReader's commons-csv format: comma delimiter, double quotes with "" as an
+ * escaped quote, newlines allowed inside quotes, \n or \r\n line endings, and every value trimmed.
+ * A UTF-8 byte order mark at the start of the file is skipped.
+ */
+public class ByteCSVTokenizer {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int position = 0; // next byte to look at
+    private int limit = 0; // end of the valid bytes in buffer
+    private int start = 0; // first byte of the field being read, everything before it may be thrown away on refill
+    private int write = 0; // write cursor while un-escaping a quoted field in place
+    private boolean eof = false;
+    private boolean firstFill = true;
+    private long bytesConsumed = 0; // bytes of the input fully tokenized, for progress reporting
+
+    private int fieldOffset;
+    private int fieldLength;
+    private boolean endOfRow = true;
+    private boolean expectField = false; // after a ',' there is always one more field, even at end of input
+    private boolean skipLineFeed = false; // set after a '\r' so the '\n' of a "\r\n" isn't read as an empty row
+
+    public ByteCSVTokenizer(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteCSVTokenizer(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(64, bufferSize)];
+    }
+
+
+    /**
+     * Moves to the next field.
+     *
+     * @return false when the input is exhausted
+     * @throws IOException If the input cannot be read
+     */
+    public boolean next() throws IOException {
+        start = position;
+
+        if (skipLineFeed) {
+            skipLineFeed = false;
+            if (position < limit || fill()) {
+                if (buffer[position] == '\n') {
+                    position++;
+                    start = position;
+                }
+            }
+        }
+
+        if (position >= limit && !fill()) {
+            if (expectField) {
+                // "a,b,<EOF>": the last field is empty
+                expectField = false;
+                fieldOffset = position;
+                fieldLength = 0;
+                endOfRow = true;
+                return true;
+            }
+            return false;
+        }
+
+        int end;
+        if (buffer[position] == '"') {
+            end = readQuoted();
+        } else {
+            end = readUnquoted();
+        }
+
+        // trim like String.trim(), everything <= ' ' on both sides
+        int from = start;
+        while (from < end && (buffer[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        while (end > from && (buffer[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        fieldOffset = from;
+        fieldLength = end - from;
+        return true;
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int fieldOffset() {
+        return fieldOffset;
+    }
+
+    public int fieldLength() {
+        return fieldLength;
+    }
+
+    // true when the field just read was the last one of its row
+    public boolean isEndOfRow() {
+        return endOfRow;
+    }
+
+    // only for headers and dictionary misses, the point of this class is not calling it per cell
+    public String fieldAsString() {
+        return new String(buffer, fieldOffset, fieldLength, StandardCharsets.UTF_8);
+    }
+
+    public long getBytesConsumed() {
+        return bytesConsumed + position;
+    }
+
+
+    // Reads up to the next delimiter, returns the end of the field
+    private int readUnquoted() throws IOException {
+        while (true) {
+            while (position < limit) {
+                byte b = buffer[position];
+                if (b == ',' || b == '\n' || b == '\r') {
+                    int end = position;
+                    consumeDelimiter(b);
+                    return end;
+                }
+                position++;
+            }
+            if (!fill()) {
+                endOfRow = true;
+                expectField = false;
+                return position;
+            }
+        }
+    }
+
+    // Reads a quoted field, un-escaping "" in place, returns the end of the un-escaped content
+    private int readQuoted() throws IOException {
+        position++; // opening quote
+        write = start; // the content is copied over the opening quote, so it ends up starting at start
+
+        while (true) {
+            if (position >= limit && !fill()) {
+                endOfRow = true; // unterminated quote at end of input, keep what we have
+                expectField = false;
+                return write;
+            }
+
+            byte b = buffer[position++];
+            if (b != '"') {
+                buffer[write++] = b;
+                continue;
+            }
+
+            // a quote: either an escaped "" or the closing quote
+            if (position >= limit && !fill()) {
+                endOfRow = true;
+                expectField = false;
+                return write;
+            }
+            if (buffer[position] == '"') {
+                buffer[write++] = '"';
+                position++;
+                continue;
+            }
+
+            // closing quote, skip anything up to the delimiter (commons-csv would reject it, we are lenient)
+            int end = write;
+            while (true) {
+                while (position < limit) {
+                    byte c = buffer[position];
+                    if (c == ',' || c == '\n' || c == '\r') {
+                        consumeDelimiter(c);
+                        return end;
+                    }
+                    position++;
+                }
+                if (!fill()) {
+                    endOfRow = true;
+                    expectField = false;
+                    return end;
+                }
+            }
+        }
+    }
+
+    private void consumeDelimiter(byte delimiter) {
+        position++;
+        if (delimiter == ',') {
+            endOfRow = false;
+            expectField = true;
+        } else {
+            endOfRow = true;
+            expectField = false;
+            skipLineFeed = delimiter == '\r';
+        }
+    }
+
+
+    // Makes more bytes available after limit, moving the current field to the front of the buffer first
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            bytesConsumed += start;
+            position -= start;
+            write -= start;
+            limit -= start;
+            start = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2); // one field bigger than the whole buffer, rare
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read <= 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+
+        if (firstFill) {
+            firstFill = false;
+            if (limit >= 3 && (buffer[0] & 0xFF) == 0xEF && (buffer[1] & 0xFF) == 0xBB && (buffer[2] & 0xFF) == 0xBF) {
+                position += 3; // UTF-8 byte order mark
+                start = position;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,97 @@
+package com.avez.visualizer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Maps distinct byte strings to small int codes (0, 1, 2, ...).
+ * Lookups compare the raw bytes in place, so a value that was seen before costs no allocation at all;
+ * the bytes are copied and the String is created only the first time a value shows up (a "miss").
+ */
+public class ByteDictionary {
+
+    private int[] slots = new int[1024]; // open addressing table, holds code + 1 (0 = empty slot)
+    private int[] hashes = new int[256]; // code -> hash of its bytes
+    private byte[][] keys = new byte[256][]; // code -> its bytes
+    private final List<String> values = new ArrayList<>(); // code -> the String, built once on the miss
+
+    /**
+     * Returns the code of bytes[offset, offset + length), adding it to the dictionary if it's new.
+     */
+    public int lookupOrAdd(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while (slots[slot] != 0) {
+            int code = slots[slot] - 1;
+            if (hashes[code] == hash && equals(keys[code], bytes, offset, length)) {
+                return code; // hit: nothing allocated
+            }
+            slot = (slot + 1) & mask; // linear probing
+        }
+
+        // miss: remember the bytes and create the String, once per distinct value
+        int code = values.size();
+        if (code == keys.length) {
+            keys = Arrays.copyOf(keys, code * 2);
+            hashes = Arrays.copyOf(hashes, code * 2);
+        }
+        keys[code] = Arrays.copyOfRange(bytes, offset, offset + length);
+        hashes[code] = hash;
+        values.add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+        slots[slot] = code + 1;
+
+        if (values.size() * 2 > slots.length) {
+            rehash(); // keep the table at most half full so probes stay short
+        }
+        return code;
+    }
+
+    public String getValue(int code) {
+        return values.get(code);
+    }
+
+    // every distinct value, index = code
+    public List<String> getValues() {
+        return Collections.unmodifiableList(values);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int code = 0; code < values.size(); code++) {
+            int slot = hashes[code] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = code + 1;
+        }
+    }
+
+    // 32 bit FNV-1a with a final mix so the low bits (used for the slot) depend on every byte
+    private static int hash(byte[] bytes, int offset, int length) {
+        int h = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i];
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static boolean equals(byte[] key, byte[] bytes, int offset, int length) {
+        return Arrays.equals(key, 0, key.length, bytes, offset, offset + length);
+    }
+}
@@ -1,13 +1,29 @@
 package com.avez.visualizer;
 
 import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.CSVSample;
+import com.avez.visualizer.model.CachedDataset;
+import com.avez.visualizer.model.ColumnarData;
+import com.avez.visualizer.model.CorrelationMatrix;
+import com.avez.visualizer.model.JoinResult;
+import com.avez.visualizer.model.JoinType;
+import com.avez.visualizer.model.LoadMode;
+import com.avez.visualizer.model.LoadPlan;
+import com.avez.visualizer.model.Partition;
+import com.avez.visualizer.model.PartitionedCSVData;
 import com.avez.visualizer.model.ColumnInfo;
 import com.avez.visualizer.model.ChartRecommendation;
 import com.avez.visualizer.model.ChartType;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 
 public class CLIInterface {
@@ -18,21 +34,49 @@ public class CLIInterface {
         USER_EXIT // User wants to exit
     }
 
+    // files at least this big are asked whether to keep the planned load mode, smaller ones that fit just load
+    private static final long PREVIEW_THRESHOLD_BYTES = 64L * 1024 * 1024;
+    private static final int TOP_CORRELATIONS = 10; // pairs listed by showCorrelations()
+
     private Scanner scanner;
     private CSVReader csvReader;
+    private CSVSampler csvSampler;
     private CSVAnalyzer csvAnalyzer;
     private ChartRecommender chartRecommender;
-    private ChartGenerator chartGenerator;
+    private ChartGenerator chartGenerator; // see chartGenerator(), null until the first chart
+    private DatasetCache datasetCache; // files loaded earlier in this run, with their analysis
+    private ChartRenderCache renderCache; // PNGs rendered before, also from earlier runs. null if the cache dir can't be used
 
     private CSVData currentData;
+    private ColumnarData currentColumnar; // set instead of currentData when the file was loaded off-heap
+    private SpilledDataset currentSpilled; // set instead of currentData when the file was loaded out of core
     private List<ColumnInfo> columnInfos;
+    private String currentPath; // single file the current data came from, the key for datasetCache and renderCache
+    private String currentFingerprint; // renderCache fingerprint of the file version currentData was read from, null = don't cache
+    private Path joinOutput; // temp file of a joined dataset, deleted as soon as the data is replaced
+    private RunMetrics runMetrics; // stages of the current dataset, from loading it to its last chart
+    private Path reportDir; // a JSON report of every run goes here, null = only the summary table
 
     public CLIInterface() {
+        this(null);
+    }
+
+    /**
+     * @param reportDir Directory for a JSON metrics report per loaded dataset, null for none
+     */
+    public CLIInterface(Path reportDir) {
+        this.reportDir = reportDir;
         this.scanner = new Scanner(System.in);
-        this.csvReader = new CSVReader();
+        this.csvSampler = new CSVSampler();
         this.csvAnalyzer = new CSVAnalyzer();
         this.chartRecommender = new ChartRecommender();
-        this.chartGenerator = new ChartGenerator();
+        this.datasetCache = new DatasetCache();
+        this.csvReader = new CSVReader(datasetCache); // a folder's files are cached one by one, in the same budget
+        try {
+            this.renderCache = new ChartRenderCache();
+        } catch (IOException e) {
+            System.out.println(UIRenderer.getIcon("warning") + "  Chart render cache disabled: " + e.getMessage());
+        }
     }
 
 
@@ -70,6 +114,7 @@ public class CLIInterface {
                         continueGenerating = false;
                     }
                 }
+                finishRun();
 
                 // Ask if user wants to load another CSV
                 System.out.print("\n" + UIRenderer.getIcon("file") + " Load another CSV file? (y/n): ");
@@ -84,6 +129,7 @@ public class CLIInterface {
             }
         }
 
+        releaseCurrentData();
         System.out.println("\n" + UIRenderer.getIcon("wave") + " Thank you for using CSV Visualizer!");
         scanner.close();
     }
@@ -100,7 +146,10 @@ public class CLIInterface {
    // loads the csv file, as specified by the user
     private LoadResult loadCSV() {
        UIRenderer.printSectionHeader("STEP 1: LOAD CSV FILE");
+       releaseCurrentData(); // the previous file is done with, free its memory before loading the next one
 
+       System.out.println(UIRenderer.getIcon("info") + " A folder or a pattern like data/orders_*.csv loads all matching files as one dataset.");
+       System.out.println(UIRenderer.getIcon("info") + " Excel workbooks (.xlsx) and compressed files (.gz, .deflate) work too.");
        System.out.print(UIRenderer.getIcon("file") + " Enter CSV file path (or 'exit' to quit): ");
        String filePath = scanner.nextLine().trim();
 
@@ -113,14 +162,75 @@ public class CLIInterface {
            return LoadResult.FAILED; // loading failed
        }
 
+       return loadPath(filePath);
+   }
+
+   // loads a file, folder or pattern the way its size calls for, and fingerprints a single file for the render
+   // cache before reading it: a chart must only be cached under the hash of the data it was drawn from
+   private LoadResult loadPath(String filePath) {
+       File file = new File(filePath);
+       long size = file.length();
+       long lastModified = file.lastModified();
+       String fingerprint = null;
+       if (renderCache != null && file.isFile()) {
+           try {
+               fingerprint = renderCache.fingerprint(file);
+           } catch (IOException e) {
+               // unreadable now, the load below says why
+           }
+       }
+
+       LoadResult result = load(filePath);
+       // rewritten while it was being read, the data may not match the fingerprint, so its charts skip the cache
+       boolean unchanged = file.length() == size && file.lastModified() == lastModified;
+       currentFingerprint = result == LoadResult.SUCCESS && currentPath != null && unchanged ? fingerprint : null;
+       return result;
+   }
+
+   private LoadResult load(String filePath) {
+       runMetrics = new RunMetrics(filePath);
+
+       File file = new File(filePath);
+       if (file.isFile()) {
+           CachedDataset cached = datasetCache.get(filePath);
+           if (cached != null) {
+               runMetrics.stage("load", "cache hit").rows(cached.getData().getRowCount()).close();
+               currentData = cached.getData();
+               columnInfos = cached.getColumnInfos(); // the analysis doesn't need to run again either
+               currentPath = filePath;
+               System.out.println("\n" + UIRenderer.getIcon("reload") + " Loaded from cache, no re-parse needed.");
+               printLoadSummary();
+               printCacheStats();
+               return LoadResult.SUCCESS;
+           }
+
+           LoadMode mode = chooseLoadMode(file);
+           if (mode == null) {
+               return LoadResult.FAILED;
+           }
+           switch (mode) {
+               case PREVIEW:
+                   return loadWithPreview(filePath);
+               case APPROXIMATE:
+                   return loadApproximate(filePath);
+               case OFF_HEAP:
+                   return loadOffHeap(filePath);
+               case OUT_OF_CORE:
+                   return loadOutOfCore(filePath);
+               default:
+                   break; // IN_MEMORY, below
+           }
+       }
+
        try {
            System.out.println("\n" + UIRenderer.getIcon("loading") + " Loading CSV file...");
-           currentData = csvReader.readCSV(filePath);
-
-           System.out.println(UIRenderer.getIcon("success") + " CSV loaded successfully!");
-           System.out.println("   " + UIRenderer.getIcon("rows") + " Rows: " + currentData.getRowCount());
-           System.out.println("   " + UIRenderer.getIcon("cols") + " Columns: " + currentData.getColumnCount());
+           try (RunMetrics.Stage stage = runMetrics.stage("load", "in memory")) {
+               currentData = csvReader.readCSV(filePath);
+               stage.rows(currentData.getRowCount()).bytes(inputBytes(file, currentData));
+           }
+           currentPath = filePath;
 
+           printLoadSummary();
            return LoadResult.SUCCESS; // success
 
        } catch (IOException e) {
@@ -131,11 +241,354 @@ public class CLIInterface {
    }
 
 
+    // Lets LoadPlanner pick the load mode from the file size and the free memory, shows why, and lets the user override it.
+    // Returns null if the file can't even be read, or can't be loaded in any mode
+    private LoadMode chooseLoadMode(File file) {
+        LoadPlan plan;
+        try {
+            plan = new LoadPlanner(datasetCache).plan(file);
+        } catch (IOException e) {
+            System.err.println(UIRenderer.getIcon("error") + " Error reading CSV: " + e.getMessage());
+            return null;
+        }
+
+        LoadMode mode = askLoadMode(plan);
+        if (CSVReader.isPlainCsv(file.getPath()) || (mode != LoadMode.PREVIEW && mode != LoadMode.APPROXIMATE)) {
+            return mode;
+        }
+
+        // sampling jumps to random byte offsets, a workbook's or a compressed file's rows can only be read in order.
+        // The planner only picks APPROXIMATE when nothing else fits, a full load would then run out of memory
+        if (plan.getMode() == LoadMode.APPROXIMATE) {
+            System.err.println(UIRenderer.getIcon("error") + " Too big for memory and for the free temp disk, and sampling needs a plain CSV file."
+                    + " Decompress or export it to CSV first, or free some disk space.");
+            return null;
+        }
+        System.out.println(UIRenderer.getIcon("warning") + "  Sampling needs a plain CSV file, going with: " + formatLoadMode(plan.getMode()));
+        return plan.getMode();
+    }
+
+    // Shows the plan and the estimates behind it, and asks for an override unless the file is small
+    private LoadMode askLoadMode(LoadPlan plan) {
+        System.out.println("\n" + UIRenderer.getIcon("info") + " Load plan: " + formatLoadMode(plan.getMode()) + " (" + plan.getReason() + ")");
+        System.out.println("   " + UIRenderer.getIcon("file") + " " + toMB(plan.getFileBytes()) + " MB, ~" + plan.getEstimatedRows()
+                + " rows, " + plan.getColumnCount() + " columns");
+        System.out.println("   " + UIRenderer.getIcon("info") + " In memory needs ~" + toMB(plan.getEstimatedHeapBytes())
+                + " MB of heap, " + toMB(plan.getAvailableHeapBytes()) + " MB free");
+
+        // small files just go ahead, there's nothing worth overriding
+        if (plan.getMode() == LoadMode.IN_MEMORY && plan.getFileBytes() < PREVIEW_THRESHOLD_BYTES) {
+            return plan.getMode();
+        }
+
+        LoadMode[] modes = LoadMode.values();
+        System.out.println("\nPress Enter to go with the plan, or choose another mode:");
+        for (int i = 0; i < modes.length; i++) {
+            System.out.println((i + 1) + ". " + formatLoadMode(modes[i]) + (modes[i] == plan.getMode() ? " (planned)" : ""));
+        }
+        System.out.print("\nChoose option (Enter or 1-" + modes.length + "): ");
+        String response = scanner.nextLine().trim();
+        if (response.isEmpty()) {
+            return plan.getMode();
+        }
+
+        try {
+            int choice = Integer.parseInt(response) - 1;
+            if (choice >= 0 && choice < modes.length) {
+                return modes[choice];
+            }
+        } catch (NumberFormatException e) {
+            // falls through to the planned mode
+        }
+        System.out.println(UIRenderer.getIcon("warning") + "  Invalid option, going with the plan.");
+        return plan.getMode();
+    }
+
+    private String formatLoadMode(LoadMode mode) {
+        switch (mode) {
+            case IN_MEMORY:
+                return "Full load in memory";
+            case OFF_HEAP:
+                return "Off-heap (exact, data kept outside the Java heap, no scatter plots)";
+            case OUT_OF_CORE:
+                return "Out-of-core (exact, spills to temporary files, for files bigger than memory)";
+            case PREVIEW:
+                return "Full load with a quick sampled preview while it runs";
+            case APPROXIMATE:
+                return "Approximate (sample only, charts with error bars)";
+            default:
+                return mode.toString();
+        }
+    }
+
+    private long toMB(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+
+
+    // Starts the full load in the background, shows sample based stats right away, then waits for the real data
+    private LoadResult loadWithPreview(String filePath) {
+        CompletableFuture<CSVData> fullLoad = CompletableFuture.supplyAsync(() -> {
+            try (RunMetrics.Stage stage = runMetrics.stage("load", "in memory, preview")) {
+                CSVData data = csvReader.readCSV(filePath);
+                stage.rows(data.getRowCount()).bytes(new File(filePath).length());
+                return data;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // lambdas can't throw checked exceptions
+            }
+        });
+
+        try {
+            long start = System.nanoTime();
+            CSVSample sample = csvSampler.stratifiedSample(filePath);
+            List<ColumnInfo> provisional = csvAnalyzer.analyzeSample(sample);
+            printPreview(sample, provisional, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.out.println(UIRenderer.getIcon("warning") + "  Preview failed (" + e.getMessage() + "), waiting for the full load instead.");
+        }
+
+        System.out.println("\n" + UIRenderer.getIcon("loading") + " Refining with the full file, this may take a while...");
+        try {
+            currentData = fullLoad.join();
+            currentPath = filePath;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.err.println(UIRenderer.getIcon("error") + " Error loading CSV: " + cause.getMessage());
+            System.out.println("   " + UIRenderer.getIcon("info") + " Make sure the file path is correct and the file exists.");
+            return LoadResult.FAILED;
+        }
+
+        printLoadSummary();
+        return LoadResult.SUCCESS;
+    }
+
+
+    // Loads only a sample of the file, every chart made from it is approximate
+    private LoadResult loadApproximate(String filePath) {
+        System.out.print(UIRenderer.getIcon("number") + " Sample size in % of rows (press Enter for 1): ");
+        String input = scanner.nextLine().trim();
+
+        double fraction = 0.01;
+        if (!input.isEmpty()) {
+            try {
+                fraction = Double.parseDouble(input) / 100.0;
+            } catch (NumberFormatException e) {
+                System.out.println(UIRenderer.getIcon("warning") + "  Not a number, using 1%.");
+            }
+        }
+
+        try {
+            System.out.println("\n" + UIRenderer.getIcon("loading") + " Sampling CSV file...");
+            CSVSample sample;
+            try (RunMetrics.Stage stage = runMetrics.stage("load", "sample")) {
+                sample = CSVSampler.forFraction(filePath, fraction).stratifiedSample(filePath);
+                stage.rows(sample.getRowCount()).bytes(new File(filePath).length());
+            }
+            currentData = sample;
+
+            System.out.println(UIRenderer.getIcon("success") + " Sample loaded, approximate mode is on!");
+            System.out.println("   " + UIRenderer.getIcon("rows") + " Sampled rows: " + sample.getRowCount()
+                    + " of ~" + sample.getEstimatedTotalRows());
+            System.out.println("   " + UIRenderer.getIcon("cols") + " Columns: " + sample.getColumnCount());
+            return LoadResult.SUCCESS;
+
+        } catch (IOException e) {
+            System.err.println(UIRenderer.getIcon("error") + " Error loading CSV: " + e.getMessage());
+            return LoadResult.FAILED;
+        } catch (IllegalArgumentException e) {
+            System.err.println(UIRenderer.getIcon("error") + " " + e.getMessage());
+            return LoadResult.FAILED;
+        }
+    }
+
+
+    // Loads the file column-wise into off-heap memory, the heap only holds the distinct text values
+    private LoadResult loadOffHeap(String filePath) {
+        try {
+            System.out.println("\n" + UIRenderer.getIcon("loading") + " Loading CSV file off-heap...");
+            try (RunMetrics.Stage stage = runMetrics.stage("load", "off-heap")) {
+                currentColumnar = new ColumnarCSVReader(true).read(filePath);
+                stage.rows(currentColumnar.getRowCount()).bytes(new File(filePath).length());
+            }
+            currentPath = filePath;
+
+            System.out.println(UIRenderer.getIcon("success") + " CSV loaded successfully!");
+            System.out.println("   " + UIRenderer.getIcon("rows") + " Rows: " + currentColumnar.getRowCount());
+            System.out.println("   " + UIRenderer.getIcon("cols") + " Columns: " + currentColumnar.getColumnCount());
+            System.out.println("   " + UIRenderer.getIcon("info") + " Off-heap memory: "
+                    + toMB(currentColumnar.getOffHeapBytes()) + " MB");
+            return LoadResult.SUCCESS;
+
+        } catch (IOException e) {
+            System.err.println(UIRenderer.getIcon("error") + " Error loading CSV: " + e.getMessage());
+            return LoadResult.FAILED;
+        }
+    }
+
+
+    // Parses the file into per column temporary files, nothing but small buffers stays in memory
+    private LoadResult loadOutOfCore(String filePath) {
+        try {
+            System.out.println("\n" + UIRenderer.getIcon("loading") + " Loading CSV file out of core (spilling to disk)...");
+            try (RunMetrics.Stage stage = runMetrics.stage("load", "out of core")) {
+                currentSpilled = new SpillingCSVReader().read(filePath);
+                stage.rows(currentSpilled.getRowCount()).bytes(new File(filePath).length());
+            }
+            currentPath = filePath;
+
+            System.out.println(UIRenderer.getIcon("success") + " CSV loaded successfully!");
+            System.out.println("   " + UIRenderer.getIcon("rows") + " Rows: " + currentSpilled.getRowCount());
+            System.out.println("   " + UIRenderer.getIcon("cols") + " Columns: " + currentSpilled.getColumnCount());
+            System.out.println("   " + UIRenderer.getIcon("info") + " Spilled to disk: "
+                    + toMB(currentSpilled.getSpilledBytes()) + " MB");
+            return LoadResult.SUCCESS;
+
+        } catch (IOException e) {
+            System.err.println(UIRenderer.getIcon("error") + " Error loading CSV: " + e.getMessage());
+            return LoadResult.FAILED;
+        }
+    }
+
+
+    // Drops the current dataset, off-heap memory and spill files are freed right here instead of waiting for the GC
+    private void releaseCurrentData() {
+        if (currentColumnar != null) {
+            currentColumnar.close();
+            currentColumnar = null;
+        }
+        if (currentSpilled != null) {
+            try {
+                currentSpilled.close();
+            } catch (IOException e) {
+                System.out.println(UIRenderer.getIcon("warning") + "  Could not delete temporary files: " + e.getMessage());
+            }
+            currentSpilled = null;
+        }
+        currentData = null; // still in datasetCache if it was cached, the cache decides when it goes
+        columnInfos = null;
+        currentPath = null;
+        currentFingerprint = null;
+        if (joinOutput != null) {
+            deleteQuietly(joinOutput); // the joined data is done with, and nothing else reads its temp file
+            joinOutput = null;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println(UIRenderer.getIcon("warning") + "  Could not delete temporary file: " + e.getMessage());
+        }
+    }
+
+
+    private void printCacheStats() {
+        System.out.printf("   %s Cache: %d files, %d/%d MB, %d hits, %d soft hits, %d misses, %d evictions%n",
+                UIRenderer.getIcon("info"),
+                datasetCache.size(),
+                toMB(datasetCache.getTotalBytes()),
+                toMB(datasetCache.getBudgetBytes()),
+                datasetCache.getHits(),
+                datasetCache.getSoftHits(),
+                datasetCache.getMisses(),
+                datasetCache.getEvictions());
+    }
+
+
+    // Size of what was loaded: the file, or all files of a folder / pattern
+    private long inputBytes(File file, CSVData data) {
+        if (data instanceof PartitionedCSVData) {
+            return ((PartitionedCSVData) data).getPartitions().stream().mapToLong(Partition::getSizeBytes).sum();
+        }
+        return file.length();
+    }
+
+
+    // Shows where the time went for the dataset that is done, and writes the report if one was asked for
+    private void finishRun() {
+        if (runMetrics == null) {
+            return;
+        }
+        runMetrics.printSummary();
+        if (reportDir != null) {
+            try {
+                Path report = runMetrics.writeReport(reportDir);
+                System.out.println(UIRenderer.getIcon("file") + " Metrics report: " + report);
+            } catch (IOException e) {
+                System.out.println(UIRenderer.getIcon("warning") + "  Could not write the metrics report: " + e.getMessage());
+            }
+        }
+        runMetrics = null;
+    }
+
+
+    // Prints provisional column info from a sample, every number is marked with ~ because it is an estimate
+    private void printPreview(CSVSample sample, List<ColumnInfo> provisional, long elapsedMillis) {
+        UIRenderer.printSectionHeader("PREVIEW (ESTIMATED FROM A SAMPLE)");
+        System.out.println(UIRenderer.getIcon("info") + " Based on " + sample.getRowCount() + " sampled rows of ~"
+                + sample.getEstimatedTotalRows() + " (took " + elapsedMillis + " ms)\n");
+
+        for (int i = 0; i < provisional.size(); i++) {
+            ColumnInfo info = provisional.get(i);
+            List<ChartRecommendation> recommendations = chartRecommender.recommendCharts(info);
+            String suggestion = recommendations.isEmpty() ? "-" : formatChartTypeName(recommendations.get(0).getChartType());
+
+            System.out.printf("%2d. %-25s [%s] - ~%d unique values (estimate), suggested: %s%n",
+                    i + 1,
+                    info.getColumnName(),
+                    info.getDataType(),
+                    info.getUniqueValues(),
+                    suggestion);
+        }
+    }
+
+
+    private void printLoadSummary() {
+        System.out.println(UIRenderer.getIcon("success") + " CSV loaded successfully!");
+        System.out.println("   " + UIRenderer.getIcon("rows") + " Rows: " + currentData.getRowCount());
+        System.out.println("   " + UIRenderer.getIcon("cols") + " Columns: " + currentData.getColumnCount());
+
+        if (currentData instanceof PartitionedCSVData) {
+            List<Partition> partitions = ((PartitionedCSVData) currentData).getPartitions();
+            System.out.println("   " + UIRenderer.getIcon("file") + " Files: " + partitions.size());
+            for (Partition partition : partitions) {
+                System.out.printf("      %-40s %8d rows  %6d ms%n",
+                        partition.getPath().getFileName(), partition.getRowCount(), partition.getParseMillis());
+            }
+        }
+    }
+
 
     // Analyzes the loaded CSV columns
-    private void analyzeColumns() {
+    private void analyzeColumns() throws IOException {
+        if (columnInfos != null) {
+            return; // came from the cache together with the data
+        }
+
         System.out.println("\n" + UIRenderer.getIcon("loading") + " Analyzing columns...");
-        columnInfos = csvAnalyzer.analyzeColumns(currentData);
+        try (RunMetrics.Stage stage = runMetrics.stage("analyze", "")) {
+            if (currentSpilled != null) {
+                columnInfos = csvAnalyzer.analyzeSpilled(currentSpilled);
+                stage.rows(currentSpilled.getRowCount());
+            } else if (currentColumnar != null) {
+                columnInfos = csvAnalyzer.analyzeColumnar(currentColumnar);
+                stage.rows(currentColumnar.getRowCount());
+            } else if (currentData instanceof CSVSample) {
+                columnInfos = csvAnalyzer.analyzeSample((CSVSample) currentData); // approximate mode, numbers are estimates
+                stage.rows(currentData.getRowCount());
+            } else {
+                columnInfos = csvAnalyzer.analyzeColumns(currentData);
+                stage.rows(currentData.getRowCount());
+
+                // plain full loads of one file are worth keeping, samples are cheap and a folder's files are already
+                // in the cache one by one
+                if (currentPath != null && !(currentData instanceof PartitionedCSVData)) {
+                    datasetCache.put(currentPath, currentData, columnInfos);
+                }
+            }
+        }
         System.out.println(UIRenderer.getIcon("success") + " Analysis complete!");
     }
 
@@ -148,17 +601,38 @@ public class CLIInterface {
         System.out.println("\n" + UIRenderer.getIcon("chart") + " Available Columns:\n");
         for (int i = 0; i < columnInfos.size(); i++) {
             ColumnInfo info = columnInfos.get(i);
-            System.out.printf("%2d. %-25s [%s] - %d unique values%n", // used printf as it provides formatting options
+            System.out.printf("%2d. %-25s [%s] - %s%d unique values%n", // used printf as it provides formatting options
                     i + 1,
                     info.getColumnName(),
                     info.getDataType(),
+                    info.isEstimated() ? "~" : "", // ~ marks numbers estimated from a sample
                     info.getUniqueValues());
         }
 
+        // every numeric pair at once, not for out-of-core data whose columns can't be read side by side
+        int numericColumns = CorrelationAnalyzer.numericColumns(columnInfos).size();
+        boolean correlations = numericColumns >= 2 && currentSpilled == null;
+        if (correlations) {
+            System.out.printf(" c. Correlations between the %d numeric columns (heatmap)%n", numericColumns);
+        }
+        // joins read the file again, so only a single file can be joined (not a folder)
+        boolean join = currentPath != null;
+        if (join) {
+            System.out.println(" j. Join with another file on a key column");
+        }
+
         // Get user selection
-        System.out.print("\n" + UIRenderer.getIcon("number") + " Select column number (or 0 to go back): ");
+        System.out.print("\n" + UIRenderer.getIcon("number") + " Select column number"
+                + (correlations ? ", c for correlations" : "") + (join ? ", j to join" : "") + " (or 0 to go back): ");
         String input = scanner.nextLine().trim(); // see on iPad notes, explained why nextLine() is used in place of nextInt()
 
+        if (correlations && input.equalsIgnoreCase("c")) {
+            return showCorrelations();
+        }
+        if (join && input.equalsIgnoreCase("j")) {
+            return joinWithAnotherFile();
+        }
+
         int columnIndex;
         try {
             columnIndex = Integer.parseInt(input) - 1;
@@ -181,9 +655,13 @@ public class CLIInterface {
         // Show column details
         System.out.println("\n" + UIRenderer.getIcon("success") + " You selected: " + selectedColumn.getColumnName());
         System.out.println("   Type: " + selectedColumn.getDataType());
-        System.out.println("   Total values: " + selectedColumn.getTotalValues());
-        System.out.println("   Unique values: " + selectedColumn.getUniqueValues());
-        System.out.println("   Null values: " + selectedColumn.getNullCount());
+        String approx = selectedColumn.isEstimated() ? "~" : "";
+        System.out.println("   Total values: " + approx + selectedColumn.getTotalValues());
+        System.out.println("   Unique values: " + approx + selectedColumn.getUniqueValues());
+        System.out.println("   Null values: " + approx + selectedColumn.getNullCount());
+        if (selectedColumn.isEstimated()) {
+            System.out.println("   " + UIRenderer.getIcon("info") + " Estimated from a sample");
+        }
 
         // Get chart recommendations
         List<ChartRecommendation> recommendations = chartRecommender.recommendCharts(selectedColumn);
@@ -332,11 +810,21 @@ public class CLIInterface {
                 return false;
             }
 
-            chartGenerator.generateChart(
-                    selectedColumn.getColumnName(),
-                    currentData.getRecords(),
-                    selectedChart.getChartType(),
-                    outputPath);
+            // approximate charts come from a random sample, and folders have no single file to fingerprint
+            if (renderCache != null && currentFingerprint != null && !(currentData instanceof CSVSample)) {
+                boolean cached = renderCache.render(
+                        currentFingerprint,
+                        selectedColumn.getColumnName(),
+                        selectedChart.getChartType(),
+                        currentSpilled != null ? "spilled" : currentColumnar != null ? "columnar" : "records",
+                        outputPath,
+                        path -> renderChart(selectedColumn, selectedChart, path));
+                if (cached) {
+                    System.out.println(UIRenderer.getIcon("reload") + " Same data and chart as an earlier render, copied from the cache.");
+                }
+            } else {
+                renderChart(selectedColumn, selectedChart, outputPath);
+            }
 
             System.out.println(UIRenderer.getIcon("success") + " Chart generated successfully!");
             System.out.println(UIRenderer.getIcon("file") + " Saved as: " + outputPath);
@@ -352,6 +840,160 @@ public class CLIInterface {
         }
     }
 
+    // Correlates all numeric columns in one pass, lists the strongest pairs (the scatter plots worth drawing)
+    // and saves the whole matrix as a heatmap in the home directory
+    private boolean showCorrelations() {
+        CorrelationMatrix matrix;
+        try (RunMetrics.Stage stage = runMetrics.stage("correlate", "")) {
+            CorrelationAnalyzer analyzer = new CorrelationAnalyzer();
+            matrix = currentColumnar != null
+                    ? analyzer.correlate(currentColumnar, columnInfos, true, ProgressListener.NONE)
+                    : analyzer.correlate(currentData, columnInfos, true, ProgressListener.NONE);
+            stage.rows(matrix.getRowCount());
+        }
+
+        UIRenderer.printSectionHeader("CORRELATIONS");
+        System.out.println("\n" + UIRenderer.getIcon("graph") + " Strongest pairs:\n");
+        System.out.printf("   %-8s %-8s %s%n", "Pearson", "Spearman", "Columns");
+        for (int[] pair : CorrelationAnalyzer.strongestPairs(matrix, TOP_CORRELATIONS)) {
+            double pearson = matrix.getPearson(pair[0], pair[1]);
+            System.out.printf("   %+.3f   %+.3f   %s ~ %s%s%n",
+                    pearson,
+                    matrix.getSpearman(pair[0], pair[1]),
+                    matrix.getColumns().get(pair[0]),
+                    matrix.getColumns().get(pair[1]),
+                    Math.abs(pearson) >= 0.5 ? "   <- worth a scatter plot" : "");
+        }
+        if (matrix.isSpearmanEstimated()) {
+            System.out.printf("   %s Spearman estimated from %,d of %,d rows%n", UIRenderer.getIcon("info"),
+                    matrix.getSpearmanSampleSize(), matrix.getRowCount());
+        }
+        if (currentData instanceof CSVSample) {
+            System.out.println("   " + UIRenderer.getIcon("info") + " Computed on the sampled rows");
+        }
+
+        String homeDir = System.getProperty("user.home");
+        System.out.print("\n" + UIRenderer.getIcon("file") + " Enter filename for the heatmap (press Enter for correlation_heatmap): ");
+        System.out.println("   (Will be saved to: " + homeDir + ")");
+        String filename = scanner.nextLine().trim();
+        if (filename.isEmpty()) {
+            filename = "correlation_heatmap";
+        }
+        if (filename.toLowerCase().endsWith(".png")) {
+            filename = filename.substring(0, filename.length() - 4);
+        }
+
+        try {
+            String outputPath = homeDir + "/" + filename + ".png";
+            chartGenerator().generateCorrelationHeatmap(matrix, false, outputPath);
+            System.out.println(UIRenderer.getIcon("file") + " Saved as: " + outputPath);
+            return true;
+        } catch (IOException e) {
+            System.err.println(UIRenderer.getIcon("error") + " Error generating chart: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Joins the current file with another one on a key column (HashJoin) into a temp CSV file, and loads that
+    // in place of the current data, so its columns can be charted like any file's
+    private boolean joinWithAnotherFile() {
+        UIRenderer.printSectionHeader("JOIN");
+        System.out.print(UIRenderer.getIcon("file") + " Enter the path of the file to join with: ");
+        String otherPath = scanner.nextLine().trim();
+        File other = new File(otherPath);
+        if (!other.isFile()) {
+            System.out.println(UIRenderer.getIcon("error") + " File not found: " + otherPath);
+            return false;
+        }
+
+        System.out.print(UIRenderer.getIcon("number") + " Key column in " + new File(currentPath).getName() + ": ");
+        String leftKey = scanner.nextLine().trim();
+        System.out.print(UIRenderer.getIcon("number") + " Key column in " + other.getName() + " (press Enter for the same name): ");
+        String rightKey = scanner.nextLine().trim();
+        if (rightKey.isEmpty()) {
+            rightKey = leftKey;
+        }
+
+        System.out.println("\n   1. Inner - only rows whose key is in both files");
+        System.out.println("   2. Left  - every row of this file, empty columns where the other file has no match");
+        System.out.print(UIRenderer.getIcon("number") + " Join type (press Enter for 1): ");
+        JoinType type = scanner.nextLine().trim().equals("2") ? JoinType.LEFT : JoinType.INNER;
+
+        JoinResult result;
+        Path output = null;
+        try (RunMetrics.Stage stage = runMetrics.stage("join", type.name().toLowerCase())) {
+            System.out.println("\n" + UIRenderer.getIcon("loading") + " Joining...");
+            output = Files.createTempFile("join-", ".csv");
+            output.toFile().deleteOnExit(); // in case the process ends before the data is replaced
+            result = new HashJoin().join(new File(currentPath), leftKey, other, rightKey, type, output, ProgressListener.NONE);
+            stage.rows(result.getRowsWritten()).bytes(Files.size(output));
+        } catch (IOException | IllegalArgumentException e) {
+            if (output != null) {
+                deleteQuietly(output); // half written
+            }
+            System.err.println(UIRenderer.getIcon("error") + " Join failed: " + e.getMessage());
+            return false;
+        }
+        System.out.printf("%s Joined %,d rows with %,d rows into %,d rows (%s)%n", UIRenderer.getIcon("success"),
+                result.isLeftBuild() ? result.getBuildRows() : result.getProbeRows(),
+                result.isLeftBuild() ? result.getProbeRows() : result.getBuildRows(),
+                result.getRowsWritten(),
+                result.isPartitioned() ? "partitioned on disk into " + result.getPartitions() : "hash table in memory");
+
+        // the joined file is the dataset from here on, with a run of its own
+        finishRun();
+        releaseCurrentData(); // also deletes the file of an earlier join, this one has been read
+        joinOutput = output;
+        if (loadPath(output.toString()) != LoadResult.SUCCESS) {
+            releaseCurrentData();
+            return false;
+        }
+        try {
+            analyzeColumns();
+        } catch (IOException e) {
+            System.err.println(UIRenderer.getIcon("error") + " Error analyzing the joined data: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    // Draws the selected chart from whichever form the current data is in
+    private void renderChart(ColumnInfo selectedColumn, ChartRecommendation selectedChart, String outputPath) throws IOException {
+        if (currentSpilled != null) {
+            chartGenerator().generateChart(
+                    currentSpilled.getColumn(selectedColumn.getColumnName()),
+                    selectedChart.getChartType(),
+                    outputPath);
+        } else if (currentColumnar != null) {
+            chartGenerator().generateChart(
+                    currentColumnar.getColumn(selectedColumn.getColumnName()),
+                    selectedChart.getChartType(),
+                    outputPath);
+        } else if (currentData instanceof CSVSample) {
+            chartGenerator().generateApproximateChart(
+                    selectedColumn.getColumnName(),
+                    (CSVSample) currentData,
+                    selectedChart.getChartType(),
+                    outputPath);
+        } else {
+            chartGenerator().generateChart(
+                    selectedColumn.getColumnName(),
+                    currentData.getRecords(),
+                    selectedChart.getChartType(),
+                    outputPath);
+        }
+    }
+
+    // Created by the first chart instead of at startup, so the CLI reaches its first prompt without loading
+    // JFreeChart (and the AWT classes it pulls in)
+    private ChartGenerator chartGenerator() {
+        if (chartGenerator == null) {
+            chartGenerator = new ChartGenerator();
+        }
+        chartGenerator.setMetrics(runMetrics);
+        return chartGenerator;
+    }
+
     // Formats chart type name for display
     private String formatChartTypeName(ChartType chartType) {
         String name = chartType.toString().replace("_", " ");
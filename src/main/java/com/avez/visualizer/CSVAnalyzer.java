@@ -1,13 +1,14 @@
 package com.avez.visualizer;
 
 import com.avez.visualizer.model.CSVData; // CSVData container for header and records of the CSV file
+import com.avez.visualizer.model.CSVSample;
 import com.avez.visualizer.model.ColumnInfo;
+import com.avez.visualizer.model.ColumnVector;
+import com.avez.visualizer.model.ColumnarData;
 import com.avez.visualizer.model.DataType;
 import org.apache.commons.csv.CSVRecord; // CSVRecord represents one row of data
 
-import java.time.LocalDate; // represents a date
-import java.time.format.DateTimeFormatter; // defines how to parse date strings 
-import java.time.format.DateTimeParseException;
+import java.io.IOException;
 import java.util.*;
 
 
@@ -15,101 +16,324 @@ import java.util.*;
 // Analyzes CSV data to determine column types and characteristics
 public class CSVAnalyzer {
 
-    // Common date formats to try when detecting dates
-    private static final List<DateTimeFormatter> DATE_FORMATTERS = Arrays.asList(
-            DateTimeFormatter.ofPattern("dd/MM/yyyy"),
-            DateTimeFormatter.ofPattern("MM/dd/yyyy"),
-            DateTimeFormatter.ofPattern("dd-MM-yyyy"),
-            DateTimeFormatter.ofPattern("yyyy/MM/dd"));
-
+    private static final int PROGRESS_EVERY_ROWS = 10_000; // progress and cancel checks in the analysis loops
 
     // ColumnInfo store metadata about one column
-    // this method is used to analyze the datatype of all the columns of the CSV
+    // this method is used to analyze the datatype of all the columns of the CSV, in the order of the file.
+    // Distinct values are counted by their trimmed text, see analyzeColumnar for where the columnar paths differ
     public List<ColumnInfo> analyzeColumns(CSVData csvData) {
+        return analyzeColumns(csvData, ProgressListener.NONE);
+    }
+
+
+    // Same, reporting "Analyzing" progress in cells (rows x columns) and stopping with a CancellationException
+    // when the listener cancels
+    public List<ColumnInfo> analyzeColumns(CSVData csvData, ProgressListener listener) {
         List<ColumnInfo> columnInfoList = new ArrayList<>(); // Creates an empty list that will store ColumnInfo objects, one columnInfo object represents 1 column
         List<String> headers = csvData.getHeaders();
         List<CSVRecord> records = csvData.getRecords(); // gets all the data rows from the columns ie from below header till end
 
 
         // Analyze each column
+        long totalCells = (long) records.size() * headers.size();
         for (String header : headers) {
-            ColumnInfo columnInfo = analyzeEachCoumn(header, records);
+            long cellsBefore = (long) records.size() * columnInfoList.size();
+            ColumnInfo columnInfo = analyzeEachCoumn(header, records, listener, cellsBefore, totalCells, headers.size());
             columnInfoList.add(columnInfo);
         }
+        listener.progress("Analyzing", totalCells, totalCells, records.size());
 
         return columnInfoList;
     }
 
 
-    // Analyzes a single column to determine its charecteristics totalValues, uniqueVales, nullValues and  ALSO the datatype
-    private ColumnInfo analyzeEachCoumn(String columnName, List<CSVRecord> records) {
-        ColumnInfo singleColumnInfo = new ColumnInfo(columnName); // creates the ColumnInfo object with the with the specified column name
+    // Analyzes just one column, for callers that know the other columns haven't changed (e.g. watch mode)
+    public ColumnInfo analyzeColumn(CSVData csvData, String columnName) {
+        return analyzeEachCoumn(columnName, csvData.getRecords(), ProgressListener.NONE, 0, 0, 1);
+    }
 
-        Set<String> uniqueValues = new HashSet<>(); // stores the unique values in the column
-        int numericCount = 0;
-        int dateCount = 0;
-        int booleanCount = 0;
-        int nullCount = 0;
-        int totalValues = 0;
-        int decimalCount = 0; //Tracks how many numeric values have decimals, used to determine the DataType of the column
 
+    // Same analysis, but on a sample. Types come straight from the sample, counts are scaled up to the
+    // estimated file size and every ColumnInfo is flagged as an estimate so the UI can say so
+    public List<ColumnInfo> analyzeSample(CSVSample sample) {
+        List<ColumnInfo> columnInfoList = analyzeColumns(sample);
+        long sampledRows = sample.getRowCount();
+        long totalRows = Math.max(sample.getEstimatedTotalRows(), sampledRows);
 
-        // Examine each value in this column
-        for (CSVRecord record : records) {
-            String value = record.get(columnName); // Gets the value from this row for the column we're analyzing
-            totalValues++;
-            /*
-             * totalValues represents the dataset size, while validValues(used aage) represents usable data. 
-             * totalValues info is necessary as it helps to determine the total number of ROWS and so help in the percentage calculation. 
-             * 
-             * To determine the actual data How many rows have actual data we use the validValues parameter
-             */
+        if (sampledRows == 0) {
+            return columnInfoList;
+        }
 
+        double scale = (double) totalRows / sampledRows;
+        for (ColumnInfo info : columnInfoList) {
+            int sampledUnique = info.getUniqueValues();
+            info.setTotalValues(clampToInt(totalRows));
+            info.setNullCount(clampToInt(Math.round(info.getNullCount() * scale)));
+            info.setUniqueValues(clampToInt(estimateDistinct(info.getColumnName(), sample.getRecords(), totalRows, sampledUnique)));
+            info.setEstimated(true);
+        }
+        return columnInfoList;
+    }
 
-            // Check for null/empty
-            /*
-             * This is our small data cleaning segment -->
-             * 1.) First autmoatically eliminate the null values from further processing
-             * 2.) use tim() method to get rid of leading/trailing spaces 
-             */
+
+    /*
+     * Guaranteed-Error Estimator (Charikar et al.) for the number of distinct values in the full column:
+     *     D ~ sqrt(N / n) * f1 + (d - f1)
+     * where d = distinct values in the sample and f1 = values seen exactly once in the sample.
+     * Values repeated in the sample are probably all there is of them, the singletons stand for many unseen ones.
+     */
+    private long estimateDistinct(String columnName, List<CSVRecord> sampleRecords, long totalRows, int sampledDistinct) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (CSVRecord record : sampleRecords) {
+            String value = record.get(columnName);
             if (value == null || value.trim().isEmpty()) {
-                nullCount++;
                 continue;
             }
+            counts.merge(value.trim(), 1, Integer::sum);
+        }
+
+        long singletons = counts.values().stream().filter(c -> c == 1).count();
+        double estimate = Math.sqrt((double) totalRows / sampleRecords.size()) * singletons + (sampledDistinct - singletons);
+        return Math.min(totalRows, Math.max(sampledDistinct, Math.round(estimate)));
+    }
+
+    private int clampToInt(long value) {
+        return (int) Math.min(Integer.MAX_VALUE, value);
+    }
+
+
+    // Same analysis for data loaded by ColumnarCSVReader. Numbers were already parsed while loading, so only the
+    // distinct text values of each column need the date/boolean checks, once per value instead of once per row.
+    // Columns come in file order like analyzeColumns, and the type counts are the same. The one deliberate difference:
+    // the loader kept a number's value, not its text, so distinct numbers are counted by value ("5" and "5.0" are one
+    // value here and in analyzeSpilled, two in analyzeColumns, which counts the trimmed text). The same goes for the
+    // categories of bar, pie and line charts of these columns: a number is labelled by ColumnStats.formatNumber, so
+    // "2.50" shows as 2.5 and "5.0" is counted with "5". Keeping each number's text would cost the String per cell
+    // these loaders exist to avoid
+    public List<ColumnInfo> analyzeColumnar(ColumnarData data) {
+        List<ColumnInfo> columnInfoList = new ArrayList<>();
+        for (ColumnVector column : data.getColumns()) {
+            columnInfoList.add(analyzeColumnVector(column));
+        }
+        return columnInfoList;
+    }
+
+
+    // Reads the column through getCode/getNumber only, so off-heap columns are aggregated in place without
+    // copying them onto the heap. What is kept on the heap grows with the distinct values, not with the rows
+    private ColumnInfo analyzeColumnVector(ColumnVector column) {
+        VisualizerEvents.ColumnAnalysisEvent event = new VisualizerEvents.ColumnAnalysisEvent();
+        event.begin();
+        List<String> dictionary = column.getDictionary();
+        int[] codeCounts = new int[dictionary.size()]; // rows per distinct text value
+
+        for (int row = 0; row < column.size(); row++) {
+            int code = column.getCode(row);
+            if (code >= 0) {
+                codeCounts[code]++;
+            }
+        }
+
+        int dateCount = 0;
+        int booleanCount = column.getBinaryDigitCount(); // "0" and "1" are numbers AND booleans
+        for (int code = 0; code < dictionary.size(); code++) {
+            String value = dictionary.get(code);
+            if (ColumnStats.isDate(value)) {
+                dateCount += codeCounts[code];
+            }
+            if (ColumnStats.isBoolean(value)) {
+                booleanCount += codeCounts[code];
+            }
+        }
 
-            value = value.trim();
-            uniqueValues.add(value);
+        int uniqueValues = countDistinctNumbers(column) + dictionary.size(); // numbers by value, see analyzeColumnar
+        int validValues = column.size() - column.getNullCount();
 
-            if (isNumeric(value)) {
-                numericCount++;
+        ColumnInfo columnInfo = new ColumnInfo(column.getName());
+        columnInfo.setTotalValues(column.size());
+        columnInfo.setUniqueValues(uniqueValues);
+        columnInfo.setNullCount(column.getNullCount());
+        columnInfo.setDataType(determineDataType(
+                column.getNumericCount(),
+                dateCount,
+                booleanCount,
+                uniqueValues,
+                validValues,
+                column.getDecimalCount()));
+        return commit(event, "columnar", columnInfo);
+    }
 
-                // Check if this number has a decimal point, IDs (postal codes, phone numbers) never have decimals
-                // Real quantities (prices, measurements) OFTEN do
-                if (value.contains(".")) {
-                    decimalCount++;
+
+    // Distinct numbers by value (so "5" and "5.0" count once), in an open addressing table of their bit patterns
+    // instead of a HashSet<Double>, so repeated values don't box anything
+    private int countDistinctNumbers(ColumnVector column) {
+        long[] table = new long[64];
+        boolean[] used = new boolean[64];
+        int distinct = 0;
+
+        for (int row = 0; row < column.size(); row++) {
+            if (column.getCode(row) != ColumnVector.NUMERIC) {
+                continue;
+            }
+            double value = column.getNumber(row);
+            long bits = Double.doubleToLongBits(value == 0.0 ? 0.0 : value); // -0.0 and 0.0 are the same number here
+
+            int mask = table.length - 1;
+            int slot = (int) HyperLogLog.mix(bits) & mask;
+            while (used[slot] && table[slot] != bits) {
+                slot = (slot + 1) & mask;
+            }
+            if (used[slot]) {
+                continue; // seen before
+            }
+            used[slot] = true;
+            table[slot] = bits;
+            distinct++;
+
+            if (distinct * 2 > table.length) {
+                long[] oldTable = table;
+                boolean[] oldUsed = used;
+                table = new long[oldTable.length * 2];
+                used = new boolean[oldTable.length * 2];
+                mask = table.length - 1;
+                for (int i = 0; i < oldTable.length; i++) {
+                    if (oldUsed[i]) {
+                        int newSlot = (int) HyperLogLog.mix(oldTable[i]) & mask;
+                        while (used[newSlot]) {
+                            newSlot = (newSlot + 1) & mask;
+                        }
+                        used[newSlot] = true;
+                        table[newSlot] = oldTable[i];
+                    }
                 }
             }
+        }
+        return distinct;
+    }
+
+
+    // Same analysis for an out-of-core dataset. Each column file is read once, chunk by chunk, and the distinct
+    // values are counted with external aggregation, so neither the rows nor the distinct values have to fit in memory
+    public List<ColumnInfo> analyzeSpilled(SpilledDataset data) throws IOException {
+        List<ColumnInfo> columnInfoList = new ArrayList<>();
+        for (SpilledColumn column : data.getColumns()) {
+            columnInfoList.add(analyzeSpilledColumn(column));
+        }
+        return columnInfoList;
+    }
+
+
+    private ColumnInfo analyzeSpilledColumn(SpilledColumn column) throws IOException {
+        VisualizerEvents.ColumnAnalysisEvent event = new VisualizerEvents.ColumnAnalysisEvent();
+        event.begin();
+        long budget = column.getMemoryBudgetBytes() / 2; // half for the numbers, half for the text values
+        long[] dateAndBoolean = new long[2]; // [0] = date rows, [1] = boolean rows among the text values
+        long uniqueValues;
+
+        try (ExternalAggregator numbers = column.newAggregator(budget);
+             ExternalAggregator texts = column.newAggregator(budget)) {
+            column.forEachCell(new SpilledColumn.CellVisitor() {
+                @Override
+                public void number(double value) throws IOException {
+                    numbers.add(ColumnStats.formatNumber(value)); // distinct by value, like analyzeColumnar
+                }
+
+                @Override
+                public void text(String value) throws IOException {
+                    texts.add(value);
+                }
+            });
+
+            uniqueValues = numbers.finish((value, count) -> { });
+            // like analyzeColumnar, the date/boolean checks run once per distinct value and count for all its rows
+            uniqueValues += texts.finish((value, count) -> {
+                if (ColumnStats.isDate(value)) {
+                    dateAndBoolean[0] += count;
+                }
+                if (ColumnStats.isBoolean(value)) {
+                    dateAndBoolean[1] += count;
+                }
+            });
+        }
+
+        long validValues = column.size() - column.getNullCount();
+
+        ColumnInfo columnInfo = new ColumnInfo(column.getName());
+        columnInfo.setTotalValues(clampToInt(column.size()));
+        columnInfo.setUniqueValues(clampToInt(uniqueValues));
+        columnInfo.setNullCount(clampToInt(column.getNullCount()));
+        columnInfo.setDataType(determineDataType(
+                clampToInt(column.getNumericCount()),
+                clampToInt(dateAndBoolean[0]),
+                clampToInt(column.getBinaryDigitCount() + dateAndBoolean[1]), // "0" and "1" are numbers AND booleans
+                clampToInt(uniqueValues),
+                clampToInt(validValues),
+                clampToInt(column.getDecimalCount())));
+        return commit(event, "spilled", columnInfo);
+    }
 
-            if (isDate(value))
-                dateCount++;
 
-            if (isBoolean(value))
-                booleanCount++;
+    // Fills in the column's JFR event from its result, only when a recording wants it
+    private ColumnInfo commit(VisualizerEvents.ColumnAnalysisEvent event, String storage, ColumnInfo info) {
+        if (event.shouldCommit()) {
+            event.column = info.getColumnName();
+            event.storage = storage;
+            event.dataType = String.valueOf(info.getDataType());
+            event.rows = info.getTotalValues();
+            event.distinct = info.getUniqueValues();
+            event.nulls = info.getNullCount();
+            event.commit();
         }
+        return info;
+    }
+
 
-        singleColumnInfo.setTotalValues(totalValues);
-        singleColumnInfo.setUniqueValues(uniqueValues.size());
-        singleColumnInfo.setNullCount(nullCount);
+    // Analyzes a single column to determine its charecteristics totalValues, uniqueVales, nullValues and  ALSO the datatype
+    // cellsBefore / totalCells place this column within the whole analysis, for the progress. The rows reported are
+    // cells done / columns, so they keep counting up over the whole stage instead of restarting at every column
+    private ColumnInfo analyzeEachCoumn(String columnName, List<CSVRecord> records,
+            ProgressListener listener, long cellsBefore, long totalCells, int columns) {
+        VisualizerEvents.ColumnAnalysisEvent event = new VisualizerEvents.ColumnAnalysisEvent();
+        event.begin();
+        ColumnStats stats = new ColumnStats(columnName); // running counters, see ColumnStats for the cleaning and the checks
+
+        // Examine each value in this column
+        int row = 0;
+        for (CSVRecord record : records) {
+            if (++row % PROGRESS_EVERY_ROWS == 0) {
+                listener.checkCancelled();
+                listener.progress("Analyzing", cellsBefore + row, totalCells, (cellsBefore + row) / columns);
+            }
+            stats.add(record.get(columnName)); // Gets the value from this row for the column we're analyzing
+            /*
+             * totalValues represents the dataset size, while validValues(used aage) represents usable data. 
+             * totalValues info is necessary as it helps to determine the total number of ROWS and so help in the percentage calculation. 
+             * 
+             * To determine the actual data How many rows have actual data we use the validValues parameter
+             */
+        }
+
+        return commit(event, "records", toColumnInfo(stats));
+    }
+
+
+    // Turns the counters of one column into its ColumnInfo, also used by follow mode which keeps the counters between polls
+    public ColumnInfo toColumnInfo(ColumnStats stats) {
+        ColumnInfo singleColumnInfo = new ColumnInfo(stats.getColumnName()); // creates the ColumnInfo object with the with the specified column name
+
+        singleColumnInfo.setTotalValues(stats.getTotalValues());
+        singleColumnInfo.setUniqueValues(stats.getUniqueValues());
+        singleColumnInfo.setNullCount(stats.getNullCount());
+        singleColumnInfo.setEstimated(!stats.isUniqueCountExact()); // unique count came from the sketch
 
         // now we determine the datatype of the column
-        int validValues = totalValues - nullCount; // non-empty values in the column
         DataType dataType = determineDataType(
-                numericCount,
-                dateCount,
-                booleanCount,
-                uniqueValues.size(),
-                validValues,
-                decimalCount); 
+                stats.getNumericCount(),
+                stats.getDateCount(),
+                stats.getBooleanCount(),
+                stats.getUniqueValues(),
+                stats.getValidValues(),
+                stats.getDecimalCount()); 
 
         singleColumnInfo.setDataType(dataType); // now the singleColumnInfo object hold complete info about the specified column
         return singleColumnInfo;
@@ -179,33 +403,4 @@ public class CSVAnalyzer {
         // Otherwise, it's free-form text
         return DataType.TEXT;
     }
-
-    private boolean isNumeric(String value) {
-        try {
-            Double.parseDouble(value);
-            return true; // Conversion succeeded
-        } catch (NumberFormatException e) {
-            return false; // Conversion failed
-        }
-    }
-
-    private boolean isDate(String value) {
-        for (DateTimeFormatter formatter : DATE_FORMATTERS) {
-            try {
-                LocalDate.parse(value, formatter);
-                return true;
-            } catch (DateTimeParseException e) {
-                // Try the next formatter
-            }
-        }
-        return false;
-    }
-
-    private boolean isBoolean(String value) {
-        String lower = value.toLowerCase();
-        return lower.equals("true") || lower.equals("false") ||
-                lower.equals("yes") || lower.equals("no") ||
-                lower.equals("1") || lower.equals("0") ||
-                lower.equals("t") || lower.equals("f");
-    }
 }
@@ -0,0 +1,236 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.ChartType;
+import com.avez.visualizer.model.ColumnInfo;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Follow mode ("tail -f") for append-only CSV files.
+ * Remembers the byte offset it has read up to, and on every poll parses ONLY the rows appended since then,
+ * adding them to running ColumnStats (and a NumericSketch of the chart column for histogram / box plot).
+ * The chart is redrawn from those fixed size counters, so the cost of a poll grows with the new data,
+ * not with the size of the file.
+ */
+public class CSVFollower implements AutoCloseable {
+
+    private static final int CHUNK_BYTES = 8 * 1024 * 1024; // read at most this much per step, so a big first poll doesn't load the whole file at once
+    private static final int MAX_TRACKED_VALUES = 100_000; // beyond this a column's unique count comes from a sketch
+
+    private final File file;
+    private final String chartColumn;
+    private final ChartType chartType;
+    private final String outputPath;
+
+    private final CSVAnalyzer csvAnalyzer = new CSVAnalyzer();
+    private final ChartGenerator chartGenerator = new ChartGenerator();
+
+    private List<String> headers; // in file order
+    private int chartIndex; // position of the chart column in headers
+    private Map<String, ColumnStats> columnStats; // running counters, one per column
+    private NumericSketch chartValues; // running distribution of the chart column, only kept for histogram / box plot
+    private long offset; // byte position of the first row we haven't parsed yet
+    private long rowCount;
+
+    private ScheduledExecutorService scheduler;
+
+    public CSVFollower(String filePath, String chartColumn, ChartType chartType, String outputPath) {
+        this.file = new File(filePath);
+        this.chartColumn = chartColumn;
+        this.chartType = chartType;
+        this.outputPath = outputPath;
+    }
+
+
+    // Polls for new rows every intervalSeconds and redraws the chart whenever some arrived
+    public void start(long intervalSeconds) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "csv-follower");
+            thread.setDaemon(true); // don't keep the JVM alive just for this
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                long start = System.nanoTime();
+                int newRows = poll();
+                if (newRows > 0) {
+                    regenerateChart();
+                    System.out.printf("%s +%d rows (total %d), chart updated in %d ms%n",
+                            UIRenderer.getIcon("reload"), newRows, rowCount, (System.nanoTime() - start) / 1_000_000);
+                }
+            } catch (IOException | RuntimeException e) {
+                // keep following, the writer may just be in the middle of rotating the file
+                System.err.println(UIRenderer.getIcon("error") + " Follow error: " + e.getMessage());
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+
+    /**
+     * Parses the rows appended since the last poll and adds them to the running stats.
+     *
+     * @return number of new rows
+     * @throws IOException If the file cannot be read
+     */
+    public synchronized int poll() throws IOException {
+        if (headers == null) {
+            readHeader();
+        }
+
+        long size = file.length();
+        if (size < offset) {
+            // The file got shorter, so it was truncated or replaced, start over
+            System.out.println(UIRenderer.getIcon("warning") + "  File shrank, re-reading it from the start.");
+            readHeader();
+        }
+
+        int newRows = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            while (offset < size) {
+                int length = (int) Math.min(CHUNK_BYTES, size - offset);
+                byte[] chunk = new byte[length];
+                raf.seek(offset);
+                raf.readFully(chunk);
+
+                // Only parse complete rows, a half written last row waits for the next poll
+                int end = lastCompleteRowEnd(chunk);
+                if (end == 0) {
+                    if (length == CHUNK_BYTES) {
+                        throw new IOException("A single row is larger than " + CHUNK_BYTES + " bytes");
+                    }
+                    break;
+                }
+
+                newRows += parseRows(chunk, end);
+                offset += end;
+            }
+        }
+
+        rowCount += newRows;
+        return newRows;
+    }
+
+
+    // Current analysis, built from the running counters without touching the file
+    public synchronized List<ColumnInfo> getColumnInfos() {
+        List<ColumnInfo> infos = new ArrayList<>();
+        for (ColumnStats stats : columnStats.values()) {
+            infos.add(csvAnalyzer.toColumnInfo(stats));
+        }
+        return infos;
+    }
+
+    public synchronized long getRowCount() {
+        return rowCount;
+    }
+
+    // Redraws the chart from the running counters
+    public synchronized void regenerateChart() throws IOException {
+        if (ChartGenerator.needsNumericValues(chartType)) {
+            chartGenerator.generateChartFromSketch(chartColumn, chartValues, chartType, outputPath);
+            return;
+        }
+
+        Map<String, Integer> frequency = columnStats.get(headers.get(chartIndex)).getFrequency();
+        if (frequency == null) {
+            throw new IllegalStateException("Column " + chartColumn + " has more than " + MAX_TRACKED_VALUES
+                    + " distinct values, too many for a " + chartType + " chart.");
+        }
+        chartGenerator.generateChartFromFrequencies(chartColumn, frequency, chartType, outputPath);
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+
+    // (Re)reads the header row and resets every counter
+    private void readHeader() throws IOException {
+        try (CSVParser parser = CSVParser.parse(CSVReader.utf8Reader(new FileInputStream(file)), CSVReader.defaultFormat())) {
+            headers = new ArrayList<>(parser.getHeaderNames());
+        }
+
+        chartIndex = -1;
+        columnStats = new LinkedHashMap<>();
+        for (int i = 0; i < headers.size(); i++) {
+            columnStats.put(headers.get(i), new ColumnStats(headers.get(i), MAX_TRACKED_VALUES));
+            if (headers.get(i).equalsIgnoreCase(chartColumn)) {
+                chartIndex = i;
+            }
+        }
+        if (chartIndex < 0) {
+            throw new IllegalArgumentException("Column not found: " + chartColumn);
+        }
+
+        chartValues = ChartGenerator.needsNumericValues(chartType) ? new NumericSketch() : null;
+        offset = CSVReader.headerEndOffset(file);
+        rowCount = 0;
+    }
+
+
+    // Index just after the last newline that is NOT inside a quoted field, 0 if there is none
+    private int lastCompleteRowEnd(byte[] chunk) {
+        boolean inQuotes = false; // an escaped quote ("") flips this twice, so it stays correct
+        int end = 0;
+        for (int i = 0; i < chunk.length; i++) {
+            if (chunk[i] == '"') {
+                inQuotes = !inQuotes;
+            } else if (chunk[i] == '\n' && !inQuotes) {
+                end = i + 1;
+            }
+        }
+        return end;
+    }
+
+
+    private int parseRows(byte[] chunk, int length) throws IOException {
+        int rows = 0;
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(chunk, 0, length), StandardCharsets.UTF_8);
+
+        try (CSVParser parser = CSVParser.parse(reader, CSVReader.formatWithHeaders(headers))) {
+            for (CSVRecord record : parser) {
+                for (int i = 0; i < headers.size(); i++) {
+                    String value = i < record.size() ? record.get(i) : null; // short rows count as empty cells
+                    columnStats.get(headers.get(i)).add(value);
+
+                    if (i == chartIndex && chartValues != null) {
+                        addNumeric(value);
+                    }
+                }
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private void addNumeric(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        try {
+            chartValues.add(Double.parseDouble(value.trim()));
+        } catch (NumberFormatException e) {
+            // Skip non-numeric values
+        }
+    }
+}
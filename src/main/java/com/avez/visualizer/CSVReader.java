@@ -1,42 +1,316 @@
 package com.avez.visualizer;
 
 import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.CachedDataset;
+import com.avez.visualizer.model.Partition;
+import com.avez.visualizer.model.PartitionedCSVData;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class CSVReader {
 
-    // Reads a CSV file and returns ALL records
+    private static final int PROGRESS_EVERY_ROWS = 10_000; // how often readCSV(path, listener) reports and checks for cancel
+
+    // Partitions parsed so far, so reloading a folder only re-parses the files that changed. Kept per file in a
+    // DatasetCache, so they count against (and are evicted under) the same byte budget as whole files
+    private final DatasetCache partitionCache;
+
+    // partitions go to a cache of their own, only the CLI loads folders and it passes its DatasetCache instead
+    public CSVReader() {
+        this(new DatasetCache());
+    }
+
+    public CSVReader(DatasetCache partitionCache) {
+        this.partitionCache = partitionCache;
+    }
+
+    // Reads a CSV file and returns ALL records.
+    // A directory, or a glob like data/orders_*.csv, is read as one dataset made of all matching files
     public CSVData readCSV(String filePath) throws IOException {
+        return readCSV(filePath, ProgressListener.NONE);
+    }
+
+
+    /**
+     * Same as readCSV(filePath), reporting "Parsing" progress in bytes of the file every PROGRESS_EVERY_ROWS rows.
+     * The listener can cancel, the load then stops with a CancellationException. Folders and globs are read
+     * in parallel and only report when they're done.
+     */
+    public CSVData readCSV(String filePath, ProgressListener listener) throws IOException {
+        if (isGlob(filePath) || Files.isDirectory(Paths.get(filePath))) {
+            listener.checkCancelled();
+            return readPartitions(filePath);
+        }
+
         File file = new File(filePath);
+        long totalBytes = isPlainCsv(filePath) ? file.length() : 0; // a workbook or a .gz file's bytes don't map to the CSV's
+        VisualizerEvents.ParseEvent event = new VisualizerEvents.ParseEvent();
+        event.begin();
+
+        // Count the bytes the parser has pulled from the file, that's how far through the file we are
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(openInput(file), 64 * 1024));
+             CSVParser parser = CSVParser.parse(utf8Reader(counter), defaultFormat())) {
+
+            List<String> headers = headerNames(parser); // Headers were already read when parser was created, just extracting them to this LIST
+            List<CSVRecord> records = new ArrayList<>(); // the data rows, what parser.getRecords() would return
+
+            for (CSVRecord record : parser) {
+                records.add(record);
+                if (records.size() % PROGRESS_EVERY_ROWS == 0) {
+                    listener.checkCancelled();
+                    listener.progress("Parsing", counter.getCount(), totalBytes, records.size());
+                }
+            }
+            listener.progress("Parsing", counter.getCount(), Math.max(totalBytes, counter.getCount()), records.size());
+            if (event.shouldCommit()) {
+                event.path = filePath;
+                event.rows = records.size();
+                event.columns = headers.size();
+                event.bytesRead = counter.getCount();
+                event.commit();
+            }
+
+            // Return both headers and records together
+            return new CSVData(headers, records);
+        }
+    }
+
+
+    /**
+     * Reads every file of a partitioned dataset in parallel and combines them without copying any rows.
+     * Files whose size and modification time haven't changed since they were parsed are taken from the
+     * DatasetCache, as long as it hasn't evicted them.
+     *
+     * @param pathOrGlob a directory (all *.csv files in it) or a glob such as data/orders_*.csv
+     * @throws IOException If a file cannot be read, or the files don't all have the same columns
+     */
+    public PartitionedCSVData readPartitions(String pathOrGlob) throws IOException {
+        List<Path> files = listPartitionFiles(pathOrGlob);
+        if (files.isEmpty()) {
+            throw new IOException("No CSV files match: " + pathOrGlob);
+        }
+
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Partition> partitions = new ArrayList<>();
+
+        try {
+            List<Future<Partition>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(pool.submit(() -> loadPartition(file)));
+            }
+            for (Future<Partition> future : futures) {
+                partitions.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading partitions", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Every partition must have the same columns, otherwise a column would be missing from some rows
+        List<String> headers = partitions.get(0).getData().getHeaders();
+        TreeSet<String> expected = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        expected.addAll(headers);
+        for (Partition partition : partitions) {
+            TreeSet<String> actual = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            actual.addAll(partition.getData().getHeaders());
+            if (!actual.equals(expected)) {
+                throw new IOException("Partition " + partition.getPath().getFileName() + " has columns " + actual
+                        + " but " + partitions.get(0).getPath().getFileName() + " has " + expected);
+            }
+        }
+
+        return new PartitionedCSVData(headers, partitions);
+    }
+
+
+    // Returns the cached rows if the file is unchanged (parse time 0), parses it otherwise
+    private Partition loadPartition(Path file) throws IOException {
+        long size = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        CachedDataset cached = partitionCache.get(file.toString()); // checks the size and modification time itself
+        if (cached != null) {
+            return new Partition(file, size, lastModified, cached.getData(), 0);
+        }
+
+        long start = System.nanoTime();
+        CSVData data = readCSV(file.toString());
+        partitionCache.put(file.toString(), data, null); // rows only, a partition isn't analyzed on its own
+        return new Partition(file, size, lastModified, data, (System.nanoTime() - start) / 1_000_000);
+    }
+
 
-        // all the parsing rules
-        CSVFormat format = CSVFormat.DEFAULT.builder()
+    // Files of a directory or a glob, sorted by name so daily partitions come out in date order
+    private List<Path> listPartitionFiles(String pathOrGlob) throws IOException {
+        Path path = Paths.get(pathOrGlob);
+        Path dir;
+        String pattern;
+
+        if (Files.isDirectory(path)) {
+            dir = path;
+            pattern = "*.{csv,CSV,csv.gz,CSV.GZ}";
+        } else {
+            dir = path.getParent() != null ? path.getParent() : Paths.get(".");
+            pattern = path.getFileName().toString();
+        }
+
+        TreeSet<Path> files = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, pattern)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file.toAbsolutePath().normalize());
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private boolean isGlob(String path) {
+        return path.contains("*") || path.contains("?") || path.contains("[") || path.contains("{");
+    }
+
+
+    // all the parsing rules, shared with the other readers so every input is parsed the same way
+    static CSVFormat defaultFormat() {
+        return CSVFormat.DEFAULT.builder()
                 .setHeader() // Auto-detect headers from first row
                 .setSkipHeaderRecord(true) // Don't include header row in records
                 .setIgnoreHeaderCase(true)
                 .setTrim(true)
                 .setDelimiter(',')
                 .get();
+    }
+
+    // The column names in file order, each once like in getHeaderMap() (which is sorted when header case is ignored).
+    // CSVData keeps this order, so analyzeColumns lists the columns the way the file and the columnar readers do
+    static List<String> headerNames(CSVParser parser) {
+        TreeSet<String> seen = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> headers = new ArrayList<>();
+        for (String name : parser.getHeaderNames()) {
+            if (seen.add(name)) {
+                headers.add(name);
+            }
+        }
+        return headers;
+    }
+
+    // Same rules, but for a chunk of the file that starts AFTER the header row, so the headers are passed in
+    static CSVFormat formatWithHeaders(List<String> headers) {
+        return CSVFormat.DEFAULT.builder()
+                .setHeader(headers.toArray(new String[0]))
+                .setSkipHeaderRecord(false) // the chunk has no header row of its own
+                .setIgnoreHeaderCase(true)
+                .setTrim(true)
+                .setDelimiter(',')
+                .get();
+    }
+
+    // The stream as UTF-8 text, without the byte order mark Excel puts first, so the first header is "Row ID" and not
+    // "\uFEFFRow ID": the name ByteCSVTokenizer, and so the columnar and out-of-core readers, give it
+    static Reader utf8Reader(InputStream in) throws IOException {
+        PushbackReader reader = new PushbackReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1);
+        int first = reader.read();
+        if (first != -1 && first != '\uFEFF') {
+            reader.unread(first);
+        }
+        return reader;
+    }
+
+    // The file as CSV bytes, an Excel workbook (.xlsx) is converted row by row on the way, see XLSXReader,
+    // and .gz / .deflate files are inflated on another thread while they're parsed, see CompressedInput
+    static InputStream openInput(File file) throws IOException {
+        if (XLSXReader.isXlsx(file.getName())) {
+            return XLSXReader.openCsv(file);
+        }
+        return CompressedInput.isCompressed(file.getName()) ? CompressedInput.open(file) : new FileInputStream(file);
+    }
+
+    // True if byte offsets in the file are byte offsets in the CSV, what sampling and tailing need
+    static boolean isPlainCsv(String path) {
+        return !XLSXReader.isXlsx(path) && !CompressedInput.isCompressed(path);
+    }
+
+    // Byte offset of the first data row (just after the header line)
+    static long headerEndOffset(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            long position = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    return position;
+                }
+            }
+            return position;
+        }
+    }
+
+
+    // Counts the bytes read through it
+    static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
 
-        
-        // Create parser and read the file
-        CSVParser parser = CSVParser.parse(file, StandardCharsets.UTF_8, format);
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
 
-        List<String> headers = new ArrayList<>(parser.getHeaderMap().keySet()); // Headers were already read when parser was created, just extracting them to this LIST
-        List<CSVRecord> records = parser.getRecords(); // Reads the rest (esentially the data rows) from the CSV and stores them in the LIST recrods 
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
 
-        parser.close();
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
 
-        // Return both headers and records together
-        return new CSVData(headers, records);
+        long getCount() {
+            return count;
+        }
     }
 }
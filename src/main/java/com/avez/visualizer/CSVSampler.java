@@ -0,0 +1,230 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.CSVSample;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+
+// Reads a bounded random sample of rows so a huge file can be previewed without loading all of it
+public class CSVSampler {
+
+    public static final int DEFAULT_SAMPLE_SIZE = 10_000; // rows kept in the sample, enough for stable type detection
+    public static final int DEFAULT_STRATA = 32; // number of windows spread across the file in stratified mode
+    public static final int DEFAULT_WINDOW_BYTES = 256 * 1024; // bytes read from each window
+    public static final int MIN_SAMPLE_SIZE = 1_000; // below this the error bars get too wide to be useful
+    public static final int MAX_SAMPLE_SIZE = 200_000; // above this a sample stops being "instant"
+    private static final int MAX_WINDOW_BYTES = 16 * 1024 * 1024;
+
+    private final int sampleSize;
+    private final int strata;
+    private final int windowBytes;
+    private final Random random;
+
+    public CSVSampler() {
+        this(DEFAULT_SAMPLE_SIZE, DEFAULT_STRATA, DEFAULT_WINDOW_BYTES, new Random());
+    }
+
+    public CSVSampler(int sampleSize, int strata, int windowBytes, Random random) {
+        if (sampleSize <= 0 || strata <= 0 || windowBytes <= 0) {
+            throw new IllegalArgumentException("Sample size, strata and window size must be positive");
+        }
+        this.sampleSize = sampleSize;
+        this.strata = strata;
+        this.windowBytes = windowBytes;
+        this.random = random;
+    }
+
+
+    /**
+     * Sampler sized to a fraction of the file, e.g. 0.01 for roughly 1% of the rows.
+     * The row count is guessed from the width of the first rows, and the sample is capped at MAX_SAMPLE_SIZE
+     * so the time to draw it stays flat no matter how big the file gets.
+     */
+    public static CSVSampler forFraction(String filePath, double fraction) throws IOException {
+        if (fraction <= 0 || fraction > 1) {
+            throw new IllegalArgumentException("Sample fraction must be in (0, 1], got " + fraction);
+        }
+
+        File file = new File(filePath);
+        double bytesPerRow = estimateBytesPerRow(file);
+        long estimatedRows = Math.max(1, Math.round(file.length() / bytesPerRow));
+
+        int sampleSize = (int) Math.max(MIN_SAMPLE_SIZE, Math.min(MAX_SAMPLE_SIZE, Math.round(estimatedRows * fraction)));
+        int rowsPerStratum = Math.max(1, sampleSize / DEFAULT_STRATA);
+
+        // each window has to hold its share of rows, with some slack for the rows we throw away at the edges
+        long neededWindow = Math.round(rowsPerStratum * bytesPerRow * 2);
+        int windowBytes = (int) Math.min(MAX_WINDOW_BYTES, Math.max(DEFAULT_WINDOW_BYTES, neededWindow));
+
+        return new CSVSampler(sampleSize, DEFAULT_STRATA, windowBytes, new Random());
+    }
+
+
+    /**
+     * Uniform sample over the WHOLE file (reservoir sampling, Algorithm R).
+     * Still reads every row once, but only keeps sampleSize of them in memory.
+     */
+    public CSVSample reservoirSample(String filePath) throws IOException {
+        File file = new File(filePath);
+
+        try (CSVParser parser = CSVParser.parse(CSVReader.utf8Reader(new FileInputStream(file)), CSVReader.defaultFormat())) {
+            List<String> headers = CSVReader.headerNames(parser);
+            List<CSVRecord> reservoir = new ArrayList<>(sampleSize);
+            long seen;
+            try {
+                seen = reservoirFill(parser.iterator(), reservoir, sampleSize);
+            } catch (UncheckedIOException e) {
+                // Stopping here would quietly sample only the head of the file and report it as the whole
+                throw new IOException("Malformed CSV after row " + parser.getRecordNumber() + ": " + e.getMessage(), e.getCause());
+            }
+
+            // here we saw every row, so the total is exact even though the stats will be sampled
+            return new CSVSample(headers, reservoir, seen, false);
+        }
+    }
+
+
+    /**
+     * Fast sample that jumps to evenly spaced byte offsets and reads a small window at each one.
+     * The cost depends on strata * windowBytes, not on the file size, so a 20 GB file previews as fast as a 20 MB one.
+     * Falls back to reservoirSample() when the file is small enough that the windows would cover it anyway.
+     */
+    public CSVSample stratifiedSample(String filePath) throws IOException {
+        File file = new File(filePath);
+        long fileSize = file.length();
+
+        List<String> headers;
+        List<String> fileOrder; // every header name, duplicates too, the windows need one per field
+        try (CSVParser headerParser = CSVParser.parse(CSVReader.utf8Reader(new FileInputStream(file)), CSVReader.defaultFormat())) {
+            headers = CSVReader.headerNames(headerParser); // only the header row gets read here
+            fileOrder = new ArrayList<>(headerParser.getHeaderNames());
+        }
+
+        long dataStart = CSVReader.headerEndOffset(file);
+        long dataBytes = fileSize - dataStart;
+
+        if (dataBytes <= (long) strata * windowBytes) {
+            return reservoirSample(filePath); // windows would overlap, just read the whole thing
+        }
+
+        int rowsPerStratum = Math.max(1, sampleSize / strata);
+        long stride = dataBytes / strata;
+
+        List<CSVRecord> sample = new ArrayList<>(sampleSize);
+        long bytesParsed = 0;
+        long rowsParsed = 0;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] window = new byte[windowBytes];
+
+            for (int s = 0; s < strata; s++) {
+                long offset = dataStart + s * stride;
+                raf.seek(offset);
+                int read = raf.read(window, 0, windowBytes);
+                if (read <= 0) {
+                    break;
+                }
+
+                // We most likely landed in the middle of a row, skip to the start of the next one
+                int start = 0;
+                if (offset > dataStart) {
+                    while (start < read && window[start] != '\n') {
+                        start++;
+                    }
+                    start++;
+                }
+                if (start >= read) {
+                    continue;
+                }
+
+                boolean reachedEnd = offset + read >= fileSize;
+                List<CSVRecord> windowRecords = parseWindow(window, start, read - start, fileOrder);
+
+                // The last row of a window is usually cut off half way, so drop it
+                if (!reachedEnd && !windowRecords.isEmpty()) {
+                    windowRecords.remove(windowRecords.size() - 1);
+                }
+
+                bytesParsed += read - start;
+                rowsParsed += windowRecords.size();
+
+                List<CSVRecord> picked = new ArrayList<>(rowsPerStratum);
+                reservoirFill(windowRecords.iterator(), picked, rowsPerStratum);
+                sample.addAll(picked);
+            }
+        }
+
+        // Estimate the row count from the average row width we saw in the windows
+        long estimatedRows = rowsParsed == 0 ? 0 : Math.round(dataBytes / ((double) bytesParsed / rowsParsed));
+        return new CSVSample(headers, sample, Math.max(estimatedRows, sample.size()), true);
+    }
+
+
+    // Classic Algorithm R: keep the first k rows, then replace a random slot with probability k/seen.
+    // A broken row is not caught here, parseWindow already drops the cut-off rows at the window edges
+    private long reservoirFill(Iterator<CSVRecord> rows, List<CSVRecord> reservoir, int k) {
+        long seen = 0;
+        while (rows.hasNext()) {
+            CSVRecord record = rows.next();
+            seen++;
+            if (reservoir.size() < k) {
+                reservoir.add(record);
+            } else {
+                long slot = (long) (random.nextDouble() * seen);
+                if (slot < k) {
+                    reservoir.set((int) slot, record);
+                }
+            }
+        }
+        return seen;
+    }
+
+
+    // Parses one window of raw bytes, keeping only rows that have the right number of fields
+    private List<CSVRecord> parseWindow(byte[] window, int start, int length, List<String> headers) {
+        List<CSVRecord> records = new ArrayList<>();
+        InputStream in = new ByteArrayInputStream(window, start, length);
+
+        try (CSVParser parser = CSVParser.parse(new InputStreamReader(in, StandardCharsets.UTF_8), CSVReader.formatWithHeaders(headers))) {
+            for (CSVRecord record : parser) {
+                // A window that starts inside a quoted multi-line field gives misaligned rows, skip those
+                if (record.isConsistent()) {
+                    records.add(record);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Garbage at the window edge, the rows parsed so far are still fine
+        }
+        return records;
+    }
+
+
+    // Average row width in the first MB of the file, good enough to guess the row count from the file size (LoadPlanner uses it too)
+    static double estimateBytesPerRow(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(CSVReader.openInput(file))) {
+            byte[] head = in.readNBytes(1024 * 1024);
+            int newlines = 0;
+            for (byte b : head) {
+                if (b == '\n') {
+                    newlines++;
+                }
+            }
+            return newlines == 0 ? Math.max(1, head.length) : (double) head.length / newlines;
+        }
+    }
+}
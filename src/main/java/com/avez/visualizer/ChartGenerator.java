@@ -1,27 +1,120 @@
 package com.avez.visualizer;
 
+import com.avez.visualizer.model.ApproximateCount;
+import com.avez.visualizer.model.CSVSample;
 import com.avez.visualizer.model.ChartType;
+import com.avez.visualizer.model.ColumnVector;
+import com.avez.visualizer.model.CorrelationMatrix;
 import org.apache.commons.csv.CSVRecord;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
+import org.jfree.chart.annotations.XYTextAnnotation;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.NumberTickUnit;
+import org.jfree.chart.axis.SymbolAxis;
+import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.category.StatisticalBarRenderer;
+import org.jfree.chart.renderer.category.StatisticalLineAndShapeRenderer;
+import org.jfree.chart.renderer.PaintScale;
+import org.jfree.chart.renderer.xy.XYBlockRenderer;
+import org.jfree.chart.title.PaintScaleLegend;
+import org.jfree.chart.title.TextTitle;
+import org.jfree.chart.ui.RectangleEdge;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.DefaultPieDataset;
 import org.jfree.data.statistics.HistogramDataset;
+import org.jfree.data.statistics.SimpleHistogramBin;
+import org.jfree.data.statistics.SimpleHistogramDataset;
+import org.jfree.data.statistics.BoxAndWhiskerItem;
 import org.jfree.data.statistics.DefaultBoxAndWhiskerCategoryDataset;
+import org.jfree.data.statistics.DefaultStatisticalCategoryDataset;
+import org.jfree.data.xy.DefaultXYZDataset;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Paint;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 
 public class ChartGenerator {
 
-    private static final int CHART_WIDTH = 800;
-    private static final int CHART_HEIGHT = 600;
+    static final int CHART_WIDTH = 800; // part of ChartRenderCache's key
+    static final int CHART_HEIGHT = 600;
+    private static final double Z_95 = 1.96; // z-score for a 95% confidence interval
+    private static final int HISTOGRAM_BINS = 10;
+    private static final int MAX_CHART_CATEGORIES = 1000; // out-of-core frequency charts, the rest is folded into "Other"
+    private static final int PROGRESS_EVERY_ROWS = 10_000; // progress and cancel checks in createChart()
+    private static final int MAX_LABELLED_HEATMAP_COLUMNS = 15; // more and the values don't fit in the cells
+
+    private RunMetrics metrics; // null unless a caller wants the aggregate / render / encode stages measured
+
+    // Stages of every chart from now on are recorded in the metrics, null switches that off again
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // aggregate, render or encode: measured for the RunMetrics (if set) and as a JFR event (if recording)
+    private Phase phase(String name, String columnName, ChartType chartType) {
+        VisualizerEvents.ChartPhaseEvent event = switch (name) {
+            case "aggregate" -> new VisualizerEvents.ChartAggregationEvent();
+            case "render" -> new VisualizerEvents.ChartRenderEvent();
+            default -> new VisualizerEvents.PngSaveEvent();
+        };
+        RunMetrics.Stage stage = metrics != null ? metrics.stage(name, columnName + " " + chartType) : RunMetrics.Stage.NONE;
+        return new Phase(stage, event, columnName, chartType);
+    }
+
+    private static final class Phase implements AutoCloseable {
+        private final RunMetrics.Stage stage;
+        private final VisualizerEvents.ChartPhaseEvent event;
+        private final String columnName;
+        private final ChartType chartType;
+        private long rows;
+        private long bytes;
+
+        Phase(RunMetrics.Stage stage, VisualizerEvents.ChartPhaseEvent event, String columnName, ChartType chartType) {
+            this.stage = stage;
+            this.event = event;
+            this.columnName = columnName;
+            this.chartType = chartType;
+            event.begin();
+        }
+
+        Phase rows(long rows) {
+            this.rows = rows;
+            stage.rows(rows);
+            return this;
+        }
+
+        Phase bytes(long bytes) {
+            this.bytes = bytes;
+            stage.bytes(bytes);
+            return this;
+        }
+
+        @Override
+        public void close() {
+            stage.close();
+            if (event.shouldCommit()) {
+                event.column = columnName;
+                event.chartType = chartType.toString();
+                event.rows = rows;
+                event.bytesWritten = bytes;
+                event.commit();
+            }
+        }
+    }
 
     /**
      * Generates a chart wrt a single column
@@ -34,62 +127,449 @@ public class ChartGenerator {
      */
 
     public void generateChart(String columnName, List<CSVRecord> records, ChartType chartType, String outputPath) throws IOException {
+        requireSingleColumnChart(chartType); // scatter plot and heatmap are handled separately
+
+        JFreeChart chart;
+        try (Phase phase = phase("aggregate", columnName, chartType)) {
+            chart = createChart(columnName, records, chartType, ProgressListener.NONE);
+            phase.rows(records.size());
+        }
+        saveChart(chart, outputPath, columnName, chartType);
+    }
+
+
+    /**
+     * Builds the chart without saving it, e.g. to show it in a ChartPanel. The pass over the records reports
+     * "Counting" progress and stops with a CancellationException when the listener cancels.
+     *
+     * @param columnName Name of the column to visualize
+     * @param records    All CSV records
+     * @param chartType  Type of chart to build (not SCATTER_PLOT)
+     * @param listener   Progress and cancellation, ProgressListener.NONE if not needed
+     */
+    public JFreeChart createChart(String columnName, List<CSVRecord> records, ChartType chartType, ProgressListener listener) {
+        requireSingleColumnChart(chartType);
+
+        // Only do the one pass over the records that this chart type actually needs
+        if (needsNumericValues(chartType)) {
+            return createChartFromValues(columnName, extractNumericValues(columnName, records, listener), chartType);
+        }
+        return createChartFromFrequencies(columnName, countValueFrequency(columnName, records, listener), chartType);
+    }
+
+
+    /**
+     * Same as generateChart, for a column loaded by ColumnarCSVReader. Numbers are read straight from the vector
+     * (on or off the heap), text values are counted per dictionary code, so no String is created per row.
+     * The box plot copies the numbers into one primitive double[] and sorts it, no Double per row either.
+     * Only a number's value was loaded, so frequency charts group and label numbers by value ("5.0" and "5" are one
+     * category labelled 5, "2.50" shows as 2.5), where the record path groups them by their text.
+     *
+     * @param column     The column to visualize
+     * @param chartType  Type of chart to generate
+     * @param outputPath Where to save the chart image
+     * @throws IOException If chart cannot be saved
+     */
+    public void generateChart(ColumnVector column, ChartType chartType, String outputPath) throws IOException {
+        requireSingleColumnChart(chartType);
+
+        JFreeChart chart;
+        try (Phase phase = phase("aggregate", column.getName(), chartType)) {
+            if (chartType == ChartType.HISTOGRAM) {
+                chart = createHistogram(column); // binned straight from the column, no copy of the values
+            } else if (chartType == ChartType.BOX_PLOT) {
+                chart = createBoxPlot(column);
+            } else {
+                chart = createChartFromFrequencies(column.getName(), countValueFrequency(column), chartType);
+            }
+            phase.rows(column.size());
+        }
+        saveChart(chart, outputPath, column.getName(), chartType);
+    }
+
+
+    /**
+     * Same as generateChart, for a column of an out-of-core dataset. The column file is streamed chunk by chunk:
+     * histograms are binned on the fly, frequency charts use external aggregation and show the
+     * MAX_CHART_CATEGORIES most frequent values (the rest as "Other"), numbers grouped and labelled by value like
+     * a columnar column's. Sorting every value for a box plot is exactly what out-of-core mode avoids, so its
+     * quartiles come from a NumericSketch of the column instead.
+     *
+     * @param column     The spilled column to visualize
+     * @param chartType  Type of chart to generate
+     * @param outputPath Where to save the chart image
+     * @throws IOException If the column cannot be read or the chart cannot be saved
+     */
+    public void generateChart(SpilledColumn column, ChartType chartType, String outputPath) throws IOException {
+        requireSingleColumnChart(chartType);
 
+        JFreeChart chart;
+        try (Phase phase = phase("aggregate", column.getName(), chartType)) {
+            if (chartType == ChartType.HISTOGRAM) {
+                chart = createHistogram(column);
+            } else if (chartType == ChartType.BOX_PLOT) {
+                chart = createBoxPlot(column);
+            } else {
+                chart = createChartFromFrequencies(column.getName(), column.topFrequencies(MAX_CHART_CATEGORIES), chartType);
+            }
+            phase.rows(column.size());
+        }
+        saveChart(chart, outputPath, column.getName(), chartType);
+    }
+
+
+    /**
+     * Generates a frequency based chart (pie, donut, bar, horizontal bar, line) from an already counted value table.
+     * Lets callers that keep their own running counts (e.g. follow mode) skip the pass over the records.
+     *
+     * @param columnName Name of the column to visualize
+     * @param frequency  value -> number of rows with that value
+     * @param chartType  Type of chart to generate
+     * @param outputPath Where to save the chart image
+     * @throws IOException If chart cannot be saved
+     */
+    public void generateChartFromFrequencies(String columnName, Map<String, Integer> frequency, ChartType chartType, String outputPath) throws IOException {
+        saveChart(createChartFromFrequencies(columnName, frequency, chartType), outputPath, columnName, chartType);
+    }
+
+    private JFreeChart createChartFromFrequencies(String columnName, Map<String, Integer> frequency, ChartType chartType) {
         JFreeChart chart;
 
         switch (chartType) {
             case PIE_CHART:
-                chart = createPieChart(columnName, records);
+                chart = createPieChart(columnName, frequency);
                 break;
 
-            case BAR_CHART:
-                chart = createBarChart(columnName, records);
+            case DONUT_CHART:
+                chart = createDonutChart(columnName, frequency);
                 break;
 
             case HORIZONTAL_BAR:
-                chart = createHorizontalBarChart(columnName, records);
+                chart = createHorizontalBarChart(columnName, frequency);
                 break;
 
             case LINE_CHART:
-                chart = createLineChart(columnName, records);
+                chart = createLineChart(columnName, frequency);
                 break;
 
             case HISTOGRAM:
-                chart = createHistogram(columnName, records);
+            case BOX_PLOT:
+            case SCATTER_PLOT:
+            case HEATMAP:
+                throw new IllegalArgumentException(
+                        formatName(chartType) + " needs the numeric values, not a frequency table. Use generateChartFromValues() instead.");
+
+            default:
+                // Fallback to bar chart, it is decent for most cases
+                chart = createBarChart(columnName, frequency);
                 break;
+        }
 
-            case SCATTER_PLOT:
-                // Scatter plot requires TWO columns, so handled it separately
-                throw new UnsupportedOperationException(
-                        "Scatter plot requires two columns. Use generateScatterPlot() instead.");
+        return chart;
+    }
 
-            case BOX_PLOT:
-                chart = createBoxPlot(columnName, records);
+
+    /**
+     * Generates a distribution chart (histogram or box plot) from already extracted numeric values.
+     *
+     * @param columnName    Name of the column to visualize
+     * @param numericValues Every numeric value of the column
+     * @param chartType     HISTOGRAM or BOX_PLOT
+     * @param outputPath    Where to save the chart image
+     * @throws IOException If chart cannot be saved
+     */
+    public void generateChartFromValues(String columnName, List<Double> numericValues, ChartType chartType, String outputPath) throws IOException {
+        saveChart(createChartFromValues(columnName, numericValues, chartType), outputPath, columnName, chartType);
+    }
+
+    private JFreeChart createChartFromValues(String columnName, List<Double> numericValues, ChartType chartType) {
+        JFreeChart chart;
+
+        switch (chartType) {
+            case HISTOGRAM:
+                chart = createHistogram(columnName, numericValues);
                 break;
 
-            case DONUT_CHART:
-                chart = createDonutChart(columnName, records);
+            case BOX_PLOT:
+                chart = createBoxPlot(columnName, numericValues);
                 break;
 
             default:
-                // Fallback to bar chart, it is decent for most cases
-                chart = createBarChart(columnName, records);
-                break;
+                throw new IllegalArgumentException(
+                        formatName(chartType) + " is built from a frequency table. Use generateChartFromFrequencies() instead.");
         }
 
-        saveChart(chart, outputPath);
+        return chart;
+    }
+
+
+    /**
+     * Generates a histogram or box plot from a running NumericSketch, so callers that keep adding values
+     * (follow mode) redraw in time proportional to the bins, not to every value seen so far.
+     * While the sketch still holds every value the chart is the same as generateChartFromValues.
+     *
+     * @param columnName Name of the column to visualize
+     * @param sketch     Running distribution of the column
+     * @param chartType  HISTOGRAM or BOX_PLOT
+     * @param outputPath Where to save the chart image
+     * @throws IOException If chart cannot be saved
+     */
+    public void generateChartFromSketch(String columnName, NumericSketch sketch, ChartType chartType, String outputPath) throws IOException {
+        if (!needsNumericValues(chartType)) {
+            throw new IllegalArgumentException(
+                    formatName(chartType) + " is built from a frequency table. Use generateChartFromFrequencies() instead.");
+        }
+        if (sketch.getCount() == 0) {
+            throw new IllegalArgumentException(
+                    "No numeric values found in column: " + columnName);
+        }
+        saveChart(createChartFromSketch(columnName, sketch, chartType), outputPath, columnName, chartType);
+    }
+
+    private JFreeChart createChartFromSketch(String columnName, NumericSketch sketch, ChartType chartType) {
+        if (sketch.isExact()) {
+            return createChartFromValues(columnName, sketch.getExactValues(), chartType);
+        }
+
+        JFreeChart chart;
+        if (chartType == ChartType.HISTOGRAM) {
+            StreamingHistogram histogram = new StreamingHistogram(sketch.getMin(), sketch.getMax());
+            for (int bin = 0; bin < NumericSketch.BINS; bin++) {
+                histogram.add(sketch.binCenter(bin), sketch.binCount(bin));
+            }
+            chart = createHistogram(columnName, histogram);
+        } else {
+            chart = createBoxPlot(columnName, sketch);
+            chart.addSubtitle(new TextTitle(String.format("Quartiles from %d bins of %d values", NumericSketch.BINS, sketch.getCount())));
+        }
+        return chart;
+    }
+
+
+    // Scatter plots need two columns and the heatmap all the numeric ones, they have their own generate methods
+    private static void requireSingleColumnChart(ChartType chartType) {
+        if (chartType == ChartType.SCATTER_PLOT) {
+            throw new UnsupportedOperationException(
+                    "Scatter plot requires two columns. Use generateScatterPlot() instead.");
+        }
+        if (chartType == ChartType.HEATMAP) {
+            throw new UnsupportedOperationException(
+                    "Heatmap shows the correlations of all numeric columns. Use generateCorrelationHeatmap() instead.");
+        }
+    }
+
+
+    // Histogram and box plot work on the raw numbers, every other single column chart on value counts
+    public static boolean needsNumericValues(ChartType chartType) {
+        return chartType == ChartType.HISTOGRAM || chartType == ChartType.BOX_PLOT;
     }
 
 
     public void generateScatterPlot(String xColumnName, String yColumnName, List<CSVRecord> records, String outputPath) throws IOException {
-        JFreeChart chart = createScatterPlot(xColumnName, yColumnName, records);
-        saveChart(chart, outputPath);
+        JFreeChart chart;
+        try (Phase phase = phase("aggregate", xColumnName + " / " + yColumnName, ChartType.SCATTER_PLOT)) {
+            chart = createScatterPlot(xColumnName, yColumnName, records);
+            phase.rows(records.size());
+        }
+        saveChart(chart, outputPath, xColumnName + " / " + yColumnName, ChartType.SCATTER_PLOT);
+    }
+
+
+    /**
+     * Generates a heatmap of the correlations between all numeric columns, red for positive, blue for negative.
+     *
+     * @param matrix     Correlations from CorrelationAnalyzer
+     * @param spearman   Show the Spearman rank correlations instead of Pearson (the matrix must have them)
+     * @param outputPath Where to save the chart image
+     * @throws IOException If chart cannot be saved
+     */
+    public void generateCorrelationHeatmap(CorrelationMatrix matrix, boolean spearman, String outputPath) throws IOException {
+        String columns = matrix.size() + " numeric columns";
+        JFreeChart chart;
+        try (Phase phase = phase("aggregate", columns, ChartType.HEATMAP)) {
+            chart = createCorrelationHeatmap(matrix, spearman);
+            phase.rows(matrix.getRowCount());
+        }
+        saveChart(chart, outputPath, columns, ChartType.HEATMAP);
+    }
+
+
+    /**
+     * Builds the correlation heatmap without saving it, e.g. to show it in a ChartPanel. Cells are labelled with
+     * their value while they are big enough to read, pairs without a value are grey.
+     */
+    public JFreeChart createCorrelationHeatmap(CorrelationMatrix matrix, boolean spearman) {
+        if (spearman && !matrix.hasSpearman()) {
+            throw new IllegalArgumentException("The matrix has no Spearman correlations, ask CorrelationAnalyzer for them");
+        }
+        int k = matrix.size();
+        String[] names = matrix.getColumns().toArray(new String[0]);
+
+        // one cell per pair: x = column, y = row of the matrix, z = the correlation
+        double[][] cells = new double[3][k * k];
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < k; j++) {
+                int cell = i * k + j;
+                cells[0][cell] = j;
+                cells[1][cell] = i;
+                cells[2][cell] = spearman ? matrix.getSpearman(i, j) : matrix.getPearson(i, j);
+            }
+        }
+        DefaultXYZDataset dataset = new DefaultXYZDataset();
+        dataset.addSeries("r", cells);
+
+        SymbolAxis xAxis = new SymbolAxis(null, names);
+        xAxis.setVerticalTickLabels(true);
+        xAxis.setGridBandsVisible(false);
+        SymbolAxis yAxis = new SymbolAxis(null, names);
+        yAxis.setInverted(true); // first column at the top, like a table
+        yAxis.setGridBandsVisible(false);
+
+        CorrelationPaintScale scale = new CorrelationPaintScale();
+        XYBlockRenderer renderer = new XYBlockRenderer();
+        renderer.setPaintScale(scale);
+        XYPlot plot = new XYPlot(dataset, xAxis, yAxis, renderer);
+        plot.setDomainGridlinesVisible(false);
+        plot.setRangeGridlinesVisible(false);
+        plot.setBackgroundPaint(Color.WHITE);
+
+        if (k <= MAX_LABELLED_HEATMAP_COLUMNS) {
+            Font font = new Font(Font.SANS_SERIF, Font.PLAIN, k <= 8 ? 12 : 9);
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    double r = cells[2][i * k + j];
+                    XYTextAnnotation label = new XYTextAnnotation(Double.isNaN(r) ? "-" : String.format("%.2f", r), j, i);
+                    label.setFont(font);
+                    label.setPaint(Math.abs(r) > 0.6 ? Color.WHITE : Color.BLACK); // stays readable on the dark ends
+                    plot.addAnnotation(label);
+                }
+            }
+        }
+
+        String title = spearman ? "Correlation Matrix (Spearman)" : "Correlation Matrix (Pearson)";
+        JFreeChart chart = new JFreeChart(spearman && matrix.isSpearmanEstimated() ? "≈ " + title : title,
+                JFreeChart.DEFAULT_TITLE_FONT, plot, false);
+
+        NumberAxis legendAxis = new NumberAxis("r");
+        legendAxis.setRange(-1.0, 1.0);
+        legendAxis.setTickUnit(new NumberTickUnit(0.5));
+        PaintScaleLegend legend = new PaintScaleLegend(scale, legendAxis);
+        legend.setPosition(RectangleEdge.RIGHT);
+        legend.setMargin(4, 4, 40, 4);
+        legend.setStripWidth(12);
+        chart.addSubtitle(legend);
+
+        String rows = spearman && matrix.isSpearmanEstimated()
+                ? String.format("Ranked on %,d sampled rows of %,d", matrix.getSpearmanSampleSize(), matrix.getRowCount())
+                : String.format("%,d rows", matrix.getRowCount());
+        chart.addSubtitle(new TextTitle(rows));
+        return chart;
+    }
+
+
+    // -1 blue, 0 white, +1 red, grey for pairs without a correlation
+    private static class CorrelationPaintScale implements PaintScale {
+        private static final Color NEGATIVE = new Color(33, 102, 172);
+        private static final Color POSITIVE = new Color(178, 24, 43);
+        private static final Color MISSING = new Color(220, 220, 220);
+
+        @Override
+        public double getLowerBound() {
+            return -1.0;
+        }
+
+        @Override
+        public double getUpperBound() {
+            return 1.0;
+        }
+
+        @Override
+        public Paint getPaint(double value) {
+            if (Double.isNaN(value)) {
+                return MISSING;
+            }
+            double t = Math.min(1.0, Math.abs(value));
+            Color end = value < 0 ? NEGATIVE : POSITIVE;
+            return new Color(
+                    (int) Math.round(255 + (end.getRed() - 255) * t),
+                    (int) Math.round(255 + (end.getGreen() - 255) * t),
+                    (int) Math.round(255 + (end.getBlue() - 255) * t));
+        }
+    }
+
+
+    /**
+     * Approximate version of generateChart() that only looks at a sample of the file.
+     * Counts are scaled up to the estimated row count and carry a 95% confidence interval,
+     * drawn as error bars on bar/line/histogram charts and written in the subtitle otherwise.
+     * Latency depends on the sample size, not on the file size.
+     *
+     * @param columnName Name of the column to visualize
+     * @param sample     Sampled rows plus the estimated size of the whole file
+     * @param chartType  Type of chart to generate
+     * @param outputPath Where to save the chart image
+     * @throws IOException If chart cannot be saved
+     */
+    public void generateApproximateChart(String columnName, CSVSample sample, ChartType chartType, String outputPath) throws IOException {
+        List<CSVRecord> records = sample.getRecords();
+        long population = Math.max(sample.getEstimatedTotalRows(), records.size());
+
+        if (records.isEmpty()) {
+            throw new IllegalArgumentException("Sample is empty, nothing to estimate for column: " + columnName);
+        }
+        requireSingleColumnChart(chartType);
+
+        JFreeChart chart;
+        try (Phase phase = phase("aggregate", columnName, chartType)) {
+            phase.rows(records.size());
+            chart = createApproximateChart(columnName, records, population, chartType);
+        }
+        saveChart(chart, outputPath, columnName, chartType);
+    }
+
+    // The chart of generateApproximateChart, with the "≈" title and the note on how it was estimated
+    private JFreeChart createApproximateChart(String columnName, List<CSVRecord> records, long population, ChartType chartType) {
+        JFreeChart chart;
+        String note;
+
+        switch (chartType) {
+            case PIE_CHART:
+            case DONUT_CHART: {
+                Map<String, ApproximateCount> counts = scaleCounts(countValueFrequency(columnName, records, ProgressListener.NONE), records.size(), population);
+                chart = createApproximatePieChart(columnName, counts, chartType == ChartType.DONUT_CHART);
+                note = String.format("slices ±%.1f%% (95%% CI)", maxMarginPercent(counts, population));
+                break;
+            }
+
+            case HISTOGRAM:
+                chart = createApproximateHistogram(columnName, extractNumericValues(columnName, records, ProgressListener.NONE), records.size(), population);
+                note = "error bars = 95% CI";
+                break;
+
+            case BOX_PLOT:
+                // quantiles don't need scaling, the box simply comes from the sample
+                chart = createBoxPlot(columnName, extractNumericValues(columnName, records, ProgressListener.NONE));
+                note = "quartiles from sample";
+                break;
+
+            default: {
+                // Bar, horizontal bar and line charts all show the frequency table with error bars
+                Map<String, ApproximateCount> counts = scaleCounts(countValueFrequency(columnName, records, ProgressListener.NONE), records.size(), population);
+                chart = createApproximateCategoryChart(columnName, counts, chartType);
+                note = "error bars = 95% CI";
+                break;
+            }
+        }
+
+        chart.setTitle("≈ " + chart.getTitle().getText());
+        chart.addSubtitle(new TextTitle(String.format("Estimated from %d sampled rows of ~%d (%.2f%%), %s",
+                records.size(), population, 100.0 * records.size() / population, note)));
+        return chart;
     }
 
 
     // pie chart, JFreeChart returns a chart object (from JFreeChart library)
-    private JFreeChart createPieChart(String columnName, List<CSVRecord> records) {
-        Map<String, Integer> valueFrequency = countValueFrequency(columnName, records);
+    private JFreeChart createPieChart(String columnName, Map<String, Integer> valueFrequency) {
 
         DefaultPieDataset<String> dataset = new DefaultPieDataset<>();
         for (Map.Entry<String, Integer> entry : valueFrequency.entrySet()) {
@@ -107,8 +587,7 @@ public class ChartGenerator {
 
 
     // donut chart
-    private JFreeChart createDonutChart(String columnName, List<CSVRecord> records) {
-        Map<String, Integer> valueFrequency = countValueFrequency(columnName, records);
+    private JFreeChart createDonutChart(String columnName, Map<String, Integer> valueFrequency) {
 
         DefaultPieDataset<String> dataset = new DefaultPieDataset<>();
         for (Map.Entry<String, Integer> entry : valueFrequency.entrySet()) {
@@ -126,8 +605,7 @@ public class ChartGenerator {
 
 
     // vertical bar chart 
-    private JFreeChart createBarChart(String columnName, List<CSVRecord> records) {
-        Map<String, Integer> valueFrequency = countValueFrequency(columnName, records);
+    private JFreeChart createBarChart(String columnName, Map<String, Integer> valueFrequency) {
 
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
         for (Map.Entry<String, Integer> entry : valueFrequency.entrySet()) {
@@ -148,8 +626,7 @@ public class ChartGenerator {
 
 
     // horizontal bar chart 
-    private JFreeChart createHorizontalBarChart(String columnName, List<CSVRecord> records) {
-        Map<String, Integer> valueFrequency = countValueFrequency(columnName, records);
+    private JFreeChart createHorizontalBarChart(String columnName, Map<String, Integer> valueFrequency) {
 
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
         for (Map.Entry<String, Integer> entry : valueFrequency.entrySet()) {
@@ -169,8 +646,7 @@ public class ChartGenerator {
 
 
     // line chart
-    private JFreeChart createLineChart(String columnName, List<CSVRecord> records) {
-        Map<String, Integer> valueFrequency = countValueFrequency(columnName, records);
+    private JFreeChart createLineChart(String columnName, Map<String, Integer> valueFrequency) {
 
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
         for (Map.Entry<String, Integer> entry : valueFrequency.entrySet()) {
@@ -190,14 +666,116 @@ public class ChartGenerator {
 
 
     // Creates a box plot showing statistical distribution Shows: min, Q1, median, Q3, max, and outliers
-    private JFreeChart createBoxPlot(String columnName, List<CSVRecord> records) {
-        List<Double> numericValues = extractNumericValues(columnName, records);
-
+    private JFreeChart createBoxPlot(String columnName, List<Double> numericValues) {
 
         // Create box and whisker dataset
         DefaultBoxAndWhiskerCategoryDataset dataset = new DefaultBoxAndWhiskerCategoryDataset();
         dataset.add(numericValues, "Series", columnName);
+        return createBoxPlot(columnName, dataset);
+    }
+
+    // Same box plot for a columnar column, the statistics are worked out on a sorted double[] exactly the way
+    // BoxAndWhiskerCalculator does on a List<Double>, so both paths draw the same box
+    private JFreeChart createBoxPlot(ColumnVector column) {
+        double[] values = sortedNumericValues(column);
+        if (values.length == 0) {
+            throw new IllegalArgumentException(
+                    "No numeric values found in column: " + column.getName());
+        }
+
+        int count = values.length;
+        double mean = 0;
+        for (double value : values) {
+            mean += value;
+        }
+        mean /= count;
+        double median = median(values, 0, count - 1);
+        // like Statistics.calculateQ1/Q3, the middle value belongs to both halves when the count is odd
+        double q1 = median(values, 0, count % 2 == 1 ? count / 2 : count / 2 - 1);
+        double q3 = median(values, count / 2, count - 1);
+
+        double iqr = q3 - q1;
+        double upperOutlier = q3 + 1.5 * iqr;
+        double lowerOutlier = q1 - 1.5 * iqr;
+        double upperFarout = q3 + 2 * iqr;
+        double lowerFarout = q1 - 2 * iqr;
+
+        double minRegular = Double.POSITIVE_INFINITY;
+        double maxRegular = Double.NEGATIVE_INFINITY;
+        double minOutlier = Double.POSITIVE_INFINITY;
+        double maxOutlier = Double.NEGATIVE_INFINITY;
+        List<Double> outliers = new ArrayList<>();
+        for (double value : values) {
+            if (value > upperOutlier) {
+                outliers.add(value);
+                if (value <= upperFarout) {
+                    maxOutlier = Math.max(maxOutlier, value);
+                }
+            } else if (value < lowerOutlier) {
+                outliers.add(value);
+                if (value >= lowerFarout) {
+                    minOutlier = Math.min(minOutlier, value);
+                }
+            } else {
+                minRegular = Math.min(minRegular, value);
+                maxRegular = Math.max(maxRegular, value);
+            }
+        }
+        minOutlier = Math.min(minOutlier, minRegular);
+        maxOutlier = Math.max(maxOutlier, maxRegular);
+
+        DefaultBoxAndWhiskerCategoryDataset dataset = new DefaultBoxAndWhiskerCategoryDataset();
+        dataset.add(new BoxAndWhiskerItem(mean, median, q1, q3, minRegular, maxRegular, minOutlier, maxOutlier, outliers),
+                "Series", column.getName());
+        return createBoxPlot(column.getName(), dataset);
+    }
+
+    // Median of sorted[from..to] (both inclusive)
+    private static double median(double[] sorted, int from, int to) {
+        int count = to - from + 1;
+        int middle = from + (count - 1) / 2;
+        return count % 2 == 1 ? sorted[middle] : (sorted[middle] + sorted[middle + 1]) / 2.0;
+    }
+
+    // Same box plot from a sketch: quartiles interpolated in the bins, and like BoxAndWhiskerCalculator the whiskers
+    // end at the furthest value within 1.5 IQR, everything past them is an outlier (one dot per bin)
+    private JFreeChart createBoxPlot(String columnName, NumericSketch sketch) {
+        double q1 = sketch.quantile(0.25);
+        double median = sketch.quantile(0.5);
+        double q3 = sketch.quantile(0.75);
+        double lowerFence = q1 - 1.5 * (q3 - q1);
+        double upperFence = q3 + 1.5 * (q3 - q1);
+
+        double minRegular = q1;
+        double maxRegular = q3;
+        List<Double> outliers = new ArrayList<>();
+        for (int bin = 0; bin < NumericSketch.BINS; bin++) {
+            if (sketch.binCount(bin) == 0) {
+                continue;
+            }
+            double center = sketch.binCenter(bin);
+            if (center < lowerFence || center > upperFence) {
+                outliers.add(center);
+            } else {
+                minRegular = Math.min(minRegular, center);
+                maxRegular = Math.max(maxRegular, center);
+            }
+        }
+        // the exact extremes beat a bin center whenever they are inside the fences
+        if (sketch.getMin() >= lowerFence) {
+            minRegular = sketch.getMin();
+        }
+        if (sketch.getMax() <= upperFence) {
+            maxRegular = sketch.getMax();
+        }
+
+        DefaultBoxAndWhiskerCategoryDataset dataset = new DefaultBoxAndWhiskerCategoryDataset();
+        dataset.add(new BoxAndWhiskerItem(sketch.getMean(), median, q1, q3, minRegular, maxRegular,
+                sketch.getMin(), sketch.getMax(), outliers), "Series", columnName);
+        return createBoxPlot(columnName, dataset);
+    }
 
+    private JFreeChart createBoxPlot(String columnName, DefaultBoxAndWhiskerCategoryDataset dataset) {
         JFreeChart chart = ChartFactory.createBoxAndWhiskerChart(
                 columnName + " Distribution",
                 columnName,
@@ -221,10 +799,7 @@ public class ChartGenerator {
 
 
     // Creates a histogram showing distribution of numeric values, groups continuous numeric data into bins/ranges
-    private JFreeChart createHistogram(String columnName, List<CSVRecord> records) {
-        // Extract numeric values from the column
-        List<Double> numericValues = extractNumericValues(columnName, records);
-
+    private JFreeChart createHistogram(String columnName, List<Double> numericValues) {
         // The HistogramDataset class requires a primitive array (double[]), not a List.
         double[] values = numericValues.stream().mapToDouble(Double::doubleValue).toArray();
 
@@ -236,7 +811,7 @@ public class ChartGenerator {
 
         // Create histogram dataset with 10 bins
         HistogramDataset dataset = new HistogramDataset();
-        dataset.addSeries(columnName, values, 10);
+        dataset.addSeries(columnName, values, HISTOGRAM_BINS);
 
         return ChartFactory.createHistogram(
                 columnName + " Distribution",
@@ -249,6 +824,138 @@ public class ChartGenerator {
                 false);
     }
 
+    // Same histogram for a columnar column: two passes over the vector (range, then bin counts), so only the
+    // HISTOGRAM_BINS counters live on the heap
+    private JFreeChart createHistogram(ColumnVector column) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < column.size(); row++) {
+            if (column.getCode(row) == ColumnVector.NUMERIC) {
+                double value = column.getNumber(row);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+
+        if (column.getNumericCount() == 0) {
+            throw new IllegalArgumentException(
+                    "No numeric values found in column: " + column.getName());
+        }
+
+        StreamingHistogram histogram = new StreamingHistogram(min, max);
+        for (int row = 0; row < column.size(); row++) {
+            if (column.getCode(row) == ColumnVector.NUMERIC) {
+                histogram.add(column.getNumber(row));
+            }
+        }
+        return createHistogram(column.getName(), histogram);
+    }
+
+
+    // And for an out-of-core column: the same two passes, over the column file
+    private JFreeChart createHistogram(SpilledColumn column) throws IOException {
+        if (column.getNumericCount() == 0) {
+            throw new IllegalArgumentException(
+                    "No numeric values found in column: " + column.getName());
+        }
+
+        double[] range = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        column.forEachCell(new SpilledColumn.CellVisitor() {
+            @Override
+            public void number(double value) {
+                range[0] = Math.min(range[0], value);
+                range[1] = Math.max(range[1], value);
+            }
+
+            @Override
+            public void text(String value) {
+            }
+        });
+
+        StreamingHistogram histogram = new StreamingHistogram(range[0], range[1]);
+        column.forEachCell(new SpilledColumn.CellVisitor() {
+            @Override
+            public void number(double value) {
+                histogram.add(value);
+            }
+
+            @Override
+            public void text(String value) {
+            }
+        });
+        return createHistogram(column.getName(), histogram);
+    }
+
+
+    // One pass over the column file into a fixed size sketch, exact while the column has at most NumericSketch.BINS numbers
+    private JFreeChart createBoxPlot(SpilledColumn column) throws IOException {
+        if (column.getNumericCount() == 0) {
+            throw new IllegalArgumentException(
+                    "No numeric values found in column: " + column.getName());
+        }
+
+        NumericSketch sketch = new NumericSketch();
+        column.forEachCell(new SpilledColumn.CellVisitor() {
+            @Override
+            public void number(double value) {
+                sketch.add(value);
+            }
+
+            @Override
+            public void text(String value) {
+            }
+        });
+        return createChartFromSketch(column.getName(), sketch, ChartType.BOX_PLOT);
+    }
+
+
+    private JFreeChart createHistogram(String columnName, StreamingHistogram histogram) {
+        SimpleHistogramDataset dataset = new SimpleHistogramDataset(columnName);
+        dataset.setAdjustForBinSize(false); // plain counts, like HistogramDataset's default
+        for (int i = 0; i < HISTOGRAM_BINS; i++) {
+            SimpleHistogramBin bin = new SimpleHistogramBin(histogram.lowerBound(i), histogram.lowerBound(i + 1), true, i == HISTOGRAM_BINS - 1);
+            bin.setItemCount((int) Math.min(Integer.MAX_VALUE, histogram.counts[i]));
+            dataset.addBin(bin);
+        }
+
+        return ChartFactory.createHistogram(
+                columnName + " Distribution",
+                columnName,
+                "Frequency",
+                dataset,
+                PlotOrientation.VERTICAL,
+                false,
+                true,
+                false);
+    }
+
+
+    // Bin counts for a known range, split like HistogramDataset does: equal widths, the max goes in the last bin
+    private static class StreamingHistogram {
+        private final double min;
+        private final double width;
+        private final long[] counts = new long[HISTOGRAM_BINS]; // long, an out-of-core column can have more rows than an int
+
+        StreamingHistogram(double min, double max) {
+            this.min = max > min ? min : min - 0.5; // one value only, give it a bin of width 1 around it
+            this.width = max > min ? (max - min) / HISTOGRAM_BINS : 1.0;
+        }
+
+        void add(double value) {
+            add(value, 1);
+        }
+
+        // value must be within the range, n values at once (a bin of a NumericSketch)
+        void add(double value, long n) {
+            int bin = (int) ((value - min) / width);
+            counts[Math.min(bin, HISTOGRAM_BINS - 1)] += n;
+        }
+
+        double lowerBound(int bin) {
+            return min + bin * width;
+        }
+    }
+
     // Creates a scatter plot showing correlation between two numeric columns
     private JFreeChart createScatterPlot(String xColumnName, String yColumnName, List<CSVRecord> records) {
         XYSeries series = new XYSeries("Data Points");
@@ -293,11 +1000,126 @@ public class ChartGenerator {
     }
 
 
+    // approximate pie/donut, the slices are the scaled estimates, the uncertainty goes in the subtitle
+    private JFreeChart createApproximatePieChart(String columnName, Map<String, ApproximateCount> counts, boolean donut) {
+        DefaultPieDataset<String> dataset = new DefaultPieDataset<>();
+        for (Map.Entry<String, ApproximateCount> entry : counts.entrySet()) {
+            dataset.setValue(entry.getKey(), entry.getValue().getEstimate());
+        }
+
+        if (donut) {
+            return ChartFactory.createRingChart(columnName + " Distribution", dataset, true, true, false);
+        }
+        return ChartFactory.createPieChart(columnName + " Distribution", dataset, true, true, false);
+    }
+
+
+    // approximate bar/horizontal bar/line chart, each value drawn as estimate ± margin
+    private JFreeChart createApproximateCategoryChart(String columnName, Map<String, ApproximateCount> counts, ChartType chartType) {
+        DefaultStatisticalCategoryDataset dataset = new DefaultStatisticalCategoryDataset();
+        for (Map.Entry<String, ApproximateCount> entry : counts.entrySet()) {
+            // the renderers draw "mean ± standard deviation", so we hand them the CI half width as the deviation
+            dataset.add(entry.getValue().getEstimate(), entry.getValue().getMargin(), "Frequency", entry.getKey());
+        }
+
+        JFreeChart chart;
+        CategoryPlot plot;
+
+        if (chartType == ChartType.LINE_CHART) {
+            chart = ChartFactory.createLineChart(columnName + " Trend", columnName, "Count", dataset,
+                    PlotOrientation.VERTICAL, false, true, false);
+            plot = chart.getCategoryPlot();
+            plot.setRenderer(new StatisticalLineAndShapeRenderer(true, true));
+        } else if (chartType == ChartType.HORIZONTAL_BAR) {
+            chart = ChartFactory.createBarChart(columnName + " Frequency", "Count", columnName, dataset,
+                    PlotOrientation.HORIZONTAL, false, true, false);
+            plot = chart.getCategoryPlot();
+            plot.setRenderer(new StatisticalBarRenderer());
+        } else {
+            chart = ChartFactory.createBarChart(columnName + " Frequency", columnName, "Count", dataset,
+                    PlotOrientation.VERTICAL, false, true, false);
+            plot = chart.getCategoryPlot();
+            plot.setRenderer(new StatisticalBarRenderer());
+        }
+
+        return chart;
+    }
+
+
+    // approximate histogram, bins are built from the sample and each bin count is scaled with its own error bar
+    private JFreeChart createApproximateHistogram(String columnName, List<Double> values, int sampleSize, long population) {
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "No numeric values found in column: " + columnName);
+        }
+
+        double min = Collections.min(values);
+        double max = Collections.max(values);
+        double width = (max - min) / HISTOGRAM_BINS;
+
+        int[] binCounts = new int[HISTOGRAM_BINS];
+        for (double value : values) {
+            int bin = width == 0 ? 0 : (int) ((value - min) / width);
+            binCounts[Math.min(bin, HISTOGRAM_BINS - 1)]++; // the max value belongs in the last bin
+        }
+
+        // LinkedHashMap keeps the bins in order along the x-axis
+        Map<String, Integer> bins = new LinkedHashMap<>();
+        for (int i = 0; i < HISTOGRAM_BINS; i++) {
+            bins.put(String.format("%.2f-%.2f", min + i * width, min + (i + 1) * width), binCounts[i]);
+        }
+
+        DefaultStatisticalCategoryDataset dataset = new DefaultStatisticalCategoryDataset();
+        for (Map.Entry<String, ApproximateCount> entry : scaleCounts(bins, sampleSize, population).entrySet()) {
+            dataset.add(entry.getValue().getEstimate(), entry.getValue().getMargin(), "Frequency", entry.getKey());
+        }
+
+        JFreeChart chart = ChartFactory.createBarChart(columnName + " Distribution", columnName, "Frequency", dataset,
+                PlotOrientation.VERTICAL, false, true, false);
+        StatisticalBarRenderer renderer = new StatisticalBarRenderer();
+        renderer.setItemMargin(0.0);
+        chart.getCategoryPlot().setRenderer(renderer);
+        return chart;
+    }
+
+
+    /*
+     * Scales sample counts up to the whole file. For a value seen c times in n sampled rows out of N:
+     *     p = c / n,  estimate = N * p,  margin = 1.96 * N * sqrt(p(1-p)/n * (N-n)/(N-1))
+     * The last factor (finite population correction) shrinks the interval to 0 as the sample approaches the file.
+     */
+    private Map<String, ApproximateCount> scaleCounts(Map<String, Integer> sampleCounts, int sampleSize, long population) {
+        Map<String, ApproximateCount> scaled = new LinkedHashMap<>();
+        double fpc = population > 1 ? (double) (population - sampleSize) / (population - 1) : 0;
+
+        for (Map.Entry<String, Integer> entry : sampleCounts.entrySet()) {
+            double p = (double) entry.getValue() / sampleSize;
+            double margin = Z_95 * population * Math.sqrt(p * (1 - p) / sampleSize * Math.max(0, fpc));
+            scaled.put(entry.getKey(), new ApproximateCount(population * p, margin));
+        }
+        return scaled;
+    }
+
+    // widest confidence interval, as a percentage of all rows, used to describe pie charts in one number
+    private double maxMarginPercent(Map<String, ApproximateCount> counts, long population) {
+        double maxMargin = 0;
+        for (ApproximateCount count : counts.values()) {
+            maxMargin = Math.max(maxMargin, count.getMargin());
+        }
+        return 100.0 * maxMargin / population;
+    }
+
+
     // Helper: Counts frequency of each value in a column
-    private Map<String, Integer> countValueFrequency(String columnName, List<CSVRecord> records) {
+    private Map<String, Integer> countValueFrequency(String columnName, List<CSVRecord> records, ProgressListener listener) {
         Map<String, Integer> frequency = new HashMap<>();
 
+        int row = 0;
         for (CSVRecord record : records) {
+            if (++row % PROGRESS_EVERY_ROWS == 0) {
+                listener.checkCancelled();
+                listener.progress("Counting", row, records.size(), row);
+            }
             String value = record.get(columnName);
 
             if (value == null || value.trim().isEmpty()) {
@@ -313,10 +1135,15 @@ public class ChartGenerator {
 
 
     // Helper: Extracts numeric values from a column
-    private List<Double> extractNumericValues(String columnName, List<CSVRecord> records) {
+    private List<Double> extractNumericValues(String columnName, List<CSVRecord> records, ProgressListener listener) {
         List<Double> values = new ArrayList<>();
 
+        int row = 0;
         for (CSVRecord record : records) {
+            if (++row % PROGRESS_EVERY_ROWS == 0) {
+                listener.checkCancelled();
+                listener.progress("Counting", row, records.size(), row);
+            }
             String value = record.get(columnName);
 
             if (value == null || value.trim().isEmpty()) {
@@ -335,10 +1162,69 @@ public class ChartGenerator {
     }
 
 
-    // Saves a chart as a PNG file
-    private void saveChart(JFreeChart chart, String outputPath) throws IOException {
+    // Helper: Counts frequency of each value in a columnar column, text by dictionary code and numbers by value.
+    // The original text of numbers isn't kept, they are labelled by ColumnStats.formatNumber
+    private Map<String, Integer> countValueFrequency(ColumnVector column) {
+        int[] codeCounts = new int[column.getDictionary().size()];
+        Map<Double, Integer> numberCounts = new HashMap<>();
+
+        for (int row = 0; row < column.size(); row++) {
+            int code = column.getCode(row);
+            if (code == ColumnVector.NUMERIC) {
+                numberCounts.merge(column.getNumber(row), 1, Integer::sum);
+            } else if (code != ColumnVector.NULL) {
+                codeCounts[code]++;
+            }
+        }
+
+        Map<String, Integer> frequency = new HashMap<>();
+        for (int code = 0; code < codeCounts.length; code++) {
+            frequency.put(column.getDictionary().get(code), codeCounts[code]);
+        }
+        for (Map.Entry<Double, Integer> entry : numberCounts.entrySet()) {
+            frequency.merge(ColumnStats.formatNumber(entry.getKey()), entry.getValue(), Integer::sum);
+        }
+        return frequency;
+    }
+
+    // Helper: Extracts numeric values from a columnar column
+    // The numbers of a columnar column as a sorted primitive array, 8 bytes per value instead of a boxed Double
+    private double[] sortedNumericValues(ColumnVector column) {
+        double[] values = new double[column.getNumericCount()];
+        int count = 0;
+        for (int row = 0; row < column.size(); row++) {
+            if (column.getCode(row) == ColumnVector.NUMERIC) {
+                values[count++] = column.getNumber(row);
+            }
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+
+    // PIE_CHART -> "Pie chart", for error messages
+    private String formatName(ChartType chartType) {
+        String name = chartType.toString().replace("_", " ").toLowerCase();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+
+    // Saves a chart as a PNG file. Same as ChartUtils.saveChartAsPNG, in two steps so that drawing and
+    // PNG encoding are measured separately
+    private void saveChart(JFreeChart chart, String outputPath, String columnName, ChartType chartType) throws IOException {
         File outputFile = new File(outputPath);
-        ChartUtils.saveChartAsPNG(outputFile, chart, CHART_WIDTH, CHART_HEIGHT);
+
+        BufferedImage image;
+        try (Phase phase = phase("render", columnName, chartType)) {
+            image = chart.createBufferedImage(CHART_WIDTH, CHART_HEIGHT);
+            phase.bytes((long) image.getWidth() * image.getHeight() * 4); // the pixels drawn, 4 bytes each
+        }
+        try (Phase phase = phase("encode", columnName, chartType);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            ChartUtils.writeBufferedImageAsPNG(out, image);
+            out.flush();
+            phase.bytes(outputFile.length());
+        }
         System.out.println("✅ Chart saved to: " + outputFile.getAbsolutePath());
     }
 }
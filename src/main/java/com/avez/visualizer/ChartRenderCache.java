@@ -0,0 +1,258 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.ChartType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * On-disk cache of rendered charts, so a chart whose inputs haven't changed is copied instead of re-rendered.
+ *
+ * Content addressed: a PNG is stored under the SHA-256 of everything that decides how it looks
+ * (dataset fingerprint, column, chart type, options and image size), so an identical request finds it whatever
+ * the output file is called, and a changed input simply gets a new key. Nothing is ever invalidated.
+ *
+ * The cache directory is capped in bytes. When a new PNG pushes it over the cap, the least recently used
+ * PNGs (by modification time, which a hit refreshes) are deleted until it fits again.
+ */
+public class ChartRenderCache {
+
+    // What actually draws the chart on a miss, e.g. path -> chartGenerator.generateChart(..., path)
+    public interface Renderer {
+        void render(String outputPath) throws IOException;
+    }
+
+    private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final int KEY_VERSION = 1; // bump when ChartGenerator draws differently, old PNGs then just age out
+
+    private final Path directory;
+    private final long maxBytes;
+    private long totalBytes;
+
+    // file -> {size, lastModified, ...} and its content hash, so several charts of one file only hash it once
+    private final Map<String, String[]> fileFingerprints = new ConcurrentHashMap<>();
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    // ~/.data-visualiser/chart-cache, 256 MB
+    public ChartRenderCache() throws IOException {
+        this(Paths.get(System.getProperty("user.home"), ".data-visualiser", "chart-cache"), DEFAULT_MAX_BYTES);
+    }
+
+    public ChartRenderCache(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+
+        for (Path png : listEntries()) {
+            totalBytes += Files.size(png); // left over from earlier runs
+        }
+    }
+
+
+    /**
+     * Writes the chart to outputPath, copying it from the cache when the same chart was rendered before and
+     * rendering (then caching) it otherwise.
+     *
+     * @param datasetFingerprint Identifies the data the chart is made from, see fingerprint()
+     * @param column             Column name
+     * @param chartType          Type of chart
+     * @param options            Anything else that changes the picture (e.g. the storage mode), "" if nothing
+     * @param outputPath         Where the PNG has to end up
+     * @param renderer           Draws the chart on a miss
+     * @return true if it came from the cache
+     * @throws IOException If rendering or copying fails
+     */
+    public boolean render(String datasetFingerprint, String column, ChartType chartType, String options,
+            String outputPath, Renderer renderer) throws IOException {
+        Path entry = directory.resolve(key(datasetFingerprint, column, chartType, options) + ".png");
+        Path output = Paths.get(outputPath);
+
+        if (Files.isRegularFile(entry)) {
+            try {
+                Files.copy(entry, output, StandardCopyOption.REPLACE_EXISTING);
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis())); // recently used again
+                synchronized (this) {
+                    hits++;
+                }
+                System.out.println("✅ Chart saved to: " + output.toAbsolutePath() + " (unchanged, from render cache)");
+                return true;
+            } catch (IOException e) {
+                // evicted by another process in between, just render it
+            }
+        }
+
+        synchronized (this) {
+            misses++;
+        }
+        renderer.render(outputPath);
+        store(entry, output);
+        return false;
+    }
+
+
+    /**
+     * Fingerprint of a file's content: the SHA-256 of its bytes. Reading a file is much cheaper than parsing it and
+     * drawing the chart, and a nightly export that rewrote the file with the same data still gets the same value.
+     * Remembered per size and modification time, so it's computed once per file version.
+     *
+     * @throws IOException If the file cannot be read
+     */
+    public String fingerprint(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        String version = file.length() + ":" + file.lastModified();
+
+        String[] known = fileFingerprints.get(path);
+        if (known != null && known[0].equals(version)) {
+            return known[1];
+        }
+
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String hash = toHex(digest.digest());
+        fileFingerprints.put(path, new String[] { version, hash });
+        return hash;
+    }
+
+
+    // SHA-256 over every input of the chart, with a separator so ("ab", "c") and ("a", "bc") differ
+    static String key(String datasetFingerprint, String column, ChartType chartType, String options) {
+        MessageDigest digest = newDigest();
+        String[] parts = {
+                String.valueOf(KEY_VERSION), datasetFingerprint, column, chartType.toString(), options,
+                ChartGenerator.CHART_WIDTH + "x" + ChartGenerator.CHART_HEIGHT
+        };
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+
+    // Copies a freshly rendered PNG into the cache, then evicts the oldest entries if it's over the cap
+    private void store(Path entry, Path rendered) throws IOException {
+        long size = Files.size(rendered);
+        if (size > maxBytes) {
+            return; // would never fit
+        }
+
+        // copy to a temp name and rename, so a concurrent render() never copies a half written entry
+        Path temp = Files.createTempFile(directory, "render-", ".tmp");
+        try {
+            Files.copy(rendered, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        synchronized (this) {
+            totalBytes += size;
+            if (totalBytes > maxBytes) {
+                evict();
+            }
+        }
+    }
+
+    // deletes least recently used entries until the cache is back under the cap
+    private void evict() throws IOException {
+        List<Path> entries = listEntries();
+        List<long[]> times = new ArrayList<>(); // {lastModified, index}, read once, it changes under a concurrent hit
+        long bytes = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            times.add(new long[] { Files.getLastModifiedTime(entries.get(i)).toMillis(), i });
+            bytes += Files.size(entries.get(i));
+        }
+        totalBytes = bytes; // resync, another process may share the directory
+        times.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        for (long[] time : times) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            Path oldest = entries.get((int) time[1]);
+            long size = Files.size(oldest);
+            if (Files.deleteIfExists(oldest)) {
+                totalBytes -= size;
+                evictions++;
+            }
+        }
+    }
+
+    private List<Path> listEntries() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.png")) {
+            for (Path path : stream) {
+                entries.add(path);
+            }
+        }
+        return entries;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // every JVM has to ship it
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
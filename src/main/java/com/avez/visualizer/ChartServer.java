@@ -0,0 +1,440 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.CachedDataset;
+import com.avez.visualizer.model.ChartRecommendation;
+import com.avez.visualizer.model.ChartType;
+import com.avez.visualizer.model.ColumnInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Server mode: the same load / analyze / recommend / render steps as the CLI, over HTTP, for other tools.
+ * Built on the JDK's own com.sun.net.httpserver and bound to the loopback address only.
+ *
+ *   POST /datasets?path=/data/sales.csv                       load a CSV, returns its id
+ *   GET  /datasets/{id}/columns                               the ColumnInfo of every column
+ *   GET  /datasets/{id}/recommendations?column=Region         the ChartRecommendations of a column
+ *   GET  /datasets/{id}/chart?column=Region&type=PIE_CHART    the chart as PNG bytes (type defaults to the top recommendation)
+ *
+ * Every request runs on its own virtual thread, so a slow render doesn't hold up cheap requests. Renders are
+ * what take memory (a chart of a big column holds its values and the image), so at most RENDER_PERMITS of them
+ * run at once and the rest wait for a permit, up to RENDER_WAIT_SECONDS, before getting a 503. Loads hold a file's
+ * rows while parsing, so they get LOAD_PERMITS the same way.
+ *
+ * The parsed rows of a dataset live only in the DatasetCache, under its byte budget like the CLI's, the server
+ * itself keeps just the column analysis and the fingerprint per id. A dataset the cache evicted (or one bigger
+ * than the whole cache) is read again when a chart of it is asked for.
+ * Identical chart requests that arrive while one is already rendering share that render (SingleFlight),
+ * GET /metrics shows how many were collapsed that way.
+ */
+public class ChartServer implements AutoCloseable {
+
+    private static final int RENDER_PERMITS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final long RENDER_WAIT_SECONDS = 30;
+    private static final int LOAD_PERMITS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+    private static final long LOAD_WAIT_SECONDS = 60;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore renderPermits = new Semaphore(RENDER_PERMITS);
+    private final Semaphore loadPermits = new Semaphore(LOAD_PERMITS);
+
+    private final CSVReader csvReader = new CSVReader();
+    private final CSVAnalyzer csvAnalyzer = new CSVAnalyzer();
+    private final ChartRecommender chartRecommender = new ChartRecommender();
+    private final ChartGenerator chartGenerator = new ChartGenerator();
+    private final DatasetCache datasetCache = new DatasetCache();
+    private final ChartRenderCache renderCache;
+    private final SingleFlight<byte[]> chartFlights = new SingleFlight<>();
+    private final SingleFlight<LoadedDataset> loadFlights = new SingleFlight<>(); // concurrent loads of one file parse it once
+
+    // id -> what is known about a loaded dataset, and canonical path -> id so loading the same file again keeps its id
+    private final Map<String, ServedDataset> datasets = new ConcurrentHashMap<>();
+    private final Map<String, String> idsByPath = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    public ChartServer(int port) throws IOException {
+        this.renderCache = new ChartRenderCache();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0); // localhost only
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/datasets", this::handle);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println(UIRenderer.getIcon("graph") + " Chart server listening on http://localhost:" + getPort()
+                + " (" + RENDER_PERMITS + " concurrent renders)");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1); // let running requests finish, for at most a second
+        executor.shutdown();
+    }
+
+
+    // Routes /datasets[/{id}/{what}] and turns exceptions into status codes
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] parts = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            // parts = ["", "datasets"] or ["", "datasets", id, what]
+            if (parts.length == 2) {
+                requireMethod(method, "POST");
+                sendJson(exchange, 200, loadDataset(query.get("path")));
+            } else if (parts.length == 4) {
+                requireMethod(method, "GET");
+                ServedDataset dataset = datasets.get(parts[2]);
+                if (dataset == null) {
+                    throw new FileNotFoundException("No dataset with id " + parts[2] + ", load it first with POST /datasets?path=...");
+                }
+                switch (parts[3]) {
+                    case "columns":
+                        sendJson(exchange, 200, columnsJson(dataset.columnInfos));
+                        break;
+                    case "recommendations":
+                        sendJson(exchange, 200, recommendationsJson(recommend(dataset, query.get("column"))));
+                        break;
+                    case "chart":
+                        byte[] png = renderChart(dataset, query.get("column"), query.get("type"));
+                        exchange.getResponseHeaders().set("Content-Type", "image/png");
+                        send(exchange, 200, png);
+                        break;
+                    default:
+                        throw new FileNotFoundException("Unknown endpoint: " + parts[3]);
+                }
+            } else {
+                throw new FileNotFoundException("Unknown endpoint: " + exchange.getRequestURI().getPath());
+            }
+
+        } catch (FileNotFoundException e) {
+            sendError(exchange, 404, e.getMessage());
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (MethodNotAllowedException e) {
+            sendError(exchange, 405, e.getMessage());
+        } catch (ServerBusyException e) {
+            sendError(exchange, 503, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            sendError(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+
+    // {"chartRequests", "renders", "collapsed", "inFlight", ...} since the server started
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            String json = "{\"chartRequests\":" + chartFlights.getRequests()
+                    + ",\"renders\":" + chartFlights.getExecutions()
+                    + ",\"collapsed\":" + chartFlights.getCollapsed()
+                    + ",\"inFlight\":" + chartFlights.getInFlight()
+                    + ",\"renderCacheHits\":" + renderCache.getHits()
+                    + ",\"renderCacheMisses\":" + renderCache.getMisses()
+                    + ",\"freeRenderPermits\":" + renderPermits.availablePermits()
+                    + ",\"freeLoadPermits\":" + loadPermits.availablePermits()
+                    + ",\"cachedDatasetMB\":" + datasetCache.getTotalBytes() / (1024 * 1024)
+                    + ",\"datasets\":" + datasets.size() + "}";
+            sendJson(exchange, 200, json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+
+    // Loads (or re-uses) a dataset and analyzes its columns, returns {"id", "rows", "columns"}
+    private String loadDataset(String path) throws IOException {
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("Missing query parameter: path");
+        }
+        File file = new File(path);
+        if (!file.isFile()) {
+            throw new FileNotFoundException("Not a file: " + path);
+        }
+
+        LoadedDataset loaded = load(file);
+        return "{\"id\":\"" + loaded.served.id + "\",\"rows\":" + loaded.data.getRowCount()
+                + ",\"columns\":" + loaded.data.getColumnCount() + "}";
+    }
+
+    // Parses and analyzes the file (or takes it from the DatasetCache) holding a load permit, and serves it
+    // under its id from now on. Loads of the same file that overlap share one parse
+    private LoadedDataset load(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        return loadFlights.execute(path, () -> {
+            acquire(loadPermits, LOAD_WAIT_SECONDS, "Too many datasets being loaded, try again later");
+            try {
+                // fingerprinted before reading: if the file changes while it's parsed, the check below notices
+                long size = file.length();
+                long lastModified = file.lastModified();
+                String fingerprint = renderCache.fingerprint(file);
+
+                CSVData data;
+                List<ColumnInfo> columnInfos;
+                CachedDataset cached = datasetCache.get(path);
+                if (cached != null && cached.getColumnInfos() != null) {
+                    data = cached.getData();
+                    columnInfos = cached.getColumnInfos();
+                } else {
+                    data = csvReader.readCSV(path);
+                    columnInfos = csvAnalyzer.analyzeColumns(data);
+                    if (file.length() != size || file.lastModified() != lastModified) {
+                        throw new IOException(file.getName() + " changed while it was being loaded, load it again");
+                    }
+                    datasetCache.put(path, data, columnInfos);
+                }
+
+                String id = idsByPath.computeIfAbsent(path, p -> String.valueOf(nextId.getAndIncrement()));
+                ServedDataset served = new ServedDataset(id, path, fingerprint, size, lastModified, columnInfos);
+                datasets.put(id, served); // replaces the old version
+                return new LoadedDataset(served, data);
+            } finally {
+                loadPermits.release();
+            }
+        });
+    }
+
+    // The rows of a served dataset: from the DatasetCache while the file is the version that was served,
+    // otherwise the file is loaded again (and served in its new version, with a new fingerprint)
+    private LoadedDataset rows(ServedDataset dataset) throws IOException {
+        File file = new File(dataset.path);
+        if (file.length() == dataset.sizeBytes && file.lastModified() == dataset.lastModified) {
+            CachedDataset cached = datasetCache.get(dataset.path);
+            if (cached != null) {
+                return new LoadedDataset(dataset, cached.getData());
+            }
+        }
+        if (!file.isFile()) {
+            throw new FileNotFoundException("The file of dataset " + dataset.id + " is gone: " + dataset.path);
+        }
+        return load(file);
+    }
+
+    private List<ChartRecommendation> recommend(ServedDataset dataset, String column) throws FileNotFoundException {
+        return chartRecommender.recommendCharts(findColumn(dataset, column));
+    }
+
+
+    // Renders the chart, or waits for an identical render that is already running and returns its bytes
+    private byte[] renderChart(ServedDataset dataset, String column, String type) throws IOException {
+        File file = new File(dataset.path);
+        if (file.isFile() && (file.length() != dataset.sizeBytes || file.lastModified() != dataset.lastModified)) {
+            dataset = load(file).served; // rewritten since it was loaded, the chart is of what the file holds now
+        }
+        ServedDataset served = dataset;
+        ColumnInfo info = findColumn(served, column);
+        ChartType chartType;
+        if (type == null || type.isEmpty()) {
+            List<ChartRecommendation> recommendations = chartRecommender.recommendCharts(info);
+            chartType = recommendations.isEmpty() ? ChartType.BAR_CHART : recommendations.get(0).getChartType();
+        } else {
+            try {
+                chartType = ChartType.valueOf(type.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown chart type: " + type); // -> 400
+            }
+        }
+
+        // same inputs as the render cache key: dataset content, column, chart type, options and image size
+        String key = ChartRenderCache.key(served.fingerprint, info.getColumnName(), chartType, "records");
+        return chartFlights.execute(key, () -> renderWithPermit(served, info, chartType));
+    }
+
+    private static void acquire(Semaphore permits, long waitSeconds, String busyMessage) throws ServerBusyException {
+        try {
+            if (!permits.tryAcquire(waitSeconds, TimeUnit.SECONDS)) {
+                throw new ServerBusyException(busyMessage);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerBusyException("Interrupted while waiting for a permit");
+        }
+    }
+
+
+    // Renders into a temp file (through the render cache) and returns the bytes, holding a render permit meanwhile.
+    // The rows are only fetched on a cache miss, a cached chart of an evicted dataset doesn't re-read the file
+    private byte[] renderWithPermit(ServedDataset dataset, ColumnInfo info, ChartType chartType) throws IOException {
+        acquire(renderPermits, RENDER_WAIT_SECONDS, "Too many charts being rendered, try again later");
+
+        Path temp = Files.createTempFile("chart-", ".png");
+        try {
+            renderCache.render(dataset.fingerprint, info.getColumnName(), chartType, "records",
+                    temp.toString(),
+                    path -> {
+                        LoadedDataset loaded = rows(dataset);
+                        if (!loaded.served.fingerprint.equals(dataset.fingerprint)) {
+                            // the file changed again just now, its chart would be cached under the old fingerprint
+                            throw new IOException(new File(dataset.path).getName() + " changed while the chart was being drawn, ask again");
+                        }
+                        chartGenerator.generateChart(info.getColumnName(), loaded.data.getRecords(), chartType, path);
+                    });
+            return Files.readAllBytes(temp);
+        } finally {
+            renderPermits.release();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private ColumnInfo findColumn(ServedDataset dataset, String column) throws FileNotFoundException {
+        if (column == null || column.isEmpty()) {
+            throw new IllegalArgumentException("Missing query parameter: column");
+        }
+        for (ColumnInfo info : dataset.columnInfos) {
+            if (info.getColumnName().equalsIgnoreCase(column)) {
+                return info;
+            }
+        }
+        throw new FileNotFoundException("Column not found: " + column);
+    }
+
+
+    // JSON by hand, it's a few flat objects and not worth a dependency
+    private String columnsJson(List<ColumnInfo> columnInfos) {
+        StringBuilder json = new StringBuilder("[");
+        for (ColumnInfo info : columnInfos) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"name\":").append(Json.quote(info.getColumnName()))
+                    .append(",\"dataType\":").append(Json.quote(String.valueOf(info.getDataType())))
+                    .append(",\"totalValues\":").append(info.getTotalValues())
+                    .append(",\"uniqueValues\":").append(info.getUniqueValues())
+                    .append(",\"nullCount\":").append(info.getNullCount())
+                    .append(",\"estimated\":").append(info.isEstimated())
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private String recommendationsJson(List<ChartRecommendation> recommendations) {
+        StringBuilder json = new StringBuilder("[");
+        for (ChartRecommendation recommendation : recommendations) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"chartType\":").append(Json.quote(recommendation.getChartType().toString()))
+                    .append(",\"priority\":").append(recommendation.getPriority())
+                    .append(",\"reason\":").append(Json.quote(recommendation.getReason()))
+                    .append(",\"warning\":").append(recommendation.hasWarning() ? Json.quote(recommendation.getWarning()) : "null")
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static void requireMethod(String method, String expected) throws MethodNotAllowedException {
+        if (!method.equalsIgnoreCase(expected)) {
+            throw new MethodNotAllowedException(method + " not allowed here, use " + expected);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        send(exchange, status, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + Json.quote(message == null ? "Unknown error" : message) + "}");
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+
+    // What the server keeps per loaded dataset, the rows themselves are in the DatasetCache
+    private static class ServedDataset {
+        final String id;
+        final String path; // canonical
+        final String fingerprint; // content hash of the file when it was loaded, for the render cache
+        final long sizeBytes; // the version of the file that was loaded
+        final long lastModified;
+        final List<ColumnInfo> columnInfos;
+
+        ServedDataset(String id, String path, String fingerprint, long sizeBytes, long lastModified, List<ColumnInfo> columnInfos) {
+            this.id = id;
+            this.path = path;
+            this.fingerprint = fingerprint;
+            this.sizeBytes = sizeBytes;
+            this.lastModified = lastModified;
+            this.columnInfos = columnInfos;
+        }
+    }
+
+    // A served dataset with its rows, only held for the duration of one request
+    private static class LoadedDataset {
+        final ServedDataset served;
+        final CSVData data;
+
+        LoadedDataset(ServedDataset served, CSVData data) {
+            this.served = served;
+            this.data = data;
+        }
+    }
+
+    private static class MethodNotAllowedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class ServerBusyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ServerBusyException(String message) {
+            super(message);
+        }
+    }
+}
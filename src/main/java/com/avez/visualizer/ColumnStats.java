@@ -0,0 +1,177 @@
+package com.avez.visualizer;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Running counters for one column, fed one value at a time.
+ * CSVAnalyzer fills one of these per column in a single pass, and follow mode keeps them alive
+ * between polls so newly appended rows only add to the counts instead of recounting the whole file.
+ */
+public class ColumnStats {
+
+    // Common date formats to try when detecting dates
+    private static final List<DateTimeFormatter> DATE_FORMATTERS = Arrays.asList(
+            DateTimeFormatter.ofPattern("dd/MM/yyyy"),
+            DateTimeFormatter.ofPattern("MM/dd/yyyy"),
+            DateTimeFormatter.ofPattern("dd-MM-yyyy"),
+            DateTimeFormatter.ofPattern("yyyy/MM/dd"));
+
+    private final String columnName;
+    private final int maxTrackedValues; // once a column has more distinct values than this, we stop keeping exact counts
+
+    private int totalValues = 0;
+    private int nullCount = 0;
+    private int numericCount = 0;
+    private int dateCount = 0;
+    private int booleanCount = 0;
+    private int decimalCount = 0; // Tracks how many numeric values have decimals, used to determine the DataType of the column
+
+    private Map<String, Integer> frequency = new HashMap<>(); // exact value -> count, dropped when it grows past maxTrackedValues
+    private final HyperLogLog distinctSketch; // takes over once the exact table is dropped, null when counts are always exact
+
+    // Exact counts no matter how many distinct values there are (what the one-shot analysis wants)
+    public ColumnStats(String columnName) {
+        this(columnName, Integer.MAX_VALUE);
+    }
+
+    // Exact counts up to maxTrackedValues distinct values, a fixed size sketch after that (what long running modes want)
+    public ColumnStats(String columnName, int maxTrackedValues) {
+        this.columnName = columnName;
+        this.maxTrackedValues = maxTrackedValues;
+        this.distinctSketch = maxTrackedValues == Integer.MAX_VALUE ? null : new HyperLogLog();
+    }
+
+
+    // Adds one raw cell value, does the same cleaning and checks CSVAnalyzer always did
+    public void add(String value) {
+        totalValues++;
+
+        // First autmoatically eliminate the null values from further processing, then trim() leading/trailing spaces
+        if (value == null || value.trim().isEmpty()) {
+            nullCount++;
+            return;
+        }
+
+        value = value.trim();
+        if (distinctSketch != null) {
+            distinctSketch.add(value);
+        }
+        if (frequency != null) {
+            frequency.merge(value, 1, Integer::sum);
+            if (frequency.size() > maxTrackedValues) {
+                frequency = null; // too many to keep exactly, the sketch answers unique counts from now on
+            }
+        }
+
+        if (isNumeric(value)) {
+            numericCount++;
+
+            // IDs (postal codes, phone numbers) never have decimals, real quantities (prices, measurements) OFTEN do
+            if (value.contains(".")) {
+                decimalCount++;
+            }
+        }
+
+        if (isDate(value))
+            dateCount++;
+
+        if (isBoolean(value))
+            booleanCount++;
+    }
+
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public int getTotalValues() {
+        return totalValues;
+    }
+
+    public int getNullCount() {
+        return nullCount;
+    }
+
+    public int getValidValues() {
+        return totalValues - nullCount; // non-empty values in the column
+    }
+
+    public int getNumericCount() {
+        return numericCount;
+    }
+
+    public int getDateCount() {
+        return dateCount;
+    }
+
+    public int getBooleanCount() {
+        return booleanCount;
+    }
+
+    public int getDecimalCount() {
+        return decimalCount;
+    }
+
+    // exact while the frequency table is still kept, a HyperLogLog estimate afterwards
+    public int getUniqueValues() {
+        if (frequency != null) {
+            return frequency.size();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, distinctSketch.estimate());
+    }
+
+    public boolean isUniqueCountExact() {
+        return frequency != null;
+    }
+
+    // value -> count table, or null once the column had too many distinct values to keep it
+    public Map<String, Integer> getFrequency() {
+        return frequency;
+    }
+
+
+    // A parsed number written the way it would usually appear in a CSV ("2", not "2.0"), for charts and counts
+    // built from columns where only the number was kept
+    static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    static boolean isNumeric(String value) {
+        try {
+            Double.parseDouble(value);
+            return true; // Conversion succeeded
+        } catch (NumberFormatException e) {
+            return false; // Conversion failed
+        }
+    }
+
+    static boolean isDate(String value) {
+        for (DateTimeFormatter formatter : DATE_FORMATTERS) {
+            try {
+                LocalDate.parse(value, formatter);
+                return true;
+            } catch (DateTimeParseException e) {
+                // Try the next formatter
+            }
+        }
+        return false;
+    }
+
+    static boolean isBoolean(String value) {
+        String lower = value.toLowerCase();
+        return lower.equals("true") || lower.equals("false") ||
+                lower.equals("yes") || lower.equals("no") ||
+                lower.equals("1") || lower.equals("0") ||
+                lower.equals("t") || lower.equals("f");
+    }
+}
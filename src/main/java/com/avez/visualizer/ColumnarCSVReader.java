@@ -0,0 +1,130 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.ColumnVector;
+import com.avez.visualizer.model.ColumnarData;
+import com.avez.visualizer.model.HeapColumnVector;
+import com.avez.visualizer.model.OffHeapColumnVector;
+import com.avez.visualizer.model.WritableColumnVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads a CSV file straight into columns, without a CSVRecord or a String per cell.
+ * Numbers are parsed from the raw bytes (FastDoubleParser), everything else becomes a code into a per-column
+ * ByteDictionary, so a String is only ever created the first time a distinct value is seen.
+ * In steady state, loading a row of numeric cells allocates nothing besides the amortized array growth.
+ *
+ * With offHeap set, the cells go to OffHeapColumnVectors instead, so the heap doesn't grow with the file.
+ * The returned ColumnarData then owns the memory and must be closed.
+ */
+public class ColumnarCSVReader {
+
+    private final boolean offHeap;
+
+    public ColumnarCSVReader() {
+        this(false);
+    }
+
+    public ColumnarCSVReader(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public ColumnarData read(String filePath) throws IOException {
+        try (InputStream in = CSVReader.openInput(new File(filePath))) {
+            return read(in);
+        }
+    }
+
+    public ColumnarData read(InputStream in) throws IOException {
+        if (!offHeap) {
+            return read(in, null);
+        }
+
+        // shared so the data can be read from other threads than the loading one (GUI, background chart renders)
+        Arena arena = Arena.ofShared();
+        try {
+            return read(in, arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close(); // nobody else will ever get to free it
+            throw e;
+        }
+    }
+
+    private ColumnarData read(InputStream in, Arena arena) throws IOException {
+        ByteCSVTokenizer tokenizer = new ByteCSVTokenizer(in);
+        FastDoubleParser parser = new FastDoubleParser();
+
+        // Header row, these Strings are allocated once per file
+        List<String> headers = new ArrayList<>();
+        while (tokenizer.next()) {
+            headers.add(tokenizer.fieldAsString());
+            if (tokenizer.isEndOfRow()) {
+                break;
+            }
+        }
+        if (headers.isEmpty()) {
+            throw new IOException("The file is empty, no header row found");
+        }
+
+        int columnCount = headers.size();
+        ByteDictionary[] dictionaries = new ByteDictionary[columnCount];
+        WritableColumnVector[] vectors = new WritableColumnVector[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            dictionaries[c] = new ByteDictionary();
+            vectors[c] = arena == null
+                    ? new HeapColumnVector(headers.get(c), dictionaries[c].getValues())
+                    : new OffHeapColumnVector(headers.get(c), dictionaries[c].getValues(), arena);
+        }
+
+        int rowCount = 0;
+        int column = 0;
+        while (tokenizer.next()) {
+            // an empty line is one empty field that ends the row, commons-csv skips those too
+            if (column == 0 && tokenizer.isEndOfRow() && tokenizer.fieldLength() == 0) {
+                continue;
+            }
+
+            if (column < columnCount) {
+                appendCell(tokenizer, parser, dictionaries[column], vectors[column]);
+            } // extra fields beyond the header are ignored
+            column++;
+
+            if (tokenizer.isEndOfRow()) {
+                for (; column < columnCount; column++) {
+                    vectors[column].appendNull(); // short row, the missing cells are empty
+                }
+                column = 0;
+                rowCount++;
+            }
+        }
+
+        List<ColumnVector> columns = new ArrayList<>(columnCount);
+        for (WritableColumnVector vector : vectors) {
+            vector.trimToSize();
+            columns.add(vector);
+        }
+        return new ColumnarData(headers, columns, rowCount, arena);
+    }
+
+
+    private void appendCell(ByteCSVTokenizer tokenizer, FastDoubleParser parser, ByteDictionary dictionary, WritableColumnVector vector) {
+        byte[] buffer = tokenizer.buffer();
+        int offset = tokenizer.fieldOffset();
+        int length = tokenizer.fieldLength();
+
+        if (length == 0) {
+            vector.appendNull();
+        } else if (parser.parse(buffer, offset, length)) {
+            boolean binaryDigit = length == 1 && (buffer[offset] == '0' || buffer[offset] == '1');
+            vector.appendNumber(parser.getValue(), parser.hadDecimalPoint(), binaryDigit);
+        } else {
+            vector.appendCode(dictionary.lookupOrAdd(buffer, offset, length));
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package com.avez.visualizer;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+
+/**
+ * Reads gzip (.gz) and deflate (.deflate, .zz) files as if they were the plain CSV inside, without unpacking them
+ * to disk first.
+ *
+ * Decompression runs on its own thread and hands 256 KB chunks to the parser through a bounded queue, so inflating
+ * the next chunk overlaps with parsing this one, and the parser is never more than QUEUE_CHUNKS chunks behind.
+ *
+ * A gzip file made of many members (bgzip, pigz -i, or just cat a.gz b.gz) is inflated in parallel: the file is cut
+ * into ranges of about RANGE_BYTES at member headers, up to MAX_INFLATERS workers inflate one range each, and the
+ * ranges are queued in file order, at most MAX_INFLATERS + 1 of them in memory at once. A member header is only
+ * recognised by its first bytes, which can also turn up inside compressed data, so every range must end exactly where
+ * the next one starts (and every member's CRC must match). If a range runs past the next range's start, that start
+ * wasn't a real member, and the rest of the file is read on one thread. The same happens when a range inflates to more
+ * than MAX_RANGE_OUTPUT_BYTES (one huge member, or a false header with no real member after it), so a range never
+ * holds more than that on the heap.
+ */
+public class CompressedInput {
+
+    private static final int CHUNK_BYTES = 256 * 1024;
+    private static final int QUEUE_CHUNKS = 16; // at most 4 MB inflated ahead of the parser
+    private static final long RANGE_BYTES = 1024 * 1024; // compressed bytes per parallel task, ~5 MB of CSV
+    private static final int MAX_INFLATERS = 4; // a few cores inflate faster than one parser can take it
+    private static final long MAX_RANGE_OUTPUT_BYTES = 8 * RANGE_BYTES; // inflated bytes a range may hold, ~8x compression
+    private static final int PROBE_BYTES = 4 * 1024 * 1024; // a second member this early means the file is multi-member
+    private static final byte[] END = new byte[0]; // marks the end of the queue
+
+    private CompressedInput() {
+    }
+
+
+    // .gz / .gzip / .deflate / .zz by name, e.g. orders.csv.gz
+    public static boolean isCompressed(String path) {
+        return isGzip(path) || isDeflate(path);
+    }
+
+    private static boolean isGzip(String path) {
+        String name = path.toLowerCase(Locale.ROOT);
+        return name.endsWith(".gz") || name.endsWith(".gzip");
+    }
+
+    private static boolean isDeflate(String path) {
+        String name = path.toLowerCase(Locale.ROOT);
+        return name.endsWith(".deflate") || name.endsWith(".zz");
+    }
+
+
+    /**
+     * Opens the file and starts inflating it in the background. Closing the stream stops the decompression.
+     *
+     * @throws IOException If the file cannot be opened
+     */
+    public static InputStream open(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("File not found: " + file);
+        }
+        if (isDeflate(file.getName())) {
+            return new PipelinedStream(file.getName(), sink -> {
+                try (InputStream in = openDeflate(file)) {
+                    copy(in, sink);
+                }
+            });
+        }
+
+        int threads = Math.min(MAX_INFLATERS, Runtime.getRuntime().availableProcessors() - 1); // one core is left for the parser
+        if (threads > 1 && findMember(file, 1, Math.min(file.length(), PROBE_BYTES)) >= 0) {
+            return new PipelinedStream(file.getName(), sink -> inflateParallel(file, threads, sink));
+        }
+        return new PipelinedStream(file.getName(), sink -> inflateSequential(file, 0, sink));
+    }
+
+
+    /**
+     * The size of the file once inflated, for LoadPlanner. Measured from the compression ratio of the first
+     * 4 MB of output, exact for files smaller than that.
+     *
+     * @throws IOException If the file cannot be read
+     */
+    public static long estimateUncompressedBytes(File file) throws IOException {
+        try (CSVReader.CountingInputStream compressed = new CSVReader.CountingInputStream(new FileInputStream(file));
+             InputStream in = isDeflate(file.getName()) ? deflateStream(compressed) : new GZIPInputStream(compressed)) {
+            byte[] probe = in.readNBytes(PROBE_BYTES);
+            if (probe.length < PROBE_BYTES) {
+                return probe.length; // that was all of it
+            }
+            return Math.round((double) probe.length / Math.max(1, compressed.getCount()) * file.length());
+        }
+    }
+
+
+    // zlib (RFC 1950) if the first two bytes are a zlib header, raw deflate (RFC 1951) otherwise
+    private static InputStream openDeflate(File file) throws IOException {
+        return deflateStream(new FileInputStream(file));
+    }
+
+    private static InputStream deflateStream(InputStream raw) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(raw, 2);
+        byte[] head = in.readNBytes(2);
+        in.unread(head);
+        boolean zlib = head.length == 2 && (head[0] & 0x0F) == 8 && (((head[0] & 0xFF) << 8) | (head[1] & 0xFF)) % 31 == 0;
+        return new InflaterInputStream(in, new Inflater(!zlib), 64 * 1024);
+    }
+
+    // the whole file (or the rest of it, from a member boundary) on this thread, GZIPInputStream reads every member
+    private static void inflateSequential(File file, long offset, Sink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(offset);
+            try (InputStream in = new GZIPInputStream(Channels.newInputStream(channel), 64 * 1024)) {
+                copy(in, sink);
+            }
+        }
+    }
+
+    private static void copy(InputStream in, Sink sink) throws IOException {
+        while (true) {
+            byte[] chunk = in.readNBytes(CHUNK_BYTES);
+            if (chunk.length == 0) {
+                return;
+            }
+            sink.put(chunk);
+        }
+    }
+
+
+    // Cuts the file into ranges at member headers, inflates up to threads + 1 of them at a time, queues them in order
+    private static void inflateParallel(File file, int threads, Sink sink) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gzip-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long size = file.length();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Deque<Future<Range>> pending = new ArrayDeque<>();
+            long nextStart = 0;
+            long verified = 0; // everything before this was inflated from real member boundaries and queued
+
+            while (verified < size) {
+                while (pending.size() <= threads && nextStart < size) {
+                    long start = nextStart;
+                    long member = start + RANGE_BYTES < size ? findMember(channel, start + RANGE_BYTES, size) : -1;
+                    long end = member >= 0 ? member : size;
+                    pending.add(pool.submit(() -> inflateRange(channel, start, end)));
+                    nextStart = end;
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+
+                Range range = await(pending.poll());
+                if (range.chunks == null) {
+                    // inflated to more than a range may hold, the rest streams through the queue on this thread
+                    pending.forEach(future -> future.cancel(true));
+                    pending.clear();
+                    inflateSequential(file, verified, sink);
+                    return;
+                }
+                for (byte[] chunk : range.chunks) {
+                    sink.put(chunk);
+                }
+                verified = range.end;
+                if (range.end != range.expectedEnd && range.expectedEnd < size) {
+                    // the next range started at bytes that only looked like a header, finish on this thread
+                    pending.forEach(future -> future.cancel(true));
+                    pending.clear();
+                    if (verified < size) {
+                        inflateSequential(file, verified, sink);
+                    }
+                    return;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Range await(Future<Range> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while inflating");
+        }
+    }
+
+
+    // Inflates the members from start until one ends at or after end, checking each member's CRC and size.
+    // Gives up with no chunks once the output passes MAX_RANGE_OUTPUT_BYTES
+    private static Range inflateRange(FileChannel channel, long start, long end) throws IOException {
+        MemberInput in = new MemberInput(channel, start);
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        List<byte[]> chunks = new ArrayList<>();
+        byte[] out = new byte[CHUNK_BYTES];
+        int filled = 0;
+        long total = 0;
+
+        try {
+            while (in.position() < end) {
+                if (!in.skipHeader()) {
+                    if (end == channel.size()) {
+                        break; // padding or garbage after the last member, GZIPInputStream ignores it too
+                    }
+                    throw new ZipException("Not a gzip member at byte " + in.position());
+                }
+                inflater.reset();
+                crc.reset();
+                long memberBytes = 0;
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        in.feed(inflater);
+                    }
+                    int inflated = inflater.inflate(out, filled, out.length - filled);
+                    crc.update(out, filled, inflated);
+                    memberBytes += inflated;
+                    filled += inflated;
+                    total += inflated;
+                    if (total > MAX_RANGE_OUTPUT_BYTES) {
+                        return new Range(null, start, end);
+                    }
+                    if (filled == out.length) {
+                        chunks.add(out);
+                        out = new byte[CHUNK_BYTES];
+                        filled = 0;
+                    }
+                    if (inflated == 0 && inflater.needsDictionary()) {
+                        throw new ZipException("Corrupt gzip member before byte " + in.position());
+                    }
+                }
+                in.unread(inflater.getRemaining());
+                if (in.readIntLE() != (int) crc.getValue() || in.readIntLE() != (int) memberBytes) {
+                    throw new ZipException("Corrupt gzip member (CRC or size mismatch) before byte " + in.position());
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt gzip data before byte " + in.position() + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        if (filled > 0) {
+            chunks.add(Arrays.copyOf(out, filled));
+        }
+        return new Range(chunks, in.position(), end);
+    }
+
+
+    // Offset of the first gzip member header in [from, to), -1 if there is none
+    private static long findMember(File file, long from, long to) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return findMember(channel, from, to);
+        }
+    }
+
+    private static long findMember(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 10) {
+                return -1; // no room left for a header
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i + 10 <= read; i++) {
+                if (position + i >= to) {
+                    return -1;
+                }
+                if (looksLikeHeader(bytes, i)) {
+                    return position + i;
+                }
+            }
+            position += read - 9; // a header can straddle two reads
+        }
+        return -1;
+    }
+
+    // magic 1f 8b, method 8 (deflate), no reserved flags, a known extra-flags value. Also matches by chance, see above
+    private static boolean looksLikeHeader(byte[] bytes, int i) {
+        return bytes[i] == (byte) 0x1f && bytes[i + 1] == (byte) 0x8b && bytes[i + 2] == 8
+                && (bytes[i + 3] & 0xE0) == 0
+                && (bytes[i + 8] == 0 || bytes[i + 8] == 2 || bytes[i + 8] == 4);
+    }
+
+
+    // What a parallel task inflated: its chunks, where its last member really ended and where it was meant to end
+    private static class Range {
+        private final List<byte[]> chunks; // null if it inflated to too much to keep
+        private final long end;
+        private final long expectedEnd;
+
+        Range(List<byte[]> chunks, long end, long expectedEnd) {
+            this.chunks = chunks;
+            this.end = end;
+            this.expectedEnd = expectedEnd;
+        }
+    }
+
+
+    // Compressed bytes from a position in the file, 64 KB at a time, for inflating members by hand
+    private static class MemberInput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private long bufferStart; // file offset of buffer[0]
+
+        MemberInput(FileChannel channel, long position) {
+            this.channel = channel;
+            this.bufferStart = position;
+            buffer.limit(0);
+        }
+
+        long position() {
+            return bufferStart + buffer.position();
+        }
+
+        // skips a member header (RFC 1952 section 2.3), false if there is no header at this position
+        boolean skipHeader() throws IOException {
+            if (!fill(10)) {
+                return false;
+            }
+            int start = buffer.position();
+            if (!looksLikeHeader(buffer.array(), start)) {
+                return false;
+            }
+            int flags = buffer.get(start + 3);
+            buffer.position(start + 10);
+            if ((flags & 4) != 0) { // FEXTRA
+                int length = readByte() | readByte() << 8;
+                skip(length);
+            }
+            if ((flags & 8) != 0) { // FNAME
+                while (readByte() != 0) {
+                    // the original file name, not needed
+                }
+            }
+            if ((flags & 16) != 0) { // FCOMMENT
+                while (readByte() != 0) {
+                    // comment
+                }
+            }
+            if ((flags & 2) != 0) { // FHCRC
+                skip(2);
+            }
+            return true;
+        }
+
+        // gives the inflater whatever is buffered, reading more if nothing is
+        void feed(Inflater inflater) throws IOException {
+            if (!buffer.hasRemaining() && !fill(1)) {
+                throw new EOFException("Unexpected end of gzip file at byte " + position());
+            }
+            inflater.setInput(buffer.array(), buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit()); // all handed over, unread() gives back what the inflater didn't use
+        }
+
+        void unread(int bytes) {
+            buffer.position(buffer.position() - bytes);
+        }
+
+        int readIntLE() throws IOException {
+            return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+        }
+
+        private int readByte() throws IOException {
+            if (!buffer.hasRemaining() && !fill(1)) {
+                throw new EOFException("Unexpected end of gzip file at byte " + position());
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        private void skip(int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++) {
+                readByte();
+            }
+        }
+
+        // makes sure at least count bytes are buffered, false at the end of the file
+        private boolean fill(int count) throws IOException {
+            if (buffer.remaining() >= count) {
+                return true;
+            }
+            bufferStart += buffer.position();
+            buffer.compact();
+            while (buffer.position() < count) {
+                int read = channel.read(buffer, bufferStart + buffer.position());
+                if (read < 0) {
+                    buffer.flip();
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+    }
+
+
+    // Where decompressed chunks go, put() blocks while the queue is full
+    private interface Sink {
+        void put(byte[] chunk) throws IOException;
+    }
+
+    private interface Decoder {
+        void run(Sink sink) throws IOException;
+    }
+
+
+    // The parser's side: chunks come off the queue the decoder thread fills
+    private static class PipelinedStream extends InputStream {
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+        private final Thread decoder;
+        private volatile IOException failure;
+        private volatile boolean closed;
+        private byte[] current = new byte[0];
+        private int position;
+        private boolean ended;
+
+        PipelinedStream(String name, Decoder decode) {
+            this.decoder = new Thread(() -> {
+                try {
+                    decode.run(chunk -> {
+                        if (closed) {
+                            throw new InterruptedIOException("Stream closed");
+                        }
+                        try {
+                            queue.put(chunk);
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException("Stream closed");
+                        }
+                    });
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException(e.getMessage(), e);
+                } finally {
+                    if (!closed) {
+                        try {
+                            queue.put(END);
+                        } catch (InterruptedException e) {
+                            // closed while waiting, nobody reads the queue anymore
+                        }
+                    }
+                }
+            }, "inflate-" + name);
+            decoder.setDaemon(true); // a stream nobody closed mustn't keep the JVM alive
+            decoder.start();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == current.length && !next()) {
+                return -1;
+            }
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == current.length && !next()) {
+                return -1;
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, target, offset, count);
+            position += count;
+            return count;
+        }
+
+        private boolean next() throws IOException {
+            if (ended) {
+                return false;
+            }
+            try {
+                current = queue.take();
+                position = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+            }
+            if (current == END) {
+                ended = true;
+                if (failure != null) {
+                    throw new IOException(failure.getMessage(), failure);
+                }
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            decoder.interrupt();
+            queue.clear(); // frees a decoder blocked on a full queue
+        }
+    }
+}
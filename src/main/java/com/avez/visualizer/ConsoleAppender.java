@@ -0,0 +1,158 @@
+package com.avez.visualizer;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The OutputStream behind System.out / System.err in the GUI.
+ *
+ * Printing only turns the bytes into text and puts it on a lock-free queue, it never touches Swing.
+ * A Swing Timer on the EDT drains the queue every FLUSH_MILLIS and appends everything that piled up in one go,
+ * with one caret move. So a burst of thousands of lines costs a few appends instead of an invokeLater per line,
+ * and the EDT stays free for repainting and typing.
+ *
+ * The text area keeps at most maxLines lines, the oldest lines are dropped so a long session doesn't keep
+ * growing the document (and slowing every append down).
+ */
+public class ConsoleAppender extends OutputStream {
+
+    private static final int FLUSH_MILLIS = 50; // 20 updates per second looks live enough
+    private static final int MAX_PENDING_BYTES = 8 * 1024; // hand text over even without a flush() once this much piled up
+    private static final int DEFAULT_MAX_LINES = 5000;
+
+    private final JTextArea textArea;
+    private final int maxLines;
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(); // bytes not yet decoded, guarded by this
+    private final Timer timer;
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    public ConsoleAppender(JTextArea textArea) {
+        this(textArea, DEFAULT_MAX_LINES);
+    }
+
+    public ConsoleAppender(JTextArea textArea, int maxLines) {
+        if (maxLines <= 0) {
+            throw new IllegalArgumentException("maxLines must be positive: " + maxLines);
+        }
+        this.textArea = textArea;
+        this.maxLines = maxLines;
+        this.timer = new Timer(FLUSH_MILLIS, e -> drainToTextArea());
+        this.timer.start();
+    }
+
+
+    @Override
+    public synchronized void write(int b) {
+        pending.write(b);
+        bytesWritten.incrementAndGet();
+        if (b == '\n' && pending.size() >= MAX_PENDING_BYTES) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        pending.write(bytes, offset, length);
+        bytesWritten.addAndGet(length);
+        if (pending.size() >= MAX_PENDING_BYTES) {
+            handOverCompleteLines();
+        }
+    }
+
+    // PrintStream calls this after every println (autoflush), the text is then queued for the next timer tick
+    @Override
+    public synchronized void flush() {
+        if (pending.size() > 0) {
+            queue.add(pending.toString(StandardCharsets.UTF_8));
+            pending.reset();
+        }
+    }
+
+    // Stops the timer after putting what's left on screen
+    @Override
+    public void close() {
+        flush();
+        timer.stop();
+        SwingUtilities.invokeLater(this::drainToTextArea);
+    }
+
+
+    // Queues everything up to the last newline. A '\n' byte can't be inside a multi-byte UTF-8 character,
+    // so the cut never splits one
+    private void handOverCompleteLines() {
+        byte[] bytes = pending.toByteArray();
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        if (end == 0) {
+            return; // one very long line, wait for its end or for flush()
+        }
+        queue.add(new String(bytes, 0, end, StandardCharsets.UTF_8));
+        pending.reset();
+        pending.write(bytes, end, bytes.length - end);
+    }
+
+
+    // On the EDT: one append for everything queued since the last tick, then trim and scroll once
+    private void drainToTextArea() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        String chunk;
+        while ((chunk = queue.poll()) != null) {
+            text.append(chunk);
+        }
+        textArea.append(text.toString().replace("\r", ""));
+
+        int excess = textArea.getLineCount() - maxLines;
+        if (excess > 0) {
+            try {
+                textArea.replaceRange("", 0, textArea.getLineEndOffset(excess - 1)); // drop the oldest lines
+            } catch (BadLocationException e) {
+                textArea.setText(""); // can't happen, the line exists, but don't let the console grow forever
+            }
+        }
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+    }
+
+
+    /**
+     * Flushes and waits until everything written so far is in the text area. For when the caller must see the
+     * text on screen before going on (and for measuring throughput), not needed for normal printing.
+     */
+    public void sync() throws InterruptedException {
+        flush();
+        if (SwingUtilities.isEventDispatchThread()) {
+            drainToTextArea();
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(this::drainToTextArea);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // total bytes printed through this appender, for throughput numbers
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+}
@@ -0,0 +1,518 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.ColumnInfo;
+import com.avez.visualizer.model.ColumnVector;
+import com.avez.visualizer.model.ColumnarData;
+import com.avez.visualizer.model.CorrelationMatrix;
+import com.avez.visualizer.model.DataType;
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Pearson correlation between every pair of NUMERIC columns in one pass over the rows, however many columns.
+ *
+ * Each pair keeps co-moments (count, both means, both sums of squared deviations and the sum of co-deviations),
+ * so a row costs a few multiply-adds per pair and nothing is stored per row. Row ranges are scanned in parallel
+ * and their co-moments merged afterwards with Chan's formulas, which give the same result as one scan over all
+ * the rows. A row missing a value only drops out of the pairs with that column.
+ *
+ * Spearman needs ranks, which one pass can't give, so it is estimated from a sample of the rows taken in the
+ * same pass: about DEFAULT_SAMPLE_ROWS rows, picked by a hash of their row number so the samples of the ranges
+ * add up to the one a single scan would have taken. Files with fewer rows get exact values.
+ */
+public class CorrelationAnalyzer {
+
+    public static final int DEFAULT_SAMPLE_ROWS = 10_000;
+    private static final int MIN_ROWS_PER_TASK = 32_768;
+    private static final int CANCEL_CHECK_ROWS = 4096;
+
+    private final int sampleRows;
+
+    public CorrelationAnalyzer() {
+        this(DEFAULT_SAMPLE_ROWS);
+    }
+
+    // sampleRows = rows Spearman is ranked on, more is closer to the exact value but ranks take longer
+    public CorrelationAnalyzer(int sampleRows) {
+        if (sampleRows < 2) {
+            throw new IllegalArgumentException("The Spearman sample needs at least 2 rows, not " + sampleRows);
+        }
+        this.sampleRows = sampleRows;
+    }
+
+
+    // Reads the numbers of one row into values, NaN for the empty and non numeric cells
+    private interface RowReader {
+        void read(int row, double[] values);
+    }
+
+
+    // The columns the analysis found to be NUMERIC, in file order
+    public static List<String> numericColumns(List<ColumnInfo> columnInfos) {
+        List<String> columns = new ArrayList<>();
+        for (ColumnInfo info : columnInfos) {
+            if (info.getDataType() == DataType.NUMERIC) {
+                columns.add(info.getColumnName());
+            }
+        }
+        return columns;
+    }
+
+
+    /**
+     * Correlations between the NUMERIC columns of the analysis, over the parsed records. Reports "Correlating"
+     * progress in rows and stops with a CancellationException when the listener cancels.
+     *
+     * @param spearman Also estimate Spearman's rank correlation
+     * @throws IllegalArgumentException If there are fewer than two numeric columns
+     */
+    public CorrelationMatrix correlate(CSVData data, List<ColumnInfo> columnInfos, boolean spearman, ProgressListener listener) {
+        List<String> columns = numericColumns(columnInfos);
+        List<CSVRecord> records = data.getRecords();
+
+        String[] names = columns.toArray(new String[0]);
+
+        return correlate(columns, records.size(), (row, values) -> {
+            CSVRecord record = records.get(row);
+            for (int c = 0; c < values.length; c++) {
+                values[c] = record.isSet(names[c]) ? parseNumber(record.get(names[c])) : Double.NaN; // short rows miss the last cells
+            }
+        }, spearman, listener);
+    }
+
+
+    /**
+     * Same, for data loaded by ColumnarCSVReader, the numbers are read straight from the column vectors.
+     *
+     * @param spearman Also estimate Spearman's rank correlation
+     * @throws IllegalArgumentException If there are fewer than two numeric columns
+     */
+    public CorrelationMatrix correlate(ColumnarData data, List<ColumnInfo> columnInfos, boolean spearman, ProgressListener listener) {
+        List<String> columns = numericColumns(columnInfos);
+        ColumnVector[] vectors = new ColumnVector[columns.size()];
+        for (int c = 0; c < vectors.length; c++) {
+            vectors[c] = data.getColumn(columns.get(c));
+        }
+
+        return correlate(columns, data.getRowCount(), (row, values) -> {
+            for (int c = 0; c < values.length; c++) {
+                values[c] = vectors[c].getCode(row) == ColumnVector.NUMERIC ? vectors[c].getNumber(row) : Double.NaN;
+            }
+        }, spearman, listener);
+    }
+
+
+    /**
+     * The pairs with the strongest Pearson correlation (either sign) first, as {i, j} column indices with i < j.
+     * Pairs without a value are left out. These are the scatter plots worth looking at.
+     */
+    public static List<int[]> strongestPairs(CorrelationMatrix matrix, int limit) {
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < matrix.size(); i++) {
+            for (int j = i + 1; j < matrix.size(); j++) {
+                if (!Double.isNaN(matrix.getPearson(i, j))) {
+                    pairs.add(new int[]{i, j});
+                }
+            }
+        }
+        pairs.sort(Comparator.comparingDouble((int[] pair) -> -Math.abs(matrix.getPearson(pair[0], pair[1]))));
+        return pairs.subList(0, Math.min(limit, pairs.size()));
+    }
+
+
+    private CorrelationMatrix correlate(List<String> columns, int rows, RowReader reader, boolean spearman, ProgressListener listener) {
+        if (columns.size() < 2) {
+            throw new IllegalArgumentException("Correlations need at least two numeric columns, found " + columns.size());
+        }
+        int k = columns.size();
+        long sampleThreshold = RowSample.threshold(spearman ? sampleRows : 0, rows);
+
+        // several ranges per thread, so progress moves in small steps and a slow range doesn't hold up the others
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tasks = (int) Math.max(1, Math.min(threads * 8L, ((long) rows + MIN_ROWS_PER_TASK - 1) / MIN_ROWS_PER_TASK));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks), runnable -> {
+            Thread thread = new Thread(runnable, "correlation");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Moments total = new Moments(k, new RowSample(sampleThreshold, k));
+        try {
+            List<Future<Moments>> futures = new ArrayList<>();
+            for (int t = 0; t < tasks; t++) {
+                int from = (int) ((long) rows * t / tasks);
+                int to = (int) ((long) rows * (t + 1) / tasks);
+                futures.add(pool.submit(() -> scan(reader, from, to, k, sampleThreshold, listener)));
+            }
+            // merged in range order, so the result doesn't depend on which range finished first
+            for (int t = 0; t < tasks; t++) {
+                total.merge(futures.get(t).get());
+                long done = (long) rows * (t + 1) / tasks;
+                listener.checkCancelled();
+                listener.progress("Correlating", done, rows, done);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause; // CancellationException included
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while correlating");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double[][] pearson = new double[k][k];
+        long[][] pairCounts = new long[k][k];
+        int p = 0;
+        for (int i = 0; i < k; i++) {
+            pearson[i][i] = 1.0;
+            pairCounts[i][i] = total.counts[i];
+            for (int j = i + 1; j < k; j++, p++) {
+                double r = total.n[p] < 2 ? Double.NaN : correlation(total.m2X[p], total.m2Y[p], total.cXY[p]);
+                pearson[i][j] = pearson[j][i] = r;
+                pairCounts[i][j] = pairCounts[j][i] = total.n[p];
+            }
+        }
+
+        double[][] spearmanMatrix = spearman ? rankCorrelations(total.sample, k) : null;
+        return new CorrelationMatrix(new ArrayList<>(columns), pearson, spearmanMatrix, pairCounts, rows,
+                spearman ? total.sample.size() : 0);
+    }
+
+    // The co-moments of rows [from, to), on a pool thread
+    private static Moments scan(RowReader reader, int from, int to, int k, long sampleThreshold, ProgressListener listener) {
+        ShiftedSums sums = new ShiftedSums(k);
+        RowSample sample = new RowSample(sampleThreshold, k);
+        double[] values = new double[k];
+        for (int row = from; row < to; row++) {
+            if ((row - from) % CANCEL_CHECK_ROWS == 0) {
+                listener.checkCancelled();
+            }
+            reader.read(row, values);
+            sums.add(values);
+            sample.offer(row, values);
+        }
+        return sums.toMoments(sample);
+    }
+
+    // r = co-deviation / sqrt(both squared deviations), NaN for a column that never changes
+    private static double correlation(double m2X, double m2Y, double cXY) {
+        if (m2X <= 0 || m2Y <= 0) {
+            return Double.NaN;
+        }
+        return Math.max(-1.0, Math.min(1.0, cXY / Math.sqrt(m2X * m2Y))); // rounding can land just outside
+    }
+
+    private static double parseNumber(String value) {
+        if (value == null || value.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            double number = Double.parseDouble(value);
+            return Double.isInfinite(number) ? Double.NaN : number; // "Infinity" parses, but isn't a measurement
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+
+    // Sums of every column pair over one range of rows (pairs i < j, row by row in the upper triangle). Each column
+    // is shifted by its first number in the range, which keeps the sums of squares from cancelling out when the
+    // values are far from 0, and leaves a few multiply-adds per pair and row, no division
+    private static final class ShiftedSums {
+        private final int k;
+        private final double[] shift; // NaN until the column's first number
+        private final double[] shifted; // the current row minus the shifts
+        private final long[] counts;
+        private final long[] n;
+        private final double[] sumX;
+        private final double[] sumY;
+        private final double[] sumXX;
+        private final double[] sumYY;
+        private final double[] sumXY;
+
+        ShiftedSums(int k) {
+            int pairs = k * (k - 1) / 2;
+            this.k = k;
+            this.shift = new double[k];
+            Arrays.fill(shift, Double.NaN);
+            this.shifted = new double[k];
+            this.counts = new long[k];
+            this.n = new long[pairs];
+            this.sumX = new double[pairs];
+            this.sumY = new double[pairs];
+            this.sumXX = new double[pairs];
+            this.sumYY = new double[pairs];
+            this.sumXY = new double[pairs];
+        }
+
+        void add(double[] values) {
+            for (int c = 0; c < k; c++) {
+                double value = values[c];
+                if (!Double.isNaN(value)) {
+                    if (Double.isNaN(shift[c])) {
+                        shift[c] = value;
+                    }
+                    counts[c]++;
+                }
+                shifted[c] = value - shift[c]; // stays NaN for a missing value
+            }
+
+            int p = 0;
+            for (int i = 0; i < k; i++) {
+                double x = shifted[i];
+                if (Double.isNaN(x)) {
+                    p += k - i - 1; // none of this column's pairs get the row
+                    continue;
+                }
+                for (int j = i + 1; j < k; j++, p++) {
+                    double y = shifted[j];
+                    if (Double.isNaN(y)) {
+                        continue;
+                    }
+                    n[p]++;
+                    sumX[p] += x;
+                    sumY[p] += y;
+                    sumXX[p] += x * x;
+                    sumYY[p] += y * y;
+                    sumXY[p] += x * y;
+                }
+            }
+        }
+
+        // sum((x - mean)^2) = sum(x^2) - sum(x)^2 / n, the same holds for the shifted values
+        Moments toMoments(RowSample sample) {
+            Moments moments = new Moments(k, sample);
+            System.arraycopy(counts, 0, moments.counts, 0, k);
+            int p = 0;
+            for (int i = 0; i < k; i++) {
+                for (int j = i + 1; j < k; j++, p++) {
+                    long count = n[p];
+                    if (count == 0) {
+                        continue;
+                    }
+                    moments.n[p] = count;
+                    moments.meanX[p] = shift[i] + sumX[p] / count;
+                    moments.meanY[p] = shift[j] + sumY[p] / count;
+                    moments.m2X[p] = Math.max(0, sumXX[p] - sumX[p] * sumX[p] / count);
+                    moments.m2Y[p] = Math.max(0, sumYY[p] - sumY[p] * sumY[p] / count);
+                    moments.cXY[p] = sumXY[p] - sumX[p] * sumY[p] / count;
+                }
+            }
+            return moments;
+        }
+    }
+
+
+    // Co-moments of every column pair over a set of rows, plus the rows sampled from them
+    private static final class Moments {
+        private final int k;
+        private final long[] counts; // numbers per column
+        private final long[] n; // rows where both columns have a number, per pair
+        private final double[] meanX;
+        private final double[] meanY;
+        private final double[] m2X; // sum of squared deviations from meanX
+        private final double[] m2Y;
+        private final double[] cXY; // sum of (x - meanX) * (y - meanY)
+        private final RowSample sample;
+
+        Moments(int k, RowSample sample) {
+            int pairs = k * (k - 1) / 2;
+            this.k = k;
+            this.counts = new long[k];
+            this.n = new long[pairs];
+            this.meanX = new double[pairs];
+            this.meanY = new double[pairs];
+            this.m2X = new double[pairs];
+            this.m2Y = new double[pairs];
+            this.cXY = new double[pairs];
+            this.sample = sample;
+        }
+
+        // Chan et al.: the co-moments of two sets of rows combine from their counts and the gap between their means
+        void merge(Moments other) {
+            for (int i = 0; i < k; i++) {
+                counts[i] += other.counts[i];
+            }
+            for (int p = 0; p < n.length; p++) {
+                long nb = other.n[p];
+                if (nb == 0) {
+                    continue;
+                }
+                long na = n[p];
+                long total = na + nb;
+                double dx = other.meanX[p] - meanX[p];
+                double dy = other.meanY[p] - meanY[p];
+                double weight = (double) na * nb / total;
+                meanX[p] += dx * nb / total;
+                meanY[p] += dy * nb / total;
+                m2X[p] += other.m2X[p] + dx * dx * weight;
+                m2Y[p] += other.m2Y[p] + dy * dy * weight;
+                cXY[p] += other.cXY[p] + dx * dy * weight;
+                n[p] = total;
+            }
+            sample.merge(other.sample);
+        }
+    }
+
+
+    // The rows whose hashed row number is at most threshold, about capacity of them when threshold comes from
+    // threshold(). Whether a row gets in only depends on its number, so the samples of several ranges together
+    // are exactly the sample a single scan would have taken
+    private static final class RowSample {
+        private final long threshold;
+        private final int k;
+        private final List<double[]> rows = new ArrayList<>();
+
+        RowSample(long threshold, int k) {
+            this.threshold = threshold;
+            this.k = k;
+        }
+
+        // Long.MAX_VALUE takes every row, -1 none
+        static long threshold(int capacity, long totalRows) {
+            if (capacity == 0) {
+                return -1;
+            }
+            return totalRows <= capacity ? Long.MAX_VALUE : (long) ((double) capacity / totalRows * Long.MAX_VALUE);
+        }
+
+        void offer(int row, double[] values) {
+            if (threshold >= 0 && (HyperLogLog.mix(row) >>> 1) <= threshold) {
+                rows.add(values.clone());
+            }
+        }
+
+        void merge(RowSample other) {
+            rows.addAll(other.rows);
+        }
+
+        int size() {
+            return rows.size();
+        }
+
+        // column c of every sampled row
+        double[][] columns() {
+            double[][] columns = new double[k][rows.size()];
+            for (int r = 0; r < rows.size(); r++) {
+                double[] values = rows.get(r);
+                for (int c = 0; c < k; c++) {
+                    columns[c][r] = values[c];
+                }
+            }
+            return columns;
+        }
+    }
+
+
+    // Spearman = Pearson of the ranks, on the sampled rows where both columns have a number. Each column is sorted
+    // once, a pair then ranks both columns by walking their sorted rows and skipping the ones the other column
+    // misses, so no pair needs a sort of its own
+    private static double[][] rankCorrelations(RowSample sample, int k) {
+        double[][] columns = sample.columns();
+        int size = sample.size();
+        int[][] order = new int[k][];
+        for (int c = 0; c < k; c++) {
+            order[c] = sortedRows(columns[c]);
+        }
+
+        double[][] spearman = new double[k][k];
+        double[] rankX = new double[size];
+        double[] rankY = new double[size];
+        double[] x = new double[size];
+        double[] y = new double[size];
+        for (int i = 0; i < k; i++) {
+            spearman[i][i] = 1.0;
+            for (int j = i + 1; j < k; j++) {
+                int m = rankWhereBoth(order[i], columns[i], columns[j], rankX);
+                rankWhereBoth(order[j], columns[j], columns[i], rankY);
+                int r = 0;
+                for (int row = 0; row < size; row++) {
+                    if (!Double.isNaN(columns[i][row]) && !Double.isNaN(columns[j][row])) {
+                        x[r] = rankX[row];
+                        y[r] = rankY[row];
+                        r++;
+                    }
+                }
+                spearman[i][j] = spearman[j][i] = m < 2 ? Double.NaN : pearson(x, y, m);
+            }
+        }
+        return spearman;
+    }
+
+    // the rows with a number in this column, ordered by that number
+    private static int[] sortedRows(double[] values) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < values.length; row++) {
+            if (!Double.isNaN(values[row])) {
+                rows.add(row);
+            }
+        }
+        rows.sort(Comparator.comparingDouble(row -> values[row]));
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // 1 based ranks (ties share the average of their ranks) of values among the rows where other has a number,
+    // written to ranks[row]. Returns how many rows that is
+    private static int rankWhereBoth(int[] order, double[] values, double[] other, double[] ranks) {
+        int ranked = 0;
+        int tieStart = 0; // first of the current run of equal values, as a position in order
+        int tieRanked = 0; // rows of earlier runs that were ranked
+        for (int position = 0; position <= order.length; position++) {
+            boolean runEnds = position == order.length
+                    || values[order[position]] != values[order[tieStart]];
+            if (runEnds) {
+                int runRanked = ranked - tieRanked;
+                double rank = tieRanked + (runRanked + 1) / 2.0;
+                for (int t = tieStart; t < position; t++) {
+                    if (!Double.isNaN(other[order[t]])) {
+                        ranks[order[t]] = rank;
+                    }
+                }
+                tieStart = position;
+                tieRanked = ranked;
+            }
+            if (position < order.length && !Double.isNaN(other[order[position]])) {
+                ranked++;
+            }
+        }
+        return ranked;
+    }
+
+    // two pass Pearson of the first n values, the sample is small enough to go over twice
+    private static double pearson(double[] x, double[] y, int n) {
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += x[i];
+            meanY += y[i];
+        }
+        meanX /= n;
+        meanY /= n;
+        double m2X = 0;
+        double m2Y = 0;
+        double cXY = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = x[i] - meanX;
+            double dy = y[i] - meanY;
+            m2X += dx * dx;
+            m2Y += dy * dy;
+            cXY += dx * dy;
+        }
+        return correlation(m2X, m2Y, cXY);
+    }
+}
@@ -0,0 +1,208 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.CachedDataset;
+import com.avez.visualizer.model.ColumnInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Keeps recently used datasets (parsed rows + column analysis) so switching back to a file doesn't re-parse it.
+ *
+ * Bounded by the estimated heap size of the datasets, not by how many there are: one 2 GB file and
+ * ten 50 MB files are very different amounts of memory. When a new entry pushes the total over the budget,
+ * the least recently used entries are evicted until it fits again.
+ *
+ * With soft references on, an evicted dataset isn't dropped right away but kept behind a SoftReference:
+ * the GC clears those only when it's short of memory, so until then a "soft hit" still saves the re-parse.
+ *
+ * Entries are keyed by the file's canonical path and are only returned while the file's size and
+ * modification time are unchanged.
+ */
+public class DatasetCache {
+
+    private final long budgetBytes;
+    private final boolean softReferences;
+
+    private final LinkedHashMap<String, CachedDataset> entries = new LinkedHashMap<>(16, 0.75f, true); // access order = LRU first
+    private final Map<String, SoftReference<CachedDataset>> evicted = new HashMap<>();
+    private long totalBytes = 0;
+
+    private long hits = 0;
+    private long softHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    // a quarter of the max heap, with the soft reference fallback
+    public DatasetCache() {
+        this(Runtime.getRuntime().maxMemory() / 4, true);
+    }
+
+    public DatasetCache(long budgetBytes, boolean softReferences) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Cache budget must be positive: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+        this.softReferences = softReferences;
+    }
+
+
+    /**
+     * Returns the cached dataset for the file, or null if it isn't cached or the file changed since.
+     */
+    public synchronized CachedDataset get(String filePath) {
+        File file = new File(filePath);
+        String key = keyFor(file);
+
+        CachedDataset cached = entries.get(key); // get() also moves it to the most recently used end
+        if (cached != null) {
+            if (cached.isUpToDate(file.length(), file.lastModified())) {
+                hits++;
+                return cached;
+            }
+            remove(key); // stale, the file was rewritten
+        }
+
+        SoftReference<CachedDataset> reference = evicted.remove(key);
+        CachedDataset softCached = reference != null ? reference.get() : null;
+        if (softCached != null && softCached.isUpToDate(file.length(), file.lastModified())) {
+            softHits++;
+            insert(key, softCached); // used again, so back in the LRU
+            return softCached;
+        }
+
+        misses++;
+        return null;
+    }
+
+
+    /**
+     * Caches a parsed file with its analysis. Datasets bigger than the whole budget aren't cached.
+     * The size is estimated from the CSV the file was parsed as, so a .gz or .xlsx counts with its inflated size.
+     */
+    public void put(String filePath, CSVData data, List<ColumnInfo> columnInfos) {
+        File file = new File(filePath);
+        // the up-to-date check stays on the size on disk: that is what changes when the file is rewritten
+        long sizeBytes = file.length();
+        long lastModified = file.lastModified();
+        long csvBytes;
+        try {
+            csvBytes = LoadPlanner.estimateCsvBytes(file); // reads the start of a compressed file, so outside the lock
+        } catch (IOException e) {
+            return; // gone or unreadable by now, nothing worth keeping
+        }
+
+        long estimatedBytes = LoadPlanner.estimateInMemoryBytes(csvBytes, data.getRowCount(), data.getColumnCount());
+        if (estimatedBytes > budgetBytes) {
+            return; // would evict everything else and still not fit
+        }
+
+        synchronized (this) {
+            String key = keyFor(file);
+            remove(key);
+            evicted.remove(key);
+            insert(key, new CachedDataset(data, columnInfos, sizeBytes, lastModified, estimatedBytes));
+        }
+    }
+
+
+    private void insert(String key, CachedDataset dataset) {
+        entries.put(key, dataset);
+        totalBytes += dataset.getEstimatedHeapBytes();
+
+        // evict from the least recently used end until we're back under the budget
+        Iterator<Map.Entry<String, CachedDataset>> iterator = entries.entrySet().iterator();
+        while (totalBytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<String, CachedDataset> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue; // never the one just added
+            }
+            iterator.remove();
+            totalBytes -= eldest.getValue().getEstimatedHeapBytes();
+            evictions++;
+            if (softReferences) {
+                evicted.put(eldest.getKey(), new SoftReference<>(eldest.getValue()));
+            }
+        }
+
+        // forget references the GC already cleared
+        evicted.values().removeIf(reference -> reference.get() == null);
+    }
+
+    private void remove(String key) {
+        CachedDataset removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.getEstimatedHeapBytes();
+        }
+    }
+
+    private String keyFor(File file) {
+        try {
+            return file.getCanonicalPath(); // "data.csv" and "./data.csv" are the same file
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // Estimated size of the evicted datasets the GC hasn't cleared yet. They only sit behind soft references,
+    // so that heap is as good as free when something needs it
+    public synchronized long getSoftlyHeldBytes() {
+        long bytes = 0;
+        for (SoftReference<CachedDataset> reference : evicted.values()) {
+            CachedDataset dataset = reference.get();
+            if (dataset != null) {
+                bytes += dataset.getEstimatedHeapBytes();
+            }
+        }
+        return bytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getSoftHits() {
+        return softHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DatasetCache{" +
+                "entries=" + entries.size() +
+                ", MB=" + totalBytes / (1024 * 1024) + "/" + budgetBytes / (1024 * 1024) +
+                ", hits=" + hits +
+                ", softHits=" + softHits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,256 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.ChartRecommendation;
+import com.avez.visualizer.model.ChartType;
+import com.avez.visualizer.model.ColumnInfo;
+import com.avez.visualizer.model.DataType;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Watch mode: keeps the charts of every CSV in a folder up to date.
+ * File events are debounced (an export usually fires several MODIFY events while it is written),
+ * only the files that changed are re-read, and inside a file only the columns whose values changed are re-analyzed
+ * and re-rendered. Rendering goes through a small pool with a bounded queue, so dropping a hundred files at once
+ * can't start a hundred renders at once.
+ * Charts also go through a ChartRenderCache keyed on the file's SHA-256 like the CLI's, so after a restart
+ * (or for a file that was rewritten with the same data) unchanged charts are copied instead of re-rendered.
+ */
+public class DirectoryWatcher implements AutoCloseable {
+
+    private static final long DEBOUNCE_MILLIS = 500; // a file must be quiet this long before we touch it
+    private static final int QUEUE_CAPACITY = 16; // files waiting for a render slot, the rest stay pending
+
+    private final Path watchDir;
+    private final Path outputDir;
+    private final WatchService watchService;
+    private final ThreadPoolExecutor renderPool;
+
+    private final CSVReader csvReader = new CSVReader();
+    private final CSVAnalyzer csvAnalyzer = new CSVAnalyzer();
+    private final ChartRecommender chartRecommender = new ChartRecommender();
+    private final ChartGenerator chartGenerator = new ChartGenerator();
+    private final ChartRenderCache renderCache;
+
+    // file -> {time of first event, time of last event} for changes not handed to the pool yet
+    private final Map<Path, long[]> pending = new HashMap<>();
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+
+    // file -> column -> what we learnt about it last time, so unchanged columns are skipped
+    private final Map<Path, Map<String, CachedColumn>> analysisCache = new ConcurrentHashMap<>();
+
+    public DirectoryWatcher(Path watchDir, Path outputDir) throws IOException {
+        this.watchDir = watchDir;
+        this.outputDir = outputDir;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.renderCache = new ChartRenderCache();
+
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2); // leave room for the parsing
+        this.renderPool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+
+        watchDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+
+    // Blocks and handles file events until close() is called
+    public void run() throws InterruptedException {
+        System.out.println(UIRenderer.getIcon("reload") + " Watching " + watchDir.toAbsolutePath() + ", charts go to " + outputDir.toAbsolutePath());
+
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.poll(DEBOUNCE_MILLIS / 2, TimeUnit.MILLISECONDS);
+            } catch (ClosedWatchServiceException e) {
+                return; // close() was called
+            }
+
+            if (key != null) {
+                long now = System.nanoTime();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    Path file = watchDir.resolve((Path) event.context());
+                    if (file.getFileName().toString().toLowerCase().endsWith(".csv")) {
+                        long[] times = pending.computeIfAbsent(file, f -> new long[] { now, now });
+                        times[1] = now;
+                    }
+                }
+                key.reset();
+            }
+
+            dispatchQuietFiles();
+        }
+    }
+
+
+    // Hands every file that has been quiet for DEBOUNCE_MILLIS to the render pool, as long as the queue has room
+    private void dispatchQuietFiles() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, long[]>> it = pending.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<Path, long[]> entry = it.next();
+            Path file = entry.getKey();
+            long firstEvent = entry.getValue()[0];
+            long lastEvent = entry.getValue()[1];
+
+            boolean quiet = now - lastEvent >= TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS);
+            if (!quiet || inFlight.contains(file)) {
+                continue; // still being written, or still being rendered from the previous change
+            }
+            if (renderPool.getQueue().remainingCapacity() == 0) {
+                return; // pool is saturated, try again on the next tick
+            }
+
+            it.remove();
+            inFlight.add(file);
+            renderPool.execute(() -> {
+                try {
+                    processFile(file, firstEvent);
+                } finally {
+                    inFlight.remove(file);
+                }
+            });
+        }
+    }
+
+
+    // Re-reads one file, re-analyzes only its changed columns and re-renders their charts
+    private void processFile(Path file, long firstEventNanos) {
+        try {
+            // fingerprinted before reading, so the cache key can't describe a newer version than the data
+            File csv = file.toFile();
+            long size = csv.length();
+            long lastModified = csv.lastModified();
+            String fileFingerprint = renderCache.fingerprint(csv);
+            CSVData data = csvReader.readCSV(file.toString());
+            if (csv.length() != size || csv.lastModified() != lastModified) {
+                fileFingerprint = null; // written to while it was read, its next event re-renders it anyway
+            }
+            Map<String, CachedColumn> cache = analysisCache.computeIfAbsent(file, f -> new ConcurrentHashMap<>());
+
+            int changed = 0;
+            int charts = 0;
+            for (String column : data.getHeaders()) {
+                String fingerprint = fingerprint(column, data.getRecords());
+                CachedColumn cached = cache.get(column);
+                ColumnInfo info;
+                if (cached != null && cached.fingerprint.equals(fingerprint)) {
+                    // same values as last time, so same analysis and same chart. The chart is only drawn again
+                    // (from the kept analysis) if its PNG was deleted from the output folder meanwhile
+                    if (cached.chart == null || Files.exists(cached.chart)) {
+                        continue;
+                    }
+                    info = cached.info;
+                } else {
+                    changed++;
+                    info = csvAnalyzer.analyzeColumn(data, column);
+                }
+
+                Path chart = renderBestChart(file, data, info, fileFingerprint);
+                if (chart != null) {
+                    charts++;
+                }
+                // only cached once the chart is saved, a column whose render failed is tried again on the next change
+                cache.put(column, new CachedColumn(fingerprint, info, chart));
+            }
+            cache.keySet().retainAll(data.getHeaders()); // forget columns that were removed from the file
+
+            long latencyMillis = (System.nanoTime() - firstEventNanos) / 1_000_000;
+            System.out.printf("%s %s: %d of %d columns changed, %d charts updated, %d ms from change to PNG%n",
+                    UIRenderer.getIcon("success"), file.getFileName(), changed, data.getColumnCount(), charts, latencyMillis);
+
+        } catch (IOException | RuntimeException e) {
+            System.err.println(UIRenderer.getIcon("error") + " " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+
+    // Renders the top recommended chart for a column and returns where it went, null for columns that don't chart well.
+    // fileFingerprint null renders without the cache
+    private Path renderBestChart(Path file, CSVData data, ColumnInfo info, String fileFingerprint) throws IOException {
+        if (info.getDataType() == DataType.TEXT || info.getDataType() == DataType.UNKNOWN) {
+            return null; // IDs and free text would just be an unreadable bar chart
+        }
+
+        List<ChartRecommendation> recommendations = chartRecommender.recommendCharts(info);
+        if (recommendations.isEmpty() || recommendations.get(0).getChartType() == ChartType.SCATTER_PLOT) {
+            return null;
+        }
+
+        ChartType chartType = recommendations.get(0).getChartType();
+        String baseName = file.getFileName().toString().replaceFirst("(?i)\\.csv$", "");
+        String fileName = (baseName + "_" + info.getColumnName() + "_" + chartType).toLowerCase().replaceAll("[^a-z0-9._-]", "_") + ".png";
+
+        Path output = outputDir.resolve(fileName);
+        if (fileFingerprint == null) {
+            chartGenerator.generateChart(info.getColumnName(), data.getRecords(), chartType, output.toString());
+            return output;
+        }
+        // same key as the CLI's charts of this file, so either one can reuse the other's PNG
+        renderCache.render(fileFingerprint, info.getColumnName(), chartType, "records", output.toString(),
+                path -> chartGenerator.generateChart(info.getColumnName(), data.getRecords(), chartType, path));
+        return output;
+    }
+
+
+    // SHA-256 of a column's values in row order, equal hashes mean the column didn't change. Each value is
+    // prefixed with its length, so "a","bc" and "ab","c" differ
+    private String fingerprint(String column, List<CSVRecord> records) {
+        MessageDigest digest = ChartRenderCache.newDigest();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        for (CSVRecord record : records) {
+            String value = record.get(column);
+            byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+            digest.update(length.clear().putInt(bytes.length).array());
+            digest.update(bytes);
+        }
+        return ChartRenderCache.toHex(digest.digest());
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        renderPool.shutdown();
+    }
+
+
+    // What the cache keeps per column
+    private static class CachedColumn {
+        final String fingerprint;
+        final ColumnInfo info; // redraws a deleted chart without analyzing the column again
+        final Path chart; // null if the column has no chart
+
+        CachedColumn(String fingerprint, ColumnInfo info, Path chart) {
+            this.fingerprint = fingerprint;
+            this.info = info;
+            this.chart = chart;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.avez.visualizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+
+/**
+ * Counts values (value -> number of occurrences) with a bounded amount of heap, no matter how many
+ * distinct values there are.
+ *
+ * Counts are kept in a HashMap until its estimated size passes the memory budget. The table is then written
+ * to a temporary file sorted by value (a "run") and emptied. finish() merges the runs, like the merge step of
+ * a merge sort: each run is read sequentially, equal values from different runs are added up, and every
+ * distinct value comes out exactly once. At most MAX_MERGE_FAN_IN runs are read at the same time, more runs
+ * than that are first merged in groups into bigger runs.
+ */
+public class ExternalAggregator implements AutoCloseable {
+
+    // What finish() calls once per distinct value
+    public interface ResultConsumer {
+        void accept(String value, long count) throws IOException;
+    }
+
+    // rough heap cost of one HashMap entry besides the characters: entry, String, byte[], Long and the table slot
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int MAX_MERGE_FAN_IN = 64; // runs open at once while merging
+    private static final int RUN_BUFFER_BYTES = 64 * 1024; // per open run, so a merge needs at most 4 MB
+
+    private final long memoryBudgetBytes;
+    private final Path spillDirectory;
+    private Map<String, Long> counts = new HashMap<>();
+    private long estimatedBytes = 0;
+    private final List<Path> runs = new ArrayList<>();
+    private boolean finished = false;
+
+    public ExternalAggregator(long memoryBudgetBytes, Path spillDirectory) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public void add(String value) throws IOException {
+        add(value, 1);
+    }
+
+    public void add(String value, long count) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Aggregator already finished");
+        }
+        int before = counts.size();
+        counts.merge(value, count, Long::sum);
+        if (counts.size() == before) {
+            return; // already counted, the table didn't grow
+        }
+
+        estimatedBytes += ENTRY_OVERHEAD_BYTES + value.length(); // Latin-1 Strings, 1 byte per char
+        if (estimatedBytes > memoryBudgetBytes) {
+            spillRun();
+        }
+    }
+
+    // number of sorted runs written to disk so far, 0 means everything fit in memory
+    public int getRunCount() {
+        return runs.size();
+    }
+
+
+    /**
+     * Reports every distinct value with its total count, each exactly once. Sorted by value when anything was
+     * spilled, in no particular order otherwise.
+     *
+     * @return The number of distinct values
+     * @throws IOException If a run cannot be written or read
+     */
+    public long finish(ResultConsumer consumer) throws IOException {
+        finished = true;
+
+        if (runs.isEmpty()) {
+            // everything fit, no need to touch the disk
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+            long distinct = counts.size();
+            counts = new HashMap<>();
+            return distinct;
+        }
+
+        if (!counts.isEmpty()) {
+            spillRun();
+        }
+
+        // Too many runs to open at once (each reader has its own buffer): merge them in groups into bigger runs first
+        while (runs.size() > MAX_MERGE_FAN_IN) {
+            List<Path> group = new ArrayList<>(runs.subList(0, MAX_MERGE_FAN_IN));
+            Path merged = newRunFile();
+            try (DataOutputStream out = openRun(merged)) {
+                merge(group, (value, count) -> writeEntry(out, value, count));
+            }
+            runs.removeAll(group);
+            for (Path run : group) {
+                Files.deleteIfExists(run);
+            }
+            runs.add(merged);
+        }
+
+        return merge(runs, consumer);
+    }
+
+
+    // k-way merge: the queue holds each run's current value, the smallest one comes out first
+    private long merge(List<Path> inputs, ResultConsumer consumer) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> a.value.compareTo(b.value));
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (Path run : inputs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            long distinct = 0;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                String value = reader.value;
+                long total = reader.count;
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+
+                // the same value can sit at the head of several runs
+                while (!queue.isEmpty() && queue.peek().value.equals(value)) {
+                    RunReader same = queue.poll();
+                    total += same.count;
+                    if (same.next()) {
+                        queue.add(same);
+                    }
+                }
+
+                consumer.accept(value, total);
+                distinct++;
+            }
+            return distinct;
+
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    // deletes the runs
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        counts = new HashMap<>();
+    }
+
+
+    // Writes the in-memory table to disk sorted by value, then empties it
+    private void spillRun() throws IOException {
+        List<String> values = new ArrayList<>(counts.keySet());
+        Collections.sort(values);
+
+        Path run = newRunFile();
+        runs.add(run);
+        try (DataOutputStream out = openRun(run)) {
+            for (String value : values) {
+                writeEntry(out, value, counts.get(value));
+            }
+        }
+
+        counts = new HashMap<>(); // a new table, clear() would keep the big backing array
+        estimatedBytes = 0;
+    }
+
+    private Path newRunFile() throws IOException {
+        return spillDirectory != null
+                ? Files.createTempFile(spillDirectory, "aggregate-", ".run")
+                : Files.createTempFile("aggregate-", ".run");
+    }
+
+    private static DataOutputStream openRun(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_BYTES));
+    }
+
+    private static void writeEntry(DataOutputStream out, String value, long count) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length); // not writeUTF(), that one stops at 64 KB
+        out.write(bytes);
+        out.writeLong(count);
+    }
+
+
+    // Reads one run back, one (value, count) pair at a time
+    private static class RunReader {
+        private final DataInputStream in;
+        String value;
+        long count;
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), RUN_BUFFER_BYTES));
+        }
+
+        boolean next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false; // end of the run
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            count = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.avez.visualizer;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Parses decimal numbers straight from UTF-8 bytes, without creating a String.
+ *
+ * Most numbers take Clinger's fast path (at most 15-16 significant digits and a small exponent, so one exact
+ * double multiply or divide is enough). The rest go through the Eisel-Lemire algorithm, which gets the correctly
+ * rounded result from a 64 x 128 bit multiplication with a table of powers of five. Only the rare inputs neither
+ * can handle (more than 19 significant digits, Java-only forms like "1.5f", "NaN", "0x1p3") fall back to
+ * Double.parseDouble, so the result is always the same as Double.parseDouble on the trimmed text.
+ *
+ * One instance per thread, the result is kept in a field so a parse doesn't allocate anything.
+ */
+public class FastDoubleParser {
+
+    private static final int SMALLEST_POWER_OF_TEN = -342; // below this every 19 digit mantissa rounds to 0
+    private static final int LARGEST_POWER_OF_TEN = 308; // above this every non-zero mantissa overflows
+
+    // exactly representable powers of ten, for the Clinger fast path
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    // 5^q for q in [-342, 308], truncated to 128 bits with the top bit set (high and low 64 bits)
+    private static final long[] POW5_HIGH = new long[LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1];
+    private static final long[] POW5_LOW = new long[LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1];
+
+    static {
+        // Same construction as the table in Lemire's fast_float, computed once instead of pasted as 1300 constants
+        BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+        for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+            BigInteger value;
+            if (q < 0) {
+                BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+                int z = power5.subtract(BigInteger.ONE).bitLength(); // smallest z with 2^z >= 5^-q
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                value = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+            } else {
+                value = BigInteger.valueOf(5).pow(q);
+                if (value.bitLength() < 128) {
+                    value = value.shiftLeft(128 - value.bitLength());
+                }
+            }
+            if (value.compareTo(two128) >= 0) {
+                value = value.shiftRight(value.bitLength() - 128); // truncate to 128 bits
+            }
+
+            int index = q - SMALLEST_POWER_OF_TEN;
+            POW5_HIGH[index] = value.shiftRight(64).longValue();
+            POW5_LOW[index] = value.longValue();
+        }
+    }
+
+    private double value;
+    private boolean decimalPoint;
+
+    // The parsed number, valid after parse() returned true
+    public double getValue() {
+        return value;
+    }
+
+    // Whether the text had a '.', CSVAnalyzer uses that to tell real quantities from integer IDs
+    public boolean hadDecimalPoint() {
+        return decimalPoint;
+    }
+
+
+    /**
+     * Parses bytes[offset, offset + length) as a number, the bytes must already be trimmed.
+     *
+     * @return true if Double.parseDouble would accept the text, the number is then in getValue()
+     */
+    public boolean parse(byte[] bytes, int offset, int length) {
+        decimalPoint = false;
+        if (length == 0) {
+            return false;
+        }
+
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0; // up to 19 significant digits always fit in 64 bits, read as UNSIGNED
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean sawDigit = false;
+        boolean truncated = false;
+
+        // Integer part
+        while (i < end && isDigit(bytes[i])) {
+            int digit = bytes[i] - '0';
+            sawDigit = true;
+            if (mantissa != 0 || digit != 0) { // leading zeros aren't significant
+                if (significantDigits < 19) {
+                    mantissa = mantissa * 10 + digit;
+                    significantDigits++;
+                } else {
+                    truncated = true;
+                    exponent++;
+                }
+            }
+            i++;
+        }
+
+        // Fraction part
+        if (i < end && bytes[i] == '.') {
+            decimalPoint = true;
+            i++;
+            while (i < end && isDigit(bytes[i])) {
+                int digit = bytes[i] - '0';
+                sawDigit = true;
+                if (mantissa == 0 && digit == 0) {
+                    exponent--; // 0.000123 -> 123e-6
+                } else if (significantDigits < 19) {
+                    mantissa = mantissa * 10 + digit;
+                    significantDigits++;
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+                i++;
+            }
+        }
+
+        if (!sawDigit) {
+            return slowPathIfJavaNumber(bytes, offset, length);
+        }
+
+        // Exponent part
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            if (i >= end || !isDigit(bytes[i])) {
+                return false; // "1e" or "1e+" isn't a number
+            }
+            int explicitExponent = 0;
+            while (i < end && isDigit(bytes[i])) {
+                if (explicitExponent < 100_000) { // anything bigger is 0 or infinity anyway
+                    explicitExponent = explicitExponent * 10 + (bytes[i] - '0');
+                }
+                i++;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (i != end || truncated) {
+            // trailing text ("1.5f", "12abc"), or more digits than we can round correctly here
+            return slowPathIfJavaNumber(bytes, offset, length);
+        }
+
+        if (mantissa == 0) {
+            value = negative ? -0.0 : 0.0;
+            return true;
+        }
+
+        // Clinger's fast path: both the mantissa and the power of ten are exact doubles, so one operation rounds correctly
+        if (exponent >= -22 && exponent <= 22 && Long.compareUnsigned(mantissa, 1L << 53) <= 0) {
+            double result = (double) mantissa;
+            result = exponent < 0 ? result / POWERS_OF_TEN[-exponent] : result * POWERS_OF_TEN[exponent];
+            value = negative ? -result : result;
+            return true;
+        }
+
+        double result = eiselLemire(mantissa, exponent, negative);
+        if (Double.isNaN(result)) {
+            return slowPathIfJavaNumber(bytes, offset, length); // couldn't prove the rounding, let the JDK decide
+        }
+        value = result;
+        return true;
+    }
+
+
+    // Eisel-Lemire: mantissa * 10^q rounded to the nearest double, or NaN when the 128 bit product is too close to call
+    private static double eiselLemire(long mantissa, int q, boolean negative) {
+        if (q < SMALLEST_POWER_OF_TEN) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (q > LARGEST_POWER_OF_TEN) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+
+        int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+        long w = mantissa << leadingZeros; // normalize so the top bit is set
+
+        int index = q - SMALLEST_POWER_OF_TEN;
+        long high = Math.unsignedMultiplyHigh(w, POW5_HIGH[index]);
+        long low = w * POW5_HIGH[index];
+
+        // We need 55 good bits. If the 9 bits below them are all ones, a carry from the low half of 5^q could still change them
+        if ((high & 0x1FF) == 0x1FF) {
+            long secondHigh = Math.unsignedMultiplyHigh(w, POW5_LOW[index]);
+            long newLow = low + secondHigh;
+            if (Long.compareUnsigned(newLow, low) < 0) {
+                high++;
+            }
+            low = newLow;
+            if (low == -1L && (q < -27 || q > 55)) {
+                return Double.NaN;
+            }
+        }
+
+        int upperBit = (int) (high >>> 63);
+        long bits = high >>> (upperBit + 9); // 54 bits: 53 for the double plus one for rounding
+        int power2 = ((217706 * q) >> 16) + 63 + upperBit - leadingZeros + 1023; // 217706 / 2^16 ~ log2(10)
+
+        if (power2 <= 0) {
+            // subnormal result
+            if (-power2 + 1 >= 64) {
+                return negative ? -0.0 : 0.0;
+            }
+            bits >>>= -power2 + 1;
+            bits += bits & 1;
+            bits >>>= 1;
+            power2 = bits < (1L << 52) ? 0 : 1;
+            return toDouble(bits, power2, negative);
+        }
+
+        // Exactly halfway between two doubles: round to even instead of up
+        if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && q <= 23 && (bits & 3) == 1) {
+            if ((bits << (upperBit + 9)) == high) {
+                bits &= ~1L;
+            }
+        }
+
+        bits += bits & 1; // round half up
+        bits >>>= 1;
+        if (bits >= (2L << 52)) {
+            bits = 1L << 52; // rounding overflowed into the next power of two
+            power2++;
+        }
+        bits &= ~(1L << 52); // drop the implicit leading one
+
+        if (power2 >= 0x7FF) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return toDouble(bits, power2, negative);
+    }
+
+    private static double toDouble(long mantissaBits, int power2, boolean negative) {
+        long word = mantissaBits | ((long) power2 << 52);
+        if (negative) {
+            word |= 1L << 63;
+        }
+        return Double.longBitsToDouble(word);
+    }
+
+
+    // Only builds a String for text that could still be one of Java's special number forms, everything else is "not a number"
+    private boolean slowPathIfJavaNumber(byte[] bytes, int offset, int length) {
+        if (!mightBeJavaNumber(bytes, offset, length)) {
+            return false;
+        }
+        String text = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        try {
+            value = Double.parseDouble(text);
+            decimalPoint = text.indexOf('.') >= 0;
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // NaN, Infinity, hex ("0x1p3"), a type suffix ("1.5f", "2d"), or a plain number with too many digits.
+    // Anything else (e.g. "Bed", "Consumer") is rejected here without building a String or throwing
+    private static boolean mightBeJavaNumber(byte[] bytes, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        if (bytes[i] == '+' || bytes[i] == '-') {
+            i++;
+        }
+        if (startsWith(bytes, i, end, "NaN") || startsWith(bytes, i, end, "Infinity")) {
+            return true;
+        }
+        if (end - i >= 2 && bytes[i] == '0' && (bytes[i + 1] == 'x' || bytes[i + 1] == 'X')) {
+            return true;
+        }
+
+        byte last = bytes[end - 1];
+        if (last == 'f' || last == 'F' || last == 'd' || last == 'D') {
+            end--;
+        }
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (!isDigit(b) && b != '.' && b != 'e' && b != 'E' && b != '+' && b != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] bytes, int from, int end, String prefix) {
+        if (end - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[from + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -4,13 +4,16 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.util.concurrent.CountDownLatch;
 
+@SuppressWarnings({"serial", "this-escape"}) // Swing frames are never serialized, and the constructor builds the UI
 public class GUIWrapper extends JFrame {
     private JTextArea outputArea;
     private JTextField inputField;
     private PipedOutputStream pipedOut;
     private PipedInputStream pipedIn;
     private volatile boolean cliRunning = true;
+    private final CountDownLatch ready = new CountDownLatch(1); // opened on screen, with System.in/out redirected
 
     public GUIWrapper() {
         setTitle("CSV Visualizer");
@@ -83,35 +86,9 @@ public class GUIWrapper extends JFrame {
                     "Error", JOptionPane.ERROR_MESSAGE);
         }
 
-        // Redirect System.out to text area with UTF-8 encoding
+        // Redirect System.out to text area with UTF-8 encoding, batched so heavy printing doesn't flood the EDT
         try {
-            PrintStream printStream = new PrintStream(new OutputStream() {
-                private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-                @Override
-                public void write(int b) throws IOException {
-                    if (b == '\n' || b == '\r') {
-                        flush();
-                        if (b == '\n') {
-                            SwingUtilities.invokeLater(() -> outputArea.append("\n"));
-                        }
-                    } else {
-                        buffer.write(b);
-                    }
-                }
-
-                @Override
-                public void flush() throws IOException {
-                    if (buffer.size() > 0) {
-                        String text = buffer.toString("UTF-8");
-                        buffer.reset();
-                        SwingUtilities.invokeLater(() -> {
-                            outputArea.append(text);
-                            outputArea.setCaretPosition(outputArea.getDocument().getLength());
-                        });
-                    }
-                }
-            }, true, "UTF-8");
+            PrintStream printStream = new PrintStream(new ConsoleAppender(outputArea), true, "UTF-8");
 
             System.setOut(printStream);
             System.setErr(printStream);
@@ -119,12 +96,24 @@ public class GUIWrapper extends JFrame {
             e.printStackTrace();
         }
 
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                ready.countDown();
+            }
+        });
         setVisible(true);
 
         // Focus on input field
         inputField.requestFocusInWindow();
     }
 
+    // Blocks until the window is open, so the CLI's first lines land in it. Replaces a fixed sleep: no wait
+    // at all on a fast start, and no lost output on a slow one
+    public void awaitReady() throws InterruptedException {
+        ready.await();
+    }
+
     // Method to clean up when CLI finishes
     public void onCLIFinished() {
         cliRunning = false;
@@ -147,6 +136,12 @@ public class GUIWrapper extends JFrame {
     }
 
     public static void main(String[] args) {
+        // The chart workflow window by default, the text CLI in a window with --console
+        if (args.length == 0 || !args[0].equals("--console")) {
+            SwingUtilities.invokeLater(() -> new VisualizerWindow().setVisible(true));
+            return;
+        }
+
         // Must run GUI on Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
             GUIWrapper gui = new GUIWrapper();
@@ -154,8 +149,7 @@ public class GUIWrapper extends JFrame {
             // Start CLI in background thread AFTER GUI is visible
             new Thread(() -> {
                 try {
-                    // Give GUI time to initialize
-                    Thread.sleep(500);
+                    gui.awaitReady();
 
                     // Initialize UTF-8 encoding for Unicode support
                     UIRenderer.initializeEncoding();
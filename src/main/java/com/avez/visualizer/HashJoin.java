@@ -0,0 +1,616 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.JoinResult;
+import com.avez.visualizer.model.JoinType;
+import com.avez.visualizer.model.LoadPlan;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+
+/**
+ * Joins two CSV files on a key column and writes the result as a new CSV file, which then loads and charts like
+ * any other (every load mode and chart type works on it).
+ *
+ * The smaller file (by its CSV size, see LoadPlanner) is the build side: its rows go into a hash table on the key,
+ * the other file is streamed through it row by row, so only the smaller file is ever held in memory. Keys that are
+ * plain integers are looked up as longs in a primitive table, other keys get a dictionary code, rows with the same
+ * code are chained through int arrays.
+ *
+ * When the build side outgrows the memory budget, it's a grace hash join instead: both files are split by a hash
+ * of the key into partition files on disk, every key lands in the same partition on both sides, and the partitions
+ * are joined one pair at a time, each with a hash table of only that partition's build rows. A partition still
+ * over the budget (one key on a large share of the rows) is joined in blocks of build rows that fit. The output is
+ * then grouped by partition instead of following the streamed file's row order.
+ *
+ * Empty keys never match, like SQL's NULL. A left join still keeps those rows, with the right columns empty.
+ */
+public class HashJoin {
+
+    // rough heap cost of a build row besides the characters: the String[] and its slot in the table, per cell a String
+    private static final int ROW_OVERHEAD_BYTES = 64;
+    private static final int CELL_OVERHEAD_BYTES = 48;
+    private static final int PROGRESS_EVERY_ROWS = 10_000;
+    private static final int MAX_PARTITIONS = 256; // each one is a file open while partitioning
+    private static final int PARTITION_BUFFER_BYTES = 64 * 1024; // per open partition file
+
+    private final long memoryBudgetBytes;
+    private final Path spillDirectory; // null = java.io.tmpdir
+
+    // partitions in the system temp directory, the hash table may use a quarter of the max heap
+    public HashJoin() {
+        this(Runtime.getRuntime().maxMemory() / 4, null);
+    }
+
+    public HashJoin(long memoryBudgetBytes, Path spillDirectory) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudgetBytes);
+        }
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+
+    // Gets every row of a file, padded to the header's width
+    private interface RowConsumer {
+        // false stops the stream
+        boolean accept(String[] row) throws IOException;
+    }
+
+
+    /**
+     * Joins left and right where leftKey equals rightKey and writes the rows to output: every left column, then
+     * every right column except its key. Right columns named like a left one get the right file's name appended.
+     * Reports "Building", "Joining" (and for a grace join "Partitioning") progress in rows, and stops with a
+     * CancellationException when the listener cancels.
+     *
+     * @param left     A CSV file, compressed or not, or an Excel workbook
+     * @param leftKey  Key column of the left file (case doesn't matter)
+     * @param right    Same for the right file
+     * @param rightKey Key column of the right file
+     * @param type     INNER or LEFT
+     * @param output   Where the joined CSV goes, overwritten if it exists
+     * @throws IOException If a file cannot be read, or the output or the partitions cannot be written
+     * @throws IllegalArgumentException If a key column doesn't exist
+     */
+    public JoinResult join(File left, String leftKey, File right, String rightKey, JoinType type, Path output,
+                           ProgressListener listener) throws IOException {
+        Side leftSide = new Side(left, leftKey);
+        Side rightSide = new Side(right, rightKey);
+        List<String> headers = outputHeaders(leftSide, rightSide);
+
+        LoadPlanner planner = new LoadPlanner();
+        LoadPlan leftPlan = planner.plan(left);
+        LoadPlan rightPlan = planner.plan(right);
+        boolean leftIsBuild = leftPlan.getFileBytes() <= rightPlan.getFileBytes();
+        Side build = leftIsBuild ? leftSide : rightSide;
+        Side probe = leftIsBuild ? rightSide : leftSide;
+
+        CSVFormat format = CSVFormat.DEFAULT.builder().setRecordSeparator('\n').get();
+        try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(output, StandardCharsets.UTF_8), format)) {
+            printer.printRecord(headers);
+            Output out = new Output(printer, leftSide.headers.size(), rightSide.keyIndex, rightSide.headers.size(), leftIsBuild,
+                    type == JoinType.LEFT && leftIsBuild, type == JoinType.LEFT && !leftIsBuild, listener);
+
+            // the usual case: the smaller file fits, one pass over each file. One estimated at twice the budget
+            // won't, so that goes straight to the partitions instead of building half a table first
+            LoadPlan buildPlan = leftIsBuild ? leftPlan : rightPlan;
+            boolean tooBig = buildPlan.getEstimatedHeapBytes() > 2 * memoryBudgetBytes;
+            int partitions = 0;
+            if (tooBig || !joinInMemory(build, probe, out, listener)) {
+                partitions = (int) Math.max(2, Math.min(MAX_PARTITIONS,
+                        Math.ceil(2.0 * Math.max(buildPlan.getEstimatedHeapBytes(), memoryBudgetBytes) / memoryBudgetBytes)));
+                graceJoin(build, probe, partitions, out, listener);
+            }
+            listener.progress("Joining", out.written, 0, out.written);
+            return new JoinResult(output, headers, out.written, out.buildRows, out.probeRows, leftIsBuild, partitions);
+        }
+    }
+
+
+    // Builds the table from the whole build file and streams the probe file through it. Returns false, with
+    // nothing written, as soon as the table grows past the budget
+    private boolean joinInMemory(Side build, Side probe, Output out, ProgressListener listener) throws IOException {
+        HashTable table = new HashTable(build.keyIndex, out.keepUnmatchedBuild);
+        if (!forEachRow(build.file, listener, "Building", row -> table.add(row) <= memoryBudgetBytes)) {
+            return false; // the table goes with this frame, the grace join gets the whole heap back
+        }
+        out.buildRows = table.rows.size();
+        forEachRow(probe.file, listener, "Joining", row -> {
+            out.probeRows++;
+            out.probe(table, row, probe.keyIndex);
+            return true;
+        });
+        out.unmatched(table);
+        return true;
+    }
+
+    // Splits both files into partitions by the hash of their keys, then joins the partitions pair by pair
+    private void graceJoin(Side build, Side probe, int partitions, Output out, ProgressListener listener) throws IOException {
+        Path directory = spillDirectory != null
+                ? Files.createTempDirectory(spillDirectory, "join-")
+                : Files.createTempDirectory("join-");
+        try {
+            splitIntoPartitions(build, "build", partitions, directory, out.keepUnmatchedBuild, out, listener);
+            splitIntoPartitions(probe, "probe", partitions, directory, out.keepUnmatchedProbe, out, listener);
+
+            for (int p = 0; p < partitions; p++) {
+                listener.checkCancelled();
+                listener.progress("Joining partitions", p, partitions, out.written);
+
+                Path buildFile = directory.resolve("build-" + p);
+                Path probeFile = directory.resolve("probe-" + p);
+                joinPartition(buildFile, probeFile, build, probe, out);
+                Files.deleteIfExists(buildFile);
+                Files.deleteIfExists(probeFile);
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    // Joins one pair of partitions. A partition holds about 1 / partitions of the build rows, so they normally make
+    // one table. A single very frequent key can still make it bigger than the budget, and no hash can split that
+    // since all its rows must meet: it's then joined a block at a time, as many build rows as the budget holds with
+    // the whole probe partition streamed through each block. An unmatched probe row that has to be kept (LEFT join,
+    // left file probed) is only known once every block missed it, so those come out in a last pass
+    private void joinPartition(Path buildFile, Path probeFile, Side build, Side probe, Output out) throws IOException {
+        try (DataInputStream buildRows = openPartition(buildFile)) {
+            String[] next = readRow(buildRows);
+            BitSet probeMatched = null; // which probe rows met a block, once there is more than one block
+            do {
+                HashTable table = new HashTable(build.keyIndex, out.keepUnmatchedBuild);
+                while (next != null) {
+                    long bytes = table.add(next);
+                    next = readRow(buildRows);
+                    if (bytes > memoryBudgetBytes) {
+                        break;
+                    }
+                }
+
+                if (probeMatched == null && next == null) { // the usual case, the partition fit in one table
+                    readPartition(probeFile, row -> {
+                        out.probe(table, row, probe.keyIndex);
+                        return true;
+                    });
+                } else {
+                    BitSet matched = probeMatched != null ? probeMatched : (probeMatched = new BitSet());
+                    int[] index = {0};
+                    readPartition(probeFile, row -> {
+                        if (out.match(table, row, probe.keyIndex) && out.keepUnmatchedProbe) {
+                            matched.set(index[0]);
+                        }
+                        index[0]++;
+                        return true;
+                    });
+                }
+                out.unmatched(table);
+            } while (next != null);
+
+            if (probeMatched != null && out.keepUnmatchedProbe) {
+                BitSet matched = probeMatched;
+                int[] index = {0};
+                readPartition(probeFile, row -> {
+                    if (!matched.get(index[0]++)) {
+                        out.unmatchedProbe(row);
+                    }
+                    return true;
+                });
+            }
+        }
+    }
+
+    // Writes each row to the partition file of its key. Rows with an empty key never match: they go straight to
+    // the output if their side is kept whole (probe), into partition 0 to come out unmatched (build), or nowhere.
+    // Every row is counted here, whatever its key, so the row counts don't depend on which join ran
+    private void splitIntoPartitions(Side side, String name, int partitions, Path directory, boolean keepUnkeyed,
+                                     Output out, ProgressListener listener) throws IOException {
+        DataOutputStream[] files = new DataOutputStream[partitions];
+        try {
+            for (int p = 0; p < partitions; p++) {
+                files[p] = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(directory.resolve(name + "-" + p)), PARTITION_BUFFER_BYTES));
+            }
+            boolean probeSide = name.equals("probe");
+            forEachRow(side.file, listener, "Partitioning", row -> {
+                if (probeSide) {
+                    out.probeRows++;
+                } else {
+                    out.buildRows++;
+                }
+                String key = row[side.keyIndex];
+                if (key.isEmpty()) {
+                    if (keepUnkeyed && probeSide) {
+                        out.unmatchedProbe(row);
+                    } else if (keepUnkeyed) {
+                        writeRow(files[0], row);
+                    }
+                    return true;
+                }
+                writeRow(files[(int) Long.remainderUnsigned(HyperLogLog.hash(key), partitions)], row);
+                return true;
+            });
+        } finally {
+            for (DataOutputStream file : files) {
+                if (file != null) {
+                    file.close();
+                }
+            }
+        }
+    }
+
+
+    // Streams the data rows of a file, checking for cancel and reporting every PROGRESS_EVERY_ROWS rows.
+    // Returns false if the consumer stopped it
+    private static boolean forEachRow(File file, ProgressListener listener, String stage, RowConsumer consumer) throws IOException {
+        try (CSVParser parser = CSVParser.parse(CSVReader.utf8Reader(
+                new BufferedInputStream(CSVReader.openInput(file), 64 * 1024)), CSVReader.defaultFormat())) {
+            int width = parser.getHeaderNames().size();
+            long rows = 0;
+            for (CSVRecord record : parser) {
+                String[] row = new String[width];
+                for (int i = 0; i < width; i++) {
+                    row[i] = i < record.size() ? record.get(i) : ""; // short rows miss the last cells
+                }
+                if (!consumer.accept(row)) {
+                    return false;
+                }
+                if (++rows % PROGRESS_EVERY_ROWS == 0) {
+                    listener.checkCancelled();
+                    listener.progress(stage, rows, 0, rows);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static void writeRow(DataOutputStream out, String[] row) throws IOException {
+        out.writeInt(row.length);
+        for (String value : row) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length); // not writeUTF(), that one stops at 64 KB
+            out.write(bytes);
+        }
+    }
+
+    private static void readPartition(Path file, RowConsumer consumer) throws IOException {
+        try (DataInputStream in = openPartition(file)) {
+            for (String[] row = readRow(in); row != null; row = readRow(in)) {
+                consumer.accept(row);
+            }
+        }
+    }
+
+    private static DataInputStream openPartition(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), PARTITION_BUFFER_BYTES));
+    }
+
+    // the next row written by writeRow, null at the end of the partition
+    private static String[] readRow(DataInputStream in) throws IOException {
+        int width;
+        try {
+            width = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        String[] row = new String[width];
+        for (int i = 0; i < width; i++) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            row[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return row;
+    }
+
+
+    /**
+     * The column names of a file in the order they appear, to pick a key column from. Read like every other reader
+     * reads them (no byte order mark on the first one), but one per field, duplicates too: the rows are copied by position.
+     *
+     * @throws IOException If the file cannot be read
+     */
+    public static List<String> readHeaders(File file) throws IOException {
+        try (CSVParser parser = CSVParser.parse(CSVReader.utf8Reader(CSVReader.openInput(file)), CSVReader.defaultFormat())) {
+            return new ArrayList<>(parser.getHeaderNames()); // file order, the header map is sorted
+        }
+    }
+
+    // every left column, then the right ones without the key, renamed where they would clash
+    private static List<String> outputHeaders(Side left, Side right) {
+        List<String> headers = new ArrayList<>(left.headers);
+        TreeSet<String> taken = new TreeSet<>(String.CASE_INSENSITIVE_ORDER); // headers are matched ignoring case
+        taken.addAll(headers);
+        String suffix = " (" + baseName(right.file) + ")";
+        for (int i = 0; i < right.headers.size(); i++) {
+            if (i == right.keyIndex) {
+                continue;
+            }
+            String name = right.headers.get(i);
+            if (taken.contains(name)) {
+                name = name + suffix;
+                for (int n = 2; taken.contains(name); n++) {
+                    name = right.headers.get(i) + suffix.substring(0, suffix.length() - 1) + " " + n + ")";
+                }
+            }
+            taken.add(name);
+            headers.add(name);
+        }
+        return headers;
+    }
+
+    // orders.csv.gz -> orders
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+
+    // One input file with its header and where its key column is
+    private static final class Side {
+        private final File file;
+        private final List<String> headers;
+        private final int keyIndex;
+
+        Side(File file, String key) throws IOException {
+            this.file = file;
+            this.headers = readHeaders(file);
+            int index = -1;
+            for (int i = 0; i < headers.size(); i++) {
+                if (headers.get(i).equalsIgnoreCase(key)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                throw new IllegalArgumentException(file.getName() + " has no column named " + key + ", it has " + headers);
+            }
+            this.keyIndex = index;
+        }
+    }
+
+
+    /**
+     * The build rows by key. A key written the way Long.toString writes a number ("42", "-7") is looked up as a
+     * long in an open addressing table, any other key gets a code from a dictionary. "007" and "7" are different
+     * text, so they stay different keys. The rows of a code are chained in file order: first[code] is the first
+     * one, next[row] the one after it, -1 ends the chain.
+     */
+    private static final class HashTable {
+        private final int keyIndex;
+        private final BitSet matched; // rows that met a probe row, only tracked when the unmatched ones are output
+        private final LongCodes integerKeys = new LongCodes();
+        private final Map<String, Integer> textKeys = new HashMap<>();
+        private final List<String[]> rows = new ArrayList<>();
+        private int[] first = new int[1024];
+        private int[] last = new int[1024];
+        private int[] next = new int[1024];
+        private int codes = 0;
+        private long bytes = 0;
+
+        HashTable(int keyIndex, boolean trackMatches) {
+            this.keyIndex = keyIndex;
+            this.matched = trackMatches ? new BitSet() : null;
+        }
+
+        // Adds the row, returns the estimated heap used by the table so far
+        long add(String[] row) {
+            int index = rows.size();
+            rows.add(row);
+            if (index == next.length) {
+                next = Arrays.copyOf(next, index * 2);
+            }
+            next[index] = -1;
+
+            bytes += ROW_OVERHEAD_BYTES;
+            for (String value : row) {
+                bytes += CELL_OVERHEAD_BYTES + value.length(); // Latin-1, 1 byte per char
+            }
+
+            String key = row[keyIndex];
+            if (key.isEmpty()) {
+                return bytes; // never matches, kept only to come out unmatched
+            }
+            int code = codeOf(key, true);
+            if (code == codes) { // a new key
+                if (code == first.length) {
+                    first = Arrays.copyOf(first, code * 2);
+                    last = Arrays.copyOf(last, code * 2);
+                }
+                first[code] = index;
+                codes++;
+            } else {
+                next[last[code]] = index;
+            }
+            last[code] = index;
+            return bytes;
+        }
+
+        // the first row with this key, -1 if there is none
+        int firstRow(String key) {
+            if (key.isEmpty()) {
+                return -1;
+            }
+            int code = codeOf(key, false);
+            return code < 0 ? -1 : first[code];
+        }
+
+        private int codeOf(String key, boolean add) {
+            if (isCanonicalLong(key)) {
+                return integerKeys.code(Long.parseLong(key), add ? codes : -1);
+            }
+            Integer code = add ? textKeys.putIfAbsent(key, codes) : textKeys.get(key);
+            return code != null ? code : add ? codes : -1;
+        }
+
+        // digits with an optional minus, no leading zero, short enough for a long
+        private static boolean isCanonicalLong(String key) {
+            int start = key.charAt(0) == '-' ? 1 : 0;
+            int length = key.length() - start;
+            if (length == 0 || length > 18 || (key.charAt(start) == '0' && (length > 1 || start == 1))) {
+                return false;
+            }
+            for (int i = start; i < key.length(); i++) {
+                char c = key.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    // long -> code, open addressing with linear probing, kept at most half full
+    private static final class LongCodes {
+        private long[] keys = new long[1024];
+        private int[] codes = new int[1024]; // code + 1, 0 = empty slot
+        private int size = 0;
+
+        // The key's code. A missing key gets newCode if it is >= 0, otherwise -1 comes back
+        int code(long key, int newCode) {
+            int mask = keys.length - 1;
+            int slot = (int) HyperLogLog.mix(key) & mask;
+            while (codes[slot] != 0) {
+                if (keys[slot] == key) {
+                    return codes[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (newCode < 0) {
+                return -1;
+            }
+            keys[slot] = key;
+            codes[slot] = newCode + 1;
+            if (++size * 2 > keys.length) {
+                rehash();
+            }
+            return newCode;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldCodes = codes;
+            keys = new long[oldKeys.length * 2];
+            codes = new int[oldCodes.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCodes[i] != 0) {
+                    int slot = (int) HyperLogLog.mix(oldKeys[i]) & mask;
+                    while (codes[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    codes[slot] = oldCodes[i];
+                }
+            }
+        }
+    }
+
+
+    // Puts joined rows together in the output's column order and writes them
+    private static final class Output {
+        private final CSVPrinter printer;
+        private final int leftWidth;
+        private final int rightKeyIndex;
+        private final String[] joined; // reused for every row written
+        private final boolean leftIsBuild;
+        private final boolean keepUnmatchedBuild;
+        private final boolean keepUnmatchedProbe;
+        private final ProgressListener listener;
+        private final String[] emptyLeft;
+        private final String[] emptyRight;
+        private long written = 0;
+        private long buildRows = 0;
+        private long probeRows = 0;
+
+        Output(CSVPrinter printer, int leftWidth, int rightKeyIndex, int rightWidth, boolean leftIsBuild,
+               boolean keepUnmatchedBuild, boolean keepUnmatchedProbe, ProgressListener listener) {
+            this.printer = printer;
+            this.leftWidth = leftWidth;
+            this.rightKeyIndex = rightKeyIndex;
+            this.joined = new String[leftWidth + rightWidth - 1];
+            this.leftIsBuild = leftIsBuild;
+            this.keepUnmatchedBuild = keepUnmatchedBuild;
+            this.keepUnmatchedProbe = keepUnmatchedProbe;
+            this.listener = listener;
+            this.emptyLeft = new String[leftWidth];
+            this.emptyRight = new String[rightWidth];
+            Arrays.fill(emptyLeft, "");
+            Arrays.fill(emptyRight, "");
+        }
+
+        // Writes the row joined with every build row of its key, or on its own if it has none and is kept
+        // (the caller counts it in probeRows)
+        void probe(HashTable table, String[] row, int keyIndex) throws IOException {
+            if (!match(table, row, keyIndex) && keepUnmatchedProbe) {
+                unmatchedProbe(row);
+            }
+        }
+
+        // Writes the row joined with every build row of its key, false if there is none
+        boolean match(HashTable table, String[] row, int keyIndex) throws IOException {
+            int match = table.firstRow(row[keyIndex]);
+            if (match < 0) {
+                return false;
+            }
+            for (; match >= 0; match = table.next[match]) {
+                if (table.matched != null) {
+                    table.matched.set(match);
+                }
+                String[] buildRow = table.rows.get(match);
+                write(leftIsBuild ? buildRow : row, leftIsBuild ? row : buildRow);
+            }
+            return true;
+        }
+
+        void unmatchedProbe(String[] row) throws IOException {
+            write(leftIsBuild ? emptyLeft : row, leftIsBuild ? row : emptyRight);
+        }
+
+        // build rows no probe row matched, when they have to be kept
+        void unmatched(HashTable table) throws IOException {
+            if (!keepUnmatchedBuild) {
+                return;
+            }
+            for (int row = table.matched.nextClearBit(0); row < table.rows.size(); row = table.matched.nextClearBit(row + 1)) {
+                String[] buildRow = table.rows.get(row);
+                write(leftIsBuild ? buildRow : emptyLeft, leftIsBuild ? emptyRight : buildRow);
+            }
+        }
+
+        private void write(String[] left, String[] right) throws IOException {
+            System.arraycopy(left, 0, joined, 0, leftWidth);
+            System.arraycopy(right, 0, joined, leftWidth, rightKeyIndex);
+            System.arraycopy(right, rightKeyIndex + 1, joined, leftWidth + rightKeyIndex, right.length - rightKeyIndex - 1);
+            printer.printRecord((Object[]) joined);
+            if (++written % PROGRESS_EVERY_ROWS == 0) {
+                listener.checkCancelled();
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.avez.visualizer;
+
+
+/**
+ * Small HyperLogLog sketch, counts distinct values in fixed memory (2^precision bytes).
+ * With the default precision of 14 that is 16 KB and about 0.8% standard error, no matter how many values are added.
+ * Two sketches with the same precision can be merged, which is what makes them useful for incremental stats.
+ */
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final int registerCount;
+    private final byte[] registers; // each register keeps the longest run of leading zeros seen for its bucket
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18, got " + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.registers = new byte[registerCount];
+    }
+
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    // Adds an already hashed value, the hash must be a well mixed 64 bit hash
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision)); // first bits pick the register
+        long rest = hash << precision; // the remaining bits give the run length
+        int rank = Math.min(Long.numberOfLeadingZeros(rest), 64 - precision) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeroRegisters = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeroRegisters++;
+            }
+        }
+
+        double alpha = 0.7213 / (1 + 1.079 / registerCount);
+        double raw = alpha * registerCount * registerCount / sum;
+
+        // Small range correction: with many empty registers linear counting is far more accurate
+        if (raw <= 2.5 * registerCount && zeroRegisters > 0) {
+            return Math.round(registerCount * Math.log((double) registerCount / zeroRegisters));
+        }
+        return Math.round(raw);
+    }
+
+    // Folds another sketch into this one, afterwards this one counts the union of both
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with different precision");
+        }
+        for (int i = 0; i < registerCount; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    // 64 bit FNV-1a over the chars, followed by a murmur style finalizer so all bits are well mixed
+    public static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
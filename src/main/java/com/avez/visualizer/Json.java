@@ -0,0 +1,45 @@
+package com.avez.visualizer;
+
+
+/**
+ * The little JSON the visualizer writes by hand (ChartServer's responses, RunMetrics' reports) needs only its
+ * strings escaped, so that's all there is here.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+
+    // The value as a JSON string literal, quotes included
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\uFEFF') {
+                        quoted.append(String.format("\\u%04x", (int) c)); // control characters and the BOM
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.avez.visualizer;
+
+
+// Main class of the jar. Picks the mode before any Swing or chart class is loaded: the window (no arguments),
+// the CLI in a window (--console), or Main's batch and terminal modes (--generate, --serve, --watch, ...).
+// GUIWrapper itself extends JFrame, so starting from it would load Swing even for a batch job
+public class Launcher {
+        public static void main(String[] args) {
+                if (args.length == 0 || args[0].equals("--console")) {
+                        GUIWrapper.main(args);
+                } else {
+                        Main.main(args);
+                }
+        }
+}
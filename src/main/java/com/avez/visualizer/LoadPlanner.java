@@ -0,0 +1,180 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.LoadMode;
+import com.avez.visualizer.model.LoadPlan;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+
+/**
+ * Picks how to load a CSV file before any of it is parsed, from a few cheap measurements:
+ * the file size, the average row width in the first MB (so the row count), the column count from the header,
+ * the heap that is still free (Runtime.maxMemory() minus what's in use) and the free physical memory.
+ * What's in use may be garbage, or datasets the DatasetCache only holds through soft references; those are counted
+ * as free, and when the file looks too big for the heap a GC is asked for and the heap measured again before giving up on it.
+ *
+ *   IN_MEMORY    if the CSVRecords fit comfortably in the free heap (full features)
+ *   OFF_HEAP     else if the columns fit comfortably in free physical memory (exact, GC doesn't see them)
+ *   OUT_OF_CORE  else, if the temp directory has room for the column files
+ *   APPROXIMATE  if even that doesn't fit, a sample is all we can do
+ *
+ * There is no separate streaming aggregation mode, OUT_OF_CORE is it: after one pass that writes the column files,
+ * the analysis and every chart stream a column file and keep only its aggregates. Streaming the CSV itself instead
+ * would re-parse all of the text for every chart.
+ */
+public class LoadPlanner {
+
+    // Heap cost of an IN_MEMORY load, measured on the Superstore sample (CSVData was ~5.6x the file size):
+    // per row a CSVRecord, its String[] and the ArrayList slot, per cell a String header, plus the characters themselves
+    private static final int ROW_OVERHEAD_BYTES = 56;
+    private static final int CELL_OVERHEAD_BYTES = 48;
+    private static final int OFF_HEAP_CELL_BYTES = 12; // a double and an int code, see OffHeapColumnVector
+
+    // only plan to use part of what's free, the analysis and the charts need room too
+    private static final double HEAP_SHARE = 0.6;
+    private static final double MEMORY_SHARE = 0.5;
+    private static final double SPILL_DISK_FACTOR = 1.5; // spill files are about the size of the CSV, plus aggregation runs
+
+    private long availableHeapBytes; // measured again after a GC when the first reading says the file doesn't fit
+    private final long availableMemoryBytes;
+    private final long availableDiskBytes;
+    private final boolean measured; // false when the numbers were given, they are then used as they are
+    private final DatasetCache cache; // its softly held datasets count as free heap, null if there is none
+
+    // measures this JVM and machine
+    public LoadPlanner() {
+        this(null);
+    }
+
+    // same, the datasets the cache only holds softly count as free, the GC drops them before it runs out of heap
+    public LoadPlanner(DatasetCache cache) {
+        this.cache = cache;
+        this.measured = true;
+        this.availableHeapBytes = freeHeap(cache);
+        this.availableMemoryBytes = freePhysicalMemory();
+        this.availableDiskBytes = freeTempDisk();
+    }
+
+    public LoadPlanner(long availableHeapBytes, long availableMemoryBytes, long availableDiskBytes) {
+        this.cache = null;
+        this.measured = false;
+        this.availableHeapBytes = availableHeapBytes;
+        this.availableMemoryBytes = availableMemoryBytes;
+        this.availableDiskBytes = availableDiskBytes;
+    }
+
+
+    /**
+     * Decides how to load the file.
+     *
+     * @param file A CSV file, a compressed one or an Excel workbook (not a folder or a pattern, those are always loaded in memory)
+     * @return The chosen mode and the estimates behind it
+     * @throws IOException If the start of the file cannot be read
+     */
+    public LoadPlan plan(File file) throws IOException {
+        long fileBytes = estimateCsvBytes(file);
+        long rows = Math.max(1, Math.round(fileBytes / CSVSampler.estimateBytesPerRow(file)));
+        int columns = countColumns(file);
+
+        long heapBytes = estimateInMemoryBytes(fileBytes, rows, columns);
+        long offHeapBytes = rows * columns * (long) OFF_HEAP_CELL_BYTES;
+
+        if (measured && heapBytes > availableHeapBytes * HEAP_SHARE) {
+            // part of the used heap may just be garbage nobody collected yet, only a GC tells. It's asked for
+            // only here, where the answer changes the load mode
+            System.gc();
+            availableHeapBytes = freeHeap(cache);
+        }
+
+        LoadMode mode;
+        String reason;
+        if (heapBytes <= availableHeapBytes * HEAP_SHARE) {
+            mode = LoadMode.IN_MEMORY;
+            reason = "fits in the free heap";
+        } else if (availableMemoryBytes > 0 && offHeapBytes <= availableMemoryBytes * MEMORY_SHARE) {
+            mode = LoadMode.OFF_HEAP;
+            reason = "too big for the heap, but the columns fit in free memory outside it";
+        } else if (fileBytes * SPILL_DISK_FACTOR <= availableDiskBytes) {
+            mode = LoadMode.OUT_OF_CORE;
+            reason = "bigger than the free memory, columns will be spilled to disk";
+        } else {
+            mode = LoadMode.APPROXIMATE;
+            reason = "too big for memory and not enough free temp disk for out-of-core, using a sample";
+        }
+
+        return new LoadPlan(mode, reason, fileBytes, rows, columns, heapBytes, offHeapBytes,
+                availableHeapBytes, availableMemoryBytes);
+    }
+
+
+    /**
+     * Size of the CSV text the file is parsed as, which is what loads and caches have to hold: the inflated size
+     * of a compressed file, the converted CSV of a workbook, the file size otherwise.
+     *
+     * @throws IOException If the start of the file cannot be read
+     */
+    public static long estimateCsvBytes(File file) throws IOException {
+        if (XLSXReader.isXlsx(file.getName())) {
+            // a workbook is compressed XML, its size says little. Rows come from the sheet, sizes from the CSV it turns into
+            long rows;
+            try (XLSXReader workbook = new XLSXReader(file)) {
+                rows = Math.max(1, workbook.estimateRows() - 1); // minus the header row
+            }
+            return Math.round(rows * CSVSampler.estimateBytesPerRow(file));
+        }
+        return CompressedInput.isCompressed(file.getName())
+                ? CompressedInput.estimateUncompressedBytes(file) // what gets parsed and spilled is the inflated CSV
+                : file.length();
+    }
+
+
+    // Heap taken by an IN_MEMORY load (CSVData) of a file with this many rows and columns, also used by DatasetCache
+    public static long estimateInMemoryBytes(long fileBytes, long rows, int columns) {
+        return rows * (ROW_OVERHEAD_BYTES + (long) columns * CELL_OVERHEAD_BYTES) + fileBytes; // Latin-1, 1 byte per char
+    }
+
+
+    // fields in the header row
+    private int countColumns(File file) throws IOException {
+        try (InputStream in = CSVReader.openInput(file)) {
+            ByteCSVTokenizer tokenizer = new ByteCSVTokenizer(in, 64 * 1024);
+            int columns = 0;
+            while (tokenizer.next()) {
+                columns++;
+                if (tokenizer.isEndOfRow()) {
+                    break;
+                }
+            }
+            return Math.max(1, columns);
+        }
+    }
+
+    private static long freeHeap(DatasetCache cache) {
+        Runtime runtime = Runtime.getRuntime();
+        long reclaimable = cache != null ? cache.getSoftlyHeldBytes() : 0;
+        return Math.min(runtime.maxMemory(), runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory()) + reclaimable);
+    }
+
+    // 0 when the JVM can't tell (not a HotSpot style OperatingSystemMXBean), OFF_HEAP is then never picked
+    private static long freePhysicalMemory() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getFreeMemorySize();
+        }
+        return 0;
+    }
+
+    private static long freeTempDisk() {
+        try {
+            return Files.getFileStore(Paths.get(System.getProperty("java.io.tmpdir"))).getUsableSpace();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
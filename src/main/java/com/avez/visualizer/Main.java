@@ -1,10 +1,292 @@
 package com.avez.visualizer;
 
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.ChartRecommendation;
+import com.avez.visualizer.model.ChartType;
+import com.avez.visualizer.model.ColumnInfo;
+import com.avez.visualizer.model.CorrelationMatrix;
+import com.avez.visualizer.model.JoinResult;
+import com.avez.visualizer.model.JoinType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
 
 // Entry point for CSV Visualizer application
 public class Main {
         public static void main(String[] args) {
+                // --jfr <file.jfr> in front of any other arguments records the run with Java Flight Recorder
+                if (args.length > 1 && args[0].equals("--jfr")) {
+                        if (!startRecording(Paths.get(args[1]))) {
+                                return;
+                        }
+                        args = Arrays.copyOfRange(args, 2, args.length);
+                }
+
+                if (args.length > 0 && args[0].equals("--follow")) {
+                        follow(args);
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("--watch")) {
+                        watch(args);
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("--serve")) {
+                        serve(args);
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("--generate")) {
+                        generate(args);
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("--correlation")) {
+                        correlation(args);
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("--join")) {
+                        join(args);
+                        return;
+                }
+                if (args.length > 1 && args[0].equals("--cds-training")) {
+                        cdsTraining(args[1]);
+                        return;
+                }
+
+                // --report <directory>: the CLI also writes a JSON metrics report per loaded dataset there
+                if (args.length > 1 && args[0].equals("--report")) {
+                        new CLIInterface(Paths.get(args[1])).start();
+                        return;
+                }
+
                 CLIInterface cli = new CLIInterface();
                 cli.start();
         }
+
+
+        // --follow <file.csv> <column> <CHART_TYPE> <output.png> [intervalSeconds]
+        // keeps the chart of a growing CSV up to date until Enter is pressed
+        private static void follow(String[] args) {
+                if (args.length < 5) {
+                        System.err.println("Usage: --follow <file.csv> <column> <CHART_TYPE> <output.png> [intervalSeconds]");
+                        return;
+                }
+
+                ChartType chartType;
+                long interval;
+                try {
+                        chartType = ChartType.valueOf(args[3].toUpperCase());
+                        interval = args.length > 5 ? Long.parseLong(args[5]) : 5;
+                } catch (IllegalArgumentException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " Invalid chart type or interval: " + e.getMessage());
+                        return;
+                }
+                if (interval <= 0) {
+                        System.err.println(UIRenderer.getIcon("error") + " The interval must be at least 1 second, got " + interval);
+                        System.err.println("Usage: --follow <file.csv> <column> <CHART_TYPE> <output.png> [intervalSeconds]");
+                        return;
+                }
+
+                try (CSVFollower follower = new CSVFollower(args[1], args[2], chartType, args[4])) {
+                        follower.start(interval);
+                        System.out.println(UIRenderer.getIcon("reload") + " Following " + args[1] + " every " + interval
+                                        + "s, press Enter to stop.");
+                        System.in.read();
+                } catch (IOException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " " + e.getMessage());
+                }
+        }
+
+
+        // --watch <directory> [outputDirectory]
+        // re-renders the charts of every CSV in the directory whenever it changes, runs until the process is stopped
+        private static void watch(String[] args) {
+                if (args.length < 2) {
+                        System.err.println("Usage: --watch <directory> [outputDirectory]");
+                        return;
+                }
+
+                Path watchDir = Paths.get(args[1]);
+                Path outputDir = args.length > 2 ? Paths.get(args[2]) : watchDir.resolve("charts");
+
+                try {
+                        Files.createDirectories(outputDir);
+                        try (DirectoryWatcher watcher = new DirectoryWatcher(watchDir, outputDir)) {
+                                watcher.run();
+                        }
+                } catch (IOException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " " + e.getMessage());
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                }
+        }
+
+
+        // --serve [port]
+        // HTTP chart service on localhost (endpoints in ChartServer), runs until Enter is pressed
+        private static void serve(String[] args) {
+                int port;
+                try {
+                        port = args.length > 1 ? Integer.parseInt(args[1]) : 8765;
+                } catch (NumberFormatException e) {
+                        System.err.println("Usage: --serve [port]");
+                        return;
+                }
+
+                try (ChartServer server = new ChartServer(port)) {
+                        server.start();
+                        System.out.println(UIRenderer.getIcon("info") + " Press Enter to stop.");
+                        System.in.read();
+                } catch (IOException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " " + e.getMessage());
+                }
+        }
+
+
+        // --generate <output.csv> <rows> [seed]
+        // writes a Superstore-shaped CSV of any size (SuperstoreGenerator), the same seed gives the same file
+        private static void generate(String[] args) {
+                long rows;
+                long seed;
+                try {
+                        rows = Long.parseLong(args[2].replace("_", ""));
+                        seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                        System.err.println("Usage: --generate <output.csv> <rows> [seed]");
+                        return;
+                }
+
+                long start = System.nanoTime();
+                try {
+                        Path output = Paths.get(args[1]);
+                        new SuperstoreGenerator(seed).generate(output, rows);
+                        double seconds = (System.nanoTime() - start) / 1e9;
+                        System.out.printf("%s Wrote %,d rows (%,.0f MB) to %s in %.1fs%n", UIRenderer.getIcon("success"), rows,
+                                        Files.size(output) / 1048576.0, output, seconds);
+                } catch (IOException | IllegalArgumentException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " " + e.getMessage());
+                }
+        }
+
+
+        // --correlation <file.csv> <output.png> [spearman]
+        // correlations between all numeric columns: the strongest pairs printed, the matrix saved as a heatmap
+        private static void correlation(String[] args) {
+                if (args.length < 3) {
+                        System.err.println("Usage: --correlation <file.csv> <output.png> [spearman]");
+                        return;
+                }
+                boolean spearman = args.length > 3 && args[3].equalsIgnoreCase("spearman");
+
+                try {
+                        UIRenderer.initializeEncoding();
+                        CSVData data = new CSVReader().readCSV(args[1]);
+                        List<ColumnInfo> columnInfos = new CSVAnalyzer().analyzeColumns(data);
+                        long start = System.nanoTime();
+                        CorrelationMatrix matrix = new CorrelationAnalyzer().correlate(data, columnInfos, spearman, ProgressListener.NONE);
+                        System.out.printf("%s %d numeric columns correlated over %,d rows in %d ms%n", UIRenderer.getIcon("success"),
+                                        matrix.size(), matrix.getRowCount(), (System.nanoTime() - start) / 1_000_000);
+                        for (int[] pair : CorrelationAnalyzer.strongestPairs(matrix, 5)) {
+                                System.out.printf("   %+.3f  %s ~ %s%n", matrix.getPearson(pair[0], pair[1]),
+                                                matrix.getColumns().get(pair[0]), matrix.getColumns().get(pair[1]));
+                        }
+                        new ChartGenerator().generateCorrelationHeatmap(matrix, spearman, args[2]);
+                } catch (IOException | IllegalArgumentException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " " + e.getMessage());
+                }
+        }
+
+
+        // --join <left.csv> <leftKey> <right.csv> <rightKey> <output.csv> [inner|left]
+        // joins two files on a key column (HashJoin), the output is a CSV like any other to load and chart
+        private static void join(String[] args) {
+                JoinType type;
+                try {
+                        type = args.length > 6 ? JoinType.valueOf(args[6].toUpperCase()) : JoinType.INNER;
+                } catch (IllegalArgumentException e) {
+                        type = null;
+                }
+                if (args.length < 6 || type == null) {
+                        System.err.println("Usage: --join <left.csv> <leftKey> <right.csv> <rightKey> <output.csv> [inner|left]");
+                        return;
+                }
+
+                long start = System.nanoTime();
+                try {
+                        UIRenderer.initializeEncoding();
+                        JoinResult result = new HashJoin().join(new File(args[1]), args[2], new File(args[3]), args[4], type,
+                                        Paths.get(args[5]), ProgressListener.NONE);
+                        System.out.printf("%s Wrote %,d joined rows to %s in %d ms (%,d rows in the hash table, %s)%n",
+                                        UIRenderer.getIcon("success"), result.getRowsWritten(), result.getOutput(),
+                                        (System.nanoTime() - start) / 1_000_000, result.getBuildRows(),
+                                        result.isPartitioned() ? result.getPartitions() + " partitions on disk" : "in memory");
+                } catch (IOException | IllegalArgumentException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " " + e.getMessage());
+                }
+        }
+
+
+        // --cds-training <file.csv>
+        // The build's training run for the AppCDS archive (see pom.xml): the steps of a typical session without
+        // the prompts, so the classes they load end up in the archive. Charts go to a temp dir that is deleted
+        private static void cdsTraining(String csvPath) {
+                try {
+                        UIRenderer.initializeEncoding();
+                        CSVData data = new CSVReader().readCSV(csvPath);
+                        List<ColumnInfo> columnInfos = new CSVAnalyzer().analyzeColumns(data);
+                        ChartRecommender recommender = new ChartRecommender();
+                        ChartGenerator generator = new ChartGenerator();
+
+                        Path charts = Files.createTempDirectory("cds-training");
+                        Set<ChartType> drawn = EnumSet.noneOf(ChartType.class);
+                        for (ColumnInfo info : columnInfos) {
+                                for (ChartRecommendation recommendation : recommender.recommendCharts(info)) {
+                                        ChartType type = recommendation.getChartType();
+                                        if (type != ChartType.SCATTER_PLOT && drawn.add(type)) {
+                                                Path png = charts.resolve(type + ".png");
+                                                generator.generateChart(info.getColumnName(), data.getRecords(), type, png.toString());
+                                                Files.delete(png);
+                                        }
+                                }
+                        }
+                        Files.delete(charts);
+                        System.out.println(UIRenderer.getIcon("success") + " Training run done, " + drawn.size() + " chart types drawn.");
+                } catch (IOException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " " + e.getMessage());
+                }
+        }
+
+
+        // JFR's "default" settings (low overhead, fine for production) plus every VisualizerEvents event, written to
+        // the file when the JVM exits, however it exits
+        private static boolean startRecording(Path output) {
+                try {
+                        Recording recording = new Recording(Configuration.getConfiguration("default"));
+                        recording.setName("Data Visualiser");
+                        recording.enable(VisualizerEvents.ParseEvent.class).withoutThreshold();
+                        recording.enable(VisualizerEvents.ColumnAnalysisEvent.class).withoutThreshold();
+                        recording.enable(VisualizerEvents.ChartAggregationEvent.class).withoutThreshold();
+                        recording.enable(VisualizerEvents.ChartRenderEvent.class).withoutThreshold();
+                        recording.enable(VisualizerEvents.PngSaveEvent.class).withoutThreshold();
+                        recording.setDestination(output);
+                        recording.setDumpOnExit(true);
+                        recording.start();
+                        System.out.println(UIRenderer.getIcon("info") + " Recording to " + output.toAbsolutePath()
+                                        + ", written on exit.");
+                        return true;
+                } catch (IOException | ParseException e) {
+                        System.err.println(UIRenderer.getIcon("error") + " Could not start the flight recording: " + e.getMessage());
+                        return false;
+                }
+        }
 }
@@ -0,0 +1,150 @@
+package com.avez.visualizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Running distribution of one numeric column in fixed memory, for modes that keep adding values (follow mode).
+ * The first BINS values are kept exactly, after that they go into BINS equal width bins whose range doubles
+ * (merging neighbouring bins) whenever a value falls outside it. Count, mean, min and max stay exact,
+ * quantiles are interpolated inside a bin, so they are off by at most one bin width (about 1/1000 of the range).
+ */
+public class NumericSketch {
+
+    public static final int BINS = 2048;
+
+    private final double[] exactValues = new double[BINS]; // the first values as they came, until binning starts
+    private long[] counts; // null while every value still fits in exactValues
+    private double origin; // lower bound of bin 0
+    private double width; // width of every bin
+
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    // NaN and infinities can't go in a bin (and would break the charts anyway), they are skipped
+    public void add(double value) {
+        if (!Double.isFinite(value)) {
+            return;
+        }
+
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+
+        if (counts == null) {
+            if (count <= BINS) {
+                exactValues[(int) count - 1] = value;
+                return;
+            }
+            startBinning();
+        }
+        bin(value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    // True while every value is still kept, the charts are then drawn from the values themselves
+    public boolean isExact() {
+        return counts == null;
+    }
+
+    // The values added so far, only available while isExact()
+    public List<Double> getExactValues() {
+        if (counts != null) {
+            throw new IllegalStateException("More than " + BINS + " values were added, only the bins are kept");
+        }
+        List<Double> values = new ArrayList<>((int) count);
+        for (int i = 0; i < count; i++) {
+            values.add(exactValues[i]);
+        }
+        return values;
+    }
+
+    // Value below which a fraction q of the values lie, interpolated inside its bin (needs !isExact())
+    public double quantile(double q) {
+        double rank = q * count;
+        long before = 0;
+        for (int i = 0; i < BINS; i++) {
+            if (counts[i] > 0 && before + counts[i] >= rank) {
+                double value = origin + (i + (rank - before) / counts[i]) * width;
+                return Math.max(min, Math.min(max, value));
+            }
+            before += counts[i];
+        }
+        return max;
+    }
+
+    public long binCount(int bin) {
+        return counts[bin];
+    }
+
+    // Middle of a bin, pulled inside [min, max] so the edge bins don't stretch the chart past the data
+    public double binCenter(int bin) {
+        return Math.max(min, Math.min(max, origin + (bin + 0.5) * width));
+    }
+
+
+    // The exact values are about to overflow, move them into bins. The data starts in the middle half of the
+    // range, so it can grow a bit either way before the bins have to be merged
+    private void startBinning() {
+        double span = max > min ? max - min : Math.max(Math.abs(min), 1.0);
+        width = 2 * span / BINS;
+        origin = min - span / 2;
+        counts = new long[BINS];
+        for (double value : exactValues) {
+            bin(value);
+        }
+    }
+
+    private void bin(double value) {
+        while (value < origin) {
+            growLeft();
+        }
+        while (value >= origin + width * BINS) {
+            growRight();
+        }
+        counts[Math.min((int) ((value - origin) / width), BINS - 1)]++;
+    }
+
+    // Doubles the width, the old range becomes the left half
+    private void growRight() {
+        for (int i = 0; i < BINS / 2; i++) {
+            counts[i] = counts[2 * i] + counts[2 * i + 1];
+        }
+        for (int i = BINS / 2; i < BINS; i++) {
+            counts[i] = 0;
+        }
+        width *= 2;
+    }
+
+    // Doubles the width, the old range becomes the right half
+    private void growLeft() {
+        for (int i = BINS - 1; i >= BINS / 2; i--) {
+            int merged = 2 * (i - BINS / 2);
+            counts[i] = counts[merged] + counts[merged + 1];
+        }
+        for (int i = 0; i < BINS / 2; i++) {
+            counts[i] = 0;
+        }
+        origin -= width * BINS;
+        width *= 2;
+    }
+}
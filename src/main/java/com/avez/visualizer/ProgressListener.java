@@ -0,0 +1,35 @@
+package com.avez.visualizer;
+
+import java.util.concurrent.CancellationException;
+
+
+/**
+ * Progress and cancellation for long loops (parsing, analysis, counting values for a chart).
+ * The loops call progress() every so many rows and checkCancelled() at the same spots, so a cancel takes effect
+ * within a few thousand rows instead of at the end of the file.
+ */
+public interface ProgressListener {
+
+    // For callers that don't care, every plain overload (readCSV(path), analyzeColumns(data), ...) uses it
+    ProgressListener NONE = (stage, done, total, rows) -> {
+    };
+
+    /**
+     * @param stage What is running, e.g. "Parsing"
+     * @param done  Work done in this stage, in the stage's own unit (bytes for parsing, cells for analysis)
+     * @param total Work of the whole stage in the same unit, 0 if unknown
+     * @param rows  Rows handled so far in this stage
+     */
+    void progress(String stage, long done, long total, long rows);
+
+    default boolean isCancelled() {
+        return false;
+    }
+
+    // Throws out of the loop once the user cancelled, CancellationException like a cancelled Future
+    default void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Cancelled");
+        }
+    }
+}
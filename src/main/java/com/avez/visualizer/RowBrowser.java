@@ -0,0 +1,255 @@
+package com.avez.visualizer;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * A window showing the rows of a CSV file, however big, read from disk through its RowIndex.
+ *
+ * The JTable only ever has as many rows as fit on screen, it shows rows [top, top + visible) of the file. The
+ * scroll bar next to it moves top, so the table's height never depends on the file (Swing's pixel coordinates
+ * are ints, a 250M row table would overflow them). Rows are read PAGE_ROWS at a time on a background thread and
+ * kept in a small LRU of pages, cells of a page still being read show "...". Jumping anywhere costs one seek and
+ * at most RowIndex.STRIDE rows of parsing.
+ */
+@SuppressWarnings({"serial", "this-escape"}) // Swing frames are never serialized, and the constructor builds the UI
+public class RowBrowser extends JFrame {
+
+    private static final int PAGE_ROWS = 256;
+    private static final int CACHED_PAGES = 64; // ~16k rows
+    private static final String LOADING = "...";
+
+    private final RowIndex index;
+    private final long rowCount;
+    private final long scale; // rows per scroll bar unit, above 1 only for files with more rows than an int holds
+
+    private final Map<Long, List<String[]>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<String[]>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+    private final Set<Long> pending = new HashSet<>(); // pages being read, only touched on the EDT
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "row-browser");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final WindowModel model = new WindowModel();
+    private final JTable table = new JTable(model);
+    private final JScrollPane tableScroll = new JScrollPane(table, ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER,
+            ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JTextField goToField = new JTextField(12);
+    private final JLabel statusLabel = new JLabel(" ");
+
+    private volatile long top; // first file row shown, also read by the reader thread
+    private int visibleRows = 1;
+
+    public RowBrowser(RowIndex index) {
+        this.index = index;
+        this.rowCount = index.getRowCount();
+        this.scale = Math.max(1, (rowCount + Integer.MAX_VALUE / 2 - 1) / (Integer.MAX_VALUE / 2));
+
+        setTitle("Rows - " + index.getFile().getName());
+        setSize(1000, 650);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLocationByPlatform(true);
+
+        table.setAutoResizeMode(index.getHeaders().size() > 8 ? JTable.AUTO_RESIZE_OFF : JTable.AUTO_RESIZE_ALL_COLUMNS);
+        table.getTableHeader().setReorderingAllowed(false);
+        if (index.getHeaders().size() > 8) {
+            for (int i = 1; i < table.getColumnCount(); i++) {
+                table.getColumnModel().getColumn(i).setPreferredWidth(120);
+            }
+        }
+        table.getColumnModel().getColumn(0).setPreferredWidth(90);
+
+        // the mouse wheel and the paging keys move the window over the file, not the (never taller) table
+        tableScroll.setWheelScrollingEnabled(false);
+        tableScroll.addMouseWheelListener(e -> scrollTo(top + (long) e.getUnitsToScroll()));
+        bindKey(KeyEvent.VK_PAGE_DOWN, 0, "pageDown", () -> scrollTo(top + visibleRows));
+        bindKey(KeyEvent.VK_PAGE_UP, 0, "pageUp", () -> scrollTo(top - visibleRows));
+        bindKey(KeyEvent.VK_HOME, KeyEvent.CTRL_DOWN_MASK, "first", () -> scrollTo(0));
+        bindKey(KeyEvent.VK_END, KeyEvent.CTRL_DOWN_MASK, "last", () -> scrollTo(rowCount));
+
+        scrollBar.addAdjustmentListener(e -> {
+            long row = scrollBar.getValue() * scale;
+            if (row / scale != top / scale) { // not just the echo of scrollTo() setting the bar
+                setTop(row);
+            }
+        });
+        tableScroll.getViewport().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                visibleRows = Math.max(1, tableScroll.getViewport().getHeight() / table.getRowHeight());
+                updateScrollBar();
+                setTop(top);
+            }
+        });
+
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton goToButton = new JButton("Go");
+        toolbar.add(new JLabel("Go to row:"));
+        toolbar.add(goToField);
+        toolbar.add(goToButton);
+        toolbar.add(statusLabel);
+        goToButton.addActionListener(e -> goToRow());
+        goToField.addActionListener(e -> goToRow());
+
+        JPanel grid = new JPanel(new BorderLayout());
+        grid.add(tableScroll, BorderLayout.CENTER);
+        grid.add(scrollBar, BorderLayout.EAST);
+
+        setLayout(new BorderLayout());
+        add(toolbar, BorderLayout.NORTH);
+        add(grid, BorderLayout.CENTER);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                reader.shutdownNow();
+            }
+        });
+        updateScrollBar();
+        setTop(0);
+    }
+
+
+    // Moves the window so it starts at row (0 based), clamped to the file
+    public void scrollTo(long row) {
+        setTop(row);
+        scrollBar.setValue((int) (top / scale));
+    }
+
+    private void setTop(long row) {
+        top = Math.max(0, Math.min(row, rowCount - visibleRows));
+        for (long page = top / PAGE_ROWS; page <= (top + visibleRows) / PAGE_ROWS; page++) {
+            requestPage(page);
+        }
+        model.fireTableDataChanged();
+        statusLabel.setText(rowCount == 0 ? "No rows"
+                : String.format("Rows %,d - %,d of %,d", top + 1, Math.min(top + visibleRows, rowCount), rowCount));
+    }
+
+    private void updateScrollBar() {
+        int maximum = (int) ((rowCount + scale - 1) / scale);
+        int extent = (int) Math.max(1, Math.min(maximum, visibleRows / scale));
+        scrollBar.setValues((int) (top / scale), extent, 0, Math.max(maximum, extent));
+        scrollBar.setUnitIncrement(1);
+        scrollBar.setBlockIncrement(extent);
+    }
+
+    private void goToRow() {
+        try {
+            scrollTo(Long.parseLong(goToField.getText().trim().replace(",", "")) - 1); // rows are shown 1 based
+        } catch (NumberFormatException e) {
+            statusLabel.setText("Not a row number: " + goToField.getText());
+        }
+    }
+
+    private void bindKey(int key, int modifiers, String name, Runnable action) {
+        table.getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(KeyStroke.getKeyStroke(key, modifiers), name);
+        table.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+
+    // The cached row, or null while its page is being read (which then gets requested)
+    private String[] row(long row) {
+        long page = row / PAGE_ROWS;
+        List<String[]> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+        int offset = (int) (row - page * PAGE_ROWS);
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    // Reads the page in the background unless it's cached or already on its way. Repaints still come in after
+    // windowClosed shut the reader down, those are skipped rather than rejected on the EDT
+    private void requestPage(long page) {
+        if (reader.isShutdown()) {
+            return;
+        }
+        if (page * PAGE_ROWS >= rowCount || pages.containsKey(page) || !pending.add(page)) {
+            return;
+        }
+        reader.execute(() -> {
+            if (Math.abs(page - top / PAGE_ROWS) > 2) {
+                SwingUtilities.invokeLater(() -> {
+                    pending.remove(page);
+                    table.repaint(); // scrolled past it meanwhile, a repaint asks again if it's back on screen
+                });
+                return;
+            }
+            try {
+                List<String[]> rows = index.readRows(page * PAGE_ROWS, PAGE_ROWS);
+                SwingUtilities.invokeLater(() -> {
+                    pending.remove(page);
+                    pages.put(page, rows);
+                    model.fireTableDataChanged();
+                });
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> {
+                    pending.remove(page);
+                    statusLabel.setText("Failed: " + e.getMessage());
+                });
+            }
+        });
+    }
+
+
+    // The rows on screen: row r of the table is row top + r of the file, column 0 is the row number
+    private class WindowModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return (int) Math.min(visibleRows, rowCount);
+        }
+
+        @Override
+        public int getColumnCount() {
+            return index.getHeaders().size() + 1;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return column == 0 ? "#" : index.getHeaders().get(column - 1);
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            long fileRow = top + rowIndex;
+            if (fileRow >= rowCount) {
+                return "";
+            }
+            if (columnIndex == 0) {
+                return String.format("%,d", fileRow + 1);
+            }
+            String[] values = row(fileRow);
+            return values == null ? LOADING : values[columnIndex - 1];
+        }
+    }
+}
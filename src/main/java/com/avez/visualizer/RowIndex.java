@@ -0,0 +1,302 @@
+package com.avez.visualizer;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Byte offsets of every STRIDE-th row of a CSV file, so any row can be read without parsing everything before it:
+ * seek to the nearest indexed row, skip at most STRIDE - 1 rows, read. For a 50 GB file with ~250M rows that's
+ * ~240k offsets, 2 MB.
+ *
+ * Built in one pass over the bytes with the same rules as the CSV parser (newlines inside quoted fields don't end
+ * a row, empty lines aren't rows), then saved under ~/.data-visualiser/row-index so the next open of the same
+ * file (same size and modification time) skips the scan.
+ *
+ * Only plain CSV files can be indexed, offsets into a .gz file or a workbook don't point at rows.
+ */
+public class RowIndex {
+
+    public static final int STRIDE = 1024;
+    private static final int FORMAT_VERSION = 2; // 2: headers saved without the byte order mark
+    private static final int SCAN_BUFFER_BYTES = 1024 * 1024;
+    private static final int PROGRESS_EVERY_BYTES = 64 * 1024 * 1024;
+
+    // scanner states
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3; // a quote inside a quoted field, either "" or the closing one
+
+    private final File file;
+    private final long fileSize;
+    private final long lastModified;
+    private final List<String> headers;
+    private final long rowCount;
+    private final long[] offsets; // offsets[i] is where data row i * STRIDE starts
+
+
+    private RowIndex(File file, long fileSize, long lastModified, List<String> headers, long rowCount, long[] offsets) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.headers = headers;
+        this.rowCount = rowCount;
+        this.offsets = offsets;
+    }
+
+
+    /**
+     * The index of the file, from ~/.data-visualiser/row-index if the file hasn't changed since it was built,
+     * scanned (and saved) otherwise. The scan reports "Indexing" progress in bytes and can be cancelled.
+     *
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If the file is compressed or a workbook
+     */
+    public static RowIndex open(File file, ProgressListener listener) throws IOException {
+        return open(file, defaultDirectory(), listener);
+    }
+
+    public static RowIndex open(File file, Path indexDirectory, ProgressListener listener) throws IOException {
+        if (!CSVReader.isPlainCsv(file.getName())) {
+            throw new IllegalArgumentException("Only plain CSV files can be browsed by row, not " + file.getName());
+        }
+        Path saved = indexDirectory.resolve(indexName(file));
+        RowIndex index = readSaved(file, saved);
+        if (index == null) {
+            index = build(file, listener);
+            try {
+                index.save(saved);
+            } catch (IOException e) {
+                // no place to keep it, the next open just scans again
+            }
+        }
+        return index;
+    }
+
+    // ~/.data-visualiser/row-index, next to the chart cache
+    static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".data-visualiser", "row-index");
+    }
+
+
+    /**
+     * Scans the file once and records where every STRIDE-th row starts.
+     *
+     * @throws IOException If the file cannot be read
+     */
+    public static RowIndex build(File file, ProgressListener listener) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        List<String> headers = readHeaders(file);
+
+        long[] offsets = new long[16];
+        int offsetCount = 0;
+        long rowsStarted = 0; // the header included
+        int state = FIELD_START;
+        boolean rowStart = true;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+            byte[] bytes = buffer.array();
+            long position = 0;
+            long nextReport = PROGRESS_EVERY_BYTES;
+            int read;
+            while ((read = channel.read(buffer.clear())) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = bytes[i];
+                    if (rowStart) {
+                        if (b == '\n' || b == '\r') {
+                            continue; // empty line, or the \n of a \r\n
+                        }
+                        rowStart = false;
+                        long row = rowsStarted++ - 1; // data row number, the header is -1
+                        if (row >= 0 && row % STRIDE == 0) {
+                            if (offsetCount == offsets.length) {
+                                offsets = Arrays.copyOf(offsets, offsetCount * 2);
+                            }
+                            offsets[offsetCount++] = position + i;
+                        }
+                    }
+
+                    switch (state) {
+                        case FIELD_START:
+                        case UNQUOTED:
+                        case QUOTE_IN_QUOTED:
+                            if (b == '"' && state == FIELD_START) {
+                                state = QUOTED;
+                            } else if (b == '"' && state == QUOTE_IN_QUOTED) {
+                                state = QUOTED; // "" inside a quoted field
+                            } else if (b == ',') {
+                                state = FIELD_START;
+                            } else if (b == '\n' || b == '\r') {
+                                state = FIELD_START;
+                                rowStart = true;
+                            } else {
+                                state = UNQUOTED;
+                            }
+                            break;
+                        default: // QUOTED, newlines and commas are part of the value
+                            if (b == '"') {
+                                state = QUOTE_IN_QUOTED;
+                            }
+                            break;
+                    }
+                }
+                position += read;
+                if (position >= nextReport) {
+                    listener.checkCancelled();
+                    listener.progress("Indexing", position, size, Math.max(rowsStarted - 1, 0));
+                    nextReport += PROGRESS_EVERY_BYTES;
+                }
+            }
+        }
+        long rowCount = Math.max(rowsStarted - 1, 0);
+        listener.progress("Indexing", size, size, rowCount);
+        return new RowIndex(file, size, lastModified, headers, rowCount, Arrays.copyOf(offsets, offsetCount));
+    }
+
+
+    /**
+     * Reads count rows starting at data row first (0 = the row after the header), fewer at the end of the file.
+     * Each row has one value per header, missing trailing values are empty strings.
+     *
+     * @throws IOException If the file cannot be read, or has changed since it was indexed
+     */
+    public List<String[]> readRows(long first, int count) throws IOException {
+        if (first < 0 || first >= rowCount || count <= 0) {
+            return new ArrayList<>();
+        }
+        if (file.length() != fileSize || file.lastModified() != lastModified) {
+            throw new IOException(file.getName() + " has changed since it was indexed, open it again");
+        }
+
+        int block = (int) (first / STRIDE);
+        long skip = first - (long) block * STRIDE;
+        List<String[]> rows = new ArrayList<>(count);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(offsets[block]);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+            CSVFormat format = CSVReader.formatWithHeaders(headers);
+            try (CSVParser parser = CSVParser.parse(new InputStreamReader(in, StandardCharsets.UTF_8), format)) {
+                for (CSVRecord record : parser) {
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    String[] row = new String[headers.size()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = i < record.size() ? record.get(i) : "";
+                    }
+                    rows.add(row);
+                    if (rows.size() == count) {
+                        break;
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+
+    // one per field, duplicates too, the rows are read by position. Without the byte order mark, like every other reader
+    private static List<String> readHeaders(File file) throws IOException {
+        try (CSVParser parser = CSVParser.parse(CSVReader.utf8Reader(new FileInputStream(file)), CSVReader.defaultFormat())) {
+            return new ArrayList<>(parser.getHeaderNames());
+        }
+    }
+
+    // one file per indexed CSV, named after its canonical path
+    private static String indexName(File file) throws IOException {
+        MessageDigest digest = ChartRenderCache.newDigest();
+        digest.update(file.getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+        return ChartRenderCache.toHex(digest.digest()) + ".idx";
+    }
+
+    private void save(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), "row-index-", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(STRIDE);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeLong(rowCount);
+            out.writeInt(headers.size());
+            for (String header : headers) {
+                out.writeUTF(header);
+            }
+            out.writeInt(offsets.length);
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE); // never a half written index
+    }
+
+    // the saved index, null if there is none or it's for an older version of the file
+    private static RowIndex readSaved(File file, Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+            if (in.readInt() != FORMAT_VERSION || in.readInt() != STRIDE) {
+                return null;
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            if (size != file.length() || lastModified != file.lastModified()) {
+                return null;
+            }
+            long rowCount = in.readLong();
+            List<String> headers = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                headers.add(in.readUTF());
+            }
+            long[] offsets = new long[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readLong();
+            }
+            return new RowIndex(file, size, lastModified, headers, rowCount, offsets);
+        } catch (IOException e) {
+            return null; // unreadable, scanning again fixes it
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.StageMetrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Timing and throughput of the stages of one run (one loaded dataset and the charts made from it):
+ * wall time, CPU time, rows, bytes, heap allocated and peak heap per stage.
+ *
+ * Usage:
+ *   try (RunMetrics.Stage stage = metrics.stage("load", path)) {
+ *       data = reader.readCSV(path);
+ *       stage.rows(data.getRowCount()).bytes(fileSize);
+ *   }
+ *
+ * CPU time and allocations are counted for the whole process (ThreadMXBean / OperatingSystemMXBean), so work that
+ * a stage hands to other threads (parallel partition reads, a background load) is included, and so is GC.
+ * Peak heap is the sum of the heap pools' peaks since the stage started, slightly above the real peak at worst.
+ * Stages are meant to run one after the other, overlapping stages would reset each other's peak heap.
+ */
+public class RunMetrics {
+
+    private static final DateTimeFormatter REPORT_NAME =
+            DateTimeFormatter.ofPattern("'run-'yyyyMMdd-HHmmss-SSS'.json'").withZone(ZoneOffset.UTC);
+
+    private final String dataset;
+    private final Instant started = Instant.now();
+    private final List<StageMetrics> stages = new ArrayList<>();
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+
+    public RunMetrics(String dataset) {
+        this.dataset = dataset;
+    }
+
+    // Starts measuring a stage, it's recorded when the returned Stage is closed
+    public Stage stage(String name, String detail) {
+        return new Stage(this, name, detail);
+    }
+
+    public synchronized List<StageMetrics> getStages() {
+        return new ArrayList<>(stages);
+    }
+
+    private synchronized void record(StageMetrics metrics) {
+        stages.add(metrics);
+    }
+
+
+    // A stage being measured. NONE measures nothing, for code that runs with metrics switched off
+    public static class Stage implements AutoCloseable {
+        public static final Stage NONE = new Stage(null, null, null);
+
+        private final RunMetrics owner;
+        private final String name;
+        private final String detail;
+        private final long startNanos;
+        private final long startCpu;
+        private final long startAllocated;
+        private long rows;
+        private long bytes;
+
+        private Stage(RunMetrics owner, String name, String detail) {
+            this.owner = owner;
+            this.name = name;
+            this.detail = detail == null ? "" : detail;
+            if (owner == null) {
+                startNanos = startCpu = startAllocated = 0;
+                return;
+            }
+            owner.heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            startAllocated = owner.threads.getTotalThreadAllocatedBytes();
+            startCpu = owner.os.getProcessCpuTime();
+            startNanos = System.nanoTime();
+        }
+
+        public Stage rows(long rows) {
+            this.rows = rows;
+            return this;
+        }
+
+        public Stage bytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (owner == null) {
+                return;
+            }
+            long wall = System.nanoTime() - startNanos;
+            long cpu = owner.os.getProcessCpuTime() - startCpu;
+            long allocated = owner.threads.getTotalThreadAllocatedBytes() - startAllocated;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : owner.heapPools) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            owner.record(new StageMetrics(name, detail, wall, Math.max(cpu, 0), rows, bytes, Math.max(allocated, 0), peak));
+        }
+    }
+
+
+    /**
+     * Prints one line per stage and the run's totals.
+     */
+    public void printSummary() {
+        List<StageMetrics> recorded = getStages();
+        if (recorded.isEmpty()) {
+            return;
+        }
+
+        UIRenderer.printSectionHeader("RUN METRICS");
+        System.out.printf("%-10s %-24s %9s %9s %10s %8s %10s %9s %12s%n",
+                "Stage", "Detail", "Wall ms", "CPU ms", "Rows", "MB", "Alloc MB", "Peak MB", "Rows/s");
+        long wall = 0;
+        long cpu = 0;
+        long allocated = 0;
+        long peak = 0;
+        for (StageMetrics stage : recorded) {
+            System.out.printf(Locale.ROOT, "%-10s %-24s %9d %9d %10d %8.1f %10.1f %9.1f %12.0f%n",
+                    stage.getStage(),
+                    shorten(stage.getDetail(), 24),
+                    stage.getWallNanos() / 1_000_000,
+                    stage.getCpuNanos() / 1_000_000,
+                    stage.getRows(),
+                    stage.getBytes() / 1048576.0,
+                    stage.getAllocatedBytes() / 1048576.0,
+                    stage.getPeakHeapBytes() / 1048576.0,
+                    stage.getRowsPerSecond());
+            wall += stage.getWallNanos();
+            cpu += stage.getCpuNanos();
+            allocated += stage.getAllocatedBytes();
+            peak = Math.max(peak, stage.getPeakHeapBytes());
+        }
+        System.out.printf(Locale.ROOT, "%-10s %-24s %9d %9d %10s %8s %10.1f %9.1f%n",
+                "total", "", wall / 1_000_000, cpu / 1_000_000, "", "", allocated / 1048576.0, peak / 1048576.0);
+    }
+
+
+    /**
+     * Writes the run as JSON to a new run-<UTC time>.json file in the directory, to compare runs across
+     * datasets and releases.
+     *
+     * @return The report file
+     * @throws IOException If the directory or the file cannot be written
+     */
+    public Path writeReport(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path report = directory.resolve(REPORT_NAME.format(started));
+        Files.writeString(report, toJson(), StandardCharsets.UTF_8);
+        return report;
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"dataset\": ").append(dataset == null ? "null" : Json.quote(dataset)).append(",\n");
+        json.append("  \"started\": ").append(Json.quote(started.toString())).append(",\n");
+        json.append("  \"javaVersion\": ").append(Json.quote(System.getProperty("java.version"))).append(",\n");
+        json.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory()).append(",\n");
+        json.append("  \"stages\": [");
+
+        List<StageMetrics> recorded = getStages();
+        for (int i = 0; i < recorded.size(); i++) {
+            StageMetrics stage = recorded.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"stage\": ").append(Json.quote(stage.getStage()))
+                    .append(", \"detail\": ").append(Json.quote(stage.getDetail()))
+                    .append(", \"wallNanos\": ").append(stage.getWallNanos())
+                    .append(", \"cpuNanos\": ").append(stage.getCpuNanos())
+                    .append(", \"rows\": ").append(stage.getRows())
+                    .append(", \"bytes\": ").append(stage.getBytes())
+                    .append(", \"allocatedBytes\": ").append(stage.getAllocatedBytes())
+                    .append(", \"peakHeapBytes\": ").append(stage.getPeakHeapBytes())
+                    .append(String.format(Locale.ROOT, ", \"rowsPerSecond\": %.1f", stage.getRowsPerSecond()))
+                    .append(String.format(Locale.ROOT, ", \"bytesPerSecond\": %.1f}", stage.getBytesPerSecond()));
+        }
+        return json.append(recorded.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+
+    private static String shorten(String text, int max) {
+        return text.length() <= max ? text : text.substring(0, max - 2) + "..";
+    }
+}
@@ -0,0 +1,104 @@
+package com.avez.visualizer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Collapses concurrent identical work into one execution ("single flight").
+ *
+ * The first caller for a key runs the work. Callers that arrive with the same key while it is still running
+ * don't start their own copy, they wait for the first one and get the very same result (or the same exception).
+ * Once the work is done the key is forgotten, so a later call runs again, this is not a cache.
+ *
+ * Meant for chart requests: a dashboard refresh asks for the same chart from many clients at the same moment,
+ * and counting the values and rendering once is enough for all of them.
+ */
+public class SingleFlight<V> {
+
+    // The work, may throw like the chart code does
+    public interface Call<V> {
+        V call() throws IOException;
+    }
+
+    private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+
+    /**
+     * Runs the work for the key, or waits for the run that is already in flight for it.
+     *
+     * @throws IOException If the work threw it (for every caller that shared the run)
+     */
+    public V execute(String key, Call<V> call) throws IOException {
+        requests.incrementAndGet();
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            collapsed.incrementAndGet();
+            return await(running);
+        }
+
+        executions.incrementAndGet();
+        try {
+            V result = call.call();
+            mine.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            mine.completeExceptionally(e); // the waiters fail the same way
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private V await(CompletableFuture<V> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an identical request", e);
+        } catch (ExecutionException e) {
+            // rethrow the original, callers tell errors apart by type
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
+    // every execute() call
+    public long getRequests() {
+        return requests.get();
+    }
+
+    // calls that actually ran the work
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    // calls that shared another call's run instead
+    public long getCollapsed() {
+        return collapsed.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
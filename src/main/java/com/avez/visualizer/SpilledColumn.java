@@ -0,0 +1,194 @@
+package com.avez.visualizer;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+
+/**
+ * One column of a SpilledDataset, stored in its own file (format in SpillingCSVReader).
+ * It is read one chunk at a time: the chunk is memory-mapped, walked, and unmapped again before the next one,
+ * so only the chunk being read takes memory (and that is page cache, not heap).
+ * The counters that are cheap to collect while writing (numbers, decimals, empties) come for free.
+ */
+public class SpilledColumn {
+
+    // What forEachCell() reports for every cell, in row order. May throw, e.g. when an aggregation has to spill
+    public interface CellVisitor {
+        void number(double value) throws IOException;
+
+        void text(String value) throws IOException;
+
+        default void empty() throws IOException {
+        }
+    }
+
+    private final String name;
+    private final Path file;
+    private final long[] chunkOffsets; // chunk i is [chunkOffsets[i], chunkOffsets[i + 1]) of the file
+    private final long size;
+    private final long numericCount;
+    private final long decimalCount;
+    private final long binaryDigitCount;
+    private final long nullCount;
+    private final long memoryBudgetBytes; // how much heap aggregations over this column may use before spilling
+    private final Path spillDirectory; // where they spill to
+
+    SpilledColumn(String name, Path file, long[] chunkOffsets, long size,
+            long numericCount, long decimalCount, long binaryDigitCount, long nullCount,
+            long memoryBudgetBytes, Path spillDirectory) {
+        this.name = name;
+        this.file = file;
+        this.chunkOffsets = chunkOffsets;
+        this.size = size;
+        this.numericCount = numericCount;
+        this.decimalCount = decimalCount;
+        this.binaryDigitCount = binaryDigitCount;
+        this.nullCount = nullCount;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+
+    /**
+     * Walks every cell of the column in row order, one memory-mapped chunk at a time.
+     *
+     * @throws IOException If the spill file cannot be read
+     */
+    public void forEachCell(CellVisitor visitor) throws IOException {
+        byte[] text = new byte[256]; // reused for every text cell, grown for longer ones
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int chunk = 0; chunk + 1 < chunkOffsets.length; chunk++) {
+                long start = chunkOffsets[chunk];
+                long length = chunkOffsets[chunk + 1] - start;
+
+                // a confined arena per chunk: closing it unmaps the chunk right away, not when the GC runs
+                try (Arena arena = Arena.ofConfined()) {
+                    MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length, arena);
+                    long position = 0;
+                    while (position < length) {
+                        byte tag = segment.get(ValueLayout.JAVA_BYTE, position++);
+                        if (tag == SpillingCSVReader.NUMBER) {
+                            visitor.number(segment.get(ValueLayout.JAVA_DOUBLE_UNALIGNED, position));
+                            position += 8;
+                        } else if (tag == SpillingCSVReader.TEXT) {
+                            int textLength = segment.get(ValueLayout.JAVA_INT_UNALIGNED, position);
+                            position += 4;
+                            if (textLength > text.length) {
+                                text = new byte[Math.max(textLength, text.length * 2)];
+                            }
+                            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, position, text, 0, textLength);
+                            position += textLength;
+                            visitor.text(new String(text, 0, textLength, StandardCharsets.UTF_8));
+                        } else {
+                            visitor.empty();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Counts how often each value occurs, with external aggregation so any number of distinct values fits in the
+     * memory budget. Only the `limit` most frequent values are returned, the rest are summed up under "Other",
+     * more categories than that can't be told apart on a chart anyway.
+     *
+     * @throws IOException If the spill files cannot be read or written
+     */
+    public Map<String, Integer> topFrequencies(int limit) throws IOException {
+        // min-heap on the count, so the least frequent of the current top values is the one pushed out
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(Comparator.comparingLong(Map.Entry::getValue));
+        long[] other = new long[2]; // [0] = rows, [1] = distinct values folded into "Other"
+
+        try (ExternalAggregator aggregator = newAggregator()) {
+            forEachCell(new CellVisitor() {
+                @Override
+                public void number(double value) throws IOException {
+                    aggregator.add(ColumnStats.formatNumber(value));
+                }
+
+                @Override
+                public void text(String value) throws IOException {
+                    aggregator.add(value);
+                }
+            });
+
+            aggregator.finish((value, count) -> {
+                top.add(Map.entry(value, count));
+                if (top.size() > limit) {
+                    Map.Entry<String, Long> dropped = top.poll();
+                    other[0] += dropped.getValue();
+                    other[1]++;
+                }
+            });
+        }
+
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(top);
+        sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Integer> frequencies = new LinkedHashMap<>(); // most frequent first
+        for (Map.Entry<String, Long> entry : sorted) {
+            frequencies.put(entry.getKey(), (int) Math.min(Integer.MAX_VALUE, entry.getValue()));
+        }
+        if (other[0] > 0) {
+            frequencies.put("Other (" + other[1] + " values)", (int) Math.min(Integer.MAX_VALUE, other[0]));
+        }
+        return frequencies;
+    }
+
+
+    // an aggregator with this column's memory budget, spilling next to the column files
+    ExternalAggregator newAggregator() {
+        return new ExternalAggregator(memoryBudgetBytes, spillDirectory);
+    }
+
+    ExternalAggregator newAggregator(long budgetBytes) {
+        return new ExternalAggregator(budgetBytes, spillDirectory);
+    }
+
+    long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long getNumericCount() {
+        return numericCount;
+    }
+
+    public long getDecimalCount() {
+        return decimalCount;
+    }
+
+    public long getBinaryDigitCount() {
+        return binaryDigitCount;
+    }
+
+    public long getNullCount() {
+        return nullCount;
+    }
+
+    public long getSpilledBytes() {
+        return chunkOffsets[chunkOffsets.length - 1];
+    }
+}
@@ -0,0 +1,78 @@
+package com.avez.visualizer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+
+// A CSV loaded by SpillingCSVReader: the headers, the row count, and one spill file per column.
+// close() deletes the spill files, the columns can't be read after that
+public class SpilledDataset implements AutoCloseable {
+    private final List<String> headers;
+    private final List<SpilledColumn> columns; // same order as headers
+    private final long rowCount;
+    private final Path directory;
+
+    SpilledDataset(List<String> headers, List<SpilledColumn> columns, long rowCount, Path directory) {
+        this.headers = headers;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.directory = directory;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public List<SpilledColumn> getColumns() {
+        return columns;
+    }
+
+    // column by name, ignoring case like CSVReader does
+    public SpilledColumn getColumn(String name) {
+        for (SpilledColumn column : columns) {
+            if (column.getName().equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("Column not found: " + name);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return headers.size();
+    }
+
+    // disk used by the spill files
+    public long getSpilledBytes() {
+        long bytes = 0;
+        for (SpilledColumn column : columns) {
+            bytes += column.getSpilledBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        SpillingCSVReader.deleteSpillDirectory(directory);
+    }
+
+
+    static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            // deepest first, a directory can only be deleted once it's empty
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.avez.visualizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Out-of-core loader for files bigger than the heap (or than the machine's memory).
+ * The CSV is parsed once with ByteCSVTokenizer and every column is written to its own temporary file,
+ * in chunks of CHUNK_ROWS rows. Only one small write buffer per column stays on the heap, so a 100 GB file
+ * loads with the same heap as a 100 MB one; what it needs is about as much free disk as the file itself.
+ *
+ * The result is a SpilledDataset, whose columns are then processed chunk by chunk (see SpilledColumn).
+ *
+ * Cell format in a column file (native byte order):
+ *   0                       empty cell
+ *   1, 8 byte double        number
+ *   2, 4 byte length, bytes text (UTF-8)
+ *
+ * Spill directories normally go away with SpilledDataset.close(). Those still open when the JVM exits (Ctrl-C)
+ * are deleted by a shutdown hook. A crash or kill -9 skips the hook, so every spill directory holds a lock on
+ * its owner.lock file while in use, and the first read() of a run deletes the csv-spill-* directories nobody
+ * holds the lock of any more (the OS releases it when the process dies).
+ */
+public class SpillingCSVReader {
+
+    static final byte EMPTY = 0;
+    static final byte NUMBER = 1;
+    static final byte TEXT = 2;
+
+    static final int CHUNK_ROWS = 64 * 1024;
+    private static final int WRITE_BUFFER_BYTES = 256 * 1024; // per column
+
+    private static final String DIRECTORY_PREFIX = "csv-spill-";
+    private static final String LOCK_FILE = "owner.lock";
+    private static final long LOCKLESS_GRACE_MILLIS = 60_000; // a directory without a lock file may be one being created right now
+
+    private static final Map<Path, FileChannel> OPEN_DIRECTORIES = new ConcurrentHashMap<>(); // spill directory -> its locked owner.lock
+    private static final Set<Path> SWEPT_PARENTS = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Path directory : OPEN_DIRECTORIES.keySet()) {
+                try {
+                    deleteSpillDirectory(directory);
+                } catch (IOException e) {
+                    // exiting anyway, the next run's sweep gets it
+                }
+            }
+        }, "csv-spill-cleanup"));
+    }
+
+    private final Path spillDirectory; // null = a new directory in java.io.tmpdir
+    private final long memoryBudgetBytes; // for the aggregations run on the loaded data
+
+    // spills to the system temp directory, aggregations may use a quarter of the max heap
+    public SpillingCSVReader() {
+        this(null, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    public SpillingCSVReader(Path spillDirectory, long memoryBudgetBytes) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudgetBytes);
+        }
+        this.spillDirectory = spillDirectory;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+
+    /**
+     * Parses the file into per column spill files.
+     *
+     * @param filePath Path to the CSV file
+     * @return The spilled columns, close() it to delete the temporary files
+     * @throws IOException If the file cannot be read or the spill files cannot be written
+     */
+    public SpilledDataset read(String filePath) throws IOException {
+        Path directory = createSpillDirectory(spillDirectory);
+
+        List<ColumnWriter> writers = new ArrayList<>();
+        try (InputStream in = CSVReader.openInput(new File(filePath))) {
+            ByteCSVTokenizer tokenizer = new ByteCSVTokenizer(in);
+            FastDoubleParser parser = new FastDoubleParser();
+
+            // Header row
+            List<String> headers = new ArrayList<>();
+            while (tokenizer.next()) {
+                headers.add(tokenizer.fieldAsString());
+                if (tokenizer.isEndOfRow()) {
+                    break;
+                }
+            }
+            if (headers.isEmpty()) {
+                throw new IOException("The file is empty, no header row found");
+            }
+
+            for (int c = 0; c < headers.size(); c++) {
+                writers.add(new ColumnWriter(headers.get(c), directory.resolve("column-" + c + ".bin")));
+            }
+
+            // Same row handling as ColumnarCSVReader: empty lines skipped, short rows padded, extra fields ignored
+            long rowCount = 0;
+            int column = 0;
+            while (tokenizer.next()) {
+                if (column == 0 && tokenizer.isEndOfRow() && tokenizer.fieldLength() == 0) {
+                    continue;
+                }
+
+                if (column < writers.size()) {
+                    writers.get(column).write(tokenizer, parser);
+                }
+                column++;
+
+                if (tokenizer.isEndOfRow()) {
+                    for (; column < writers.size(); column++) {
+                        writers.get(column).writeEmpty();
+                    }
+                    column = 0;
+                    rowCount++;
+                    if (rowCount % CHUNK_ROWS == 0) {
+                        for (ColumnWriter writer : writers) {
+                            writer.endChunk();
+                        }
+                    }
+                }
+            }
+
+            List<SpilledColumn> columns = new ArrayList<>();
+            for (ColumnWriter writer : writers) {
+                columns.add(writer.finish(memoryBudgetBytes, directory));
+            }
+            return new SpilledDataset(headers, columns, rowCount, directory);
+
+        } catch (IOException | RuntimeException e) {
+            for (ColumnWriter writer : writers) {
+                writer.closeQuietly();
+            }
+            deleteSpillDirectory(directory); // nothing will ever read these
+            throw e;
+        }
+    }
+
+
+    // A new csv-spill-* directory in parent (null = java.io.tmpdir), locked and registered for the shutdown hook.
+    // The first one of a run in each parent sweeps the ones crashed runs left there
+    private static Path createSpillDirectory(Path parent) throws IOException {
+        Path tempRoot = parent != null ? parent : Paths.get(System.getProperty("java.io.tmpdir"));
+        if (SWEPT_PARENTS.add(tempRoot.toAbsolutePath())) {
+            sweepStaleDirectories(tempRoot);
+        }
+
+        Path directory = Files.createTempDirectory(tempRoot, DIRECTORY_PREFIX);
+        FileChannel lock = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            lock.lock(); // held until the directory is deleted or the process ends
+        } catch (IOException | RuntimeException e) {
+            lock.close();
+            SpilledDataset.deleteDirectory(directory);
+            throw e;
+        }
+        OPEN_DIRECTORIES.put(directory, lock);
+        return directory;
+    }
+
+    // Unlocks and deletes a spill directory, see SpilledDataset.close()
+    static void deleteSpillDirectory(Path directory) throws IOException {
+        FileChannel lock = OPEN_DIRECTORIES.remove(directory);
+        if (lock != null) {
+            lock.close(); // releases the lock, and Windows won't delete an open file
+        }
+        SpilledDataset.deleteDirectory(directory);
+    }
+
+    // Deletes the csv-spill-* directories in parent whose owner is gone: their lock can be taken
+    private static void sweepStaleDirectories(Path parent) {
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(parent, DIRECTORY_PREFIX + "*")) {
+            for (Path directory : directories) {
+                if (Files.isDirectory(directory) && isStale(directory)) {
+                    SpilledDataset.deleteDirectory(directory);
+                }
+            }
+        } catch (IOException e) {
+            // only housekeeping, a directory we can't list or delete doesn't stop the load
+        }
+    }
+
+    private static boolean isStale(Path directory) throws IOException {
+        Path lockFile = directory.resolve(LOCK_FILE);
+        if (!Files.exists(lockFile)) {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(directory).toMillis() > LOCKLESS_GRACE_MILLIS;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            return lock != null; // null: another process still holds it
+        } catch (OverlappingFileLockException e) {
+            return false; // this JVM holds it
+        }
+    }
+
+
+    // Buffers the cells of one column and appends them to its file, remembering where every chunk starts
+    private static class ColumnWriter {
+        private final String name;
+        private final Path file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.nativeOrder());
+        private final List<Long> chunkOffsets = new ArrayList<>();
+        private long written = 0; // bytes already in the file
+        private long cells = 0;
+
+        private long numericCount = 0;
+        private long decimalCount = 0;
+        private long binaryDigitCount = 0;
+        private long nullCount = 0;
+
+        ColumnWriter(String name, Path file) throws IOException {
+            this.name = name;
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            chunkOffsets.add(0L);
+        }
+
+        void write(ByteCSVTokenizer tokenizer, FastDoubleParser parser) throws IOException {
+            byte[] bytes = tokenizer.buffer();
+            int offset = tokenizer.fieldOffset();
+            int length = tokenizer.fieldLength();
+
+            if (length == 0) {
+                writeEmpty();
+                return;
+            }
+
+            cells++;
+            if (parser.parse(bytes, offset, length)) {
+                ensureRoom(9);
+                buffer.put(NUMBER).putDouble(parser.getValue());
+                numericCount++;
+                if (parser.hadDecimalPoint()) {
+                    decimalCount++;
+                }
+                if (length == 1 && (bytes[offset] == '0' || bytes[offset] == '1')) {
+                    binaryDigitCount++;
+                }
+                return;
+            }
+
+            ensureRoom(5);
+            buffer.put(TEXT).putInt(length);
+            if (length <= buffer.remaining()) {
+                buffer.put(bytes, offset, length);
+            } else {
+                flush();
+                writeFully(ByteBuffer.wrap(bytes, offset, length)); // bigger than the buffer, straight to the file
+            }
+        }
+
+        void writeEmpty() throws IOException {
+            cells++;
+            nullCount++;
+            ensureRoom(1);
+            buffer.put(EMPTY);
+        }
+
+        void endChunk() {
+            chunkOffsets.add(written + buffer.position());
+        }
+
+        SpilledColumn finish(long memoryBudgetBytes, Path directory) throws IOException {
+            flush();
+            long end = written;
+            if (chunkOffsets.get(chunkOffsets.size() - 1) == end) {
+                chunkOffsets.remove(chunkOffsets.size() - 1); // the row count was a multiple of CHUNK_ROWS
+            }
+            channel.close();
+
+            long[] offsets = new long[chunkOffsets.size() + 1];
+            for (int i = 0; i < chunkOffsets.size(); i++) {
+                offsets[i] = chunkOffsets.get(i);
+            }
+            offsets[offsets.length - 1] = end;
+            return new SpilledColumn(name, file, offsets, cells,
+                    numericCount, decimalCount, binaryDigitCount, nullCount, memoryBudgetBytes, directory);
+        }
+
+        void closeQuietly() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already failing, the first error is the one worth reporting
+            }
+        }
+
+        private void ensureRoom(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                written += channel.write(source);
+            }
+        }
+    }
+}
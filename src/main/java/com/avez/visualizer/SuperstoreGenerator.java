@@ -0,0 +1,443 @@
+package com.avez.visualizer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Writes CSV files with the same 21 columns as sample/Sample.csv (the Superstore orders), of any size,
+ * for testing at scales the 10k row sample can't show.
+ *
+ * The shape follows the sample: unique Row IDs, order IDs shared by ~2 lines, ~800 customers, ~1860 products,
+ * ~530 cities in 49 states and 4 regions, M/d/yy dates from 2014 to 2017, ship dates a few days later depending on
+ * the ship mode, categoricals with the sample's frequencies, skewed (log-normal) Sales, Profit that turns negative
+ * with big discounts, and product names with commas and inch marks, so quoted fields show up too.
+ *
+ * Deterministic: the same seed gives the same file, byte for byte, on any machine and with any number of threads.
+ * Rows are generated in chunks of CHUNK_ROWS, each from its own random stream derived from the seed and the chunk
+ * number, on all cores, and written in order. Text is pre-encoded and numbers are formatted straight into bytes,
+ * so disk speed is usually the limit.
+ */
+public class SuperstoreGenerator {
+
+    public static final String HEADER = "Row ID,Order ID,Order Date,Ship Date,Ship Mode,Customer ID,Customer Name,Segment,"
+            + "Country,City,State,Postal Code,Region,Product ID,Category,Sub-Category,Product Name,Sales,Quantity,Discount,Profit";
+
+    private static final int CHUNK_ROWS = 100_000;
+    private static final int CUSTOMERS = 793;
+    private static final int PRODUCTS = 1862;
+    private static final int CITIES = 531;
+    private static final LocalDate FIRST_ORDER_DAY = LocalDate.of(2014, 1, 3);
+    private static final int ORDER_DAYS = 1458; // up to 2017-12-30
+
+    // frequencies measured on the sample
+    private static final String[] SHIP_MODES = { "Standard Class", "Second Class", "First Class", "Same Day" };
+    private static final int[] SHIP_MODE_WEIGHTS = { 5968, 1945, 1538, 543 };
+    private static final int[][] SHIP_DAYS = { { 4, 7 }, { 2, 5 }, { 1, 3 }, { 0, 0 } }; // min and max days to ship, per mode
+    private static final String[] SEGMENTS = { "Consumer", "Corporate", "Home Office" };
+    private static final int[] SEGMENT_WEIGHTS = { 5191, 3020, 1783 };
+    private static final String[] DISCOUNTS = { "0", "0.2", "0.7", "0.8", "0.3", "0.4", "0.6", "0.1", "0.5", "0.15", "0.32", "0.45" };
+    private static final int[] DISCOUNT_WEIGHTS = { 4798, 3657, 418, 300, 227, 206, 138, 94, 66, 52, 27, 11 };
+    private static final int[] QUANTITY_WEIGHTS = { 899, 2402, 2409, 1191, 1230, 572, 606, 257, 258, 57, 34, 23, 27, 29 }; // 1..14
+
+    // category, sub-category, product ID prefix, weight (share of the products)
+    private static final String[][] SUB_CATEGORIES = {
+            { "Furniture", "Bookcases", "FUR-BO", "228" }, { "Furniture", "Chairs", "FUR-CH", "617" },
+            { "Furniture", "Furnishings", "FUR-FU", "957" }, { "Furniture", "Tables", "FUR-TA", "319" },
+            { "Office Supplies", "Appliances", "OFF-AP", "466" }, { "Office Supplies", "Art", "OFF-AR", "796" },
+            { "Office Supplies", "Binders", "OFF-BI", "1523" }, { "Office Supplies", "Envelopes", "OFF-EN", "254" },
+            { "Office Supplies", "Fasteners", "OFF-FA", "217" }, { "Office Supplies", "Labels", "OFF-LA", "364" },
+            { "Office Supplies", "Paper", "OFF-PA", "1370" }, { "Office Supplies", "Storage", "OFF-ST", "846" },
+            { "Office Supplies", "Supplies", "OFF-SU", "190" }, { "Technology", "Accessories", "TEC-AC", "775" },
+            { "Technology", "Copiers", "TEC-CO", "68" }, { "Technology", "Machines", "TEC-MA", "115" },
+            { "Technology", "Phones", "TEC-PH", "889" }
+    };
+
+    // state, region, weight (share of the order lines)
+    private static final String[][] STATES = {
+            { "California", "West", "2001" }, { "New York", "East", "1128" }, { "Texas", "Central", "985" },
+            { "Pennsylvania", "East", "587" }, { "Washington", "West", "506" }, { "Illinois", "Central", "492" },
+            { "Ohio", "East", "469" }, { "Florida", "South", "383" }, { "Michigan", "Central", "255" },
+            { "North Carolina", "South", "249" }, { "Arizona", "West", "224" }, { "Virginia", "South", "224" },
+            { "Georgia", "South", "184" }, { "Tennessee", "South", "183" }, { "Colorado", "West", "182" },
+            { "Indiana", "Central", "149" }, { "Kentucky", "South", "139" }, { "Massachusetts", "East", "135" },
+            { "New Jersey", "East", "130" }, { "Oregon", "West", "124" }, { "Wisconsin", "Central", "110" },
+            { "Maryland", "East", "105" }, { "Delaware", "East", "96" }, { "Minnesota", "Central", "89" },
+            { "Connecticut", "East", "82" }, { "Oklahoma", "Central", "66" }, { "Missouri", "Central", "66" },
+            { "Alabama", "South", "61" }, { "Arkansas", "South", "60" }, { "Rhode Island", "East", "56" },
+            { "Utah", "West", "53" }, { "Mississippi", "South", "53" }, { "Louisiana", "South", "42" },
+            { "South Carolina", "South", "42" }, { "Nevada", "West", "39" }, { "Nebraska", "Central", "38" },
+            { "New Mexico", "West", "37" }, { "Iowa", "Central", "30" }, { "New Hampshire", "East", "27" },
+            { "Kansas", "Central", "24" }, { "Idaho", "West", "21" }, { "Montana", "West", "15" },
+            { "South Dakota", "Central", "12" }, { "Vermont", "East", "11" }, { "District of Columbia", "East", "10" },
+            { "Maine", "East", "8" }, { "North Dakota", "Central", "7" }, { "West Virginia", "East", "4" },
+            { "Wyoming", "West", "1" }
+    };
+
+    private static final String[] CITY_STARTS = { "Spring", "Green", "Fair", "Oak", "River", "Lake", "Maple", "Cedar",
+            "Clear", "Pine", "Rock", "Glen", "Ash", "Bright", "Elm", "Wood", "Stone", "Mill", "Red", "West", "North",
+            "Silver", "Clay", "Brook" };
+    private static final String[] CITY_ENDS = { "field", "ville", "port", "ton", " Falls", "view", "dale", "burg",
+            " Springs", "wood", "ford", "land", " City", " Heights", "mont", "haven", "side", " Park", "ridge", "bury",
+            " Grove", "water", "ham", "chester" };
+    private static final String[] FIRST_NAMES = { "Claire", "Darrin", "Sean", "Brosina", "Andrew", "Irene", "Harold",
+            "Pete", "Alejandro", "Zuschuss", "Ken", "Sandra", "Emily", "Eric", "Tracy", "Matt", "Gene", "Steve", "Linda",
+            "Ruben", "Erin", "Odella", "Patrick", "Lena", "Janet", "Ted", "Kunst", "Paul", "Brendan", "Karen", "Henry",
+            "Joel", "Ryan", "Dave", "Laura", "Corey", "Anna", "Christopher", "Maria", "Victoria", "Adam", "Julie" };
+    private static final String[] LAST_NAMES = { "Gute", "Van Huff", "O'Donnell", "Hoffman", "Allen", "Maddox",
+            "Pawlan", "Kriz", "Grove", "Carroll", "Lonsdale", "Flathmann", "Phillina", "Hoffmann", "Blount", "Abelman",
+            "Hale", "Nguyen", "Cazes", "Ausman", "Smallwood", "Nelson", "O'Brill", "Hernandez", "Molinari", "Butterfield",
+            "Schnelling", "Lucas", "Sweed", "Ferguson", "MacIntyre", "Eaton", "Crowe", "Kipp", "Armstrong", "Shillingsburg" };
+    private static final String[] BRANDS = { "Bush", "Hon", "Avery", "Fellowes", "Eldon", "Global", "Xerox", "Acco",
+            "Logitech", "Samsung", "Apple", "Cisco", "Canon", "Hewlett-Packard", "Wilson Jones", "Sauder", "Safco",
+            "Tennsco", "Staples", "Newell", "Belkin", "Kingston", "Okidata", "Harbour Creations", "Chromcraft" };
+    private static final String[] ADJECTIVES = { "Deluxe", "Classic", "Heavy-Duty", "Executive", "Premium", "Compact",
+            "Economy", "Ergonomic", "Adjustable", "Wireless", "Recycled", "Modular", "Portable", "Professional" };
+    private static final String[] QUALIFIERS = { "Black", "Rounded Back", "Pack of 12", "Assorted Colors", "Letter Size",
+            "White", "Walnut", "2/Pack", "Blue", "Legal Size" };
+
+    private final long seed;
+
+    // pre-encoded (and already CSV-quoted where needed) pieces of text, picked by index while generating
+    private final byte[][] shipModes = encodeAll(SHIP_MODES);
+    private final byte[][] segments = encodeAll(SEGMENTS);
+    private final byte[][] discounts = encodeAll(DISCOUNTS);
+    private final double[] discountValues = Arrays.stream(DISCOUNTS).mapToDouble(Double::parseDouble).toArray();
+    private final byte[][] dates = new byte[ORDER_DAYS + 8][]; // order days plus up to a week of shipping
+    private final byte[] country = encode("United States");
+
+    private final byte[][] customerIds = new byte[CUSTOMERS][];
+    private final byte[][] customerNames = new byte[CUSTOMERS][];
+    private final int[] customerCities = new int[CUSTOMERS]; // customers ship to one city (mostly), like in the sample
+    private final byte[][] cityNames = new byte[CITIES][];
+    private final byte[][] cityStates = new byte[CITIES][];
+    private final byte[][] cityRegions = new byte[CITIES][];
+    private final byte[][][] cityPostalCodes = new byte[CITIES][][];
+    private final byte[][] productIds = new byte[PRODUCTS][];
+    private final byte[][] productNames = new byte[PRODUCTS][];
+    private final byte[][] productCategories = new byte[PRODUCTS][];
+    private final byte[][] productSubCategories = new byte[PRODUCTS][];
+    private final double[] productPrices = new double[PRODUCTS];
+    private final double[] productMargins = new double[PRODUCTS];
+
+    private final int[] shipModeTable = weightTable(SHIP_MODE_WEIGHTS);
+    private final int[] segmentTable = weightTable(SEGMENT_WEIGHTS);
+    private final int[] discountTable = weightTable(DISCOUNT_WEIGHTS);
+    private final int[] quantityTable = weightTable(QUANTITY_WEIGHTS);
+
+    public SuperstoreGenerator(long seed) {
+        this.seed = seed;
+        SplittableRandom random = new SplittableRandom(seed);
+
+        for (int day = 0; day < dates.length; day++) {
+            LocalDate date = FIRST_ORDER_DAY.plusDays(day);
+            dates[day] = encode(date.getMonthValue() + "/" + date.getDayOfMonth() + "/" + (date.getYear() % 100)); // M/d/yy
+        }
+
+        // cities, spread over the states by the states' weights
+        int[] stateTable = weightTable(Arrays.stream(STATES).mapToInt(s -> Integer.parseInt(s[2])).toArray());
+        Set<String> names = new HashSet<>();
+        for (int city = 0; city < CITIES; city++) {
+            String name;
+            do {
+                name = CITY_STARTS[random.nextInt(CITY_STARTS.length)] + CITY_ENDS[random.nextInt(CITY_ENDS.length)];
+            } while (!names.add(name));
+            String[] state = STATES[city < STATES.length ? city : stateTable[random.nextInt(stateTable.length)]]; // every state at least once
+            cityNames[city] = encode(name);
+            cityStates[city] = encode(state[0]);
+            cityRegions[city] = encode(state[1]);
+            cityPostalCodes[city] = new byte[random.nextInt(5) == 0 ? 2 : 1][]; // ~630 postal codes for ~530 cities
+            for (int i = 0; i < cityPostalCodes[city].length; i++) {
+                cityPostalCodes[city][i] = encode(String.valueOf(10000 + random.nextInt(89999)));
+            }
+        }
+
+        // customers, "CG-12520" style IDs from the initials
+        Set<String> customers = new HashSet<>();
+        for (int customer = 0; customer < CUSTOMERS; customer++) {
+            String first;
+            String last;
+            do {
+                first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+                last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            } while (!customers.add(first + " " + last));
+            customerNames[customer] = encode(first + " " + last);
+            customerIds[customer] = encode(first.charAt(0) + "" + last.charAt(0) + "-" + (10000 + random.nextInt(90000)));
+            customerCities[customer] = random.nextInt(CITIES);
+        }
+
+        // products, with a unit price (log-normal, a few very expensive ones) and a profit margin each
+        Set<String> ids = new HashSet<>();
+        int[] subCategoryTable = weightTable(Arrays.stream(SUB_CATEGORIES).mapToInt(s -> Integer.parseInt(s[3])).toArray());
+        for (int product = 0; product < PRODUCTS; product++) {
+            String[] subCategory = SUB_CATEGORIES[subCategoryTable[random.nextInt(subCategoryTable.length)]];
+            StringBuilder name = new StringBuilder()
+                    .append(BRANDS[random.nextInt(BRANDS.length)]).append(' ')
+                    .append(ADJECTIVES[random.nextInt(ADJECTIVES.length)]).append(' ');
+            if (random.nextInt(12) == 0) {
+                name.append(12 + random.nextInt(60)).append("\" "); // inch mark, a quote inside a quoted field
+            }
+            name.append(subCategory[1]).append(' ').append(1000 + product); // the number keeps names (mostly) distinct
+            if (random.nextInt(9) < 2) {
+                name.append(", ").append(QUALIFIERS[random.nextInt(QUALIFIERS.length)]); // comma inside the field
+            }
+
+            String id;
+            do {
+                id = subCategory[2] + "-" + (10000000 + random.nextInt(5000));
+            } while (!ids.add(id));
+            productIds[product] = encode(id);
+            productNames[product] = encode(quote(name.toString()));
+            productCategories[product] = encode(subCategory[0]);
+            productSubCategories[product] = encode(subCategory[1]);
+            productPrices[product] = Math.exp(3.1 + 1.45 * random.nextGaussian());
+            productMargins[product] = 0.25 + 0.12 * random.nextGaussian();
+        }
+    }
+
+
+    /**
+     * Writes the header and `rows` rows to the file, using every core.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void generate(Path output, long rows) throws IOException {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Row count can't be negative: " + rows);
+        }
+        long chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        long bytes = 0;
+        try (OutputStream out = Files.newOutputStream(output)) {
+            out.write((HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+
+            // a few chunks ahead of the writer per thread, so memory stays bounded at any size
+            Queue<Future<byte[]>> ahead = new ArrayDeque<>();
+            long next = 0;
+            while (next < chunks || !ahead.isEmpty()) {
+                while (next < chunks && ahead.size() < threads * 2) {
+                    long firstRow = next * CHUNK_ROWS;
+                    int count = (int) Math.min(CHUNK_ROWS, rows - firstRow);
+                    long chunk = next++;
+                    ahead.add(pool.submit(() -> generateChunk(chunk, firstRow, count)));
+                }
+                byte[] chunk = ahead.poll().get();
+                out.write(chunk);
+                bytes += chunk.length;
+
+                long now = System.nanoTime();
+                if (now - lastReport > 5_000_000_000L) {
+                    lastReport = now;
+                    long written = Math.min(rows, (next - ahead.size()) * CHUNK_ROWS);
+                    System.out.printf("%s %,d of %,d rows, %.0f MB/s%n", UIRenderer.getIcon("loading"), written, rows,
+                            bytes / 1048576.0 / ((now - start) / 1e9));
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Generating rows failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    // Rows [firstRow, firstRow + count) as CSV bytes. Only depends on the seed and the chunk number
+    byte[] generateChunk(long chunk, long firstRow, int count) {
+        SplittableRandom random = new SplittableRandom(HyperLogLog.mix(seed * 31 + chunk));
+        ByteBuffer out = new ByteBuffer(count * 240);
+
+        int row = 0;
+        while (row < count) {
+            // one order: a customer, a day, a ship mode and 1 to ~8 lines (2 on average, as in the sample)
+            long orderRow = firstRow + row;
+            int customer = random.nextInt(CUSTOMERS);
+            int city = random.nextInt(8) == 0 ? random.nextInt(CITIES) : customerCities[customer];
+            byte[][] postalCodes = cityPostalCodes[city];
+            byte[] postalCode = postalCodes[random.nextInt(postalCodes.length)];
+            int orderDay = random.nextInt(ORDER_DAYS);
+            int shipMode = shipModeTable[random.nextInt(shipModeTable.length)];
+            int shipDay = orderDay + SHIP_DAYS[shipMode][0] + random.nextInt(SHIP_DAYS[shipMode][1] - SHIP_DAYS[shipMode][0] + 1);
+            int segment = segmentTable[random.nextInt(segmentTable.length)];
+            int year = LocalDate.ofEpochDay(FIRST_ORDER_DAY.toEpochDay() + orderDay).getYear();
+            boolean us = random.nextInt(5) == 0;
+
+            int lines = 1;
+            while (lines < 14 && random.nextInt(2) == 0) {
+                lines++;
+            }
+            lines = Math.min(lines, count - row);
+
+            for (int line = 0; line < lines; line++, row++) {
+                int product = random.nextInt(PRODUCTS);
+                int quantity = quantityTable[random.nextInt(quantityTable.length)] + 1;
+                int discount = discountTable[random.nextInt(discountTable.length)];
+                double sales = productPrices[product] * quantity * (1 - discountValues[discount]);
+                double profit = sales * (productMargins[product] - discountValues[discount] * 1.2 + 0.05 * random.nextGaussian());
+
+                out.appendLong(firstRow + row + 1).append(',');
+                out.append(us ? US : CA).appendLong(year).append('-').appendLong(100000 + orderRow).append(',');
+                out.append(dates[orderDay]).append(',');
+                out.append(dates[shipDay]).append(',');
+                out.append(shipModes[shipMode]).append(',');
+                out.append(customerIds[customer]).append(',');
+                out.append(customerNames[customer]).append(',');
+                out.append(segments[segment]).append(',');
+                out.append(country).append(',');
+                out.append(cityNames[city]).append(',');
+                out.append(cityStates[city]).append(',');
+                out.append(postalCode).append(',');
+                out.append(cityRegions[city]).append(',');
+                out.append(productIds[product]).append(',');
+                out.append(productCategories[product]).append(',');
+                out.append(productSubCategories[product]).append(',');
+                out.append(productNames[product]).append(',');
+                out.appendDecimal(sales, 4).append(',');
+                out.appendLong(quantity).append(',');
+                out.append(discounts[discount]).append(',');
+                out.appendDecimal(profit, 4).append('\n');
+            }
+        }
+        return out.toByteArray();
+    }
+
+
+    private static final byte[] CA = encode("CA-");
+    private static final byte[] US = encode("US-");
+
+    // index table for weighted picks: table[random.nextInt(table.length)] is i with probability weights[i] / sum
+    private static int[] weightTable(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        // scaled to ~1000 slots, plenty of precision for picking categories
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < weights.length; i++) {
+            long count = Math.max(1, Math.round(weights[i] * 1000.0 / total));
+            for (long c = 0; c < count; c++) {
+                slots.add(i);
+            }
+        }
+        return slots.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // CSV quoting, only when the value needs it
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] encodeAll(String[] values) {
+        byte[][] encoded = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = encode(values[i]);
+        }
+        return encoded;
+    }
+
+
+    // A growable byte array with number formatting that doesn't go through String
+    private static class ByteBuffer {
+        private byte[] bytes;
+        private int size;
+        private final byte[] digits = new byte[20];
+
+        ByteBuffer(int capacity) {
+            bytes = new byte[Math.max(capacity, 64)];
+        }
+
+        ByteBuffer append(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+            return this;
+        }
+
+        ByteBuffer append(char c) {
+            ensure(1);
+            bytes[size++] = (byte) c;
+            return this;
+        }
+
+        ByteBuffer appendLong(long value) {
+            if (value < 0) {
+                append('-');
+                value = -value;
+            }
+            int length = 0;
+            do {
+                digits[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            ensure(length);
+            while (length > 0) {
+                bytes[size++] = digits[--length];
+            }
+            return this;
+        }
+
+        // at most `decimals` decimals, trailing zeros dropped: 261.96, 957.5775, 3 (like the sample)
+        ByteBuffer appendDecimal(double value, int decimals) {
+            long scale = 1;
+            for (int i = 0; i < decimals; i++) {
+                scale *= 10;
+            }
+            long scaled = Math.round(Math.abs(value) * scale);
+            if (value < 0 && scaled != 0) {
+                append('-');
+            }
+            appendLong(scaled / scale);
+            long fraction = scaled % scale;
+            if (fraction != 0) {
+                while (fraction % 10 == 0) {
+                    fraction /= 10;
+                    decimals--;
+                }
+                append('.');
+                for (long divisor = scale / 10, shown = 0; shown < decimals; divisor /= 10, shown++) {
+                    append((char) ('0' + (scaled % scale) / divisor % 10));
+                }
+            }
+            return this;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+    }
+}
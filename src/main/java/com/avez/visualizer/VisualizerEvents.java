@@ -0,0 +1,118 @@
+package com.avez.visualizer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Java Flight Recorder events for the phases of the visualizer, so they show up in a recording next to GC, lock
+ * and I/O events (JDK Mission Control: Event Browser > Data Visualiser).
+ *
+ * Emitters follow the usual JFR pattern: begin(), do the work, then fill the fields only if shouldCommit().
+ * Without an active recording begin() and shouldCommit() are no-ops the JIT removes, so nothing is measured or
+ * allocated. Main --jfr <file.jfr> records them, as does any -XX:StartFlightRecording.
+ */
+final class VisualizerEvents {
+
+    static final String CATEGORY = "Data Visualiser";
+
+    private VisualizerEvents() {
+    }
+
+
+    @Name("com.avez.visualizer.Parse")
+    @Label("CSV Parse")
+    @Description("One CSV file parsed into records")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ParseEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Columns")
+        int columns;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+    }
+
+
+    @Name("com.avez.visualizer.ColumnAnalysis")
+    @Label("Column Analysis")
+    @Description("Type, distinct and null counts worked out for one column")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ColumnAnalysisEvent extends Event {
+        @Label("Column")
+        String column;
+
+        @Label("Storage")
+        @Description("records, columnar or spilled")
+        String storage;
+
+        @Label("Data Type")
+        String dataType;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Distinct Values")
+        long distinct;
+
+        @Label("Nulls")
+        long nulls;
+    }
+
+
+    // Fields shared by the chart phases
+    abstract static class ChartPhaseEvent extends Event {
+        @Label("Column")
+        String column;
+
+        @Label("Chart Type")
+        String chartType;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+
+    @Name("com.avez.visualizer.ChartAggregation")
+    @Label("Chart Aggregation")
+    @Description("Counting or binning a column into a chart's dataset")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ChartAggregationEvent extends ChartPhaseEvent {
+    }
+
+
+    @Name("com.avez.visualizer.ChartRender")
+    @Label("Chart Render")
+    @Description("Drawing a chart into an image")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ChartRenderEvent extends ChartPhaseEvent {
+    }
+
+
+    @Name("com.avez.visualizer.PngSave")
+    @Label("PNG Save")
+    @Description("Encoding a chart image as PNG and writing it to disk")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class PngSaveEvent extends ChartPhaseEvent {
+    }
+}
@@ -0,0 +1,579 @@
+package com.avez.visualizer;
+
+import com.avez.visualizer.model.CSVData;
+import com.avez.visualizer.model.ChartRecommendation;
+import com.avez.visualizer.model.ChartType;
+import com.avez.visualizer.model.ColumnInfo;
+import com.avez.visualizer.model.CorrelationMatrix;
+import com.avez.visualizer.model.JoinResult;
+import com.avez.visualizer.model.JoinType;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The GUI workflow: open a CSV, pick a column, pick one of the recommended charts, look at it, save it.
+ *
+ * Everything slow runs in a SwingWorker, never on the EDT: parsing, the column analysis and counting the values
+ * for a chart. The loops report progress through ProgressListener, shown as rows, rows per second and the time
+ * left, and the Cancel button stops them within a few thousand rows.
+ * Charts are built only when a column and a chart type are actually picked, and kept per column and type,
+ * ChartPanel then draws them on demand (zoom, tooltips and the right click menu come with it).
+ */
+@SuppressWarnings({"serial", "this-escape"}) // Swing frames are never serialized, and the constructor builds the UI
+public class VisualizerWindow extends JFrame {
+
+    private static final long PUBLISH_EVERY_NANOS = TimeUnit.MILLISECONDS.toNanos(100); // ~10 progress updates per second
+
+    private final CSVReader csvReader = new CSVReader();
+    private final CSVAnalyzer csvAnalyzer = new CSVAnalyzer();
+    private final ChartRecommender chartRecommender = new ChartRecommender();
+    private ChartGenerator chartGenerator; // created by the first chart, on the worker thread instead of at startup
+
+    private final JButton openButton = new JButton("Open CSV...");
+    private final JButton browseButton = new JButton("Browse Rows...");
+    private final JButton correlationButton = new JButton("Correlations");
+    private final JButton joinButton = new JButton("Join...");
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JButton saveButton = new JButton("Save PNG...");
+    private final JProgressBar progressBar = new JProgressBar(0, 1000);
+    private final JLabel statusLabel = new JLabel("Open a CSV file to start.");
+    private final DefaultListModel<ColumnInfo> columnModel = new DefaultListModel<>();
+    private final JList<ColumnInfo> columnList = new JList<>(columnModel);
+    private final DefaultComboBoxModel<ChartRecommendation> chartModel = new DefaultComboBoxModel<>();
+    private final JComboBox<ChartRecommendation> chartBox = new JComboBox<>(chartModel);
+    private final JLabel reasonLabel = new JLabel(" ");
+    private final JPanel chartArea = new JPanel(new BorderLayout());
+
+    private CSVData data;
+    private List<ColumnInfo> columnInfos;
+    private File currentFile;
+    private Path joinOutput; // temp file of the joined data being shown, deleted once other data replaces it
+    private JFreeChart shownChart;
+    private final Map<String, JFreeChart> charts = new HashMap<>(); // "column|CHART_TYPE" -> chart already built
+    private Task<?> currentTask; // the one running background job, null when idle
+
+    public VisualizerWindow() {
+        setTitle("CSV Visualizer");
+        setSize(1100, 750);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLocationRelativeTo(null);
+
+        // Top: open / cancel, progress
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        toolbar.add(openButton);
+        toolbar.add(browseButton);
+        toolbar.add(correlationButton);
+        toolbar.add(joinButton);
+        toolbar.add(cancelButton);
+        toolbar.add(progressBar);
+        toolbar.add(statusLabel);
+        progressBar.setPreferredSize(new Dimension(200, progressBar.getPreferredSize().height));
+        cancelButton.setEnabled(false);
+        correlationButton.setEnabled(false); // until a file with two numeric columns is loaded
+        joinButton.setEnabled(false); // until a file is loaded
+
+        // Left: the columns with their detected type
+        columnList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        columnList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected, boolean focus) {
+                ColumnInfo info = (ColumnInfo) value;
+                String text = info.getColumnName() + "  (" + info.getDataType() + ", " + info.getUniqueValues() + " unique)";
+                return super.getListCellRendererComponent(list, text, index, selected, focus);
+            }
+        });
+        JScrollPane columnScroll = new JScrollPane(columnList);
+        columnScroll.setPreferredSize(new Dimension(280, 0));
+        columnScroll.setBorder(BorderFactory.createTitledBorder("Columns"));
+
+        // Above the chart: the recommended chart types for the column
+        chartBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected, boolean focus) {
+                String text = value == null ? "" : formatChartType(((ChartRecommendation) value).getChartType());
+                return super.getListCellRendererComponent(list, text, index, selected, focus);
+            }
+        });
+        JPanel chartControls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        chartControls.add(new JLabel("Chart:"));
+        chartControls.add(chartBox);
+        chartControls.add(saveButton);
+        chartControls.add(reasonLabel);
+        saveButton.setEnabled(false);
+
+        JPanel right = new JPanel(new BorderLayout());
+        right.add(chartControls, BorderLayout.NORTH);
+        right.add(chartArea, BorderLayout.CENTER);
+
+        setLayout(new BorderLayout());
+        add(toolbar, BorderLayout.NORTH);
+        add(columnScroll, BorderLayout.WEST);
+        add(right, BorderLayout.CENTER);
+
+        openButton.addActionListener(e -> chooseFile());
+        browseButton.addActionListener(e -> browseRows());
+        correlationButton.addActionListener(e -> showCorrelations());
+        joinButton.addActionListener(e -> joinWithAnotherFile());
+        cancelButton.addActionListener(e -> {
+            if (currentTask != null) {
+                currentTask.cancel(false); // cooperative, the loop notices at its next check
+            }
+        });
+        saveButton.addActionListener(e -> saveChart());
+        columnList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showRecommendations(columnList.getSelectedValue());
+            }
+        });
+        chartBox.addActionListener(e -> showChart());
+    }
+
+
+    private void chooseFile() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV files, Excel workbooks, gzip files", "csv", "xlsx", "gz", "deflate", "zz"));
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            load(chooser.getSelectedFile());
+        }
+    }
+
+    // Parses and analyzes the file off the EDT, then lists its columns
+    public void load(File file) {
+        if (joinOutput != null && !joinOutput.toFile().equals(file)) {
+            deleteQuietly(joinOutput); // the joined data is replaced, nothing reads its file any more
+            joinOutput = null;
+        }
+        data = null;
+        columnInfos = null;
+        currentFile = file;
+        correlationButton.setEnabled(false);
+        joinButton.setEnabled(false);
+        charts.clear();
+        columnModel.clear();
+        chartModel.removeAllElements();
+        showInChartArea(null);
+
+        long start = System.nanoTime();
+        run(new Task<List<ColumnInfo>>() {
+            private CSVData loaded;
+
+            @Override
+            protected List<ColumnInfo> doInBackground() throws IOException {
+                loaded = csvReader.readCSV(file.getPath(), this);
+                return csvAnalyzer.analyzeColumns(loaded, this);
+            }
+
+            @Override
+            protected void finished(List<ColumnInfo> analyzed) {
+                data = loaded;
+                columnInfos = analyzed;
+                for (ColumnInfo info : analyzed) {
+                    columnModel.addElement(info);
+                }
+                correlationButton.setEnabled(CorrelationAnalyzer.numericColumns(analyzed).size() >= 2);
+                joinButton.setEnabled(true);
+                statusLabel.setText(String.format("%s: %,d rows, %d columns, loaded in %.1f s",
+                        file.getName(), data.getRowCount(), data.getColumnCount(), (System.nanoTime() - start) / 1e9));
+                setTitle("CSV Visualizer - " + file.getName());
+            }
+        });
+    }
+
+
+    // Indexes a CSV file (or reuses its saved index) off the EDT and opens its rows in a RowBrowser.
+    // Nothing is parsed into memory, so this works for files far too big to load
+    private void browseRows() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+        if (currentFile != null) {
+            chooser.setSelectedFile(currentFile);
+        }
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        run(new Task<RowIndex>() {
+            @Override
+            protected RowIndex doInBackground() throws IOException {
+                return RowIndex.open(file, this);
+            }
+
+            @Override
+            protected void finished(RowIndex index) {
+                statusLabel.setText(String.format("%s: %,d rows indexed", file.getName(), index.getRowCount()));
+                new RowBrowser(index).setVisible(true);
+            }
+        });
+    }
+
+
+    // Correlates every pair of numeric columns in the background and shows the matrix as a heatmap,
+    // the strongest pair goes in the status line as a hint for a scatter plot
+    private void showCorrelations() {
+        if (data == null || columnInfos == null) {
+            return;
+        }
+        CSVData correlated = data;
+        List<ColumnInfo> infos = columnInfos;
+        run(new Task<CorrelationMatrix>() {
+            @Override
+            protected CorrelationMatrix doInBackground() {
+                return new CorrelationAnalyzer().correlate(correlated, infos, false, this);
+            }
+
+            @Override
+            protected void finished(CorrelationMatrix matrix) {
+                columnList.clearSelection(); // the heatmap isn't a chart of one column
+                showInChartArea(chartGenerator().createCorrelationHeatmap(matrix, false));
+                List<int[]> strongest = CorrelationAnalyzer.strongestPairs(matrix, 1);
+                statusLabel.setText(strongest.isEmpty() ? "No numeric pair has a correlation"
+                        : String.format("Strongest: %s ~ %s (r = %.2f)",
+                                matrix.getColumns().get(strongest.get(0)[0]),
+                                matrix.getColumns().get(strongest.get(0)[1]),
+                                matrix.getPearson(strongest.get(0)[0], strongest.get(0)[1])));
+            }
+        });
+    }
+
+
+    // Asks for a second file, the key column of each and the join type, joins them in the background (HashJoin)
+    // into a temp CSV file and loads that like any other file, so all its columns can be charted
+    private void joinWithAnotherFile() {
+        if (currentFile == null) {
+            return;
+        }
+        JFileChooser chooser = new JFileChooser(currentFile.getParentFile());
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV files, Excel workbooks, gzip files", "csv", "xlsx", "gz", "deflate", "zz"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File left = currentFile;
+        File right = chooser.getSelectedFile();
+
+        // a workbook or a compressed file has to be opened to get at its header row, so not on the EDT
+        run(new Task<List<List<String>>>() {
+            @Override
+            protected List<List<String>> doInBackground() throws IOException {
+                return List.of(HashJoin.readHeaders(left), HashJoin.readHeaders(right));
+            }
+
+            @Override
+            protected void finished(List<List<String>> headers) {
+                askJoinKeys(left, headers.get(0), right, headers.get(1));
+            }
+        });
+    }
+
+    // The key columns and join type for joinWithAnotherFile, then the join itself
+    private void askJoinKeys(File left, List<String> leftHeaders, File right, List<String> rightHeaders) {
+        JComboBox<String> leftKey = new JComboBox<>(leftHeaders.toArray(new String[0]));
+        JComboBox<String> rightKey = new JComboBox<>(rightHeaders.toArray(new String[0]));
+        JComboBox<JoinType> type = new JComboBox<>(JoinType.values());
+        leftKey.addActionListener(e -> { // the same column name on the other side is the usual key
+            for (String header : rightHeaders) {
+                if (header.equalsIgnoreCase((String) leftKey.getSelectedItem())) {
+                    rightKey.setSelectedItem(header);
+                }
+            }
+        });
+        JPanel form = new JPanel(new GridLayout(0, 2, 8, 4));
+        form.add(new JLabel("Key in " + left.getName() + ":"));
+        form.add(leftKey);
+        form.add(new JLabel("Key in " + right.getName() + ":"));
+        form.add(rightKey);
+        form.add(new JLabel("Join type:"));
+        form.add(type);
+        if (JOptionPane.showConfirmDialog(this, form, "Join", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        String leftColumn = (String) leftKey.getSelectedItem();
+        String rightColumn = (String) rightKey.getSelectedItem();
+        JoinType joinType = (JoinType) type.getSelectedItem();
+        run(new Task<JoinResult>() {
+            private volatile Path output;
+
+            @Override
+            protected JoinResult doInBackground() throws IOException {
+                output = Files.createTempFile("join-", ".csv");
+                output.toFile().deleteOnExit(); // in case the window is closed while it's shown
+                JoinResult result;
+                try {
+                    result = new HashJoin().join(left, leftColumn, right, rightColumn, joinType, output, this);
+                } catch (IOException | RuntimeException e) {
+                    deleteQuietly(output); // half written, or cancelled
+                    throw e;
+                }
+                if (isCancelled()) {
+                    deleteQuietly(output); // finished just after the cancel, nobody takes the result
+                }
+                return result;
+            }
+
+            @Override
+            protected void finished(JoinResult result) {
+                load(result.getOutput().toFile()); // replaces the current data, like opening the joined file
+                joinOutput = result.getOutput();
+            }
+
+            @Override
+            protected void discarded() {
+                if (output != null) {
+                    deleteQuietly(output);
+                }
+            }
+        });
+    }
+
+
+    private void showRecommendations(ColumnInfo info) {
+        chartModel.removeAllElements();
+        if (info == null) {
+            return;
+        }
+        for (ChartRecommendation recommendation : chartRecommender.recommendCharts(info)) {
+            if (recommendation.getChartType() != ChartType.SCATTER_PLOT) { // needs a second column, not offered here
+                chartModel.addElement(recommendation);
+            }
+        }
+        // adding the first element selects it, which already fired showChart()
+    }
+
+    // Shows the chart for the selected column and type, building it in the background the first time
+    private void showChart() {
+        ColumnInfo info = columnList.getSelectedValue();
+        ChartRecommendation recommendation = (ChartRecommendation) chartBox.getSelectedItem();
+        if (data == null || info == null || recommendation == null) {
+            return;
+        }
+        reasonLabel.setText(recommendation.getReason() + (recommendation.hasWarning() ? " (" + recommendation.getWarning() + ")" : ""));
+
+        String key = info.getColumnName() + "|" + recommendation.getChartType();
+        JFreeChart chart = charts.get(key);
+        if (chart != null) {
+            showInChartArea(chart);
+            return;
+        }
+
+        CSVData chartData = data;
+        run(new Task<JFreeChart>() {
+            @Override
+            protected JFreeChart doInBackground() {
+                return chartGenerator().createChart(info.getColumnName(), chartData.getRecords(), recommendation.getChartType(), this);
+            }
+
+            @Override
+            protected void finished(JFreeChart built) {
+                charts.put(key, built);
+                if (chartBox.getSelectedItem() == recommendation) { // the user may have moved on meanwhile
+                    showInChartArea(built);
+                }
+                statusLabel.setText(formatChartType(recommendation.getChartType()) + " of " + info.getColumnName());
+            }
+        });
+    }
+
+    private void showInChartArea(JFreeChart chart) {
+        shownChart = chart;
+        chartArea.removeAll();
+        if (chart != null) {
+            chartArea.add(new ChartPanel(chart), BorderLayout.CENTER);
+        }
+        saveButton.setEnabled(chart != null);
+        chartArea.revalidate();
+        chartArea.repaint();
+    }
+
+    // Only called from chart tasks, one at a time, but synchronized so it stays correct if that changes
+    private synchronized ChartGenerator chartGenerator() {
+        if (chartGenerator == null) {
+            chartGenerator = new ChartGenerator();
+        }
+        return chartGenerator;
+    }
+
+    private void saveChart() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("PNG images", "png"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith(".png")) {
+            file = new File(file.getPath() + ".png");
+        }
+        try {
+            ChartUtils.saveChartAsPNG(file, shownChart, ChartGenerator.CHART_WIDTH, ChartGenerator.CHART_HEIGHT);
+            statusLabel.setText("Saved " + file.getName());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not save the chart: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+
+    // Starts a background job, cancelling the one still running (a new file or chart makes it pointless)
+    private void run(Task<?> task) {
+        if (currentTask != null) {
+            currentTask.cancel(false);
+        }
+        currentTask = task;
+        cancelButton.setEnabled(true);
+        progressBar.setValue(0);
+        progressBar.setIndeterminate(true); // until the first progress report
+        task.execute();
+    }
+
+    private void showProgress(Progress progress) {
+        progressBar.setIndeterminate(progress.total <= 0);
+        if (progress.total > 0) {
+            progressBar.setValue((int) (1000 * progress.done / progress.total));
+        }
+
+        double seconds = progress.elapsedNanos / 1e9;
+        StringBuilder text = new StringBuilder(String.format("%s: %,d rows", progress.stage, progress.rows));
+        if (seconds > 0) {
+            text.append(String.format(", %,.0f rows/s", progress.rows / seconds));
+        }
+        if (progress.done > 0 && progress.total > progress.done) {
+            long etaSeconds = Math.round(seconds * (progress.total - progress.done) / progress.done);
+            text.append(String.format(", %d:%02d left", etaSeconds / 60, etaSeconds % 60));
+        }
+        statusLabel.setText(text.toString());
+    }
+
+    private void finishTask(Task<?> task) {
+        if (currentTask != task) {
+            return; // an older job that was replaced, the new one owns the controls now
+        }
+        currentTask = null;
+        cancelButton.setEnabled(false);
+        progressBar.setIndeterminate(false);
+        progressBar.setValue(0);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // still marked deleteOnExit
+        }
+    }
+
+    // PIE_CHART -> "Pie Chart"
+    private static String formatChartType(ChartType chartType) {
+        StringBuilder name = new StringBuilder();
+        for (String word : chartType.toString().toLowerCase().split("_")) {
+            name.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1)).append(' ');
+        }
+        return name.toString().trim();
+    }
+
+
+    // One progress report, passed from the worker thread to the EDT
+    private static class Progress {
+        final String stage;
+        final long done;
+        final long total;
+        final long rows;
+        final long elapsedNanos; // since the stage started
+
+        Progress(String stage, long done, long total, long rows, long elapsedNanos) {
+            this.stage = stage;
+            this.done = done;
+            this.total = total;
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+
+    /**
+     * A SwingWorker that is also the ProgressListener of the loops it runs: progress is throttled to
+     * PUBLISH_EVERY_NANOS and published to the EDT, and SwingWorker.isCancelled() is what the loops check.
+     * finished() runs on the EDT with the result, and only while this is still the current job;
+     * cancellations and errors are handled here.
+     */
+    private abstract class Task<T> extends SwingWorker<T, Progress> implements ProgressListener {
+        private String stage;
+        private long stageStart;
+        private long lastPublish;
+
+        protected abstract void finished(T result);
+
+        // on the EDT when the job was cancelled, failed or replaced by a newer one, to remove whatever it already created
+        protected void discarded() {
+        }
+
+        // called on the worker thread by the loops
+        @Override
+        public void progress(String stage, long done, long total, long rows) {
+            long now = System.nanoTime();
+            if (!stage.equals(this.stage)) {
+                this.stage = stage;
+                stageStart = now;
+            }
+            if (now - lastPublish < PUBLISH_EVERY_NANOS && done < total) {
+                return;
+            }
+            lastPublish = now;
+            publish(new Progress(stage, done, total, rows, now - stageStart));
+        }
+
+        @Override
+        protected void process(List<Progress> chunks) {
+            if (currentTask == this) {
+                showProgress(chunks.get(chunks.size() - 1)); // only the latest matters
+            }
+        }
+
+        @Override
+        protected void done() {
+            try {
+                T result = get();
+                boolean current = currentTask == this;
+                finishTask(this);
+                if (current) {
+                    finished(result);
+                } else {
+                    discarded(); // replaced by a newer job while it ran, its result would overwrite the newer one's
+                }
+            } catch (CancellationException e) {
+                if (currentTask == this) {
+                    statusLabel.setText("Cancelled.");
+                }
+                finishTask(this);
+                discarded();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finishTask(this);
+                discarded();
+            } catch (ExecutionException e) {
+                boolean current = currentTask == this;
+                finishTask(this);
+                discarded();
+                if (!current) {
+                    return; // nobody is waiting for this job any more
+                }
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                statusLabel.setText("Failed: " + cause.getMessage());
+                JOptionPane.showMessageDialog(VisualizerWindow.this, cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+}
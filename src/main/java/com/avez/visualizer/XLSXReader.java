@@ -0,0 +1,611 @@
+package com.avez.visualizer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * Reads the first sheet of an Excel workbook (.xlsx) as CSV text, so every CSV reader (in memory, off-heap,
+ * out of core) takes Excel files through the exact same pipeline.
+ *
+ * An .xlsx file is a zip of XML files. The sheet is inflated straight from the zip (ZipFile, no temp copy) and
+ * pulled through StAX one row at a time, each row is turned into a CSV line only when the CSV parser asks for
+ * more bytes. Nothing is built for the whole sheet, so memory doesn't grow with the row count. What is kept:
+ *   - the shared strings table (sharedStrings.xml), the text cells point into it by index. It grows with the
+ *     DISTINCT strings, not the rows, and is stored as one char buffer plus offsets, ~2 bytes per character
+ *   - which cell styles are dates (styles.xml), dates are stored as day numbers and only the style tells them apart
+ *
+ * Values come out like Excel shows them by default: numbers in their shortest form (261.96, not
+ * 261.95999999999998), dates as MM/dd/yyyy (what ColumnStats detects as dates), booleans as TRUE / FALSE.
+ * Missing cells become empty fields, rows are padded to the header's width.
+ */
+public class XLSXReader implements Closeable {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final LocalDate EPOCH_1900 = LocalDate.of(1899, 12, 30); // day 0, so that day 61 is 1 March 1900
+    private static final LocalDate EPOCH_1904 = LocalDate.of(1904, 1, 1);
+    private static final BigDecimal NOISE = new BigDecimal("1e-13"); // relative, a double's own precision is ~1e-16
+    private static final int ESTIMATE_BYTES = 1024 * 1024; // sheet XML looked at by estimateRows()
+
+    private static final XMLInputFactory XML = newXmlFactory();
+
+    private final ZipFile zip;
+    private final ZipEntry sheet;
+    private final SharedStrings sharedStrings = new SharedStrings();
+    private final BitSet dateStyles = new BitSet(); // indices into cellXfs whose number format is a date
+    private boolean date1904; // workbooks from old Mac Excel count days from 1904
+
+
+    /**
+     * Opens the workbook and reads what every row needs (shared strings, date styles). The sheet itself is
+     * only read by openCsv().
+     *
+     * @throws IOException If the file is not a readable .xlsx workbook
+     */
+    public XLSXReader(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException("File not found: " + file);
+        }
+        this.zip = new ZipFile(file);
+        try {
+            Map<String, String> targets = readRelationships();
+            String sheetId = readWorkbook();
+            String sheetPath = sheetId != null ? targets.get(sheetId) : null;
+            this.sheet = zip.getEntry(sheetPath != null ? sheetPath : "xl/worksheets/sheet1.xml");
+            if (sheet == null) {
+                throw new IOException("No worksheet found in " + file.getName());
+            }
+
+            ZipEntry strings = zip.getEntry(targets.getOrDefault("sharedStrings", "xl/sharedStrings.xml"));
+            if (strings != null) {
+                readSharedStrings(strings);
+            }
+            ZipEntry styles = zip.getEntry(targets.getOrDefault("styles", "xl/styles.xml"));
+            if (styles != null) {
+                readDateStyles(styles);
+            }
+        } catch (XMLStreamException e) {
+            zip.close();
+            throw new IOException("Not a valid .xlsx workbook: " + file.getName() + " (" + e.getMessage() + ")", e);
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+
+    // .xlsx by name, the only Excel format read (the old binary .xls isn't XML)
+    public static boolean isXlsx(String path) {
+        return path.toLowerCase(Locale.ROOT).endsWith(".xlsx");
+    }
+
+
+    /**
+     * Opens the first sheet of the workbook as CSV bytes (UTF-8, header row first). Closing the stream also
+     * closes the workbook.
+     *
+     * @throws IOException If the file is not a readable .xlsx workbook
+     */
+    public static InputStream openCsv(File file) throws IOException {
+        XLSXReader reader = new XLSXReader(file);
+        try {
+            return reader.openCsv(true);
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * The first sheet as CSV bytes, generated row by row while they are read.
+     *
+     * @throws IOException If the sheet cannot be read
+     */
+    public InputStream openCsv() throws IOException {
+        return openCsv(false);
+    }
+
+    private InputStream openCsv(boolean closeWorkbook) throws IOException {
+        try {
+            return new SheetCsvStream(zip.getInputStream(sheet), closeWorkbook);
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read worksheet " + sheet.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Guesses the sheet's row count from its size and the rows in its first MB of XML, exact for small sheets.
+     * For LoadPlanner, which has to decide before reading anything.
+     *
+     * @throws IOException If the sheet cannot be read
+     */
+    public long estimateRows() throws IOException {
+        byte[] head;
+        try (InputStream in = zip.getInputStream(sheet)) {
+            head = in.readNBytes(ESTIMATE_BYTES);
+        }
+        byte[] rowEnd = "</row>".getBytes(StandardCharsets.US_ASCII);
+        long rows = 0;
+        for (int i = 0; i + rowEnd.length <= head.length; i++) {
+            if (head[i] == '<' && head[i + 1] == '/' && Arrays.equals(head, i, i + rowEnd.length, rowEnd, 0, rowEnd.length)) {
+                rows++;
+            }
+        }
+        if (head.length < ESTIMATE_BYTES || sheet.getSize() <= 0) {
+            return rows;
+        }
+        return Math.round((double) rows * sheet.getSize() / head.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+
+    // xl/_rels/workbook.xml.rels: relationship id -> zip entry, plus "sharedStrings" and "styles" by type
+    private Map<String, String> readRelationships() throws IOException, XMLStreamException {
+        Map<String, String> targets = new HashMap<>();
+        ZipEntry rels = zip.getEntry("xl/_rels/workbook.xml.rels");
+        if (rels == null) {
+            return targets;
+        }
+        try (InputStream in = zip.getInputStream(rels)) {
+            XMLStreamReader xml = XML.createXMLStreamReader(in);
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("Relationship")) {
+                    String target = xml.getAttributeValue(null, "Target");
+                    String type = xml.getAttributeValue(null, "Type");
+                    if (target == null) {
+                        continue;
+                    }
+                    // relative to xl/, or absolute within the zip
+                    String entry = target.startsWith("/") ? target.substring(1) : "xl/" + target;
+                    targets.put(xml.getAttributeValue(null, "Id"), entry);
+                    if (type != null && type.endsWith("/sharedStrings")) {
+                        targets.put("sharedStrings", entry);
+                    } else if (type != null && type.endsWith("/styles")) {
+                        targets.put("styles", entry);
+                    }
+                }
+            }
+            xml.close();
+        }
+        return targets;
+    }
+
+    // xl/workbook.xml: the 1904 date flag and the relationship id of the first sheet
+    private String readWorkbook() throws IOException, XMLStreamException {
+        ZipEntry workbook = zip.getEntry("xl/workbook.xml");
+        if (workbook == null) {
+            throw new IOException("Missing xl/workbook.xml");
+        }
+        try (InputStream in = zip.getInputStream(workbook)) {
+            XMLStreamReader xml = XML.createXMLStreamReader(in);
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (xml.getLocalName().equals("workbookPr")) {
+                    String flag = xml.getAttributeValue(null, "date1904");
+                    date1904 = "1".equals(flag) || "true".equals(flag);
+                } else if (xml.getLocalName().equals("sheet")) {
+                    for (int i = 0; i < xml.getAttributeCount(); i++) {
+                        if (xml.getAttributeLocalName(i).equals("id")) { // r:id, the relationships namespace
+                            return xml.getAttributeValue(i);
+                        }
+                    }
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    // every <si> in order, the text of its <t> elements (rich text has several), phonetic hints (<rPh>) left out
+    private void readSharedStrings(ZipEntry entry) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(zip.getInputStream(entry), 64 * 1024)) {
+            XMLStreamReader xml = XML.createXMLStreamReader(in);
+            int phoneticDepth = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if (name.equals("si")) {
+                        sharedStrings.start();
+                    } else if (name.equals("rPh")) {
+                        phoneticDepth++;
+                    } else if (name.equals("t") && phoneticDepth == 0) {
+                        sharedStrings.append(xml.getElementText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("rPh")) {
+                    phoneticDepth--;
+                }
+            }
+            sharedStrings.start(); // closes the last string
+            xml.close();
+        }
+    }
+
+    // cellXfs (the styles cells refer to with s="n") whose number format is a built-in or custom date format
+    private void readDateStyles(ZipEntry entry) throws IOException, XMLStreamException {
+        BitSet customDateFormats = new BitSet();
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLStreamReader xml = XML.createXMLStreamReader(in);
+            boolean inCellXfs = false;
+            int xfIndex = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if (name.equals("numFmt")) {
+                        int id = Integer.parseInt(xml.getAttributeValue(null, "numFmtId"));
+                        if (isDateFormatCode(xml.getAttributeValue(null, "formatCode"))) {
+                            customDateFormats.set(id);
+                        }
+                    } else if (name.equals("cellXfs")) {
+                        inCellXfs = true;
+                    } else if (name.equals("xf") && inCellXfs) {
+                        String id = xml.getAttributeValue(null, "numFmtId");
+                        int format = id == null ? 0 : Integer.parseInt(id);
+                        if (isBuiltInDateFormat(format) || customDateFormats.get(format)) {
+                            dateStyles.set(xfIndex);
+                        }
+                        xfIndex++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("cellXfs")) {
+                    break;
+                }
+            }
+            xml.close();
+        }
+    }
+
+    // ECMA-376 built-in formats 14-22 and 45-47, plus the East Asian date formats 27-36 and 50-58
+    private static boolean isBuiltInDateFormat(int id) {
+        return (id >= 14 && id <= 22) || (id >= 45 && id <= 47) || (id >= 27 && id <= 36) || (id >= 50 && id <= 58);
+    }
+
+    // a custom format is a date if it has d, m, y, h or s outside quoted text, [colors / locales] and escapes
+    private static boolean isDateFormatCode(String code) {
+        if (code == null) {
+            return false;
+        }
+        boolean quoted = false;
+        boolean bracket = false;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted) {
+                continue;
+            } else if (c == '[') {
+                bracket = true;
+            } else if (c == ']') {
+                bracket = false;
+            } else if (c == '\\' || c == '_' || c == '*') {
+                i++; // escaped or padding character
+            } else if (!bracket && "dmyhsDMYHS".indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    // Excel's day number (fraction = time of day) to the text the CSV side would have
+    private String formatDate(double serial) {
+        long days = (long) Math.floor(serial);
+        long seconds = Math.round((serial - days) * 86_400);
+        if (seconds == 86_400) {
+            days++;
+            seconds = 0;
+        }
+        if (days == 0 && seconds > 0) {
+            return LocalTime.ofSecondOfDay(seconds).format(TIME_FORMAT);
+        }
+
+        LocalDate date;
+        if (date1904) {
+            date = EPOCH_1904.plusDays(days);
+        } else {
+            // Excel treats 1900 as a leap year, day 60 is a 29 February that never was
+            date = days < 61 ? EPOCH_1900.plusDays(days + 1) : EPOCH_1900.plusDays(days);
+        }
+        return seconds == 0
+                ? date.format(DATE_FORMAT)
+                : date.atStartOfDay().plusSeconds(seconds).format(DATE_TIME_FORMAT);
+    }
+
+    // "261.95999999999998" -> "261.96", "42420" stays. A workbook stores every digit of the double, binary noise from
+    // the formulas included: the shortest decimal within 1e-13 of it is what was meant (and what a CSV export shows)
+    private static String formatNumber(String raw) {
+        if ((raw.length() <= 15 && raw.indexOf('E') < 0) || (raw.indexOf('.') < 0 && raw.indexOf('E') < 0)) {
+            return raw; // already short, or a whole number, nothing to round
+        }
+        try {
+            BigDecimal exact = new BigDecimal(raw);
+            BigDecimal tolerance = exact.abs().multiply(NOISE);
+            for (int digits = 1; digits < 17; digits++) {
+                BigDecimal rounded = exact.round(new MathContext(digits));
+                if (rounded.subtract(exact).abs().compareTo(tolerance) <= 0) {
+                    return rounded.signum() == 0 ? "0" : rounded.stripTrailingZeros().toPlainString();
+                }
+            }
+            return exact.toPlainString();
+        } catch (NumberFormatException e) {
+            return raw;
+        }
+    }
+
+
+    // One row of the sheet at a time, as CSV bytes
+    private class SheetCsvStream extends InputStream {
+        private final InputStream source;
+        private final XMLStreamReader xml;
+        private final boolean closeWorkbook;
+        private final StringBuilder line = new StringBuilder(256);
+        private String[] cells = new String[16]; // current row, by column
+        private int width = -1; // column count of the header row, -1 until it has been read
+        private byte[] buffer = new byte[0];
+        private int position;
+        private boolean finished;
+
+        SheetCsvStream(InputStream source, boolean closeWorkbook) throws XMLStreamException {
+            this.source = new BufferedInputStream(source, 64 * 1024);
+            this.xml = XML.createXMLStreamReader(this.source);
+            this.closeWorkbook = closeWorkbook;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == buffer.length && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == buffer.length && !fill()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(buffer, position, target, offset, count);
+            position += count;
+            return count;
+        }
+
+        // converts the next non empty row, false at the end of the sheet
+        private boolean fill() throws IOException {
+            try {
+                while (!finished) {
+                    int columns = nextRow();
+                    if (columns < 0) {
+                        finished = true;
+                    } else if (columns > 0) {
+                        buffer = toCsvLine(columns).getBytes(StandardCharsets.UTF_8);
+                        position = 0;
+                        return true;
+                    }
+                }
+                return false;
+            } catch (XMLStreamException e) {
+                throw new IOException("Broken worksheet XML: " + e.getMessage(), e);
+            }
+        }
+
+        // reads up to the next </row> into cells, returns the used width, 0 for an empty row, -1 at the end
+        private int nextRow() throws XMLStreamException {
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("row")) {
+                    Arrays.fill(cells, null);
+                    int columns = 0;
+                    int next = 0; // column of a cell without an r attribute
+                    while (xml.hasNext()) {
+                        event = xml.next();
+                        if (event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("c")) {
+                            String reference = xml.getAttributeValue(null, "r");
+                            int column = reference != null ? columnIndex(reference) : next;
+                            String value = readCell(xml.getAttributeValue(null, "t"), xml.getAttributeValue(null, "s"));
+                            if (column >= cells.length) {
+                                cells = Arrays.copyOf(cells, Math.max(cells.length * 2, column + 1));
+                            }
+                            cells[column] = value;
+                            next = column + 1;
+                            if (value != null && !value.isEmpty()) {
+                                columns = Math.max(columns, column + 1);
+                            }
+                        } else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("row")) {
+                            return columns;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("sheetData")) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        // the value of the <c> the reader is on, the reader ends on its </c>
+        private String readCell(String type, String style) throws XMLStreamException {
+            String value = null;
+            StringBuilder inline = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if (name.equals("v")) {
+                        value = xml.getElementText();
+                    } else if (name.equals("t")) { // inline string, possibly in several runs
+                        if (inline == null) {
+                            inline = new StringBuilder();
+                        }
+                        inline.append(xml.getElementText());
+                    } else if (name.equals("f")) {
+                        xml.getElementText(); // the formula, its cached result is in <v>
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("c")) {
+                    break;
+                }
+            }
+
+            if (type == null || type.equals("n")) {
+                if (value == null || value.isEmpty()) {
+                    return null;
+                }
+                if (style != null && dateStyles.get(Integer.parseInt(style))) {
+                    try {
+                        return formatDate(Double.parseDouble(value));
+                    } catch (NumberFormatException | DateTimeException e) {
+                        return value;
+                    }
+                }
+                return formatNumber(value);
+            }
+            switch (type) {
+                case "s":
+                    return value == null ? null : sharedStrings.get(Integer.parseInt(value.trim()));
+                case "inlineStr":
+                    return inline == null ? null : inline.toString();
+                case "b":
+                    return value == null ? null : value.equals("1") ? "TRUE" : "FALSE";
+                default:
+                    return value; // "str" (formula text) and "e" (#DIV/0! and friends) as they are
+            }
+        }
+
+        private String toCsvLine(int columns) {
+            if (width < 0) {
+                width = columns; // the header decides how many fields every row has
+            }
+            int fields = Math.max(width, columns);
+            line.setLength(0);
+            for (int i = 0; i < fields; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                String value = i < cells.length ? cells[i] : null;
+                if (value != null) {
+                    appendField(value);
+                }
+            }
+            return line.append('\n').toString();
+        }
+
+        // quoted only when needed, like the CSV exports the rest of the code expects
+        private void appendField(String value) {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                line.append(value);
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                xml.close();
+            } catch (XMLStreamException e) {
+                // closing anyway
+            }
+            source.close();
+            if (closeWorkbook) {
+                XLSXReader.this.close();
+            }
+        }
+    }
+
+    // "C5" -> 2, "AA10" -> 26
+    static int columnIndex(String reference) {
+        int column = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                column = column * 26 + (c - 'A' + 1);
+            } else {
+                break;
+            }
+        }
+        return column - 1;
+    }
+
+
+    // The shared strings, all in one char buffer: string i is text[offsets[i], offsets[i + 1])
+    private static class SharedStrings {
+        private final StringBuilder text = new StringBuilder();
+        private int[] offsets = new int[1024];
+        private int count = -1; // start() before the first string
+
+        void start() {
+            count++;
+            if (count + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count] = text.length();
+        }
+
+        void append(String part) {
+            text.append(part);
+            offsets[count + 1] = text.length();
+        }
+
+        String get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IllegalArgumentException("Shared string " + index + " doesn't exist, the workbook has " + count);
+            }
+            return text.substring(offsets[index], Math.max(offsets[index], offsets[index + 1]));
+        }
+    }
+
+    private static XMLInputFactory newXmlFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false); // no DTDs or external entities from a file we were given
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
@@ -0,0 +1,34 @@
+package com.avez.visualizer.model;
+
+
+// A count scaled up from a sample, together with its 95% confidence interval (estimate ± margin)
+public class ApproximateCount {
+    private double estimate; // sample count scaled to the whole file
+    private double margin; // half width of the 95% confidence interval
+
+    public ApproximateCount(double estimate, double margin) {
+        this.estimate = estimate;
+        this.margin = margin;
+    }
+
+    public double getEstimate() {
+        return estimate;
+    }
+
+    public double getMargin() {
+        return margin;
+    }
+
+    public double getLowerBound() {
+        return Math.max(0, estimate - margin); // a count can never be negative
+    }
+
+    public double getUpperBound() {
+        return estimate + margin;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("~%.0f ± %.0f", estimate, margin);
+    }
+}
@@ -0,0 +1,44 @@
+package com.avez.visualizer.model;
+
+import org.apache.commons.csv.CSVRecord;
+import java.util.List;
+
+
+// A CSVData that only holds a random sample of the file's rows.
+// Anything computed from it is an ESTIMATE of the full file, never the exact number
+public class CSVSample extends CSVData {
+    private long estimatedTotalRows; // how many data rows we think the whole file has
+    private boolean stratified; // true when rows were picked from windows spread across the file
+
+    public CSVSample(List<String> headers, List<CSVRecord> records, long estimatedTotalRows, boolean stratified) {
+        super(headers, records);
+        this.estimatedTotalRows = estimatedTotalRows;
+        this.stratified = stratified;
+    }
+
+    public long getEstimatedTotalRows() {
+        return estimatedTotalRows;
+    }
+
+    public boolean isStratified() {
+        return stratified;
+    }
+
+    // fraction of the file the sample represents, used to scale sample counts up
+    public double getSamplingFraction() {
+        if (estimatedTotalRows <= 0) {
+            return 1.0;
+        }
+        return Math.min(1.0, (double) getRowCount() / estimatedTotalRows);
+    }
+
+    @Override
+    public String toString() {
+        return "CSVSample{" +
+                "columns=" + getColumnCount() +
+                ", sampledRows=" + getRowCount() +
+                ", estimatedTotalRows~" + estimatedTotalRows +
+                ", stratified=" + stratified +
+                '}';
+    }
+}
@@ -0,0 +1,40 @@
+package com.avez.visualizer.model;
+
+import java.util.List;
+
+
+// A parsed file together with its analysis, as kept by DatasetCache. sizeBytes and lastModified tell
+// whether the file changed since it was parsed. columnInfos is null for a partition of a folder, whose rows
+// were cached without analyzing them
+public class CachedDataset {
+    private CSVData data;
+    private List<ColumnInfo> columnInfos;
+    private long sizeBytes;
+    private long lastModified;
+    private long estimatedHeapBytes;
+
+    public CachedDataset(CSVData data, List<ColumnInfo> columnInfos, long sizeBytes, long lastModified, long estimatedHeapBytes) {
+        this.data = data;
+        this.columnInfos = columnInfos;
+        this.sizeBytes = sizeBytes;
+        this.lastModified = lastModified;
+        this.estimatedHeapBytes = estimatedHeapBytes;
+    }
+
+    public CSVData getData() {
+        return data;
+    }
+
+    public List<ColumnInfo> getColumnInfos() {
+        return columnInfos;
+    }
+
+    public long getEstimatedHeapBytes() {
+        return estimatedHeapBytes;
+    }
+
+    // true if the file on disk is still the one that was parsed
+    public boolean isUpToDate(long currentSize, long currentLastModified) {
+        return sizeBytes == currentSize && lastModified == currentLastModified;
+    }
+}
@@ -10,5 +10,6 @@ public enum ChartType {
     HISTOGRAM, // For numeric distribution
     SCATTER_PLOT, // For correlation between two numeric columns
     BOX_PLOT, // For numeric data distribution
-    DONUT_CHART // Alternative to pie chart
+    DONUT_CHART, // Alternative to pie chart
+    HEATMAP // Correlations between all numeric columns at once
 }
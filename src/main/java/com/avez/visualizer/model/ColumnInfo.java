@@ -8,6 +8,7 @@ public class ColumnInfo {
     private int totalValues;
     private int uniqueValues;
     private int nullCount;
+    private boolean estimated; // true when the numbers above come from a sample, not the full file
 
 
     // the type of column cannot be decoded in the constructor, is handled in the CSVAnalyzer file
@@ -16,6 +17,7 @@ public class ColumnInfo {
         this.totalValues = 0;
         this.uniqueValues = 0;
         this.nullCount = 0;
+        this.estimated = false;
     } 
 
 
@@ -60,12 +62,21 @@ public class ColumnInfo {
         this.nullCount = nullCount;
     }
 
+    public boolean isEstimated() {
+        return estimated;
+    }
+
+    public void setEstimated(boolean estimated) {
+        this.estimated = estimated;
+    }
+
     @Override
     public String toString() {
         return "Column: " + columnName +
                 ", Type: " + dataType +
                 ", Total: " + totalValues +
                 ", Unique: " + uniqueValues +
-                ", Nulls: " + nullCount;
+                ", Nulls: " + nullCount +
+                (estimated ? " (estimated)" : "");
     }
 }
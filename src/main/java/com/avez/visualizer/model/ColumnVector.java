@@ -0,0 +1,32 @@
+package com.avez.visualizer.model;
+
+import java.util.List;
+
+
+// One column stored column-wise: every cell is either a number, a code into the column's dictionary of
+// distinct text values, or null (empty). Counters about the cells are collected while the column is built
+public interface ColumnVector {
+    int NUMERIC = -1; // getCode() of a cell that holds a number
+    int NULL = -2; // getCode() of an empty cell
+
+    String getName();
+
+    int size();
+
+    // dictionary code of the cell, or NUMERIC / NULL
+    int getCode(int row);
+
+    // the number in the cell, only meaningful when getCode(row) == NUMERIC
+    double getNumber(int row);
+
+    // distinct text values of the column, index = code
+    List<String> getDictionary();
+
+    int getNumericCount();
+
+    int getDecimalCount(); // numeric cells written with a '.'
+
+    int getBinaryDigitCount(); // cells that are exactly "0" or "1", those also count as boolean
+
+    int getNullCount();
+}
@@ -0,0 +1,83 @@
+package com.avez.visualizer.model;
+
+import java.lang.foreign.Arena;
+import java.util.List;
+
+
+// Column-wise counterpart of CSVData: the headers plus one ColumnVector per column instead of a CSVRecord per row.
+// When the columns are off-heap, the data owns their Arena and close() frees them, the columns can't be read after that
+public class ColumnarData implements AutoCloseable {
+    private List<String> headers;
+    private List<ColumnVector> columns; // same order as headers
+    private int rowCount;
+    private Arena arena; // null for heap columns
+
+    public ColumnarData(List<String> headers, List<ColumnVector> columns, int rowCount) {
+        this(headers, columns, rowCount, null);
+    }
+
+    public ColumnarData(List<String> headers, List<ColumnVector> columns, int rowCount, Arena arena) {
+        this.headers = headers;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.arena = arena;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public List<ColumnVector> getColumns() {
+        return columns;
+    }
+
+    // column by name, ignoring case like CSVReader does
+    public ColumnVector getColumn(String name) {
+        for (ColumnVector column : columns) {
+            if (column.getName().equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("Column not found: " + name);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return headers.size();
+    }
+
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    // bytes of cell data held outside the heap, 0 for heap columns
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (ColumnVector column : columns) {
+            if (column instanceof OffHeapColumnVector) {
+                bytes += ((OffHeapColumnVector) column).getOffHeapBytes();
+            }
+        }
+        return bytes;
+    }
+
+    // frees the off-heap memory right away instead of whenever the GC gets to it, safe to call more than once
+    @Override
+    public void close() {
+        if (arena != null && arena.scope().isAlive()) {
+            arena.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarData{" +
+                "columns=" + headers.size() +
+                ", rows=" + rowCount +
+                ", headers=" + headers +
+                '}';
+    }
+}
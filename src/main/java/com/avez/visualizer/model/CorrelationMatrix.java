@@ -0,0 +1,75 @@
+package com.avez.visualizer.model;
+
+import java.util.List;
+
+
+// Correlations between every pair of numeric columns of a dataset, filled in by CorrelationAnalyzer.
+// Entries are NaN where a pair has fewer than 2 rows with both values, or one of the columns never changes
+public class CorrelationMatrix {
+    private final List<String> columns;
+    private final double[][] pearson;
+    private final double[][] spearman; // null unless asked for, estimated from a sample of the rows
+    private final long[][] pairCounts; // rows where both columns hold a number
+    private final long rowCount;
+    private final int spearmanSampleSize; // rows the Spearman estimate was ranked on
+
+
+    public CorrelationMatrix(List<String> columns, double[][] pearson, double[][] spearman, long[][] pairCounts,
+                             long rowCount, int spearmanSampleSize) {
+        this.columns = columns;
+        this.pearson = pearson;
+        this.spearman = spearman;
+        this.pairCounts = pairCounts;
+        this.rowCount = rowCount;
+        this.spearmanSampleSize = spearmanSampleSize;
+    }
+
+
+    // Getters
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public int size() {
+        return columns.size();
+    }
+
+    public double getPearson(int i, int j) {
+        return pearson[i][j];
+    }
+
+    public boolean hasSpearman() {
+        return spearman != null;
+    }
+
+    public double getSpearman(int i, int j) {
+        return spearman == null ? Double.NaN : spearman[i][j];
+    }
+
+    public long getPairCount(int i, int j) {
+        return pairCounts[i][j];
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getSpearmanSampleSize() {
+        return spearmanSampleSize;
+    }
+
+    // true when Spearman was ranked on a sample rather than on every row
+    public boolean isSpearmanEstimated() {
+        return spearman != null && spearmanSampleSize < rowCount;
+    }
+
+
+    @Override
+    public String toString() {
+        return "CorrelationMatrix{" +
+                "columns=" + columns +
+                ", rowCount=" + rowCount +
+                ", spearman=" + (spearman == null ? "no" : spearmanSampleSize + " sampled rows") +
+                '}';
+    }
+}
@@ -0,0 +1,115 @@
+package com.avez.visualizer.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+// ColumnVector on plain Java arrays: a double[] for the numbers and an int[] for the codes (12 bytes per cell,
+// instead of a String per cell)
+public class HeapColumnVector implements WritableColumnVector {
+    private String name;
+    private List<String> dictionary; // shared with the dictionary that fills it, so it grows as new values show up
+    private double[] numbers = new double[1024];
+    private int[] codes = new int[1024];
+    private int size = 0;
+
+    private int numericCount = 0;
+    private int decimalCount = 0;
+    private int binaryDigitCount = 0;
+    private int nullCount = 0;
+
+    public HeapColumnVector(String name, List<String> dictionary) {
+        this.name = name;
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void appendNumber(double value, boolean hasDecimalPoint, boolean binaryDigit) {
+        ensureCapacity();
+        numbers[size] = value;
+        codes[size] = NUMERIC;
+        size++;
+        numericCount++;
+        if (hasDecimalPoint) {
+            decimalCount++;
+        }
+        if (binaryDigit) {
+            binaryDigitCount++;
+        }
+    }
+
+    @Override
+    public void appendCode(int code) {
+        ensureCapacity();
+        codes[size] = code;
+        size++;
+    }
+
+    @Override
+    public void appendNull() {
+        ensureCapacity();
+        codes[size] = NULL;
+        size++;
+        nullCount++;
+    }
+
+    // drops the unused tail of the arrays once loading is done
+    @Override
+    public void trimToSize() {
+        numbers = Arrays.copyOf(numbers, size);
+        codes = Arrays.copyOf(codes, size);
+    }
+
+    private void ensureCapacity() {
+        if (size == codes.length) {
+            int newCapacity = codes.length + (codes.length >> 1); // grow by 1.5x like ArrayList
+            numbers = Arrays.copyOf(numbers, newCapacity);
+            codes = Arrays.copyOf(codes, newCapacity);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    @Override
+    public double getNumber(int row) {
+        return numbers[row];
+    }
+
+    @Override
+    public List<String> getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public int getNumericCount() {
+        return numericCount;
+    }
+
+    @Override
+    public int getDecimalCount() {
+        return decimalCount;
+    }
+
+    @Override
+    public int getBinaryDigitCount() {
+        return binaryDigitCount;
+    }
+
+    @Override
+    public int getNullCount() {
+        return nullCount;
+    }
+}
@@ -0,0 +1,75 @@
+package com.avez.visualizer.model;
+
+import java.nio.file.Path;
+import java.util.List;
+
+
+// What HashJoin wrote and how it went about it (so the CLI can show it)
+public class JoinResult {
+    private final Path output;
+    private final List<String> headers;
+    private final long rowsWritten;
+    private final long buildRows; // rows of the smaller file, the one held in the hash table
+    private final long probeRows; // rows of the file streamed through it
+    private final boolean leftIsBuild;
+    private final int partitions; // 0 when the build side fit in the memory budget, otherwise the grace join's partitions
+
+
+    public JoinResult(Path output, List<String> headers, long rowsWritten, long buildRows, long probeRows,
+                      boolean leftIsBuild, int partitions) {
+        this.output = output;
+        this.headers = headers;
+        this.rowsWritten = rowsWritten;
+        this.buildRows = buildRows;
+        this.probeRows = probeRows;
+        this.leftIsBuild = leftIsBuild;
+        this.partitions = partitions;
+    }
+
+
+    // Getters
+    public Path getOutput() {
+        return output;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getBuildRows() {
+        return buildRows;
+    }
+
+    public long getProbeRows() {
+        return probeRows;
+    }
+
+    public boolean isLeftBuild() {
+        return leftIsBuild;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public boolean isPartitioned() {
+        return partitions > 0;
+    }
+
+
+    @Override
+    public String toString() {
+        return "JoinResult{" +
+                "output=" + output +
+                ", rowsWritten=" + rowsWritten +
+                ", buildRows=" + buildRows +
+                ", probeRows=" + probeRows +
+                ", build=" + (leftIsBuild ? "left" : "right") +
+                ", partitions=" + partitions +
+                '}';
+    }
+}
@@ -0,0 +1,8 @@
+package com.avez.visualizer.model;
+
+
+// Which rows a HashJoin keeps
+public enum JoinType {
+    INNER, // only rows whose key is in both files
+    LEFT // every row of the left file, the right file's columns empty where its key has no match
+}
@@ -0,0 +1,11 @@
+package com.avez.visualizer.model;
+
+
+// How a CSV file gets loaded, picked by LoadPlanner (or by the user as an override)
+public enum LoadMode {
+    IN_MEMORY, // every row as a CSVRecord on the heap, all features (scatter plots too)
+    OFF_HEAP, // column-wise outside the heap, exact, single column charts only
+    OUT_OF_CORE, // column files on disk, streamed into per-column aggregates, for files bigger than memory
+    PREVIEW, // in-memory load with a sampled preview shown while it runs
+    APPROXIMATE // a sample only, charts carry confidence intervals
+}
@@ -0,0 +1,74 @@
+package com.avez.visualizer.model;
+
+
+// What LoadPlanner decided for one file, and the numbers it decided on (so the CLI can show them)
+public class LoadPlan {
+    private LoadMode mode;
+    private String reason;
+    private long fileBytes;
+    private long estimatedRows;
+    private int columnCount;
+    private long estimatedHeapBytes; // an IN_MEMORY load of the file
+    private long estimatedOffHeapBytes; // an OFF_HEAP load of the file
+    private long availableHeapBytes;
+    private long availableMemoryBytes; // free physical memory, 0 if unknown
+
+    public LoadPlan(LoadMode mode, String reason, long fileBytes, long estimatedRows, int columnCount,
+            long estimatedHeapBytes, long estimatedOffHeapBytes, long availableHeapBytes, long availableMemoryBytes) {
+        this.mode = mode;
+        this.reason = reason;
+        this.fileBytes = fileBytes;
+        this.estimatedRows = estimatedRows;
+        this.columnCount = columnCount;
+        this.estimatedHeapBytes = estimatedHeapBytes;
+        this.estimatedOffHeapBytes = estimatedOffHeapBytes;
+        this.availableHeapBytes = availableHeapBytes;
+        this.availableMemoryBytes = availableMemoryBytes;
+    }
+
+    public LoadMode getMode() {
+        return mode;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public long getEstimatedHeapBytes() {
+        return estimatedHeapBytes;
+    }
+
+    public long getEstimatedOffHeapBytes() {
+        return estimatedOffHeapBytes;
+    }
+
+    public long getAvailableHeapBytes() {
+        return availableHeapBytes;
+    }
+
+    public long getAvailableMemoryBytes() {
+        return availableMemoryBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadPlan{" +
+                "mode=" + mode +
+                ", rows~" + estimatedRows +
+                ", columns=" + columnCount +
+                ", reason='" + reason + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,154 @@
+package com.avez.visualizer.model;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * ColumnVector whose cells live outside the Java heap, in MemorySegments allocated from an Arena.
+ * The GC never sees the cell data, so a multi-GB column costs the heap only a few small objects
+ * and doesn't make collections (and the pauses a GUI user notices) any longer.
+ *
+ * Cells are stored in fixed size chunks so the column can grow without copying: an Arena only frees
+ * memory all at once when it is closed, so re-allocating a bigger segment would leak the old one until then.
+ * A chunk of numbers is only allocated once a number shows up in it, text-only columns cost 4 bytes per cell.
+ *
+ * The segments belong to the Arena, whoever created the Arena closes it (see ColumnarData.close()).
+ * Reading a cell after that throws IllegalStateException.
+ */
+public class OffHeapColumnVector implements WritableColumnVector {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // 65536 cells: 512 KB of numbers, 256 KB of codes
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final String name;
+    private final List<String> dictionary; // distinct text values stay on the heap, there are few of them
+    private final Arena arena;
+    private MemorySegment[] numberChunks = new MemorySegment[16];
+    private MemorySegment[] codeChunks = new MemorySegment[16];
+    private int size = 0;
+
+    private int numericCount = 0;
+    private int decimalCount = 0;
+    private int binaryDigitCount = 0;
+    private int nullCount = 0;
+
+    public OffHeapColumnVector(String name, List<String> dictionary, Arena arena) {
+        this.name = name;
+        this.dictionary = dictionary;
+        this.arena = arena;
+    }
+
+    @Override
+    public void appendNumber(double value, boolean hasDecimalPoint, boolean binaryDigit) {
+        int chunk = reserve();
+        if (numberChunks[chunk] == null) {
+            numberChunks[chunk] = arena.allocate(ValueLayout.JAVA_DOUBLE.byteSize() * CHUNK_SIZE, ValueLayout.JAVA_DOUBLE.byteAlignment());
+        }
+        numberChunks[chunk].setAtIndex(ValueLayout.JAVA_DOUBLE, size & CHUNK_MASK, value);
+        codeChunks[chunk].setAtIndex(ValueLayout.JAVA_INT, size & CHUNK_MASK, NUMERIC);
+        size++;
+        numericCount++;
+        if (hasDecimalPoint) {
+            decimalCount++;
+        }
+        if (binaryDigit) {
+            binaryDigitCount++;
+        }
+    }
+
+    @Override
+    public void appendCode(int code) {
+        int chunk = reserve();
+        codeChunks[chunk].setAtIndex(ValueLayout.JAVA_INT, size & CHUNK_MASK, code);
+        size++;
+    }
+
+    @Override
+    public void appendNull() {
+        int chunk = reserve();
+        codeChunks[chunk].setAtIndex(ValueLayout.JAVA_INT, size & CHUNK_MASK, NULL);
+        size++;
+        nullCount++;
+    }
+
+    // nothing to give back, a half full last chunk is at most 768 KB and the Arena can't shrink it anyway
+    @Override
+    public void trimToSize() {
+    }
+
+    // makes sure the chunk for the next cell exists, returns its index
+    private int reserve() {
+        int chunk = size >>> CHUNK_SHIFT;
+        if (chunk == codeChunks.length) {
+            codeChunks = Arrays.copyOf(codeChunks, chunk * 2);
+            numberChunks = Arrays.copyOf(numberChunks, chunk * 2);
+        }
+        if (codeChunks[chunk] == null) {
+            codeChunks[chunk] = arena.allocate(ValueLayout.JAVA_INT.byteSize() * CHUNK_SIZE, ValueLayout.JAVA_INT.byteAlignment());
+        }
+        return chunk;
+    }
+
+    // bytes held outside the heap by this column
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (int i = 0; i < codeChunks.length; i++) {
+            if (codeChunks[i] != null) {
+                bytes += codeChunks[i].byteSize();
+            }
+            if (numberChunks[i] != null) {
+                bytes += numberChunks[i].byteSize();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getCode(int row) {
+        return codeChunks[row >>> CHUNK_SHIFT].getAtIndex(ValueLayout.JAVA_INT, row & CHUNK_MASK);
+    }
+
+    @Override
+    public double getNumber(int row) {
+        return numberChunks[row >>> CHUNK_SHIFT].getAtIndex(ValueLayout.JAVA_DOUBLE, row & CHUNK_MASK);
+    }
+
+    @Override
+    public List<String> getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public int getNumericCount() {
+        return numericCount;
+    }
+
+    @Override
+    public int getDecimalCount() {
+        return decimalCount;
+    }
+
+    @Override
+    public int getBinaryDigitCount() {
+        return binaryDigitCount;
+    }
+
+    @Override
+    public int getNullCount() {
+        return nullCount;
+    }
+}
@@ -0,0 +1,61 @@
+package com.avez.visualizer.model;
+
+import java.nio.file.Path;
+
+
+// One file of a partitioned dataset (e.g. orders_2016-11-08.csv) plus what we know about it.
+// size + lastModified tell the reader whether the file changed since it was parsed
+public class Partition {
+    private Path path;
+    private long sizeBytes;
+    private long lastModified;
+    private CSVData data; // this file's rows, shared as is with the combined dataset
+    private long parseMillis; // how long parsing this file took
+
+    public Partition(Path path, long sizeBytes, long lastModified, CSVData data, long parseMillis) {
+        this.path = path;
+        this.sizeBytes = sizeBytes;
+        this.lastModified = lastModified;
+        this.data = data;
+        this.parseMillis = parseMillis;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public CSVData getData() {
+        return data;
+    }
+
+    public int getRowCount() {
+        return data.getRowCount();
+    }
+
+    public long getParseMillis() {
+        return parseMillis;
+    }
+
+    // true when the file on disk still looks exactly like when we parsed it
+    public boolean isUpToDate(long currentSize, long currentLastModified) {
+        return sizeBytes == currentSize && lastModified == currentLastModified;
+    }
+
+    @Override
+    public String toString() {
+        return "Partition{" +
+                "file=" + path.getFileName() +
+                ", rows=" + getRowCount() +
+                ", bytes=" + sizeBytes +
+                ", parseMillis=" + parseMillis +
+                '}';
+    }
+}
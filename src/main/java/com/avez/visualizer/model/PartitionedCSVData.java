@@ -0,0 +1,104 @@
+package com.avez.visualizer.model;
+
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+// Several CSV files with the same columns, seen as ONE dataset.
+// The rows are not copied: getRecords() is a read-only view that walks the partitions one after another
+public class PartitionedCSVData extends CSVData {
+    private List<Partition> partitions;
+
+    public PartitionedCSVData(List<String> headers, List<Partition> partitions) {
+        super(headers, new ConcatenatedRecords(partitions));
+        this.partitions = partitions;
+    }
+
+    public List<Partition> getPartitions() {
+        return partitions;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionedCSVData{" +
+                "partitions=" + partitions.size() +
+                ", columns=" + getColumnCount() +
+                ", rows=" + getRowCount() +
+                ", headers=" + getHeaders() +
+                '}';
+    }
+
+
+    // List view over the records of every partition, in partition order
+    private static class ConcatenatedRecords extends AbstractList<CSVRecord> {
+        private final List<Partition> partitions;
+        private final int[] startIndex; // startIndex[p] = index of the first row of partition p in the combined list
+        private final int size;
+
+        ConcatenatedRecords(List<Partition> partitions) {
+            this.partitions = partitions;
+            this.startIndex = new int[partitions.size()];
+            int total = 0;
+            for (int p = 0; p < partitions.size(); p++) {
+                startIndex[p] = total;
+                total += partitions.get(p).getRowCount();
+            }
+            this.size = total;
+        }
+
+        @Override
+        public CSVRecord get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+
+            // binary search for the last partition starting at or before index
+            int low = 0;
+            int high = startIndex.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (startIndex[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return partitions.get(low).getData().getRecords().get(index - startIndex[low]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        // Walks each partition's own list directly, the common case (a full scan) skips the binary search
+        @Override
+        public Iterator<CSVRecord> iterator() {
+            return new Iterator<CSVRecord>() {
+                private int partition = 0;
+                private Iterator<CSVRecord> current = partitions.isEmpty() ? null : partitions.get(0).getData().getRecords().iterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (current != null && !current.hasNext()) {
+                        partition++;
+                        current = partition < partitions.size() ? partitions.get(partition).getData().getRecords().iterator() : null;
+                    }
+                    return current != null;
+                }
+
+                @Override
+                public CSVRecord next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.avez.visualizer.model;
+
+
+// What one stage of a run (load, analyze, aggregate, render, encode) cost, recorded by RunMetrics
+public class StageMetrics {
+    private String stage;
+    private String detail; // what the stage worked on, e.g. "Region PIE_CHART", may be empty
+    private long wallNanos;
+    private long cpuNanos; // CPU time of the whole process during the stage, worker threads and GC included
+    private long rows;
+    private long bytes; // input read (load) or output written (encode), 0 when the stage has none
+    private long allocatedBytes; // heap allocated by all threads during the stage
+    private long peakHeapBytes;
+
+    public StageMetrics(String stage, String detail, long wallNanos, long cpuNanos, long rows, long bytes,
+                        long allocatedBytes, long peakHeapBytes) {
+        this.stage = stage;
+        this.detail = detail;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.allocatedBytes = allocatedBytes;
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    // 0 for stages that take no measurable time
+    public double getRowsPerSecond() {
+        return wallNanos > 0 ? rows * 1e9 / wallNanos : 0;
+    }
+
+    public double getBytesPerSecond() {
+        return wallNanos > 0 ? bytes * 1e9 / wallNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "StageMetrics{" +
+                "stage=" + stage +
+                ", detail=" + detail +
+                ", wallMillis=" + wallNanos / 1_000_000 +
+                ", cpuMillis=" + cpuNanos / 1_000_000 +
+                ", rows=" + rows +
+                ", bytes=" + bytes +
+                ", allocatedBytes=" + allocatedBytes +
+                ", peakHeapBytes=" + peakHeapBytes +
+                '}';
+    }
+}
@@ -0,0 +1,15 @@
+package com.avez.visualizer.model;
+
+
+// A ColumnVector that ColumnarCSVReader can fill, one cell at a time in row order
+public interface WritableColumnVector extends ColumnVector {
+
+    void appendNumber(double value, boolean hasDecimalPoint, boolean binaryDigit);
+
+    void appendCode(int code);
+
+    void appendNull();
+
+    // called once loading is done, gives back whatever was reserved for growth
+    void trimToSize();
+}